@@ -0,0 +1,143 @@
+-- ============================================
+-- 向量量化检索基准：召回率 vs 索引体积
+--
+-- 用法（只读，不修改业务数据）：
+--   psql "$DATABASE_URL" -f demo1/scripts/vector_quantization_benchmark.sql
+--   psql "$DATABASE_URL" -v samples=200 -v k=8 -v multiplier=8 -f demo1/scripts/vector_quantization_benchmark.sql
+--
+-- 指标说明：
+--   recall@k = 量化检索 top-k 与 float32 精确检索 top-k 的交集 / k
+--   *_raw     仅用量化距离排序（不重排）
+--   *_rescore 量化索引召回 k × multiplier 条候选后，用 float32 精确重排（与线上 QaService 一致）
+-- 查询向量从库中随机抽样，并排除自身，避免自匹配抬高召回率
+-- ============================================
+
+\if :{?samples}
+\else
+\set samples 100
+\endif
+\if :{?k}
+\else
+\set k 8
+\endif
+\if :{?multiplier}
+\else
+\set multiplier 4
+\endif
+
+SET hnsw.ef_search = 100;
+
+-- 1. 索引体积
+SELECT indexrelname                               AS index_name,
+       pg_size_pretty(pg_relation_size(indexrelid)) AS size,
+       round(pg_relation_size(indexrelid)::numeric
+             / NULLIF(pg_relation_size('idx_vector_embedding_ip'::regclass), 0), 3) AS ratio_to_float32
+FROM pg_stat_user_indexes
+WHERE indexrelname IN ('idx_vector_embedding_ip',
+                       'idx_vector_embedding_halfvec',
+                       'idx_vector_embedding_binary')
+ORDER BY pg_relation_size(indexrelid) DESC;
+
+-- 2. 抽样查询向量
+DROP TABLE IF EXISTS bench_queries;
+CREATE TEMP TABLE bench_queries AS
+SELECT id, embedding
+FROM t_vector_record
+WHERE embedding IS NOT NULL
+ORDER BY random()
+LIMIT :samples;
+
+-- 3. float32 精确 top-k（+ 0 使排序表达式不匹配索引，强制精确扫描）作为基准
+DROP TABLE IF EXISTS bench_exact;
+CREATE TEMP TABLE bench_exact AS
+SELECT q.id AS qid, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT vr.id FROM t_vector_record vr
+    WHERE vr.id <> q.id
+    ORDER BY (vr.embedding <#> q.embedding) + 0
+    LIMIT :k
+) r;
+
+-- 4. 各检索方式 top-k
+DROP TABLE IF EXISTS bench_results;
+CREATE TEMP TABLE bench_results (method text, qid uuid, id uuid);
+
+INSERT INTO bench_results
+SELECT 'float32_hnsw', q.id, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT vr.id FROM t_vector_record vr
+    WHERE vr.id <> q.id
+    ORDER BY vr.embedding <#> q.embedding
+    LIMIT :k
+) r;
+
+INSERT INTO bench_results
+SELECT 'halfvec_raw', q.id, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT vr.id FROM t_vector_record vr
+    WHERE vr.id <> q.id
+    ORDER BY CAST(vr.embedding AS halfvec(1024)) <#> CAST(q.embedding AS halfvec(1024))
+    LIMIT :k
+) r;
+
+INSERT INTO bench_results
+SELECT 'halfvec_rescore', q.id, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT c.id FROM (
+        SELECT vr.id, vr.embedding FROM t_vector_record vr
+        WHERE vr.id <> q.id
+        ORDER BY CAST(vr.embedding AS halfvec(1024)) <#> CAST(q.embedding AS halfvec(1024))
+        LIMIT :k * :multiplier
+    ) c
+    ORDER BY c.embedding <#> q.embedding
+    LIMIT :k
+) r;
+
+INSERT INTO bench_results
+SELECT 'binary_raw', q.id, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT vr.id FROM t_vector_record vr
+    WHERE vr.id <> q.id
+    ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize(q.embedding)
+    LIMIT :k
+) r;
+
+INSERT INTO bench_results
+SELECT 'binary_rescore', q.id, r.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT c.id FROM (
+        SELECT vr.id, vr.embedding FROM t_vector_record vr
+        WHERE vr.id <> q.id
+        ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize(q.embedding)
+        LIMIT :k * :multiplier
+    ) c
+    ORDER BY c.embedding <#> q.embedding
+    LIMIT :k
+) r;
+
+-- 5. 召回率
+SELECT r.method,
+       round(count(e.id)::numeric / NULLIF((SELECT count(*) FROM bench_exact), 0), 4) AS recall_at_k
+FROM bench_results r
+LEFT JOIN bench_exact e ON e.qid = r.qid AND e.id = r.id
+GROUP BY r.method
+ORDER BY recall_at_k DESC;
+
+-- 6. 单次查询耗时参考（取一条抽样向量）
+\timing on
+SELECT count(*) FROM (
+    SELECT c.id FROM (
+        SELECT vr.id, vr.embedding FROM t_vector_record vr
+        ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize((SELECT embedding FROM bench_queries LIMIT 1))
+        LIMIT :k * :multiplier
+    ) c
+    ORDER BY c.embedding <#> (SELECT embedding FROM bench_queries LIMIT 1)
+    LIMIT :k
+) t;
+\timing off
@@ -7,6 +7,7 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * 异步任务配置
@@ -27,6 +28,12 @@ public class AsyncConfig {
     @Value("${async.thread-name-prefix:document-processor-}")
     private String threadNamePrefix;
 
+    @Value("${qa.retrieval.pool-size:8}")
+    private int retrievalPoolSize;
+
+    @Value("${qa.retrieval.queue-capacity:200}")
+    private int retrievalQueueCapacity;
+
     @Bean(name = "taskExecutor")
     public Executor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -37,4 +44,21 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * 问答检索线程池：用于并行执行关键词召回等检索分支
+     * 队列满时拒绝提交（AbortPolicy），由调用方降级跳过该分支；
+     * 不让调用线程代为执行，否则检索分支会与向量化串行，且不受分支超时约束
+     */
+    @Bean(name = "retrievalExecutor")
+    public Executor retrievalExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(retrievalPoolSize);
+        executor.setMaxPoolSize(retrievalPoolSize);
+        executor.setQueueCapacity(retrievalQueueCapacity);
+        executor.setThreadNamePrefix("qa-retrieval-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
 }
@@ -1,5 +1,6 @@
 package com.hiyuan.demo1.config;
 
+import com.hiyuan.demo1.service.EmbeddingBatcher;
 import com.hiyuan.demo1.service.EmbeddingService;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
@@ -37,9 +38,10 @@ public class LangChain4jConfig {
     /**
      * 配置嵌入模型 (EmbeddingModel)
      * 使用 SiliconFlow 的 OpenAI 兼容接口（暂不支持切换）
+     * 单文本向量化（问答时的问题向量）经 EmbeddingBatcher 跨请求合并为批量调用
      */
     @Bean
-    public EmbeddingModel embeddingModel(EmbeddingService embeddingService) {
+    public EmbeddingModel embeddingModel(EmbeddingService embeddingService, EmbeddingBatcher embeddingBatcher) {
         log.info("初始化 EmbeddingModel - SiliconFlow (硅基流动)");
         log.info("嵌入模型: {}", embeddingModel);
 
@@ -48,13 +50,13 @@ public class LangChain4jConfig {
         EmbeddingModel model = new EmbeddingModel() {
             @Override
             public Response<Embedding> embed(String text) {
-                float[] vector = embeddingService.embed(text);
+                float[] vector = embeddingBatcher.embed(text);
                 return Response.from(new Embedding(vector));
             }
 
             @Override
             public Response<Embedding> embed(TextSegment textSegment) {
-                float[] vector = embeddingService.embed(textSegment.text());
+                float[] vector = embeddingBatcher.embed(textSegment.text());
                 return Response.from(new Embedding(vector));
             }
 
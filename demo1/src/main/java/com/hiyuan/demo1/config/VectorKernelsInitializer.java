@@ -0,0 +1,22 @@
+package com.hiyuan.demo1.config;
+
+import com.hiyuan.demo1.util.VectorKernels;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时选定向量计算内核并记录日志
+ *
+ * 内核在首次使用时才会加载，这里提前触发，避免未启用 Vector API 时静默回退为标量实现
+ */
+@Slf4j
+@Component
+public class VectorKernelsInitializer implements ApplicationRunner {
+
+    @Override
+    public void run(ApplicationArguments args) {
+        log.info("向量计算内核已就绪: {}", VectorKernels.get().name());
+    }
+}
@@ -0,0 +1,40 @@
+package com.hiyuan.demo1.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Spring MVC 配置
+ *
+ * 关闭全局 open-in-view（spring.jpa.open-in-view=false）后在这里手动注册，
+ * 排除问答接口、文档进度订阅和学生报表导出：open-in-view 会把请求中第一次拿到的数据库连接一直占到请求结束，
+ * 问答请求要等待 LLM 几十秒、进度订阅是长连接、报表导出的时长取决于客户端下载速度，
+ * 20 个连接的连接池很快就会被占满。
+ * 其他接口保持原有的懒加载行为不变。
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    // @WebMvcTest 等切片测试中没有 JPA，此时不注册
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactoryProvider;
+
+    public WebMvcConfig(ObjectProvider<EntityManagerFactory> entityManagerFactoryProvider) {
+        this.entityManagerFactoryProvider = entityManagerFactoryProvider;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        EntityManagerFactory entityManagerFactory = entityManagerFactoryProvider.getIfAvailable();
+        if (entityManagerFactory == null) {
+            return;
+        }
+        OpenEntityManagerInViewInterceptor interceptor = new OpenEntityManagerInViewInterceptor();
+        interceptor.setEntityManagerFactory(entityManagerFactory);
+        registry.addWebRequestInterceptor(interceptor)
+                .excludePathPatterns("/qa/**", "/documents/events", "/teacher/students/export");
+    }
+}
@@ -1,15 +1,16 @@
 package com.hiyuan.demo1.controller;
 
+import com.hiyuan.demo1.dto.document.DocumentSummaryResponse;
 import com.hiyuan.demo1.dto.response.ApiResponse;
-import com.hiyuan.demo1.entity.Document;
-import com.hiyuan.demo1.repository.DocumentRepository;
+import com.hiyuan.demo1.dto.response.CursorPage;
+import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.service.DocumentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.List;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /**
  * 管理员控制器
@@ -22,23 +23,35 @@ import java.util.List;
 @PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
 
-    private final DocumentRepository documentRepository;
+    private final DocumentService documentService;
 
     /**
-     * 获取所有文档列表（管理员权限）
+     * 获取所有文档列表（管理员权限，游标分页，最新上传的在前）
+     *
+     * 只返回列表摘要字段和上传者用户名，响应带 ETag，内容未变时返回 304
+     *
+     * @param cursor 上一页返回的 nextCursor，不传时返回第一页
+     * @param size   每页大小（最大 100）
      */
     @GetMapping("/documents")
-    public ApiResponse<List<Document>> getAllDocuments() {
-        log.info("管理员获取所有文档列表");
+    public ApiResponse<CursorPage<DocumentSummaryResponse>> getAllDocuments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            ServletWebRequest webRequest) {
+        log.info("管理员获取文档列表: cursor={}, size={}", cursor, size);
         
         try {
-            // 查询所有文档，按上传时间倒序
-            List<Document> documents = documentRepository.findAll(
-                Sort.by(Sort.Direction.DESC, "uploadedAt")
-            );
+            CursorPage<DocumentSummaryResponse> documents = documentService.listAllDocumentSummaries(cursor, size);
+            webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+            if (webRequest.checkNotModified(DocumentService.listETag(documents))) {
+                return null;
+            }
             
-            log.info("找到 {} 个文档", documents.size());
+            log.info("返回 {} 个文档, 是否还有下一页: {}", documents.getContent().size(), documents.isHasNext());
             return ApiResponse.success(documents);
+        } catch (BusinessException e) {
+            log.warn("获取文档列表参数错误: {}", e.getMessage());
+            return ApiResponse.error(e.getCode(), e.getMessage());
         } catch (Exception e) {
             log.error("获取文档列表失败: {}", e.getMessage(), e);
             return ApiResponse.serverError("获取文档列表失败");
@@ -1,20 +1,27 @@
 package com.hiyuan.demo1.controller;
 
+import com.hiyuan.demo1.dto.document.DocumentStatusEvent;
+import com.hiyuan.demo1.dto.document.DocumentSummaryResponse;
 import com.hiyuan.demo1.dto.response.ApiResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.entity.Document;
+import com.hiyuan.demo1.entity.UserRole;
 import com.hiyuan.demo1.enums.DocumentStatus;
 import com.hiyuan.demo1.exception.BusinessException;
 import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.security.UserPrincipal;
 import com.hiyuan.demo1.service.DocumentService;
+import com.hiyuan.demo1.service.DocumentStatusEventBus;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -31,6 +38,7 @@ public class DocumentController {
 
     private final DocumentRepository documentRepository;
     private final DocumentService documentService;
+    private final DocumentStatusEventBus statusEventBus;
 
     /**
      * 上传文档
@@ -64,32 +72,60 @@ public class DocumentController {
     }
 
     /**
-     * 获取文档列表
+     * 获取文档列表（游标分页，最新上传的在前）
+     *
+     * 只返回列表摘要字段。前端在文档处理期间会频繁轮询，响应带 ETag，
+     * If-None-Match 与当前内容一致时返回 304 且不带响应体
+     *
+     * @param cursor 上一页返回的 nextCursor，不传时返回第一页
+     * @param size   每页大小（最大 100）
      */
     @GetMapping
-    public ApiResponse<List<Document>> listDocuments(
+    public ApiResponse<CursorPage<DocumentSummaryResponse>> listDocuments(
             @AuthenticationPrincipal UserPrincipal userPrincipal,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            ServletWebRequest webRequest) {
 
         if (userPrincipal == null) {
             return ApiResponse.unauthorized("未登录或登录状态失效");
         }
 
         UUID userId = userPrincipal.getId();
-        log.info("获取文档列表: userId={}, page={}, size={}", userId, page, size);
+        log.debug("获取文档列表: userId={}, cursor={}, size={}", userId, cursor, size);
 
         try {
-            // 查询用户的文档，按上传时间倒序
-            var pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "uploadedAt"));
-            Page<Document> documents = documentRepository.findByUserId(userId, pageable);
-            return ApiResponse.success(documents.getContent());
+            CursorPage<DocumentSummaryResponse> documents = documentService.listDocumentSummaries(userId, cursor, size);
+            // no-cache：浏览器每次都带 If-None-Match 回源校验，覆盖 Spring Security 默认的 no-store
+            webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+            if (webRequest.checkNotModified(DocumentService.listETag(documents))) {
+                return null;
+            }
+            return ApiResponse.success(documents);
+        } catch (BusinessException e) {
+            log.warn("获取文档列表参数错误: {}", e.getMessage());
+            return ApiResponse.error(e.getCode(), e.getMessage());
         } catch (Exception e) {
             log.error("获取文档列表失败: {}", e.getMessage(), e);
             return ApiResponse.serverError("获取文档列表失败");
         }
     }
 
+    /**
+     * 订阅文档处理进度（SSE）
+     *
+     * 推送当前用户文档的状态变化和向量化进度（管理员推送所有文档），替代前端轮询文档列表。
+     * 事件名为 status，data 为 DocumentStatusEvent 的 JSON；连接建立后先发送一条注释帧。
+     * 断线期间的事件不会补发，前端在重连后刷新一次列表（ETag 未变时只有 304）
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> documentEvents(
+            @AuthenticationPrincipal UserPrincipal userPrincipal,
+            @RequestParam(value = "access_token", required = false) String ignoredToken) { // 仅用于通过JWT过滤器
+        log.info("订阅文档处理进度: userId={}", userPrincipal.getId());
+        return statusEventBus.stream(userPrincipal.getId(), userPrincipal.hasRole(UserRole.ADMIN));
+    }
+
     /**
      * 获取文档详情
      */
@@ -143,6 +179,8 @@ public class DocumentController {
                     doc.setErrorMessage("处理超时，请重新上传");
                     doc.setProcessedAt(LocalDateTime.now());
                     documentRepository.save(doc);
+                    statusEventBus.publish(DocumentStatusEvent.failed(doc.getId(),
+                            doc.getUser() != null ? doc.getUser().getId() : null, doc.getErrorMessage()));
                     count++;
                     log.info("已清理文档: id={}, filename={}", doc.getId(), doc.getFilename());
                 }
@@ -1,15 +1,15 @@
 package com.hiyuan.demo1.controller;
 
 import com.hiyuan.demo1.dto.response.ApiResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.entity.QaHistory;
 import com.hiyuan.demo1.exception.AuthorizationException;
+import com.hiyuan.demo1.exception.BusinessException;
 import com.hiyuan.demo1.repository.QaHistoryRepository;
 import com.hiyuan.demo1.security.UserPrincipal;
+import com.hiyuan.demo1.service.QaHistoryQueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -26,24 +26,33 @@ import java.util.UUID;
 public class HistoryController {
 
     private final QaHistoryRepository qaHistoryRepository;
+    private final QaHistoryQueryService qaHistoryQueryService;
 
     /**
-     * 获取当前用户的问答历史列表
+     * 获取当前用户的问答历史列表（游标分页，最新的在前）
+     *
+     * @param cursor  上一页返回的 nextCursor，不传时返回第一页
+     * @param size    每页大小（最大 100）
+     * @param keyword 关键词（可选，匹配问题或答案）
      */
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public ApiResponse<Page<QaHistory>> listHistory(
-            @RequestParam(defaultValue = "0") int page,
+    public ApiResponse<CursorPage<QaHistory>> listHistory(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String keyword,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
-        log.info("用户 {} 获取问答历史列表: page={}, size={}", userPrincipal.getUsername(), page, size);
+        log.info("用户 {} 获取问答历史列表: cursor={}, size={}, keyword={}",
+                userPrincipal.getUsername(), cursor, size, keyword);
 
         try {
-            PageRequest pageRequest = PageRequest.of(page, size,
-                    Sort.by(Sort.Direction.DESC, "askedAt"));
-            Page<QaHistory> history = qaHistoryRepository.findByUserId(userPrincipal.getId(), pageRequest);
+            CursorPage<QaHistory> history = qaHistoryQueryService.page(
+                    userPrincipal.getId(), keyword, null, null, cursor, size);
             return ApiResponse.success(history);
+        } catch (BusinessException e) {
+            log.warn("获取问答历史参数错误: {}", e.getMessage());
+            return ApiResponse.badRequest(e.getMessage());
         } catch (Exception e) {
             log.error("获取问答历史失败: {}", e.getMessage(), e);
             return ApiResponse.serverError("获取问答历史失败");
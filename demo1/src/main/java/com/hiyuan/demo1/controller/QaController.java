@@ -3,15 +3,21 @@ package com.hiyuan.demo1.controller;
 import com.hiyuan.demo1.dto.QaRequest;
 import com.hiyuan.demo1.dto.QaResponse;
 import com.hiyuan.demo1.dto.response.ApiResponse;
+import com.hiyuan.demo1.security.UserPrincipal;
 import com.hiyuan.demo1.service.QaService;
+import com.hiyuan.demo1.service.QaSessionService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import java.util.Map;
+import java.util.UUID;
+
 /**
  * 问答控制器
  */
@@ -22,6 +28,17 @@ import reactor.core.publisher.Flux;
 public class QaController {
 
     private final QaService qaService;
+    private final QaSessionService sessionService;
+
+    /**
+     * 创建问答会话
+     * 之后的提问携带 sessionId，多轮上下文由服务端维护
+     */
+    @PostMapping("/sessions")
+    public ApiResponse<Map<String, String>> createSession(@AuthenticationPrincipal UserPrincipal principal) {
+        UUID sessionId = sessionService.create(principal == null ? null : principal.getId());
+        return ApiResponse.success(Map.of("sessionId", sessionId.toString()));
+    }
 
     /**
      * 提问接口
@@ -42,18 +59,21 @@ public class QaController {
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<String>> stream(
             @RequestParam String question,
+            @RequestParam(required = false) String sessionId,
             @RequestParam(required = false) String previousQuestion,
             @RequestParam(required = false) String previousAnswer,
             @RequestParam(required = false) Integer topK,
-            @RequestParam(value = "access_token", required = false) String ignoredToken // 仅用于通过JWT过滤器
+            @RequestParam(value = "access_token", required = false) String ignoredToken, // 仅用于通过JWT过滤器
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId // 浏览器断线重连时自动携带
     ) {
         QaRequest request = new QaRequest();
         request.setQuestion(question);
+        request.setSessionId(sessionId);
         request.setPreviousQuestion(previousQuestion);
         request.setPreviousAnswer(previousAnswer);
         if (topK != null) {
             request.setTopK(topK);
         }
-        return qaService.streamAnswer(request);
+        return qaService.streamAnswer(request, lastEventId);
     }
 }
@@ -1,17 +1,20 @@
 package com.hiyuan.demo1.controller;
 
 import com.hiyuan.demo1.dto.response.ApiResponse;
-import com.hiyuan.demo1.repository.DocumentRepository;
-import com.hiyuan.demo1.repository.QaHistoryRepository;
+import com.hiyuan.demo1.service.StatisticsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
  * 统计信息控制器
+ *
+ * 只读取增量维护的计数器和时间序列汇总表，不扫描文档表和问答历史表
  */
 @Slf4j
 @RestController
@@ -19,8 +22,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class StatisticsController {
 
-    private final DocumentRepository documentRepository;
-    private final QaHistoryRepository qaHistoryRepository;
+    private final StatisticsService statisticsService;
 
     /**
      * 获取系统统计信息
@@ -30,23 +32,31 @@ public class StatisticsController {
         log.info("获取系统统计信息");
         
         try {
-            Map<String, Object> stats = new HashMap<>();
-            
-            // 文档统计
-            long totalDocuments = documentRepository.count();
-            stats.put("totalDocuments", totalDocuments);
-            
-            // 问答统计
-            long totalQuestions = qaHistoryRepository.count();
-            stats.put("totalQuestions", totalQuestions);
-            
-            // 可以添加更多统计信息
-            stats.put("timestamp", java.time.LocalDateTime.now());
-            
-            return ApiResponse.success(stats);
+            return ApiResponse.success(statisticsService.overview());
         } catch (Exception e) {
             log.error("获取统计信息失败: {}", e.getMessage(), e);
             return ApiResponse.serverError("获取统计信息失败");
         }
     }
+
+    /**
+     * 获取统计时间序列
+     *
+     * GET /statistics/timeseries?metric=qa.asked&granularity=hour
+     *
+     * @param metric 指标：document.uploaded、document.succeeded、document.failed、qa.asked
+     * @param granularity 时间粒度：hour（默认最近24小时，最多31天）或 day（默认最近30天，最多366天）
+     * @param from 开始时间（可选，ISO格式）
+     * @param to 结束时间（可选，ISO格式，不含）
+     */
+    @GetMapping("/timeseries")
+    public ApiResponse<List<StatisticsService.StatsPoint>> getTimeSeries(
+            @RequestParam(defaultValue = StatisticsService.QA_ASKED) String metric,
+            @RequestParam(defaultValue = "hour") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.info("获取统计时间序列: metric={}, granularity={}, from={}, to={}", metric, granularity, from, to);
+        return ApiResponse.success(statisticsService.timeSeries(
+                metric, StatisticsService.Granularity.from(granularity), from, to));
+    }
 }
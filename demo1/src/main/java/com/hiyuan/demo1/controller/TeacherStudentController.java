@@ -1,6 +1,7 @@
 package com.hiyuan.demo1.controller;
 
 import com.hiyuan.demo1.dto.response.ApiResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.dto.teacher.AddStudentRequest;
 import com.hiyuan.demo1.dto.teacher.BatchAddStudentResponse;
 import com.hiyuan.demo1.dto.teacher.DocumentAccessResponse;
@@ -9,6 +10,7 @@ import com.hiyuan.demo1.dto.teacher.StudentDetailResponse;
 import com.hiyuan.demo1.dto.teacher.StudentListResponse;
 import com.hiyuan.demo1.security.UserPrincipal;
 import com.hiyuan.demo1.service.TeacherStudentService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,13 +19,12 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
@@ -206,41 +207,42 @@ public class TeacherStudentController {
     }
 
     /**
-     * 获取学生问答历史（分页）
+     * 获取学生问答历史（游标分页）
      * 
      * GET /teacher/students/{id}/qa-history
      * 
-     * 返回学生的问答历史记录，支持日期范围过滤和分页。
-     * 默认按提问时间降序排序（最新的问答在前）。
+     * 返回学生的问答历史记录，支持日期范围过滤、关键词搜索和游标分页。
+     * 按提问时间降序排序（最新的问答在前），下一页用返回的 nextCursor 请求。
      * 
      * @param id 学生用户ID
      * @param startDate 开始日期（可选，ISO格式）
      * @param endDate 结束日期（可选，ISO格式）
-     * @param page 页码（从0开始，默认0）
-     * @param size 每页大小（默认20）
+     * @param keyword 关键词（可选，匹配问题或答案）
+     * @param cursor 上一页返回的 nextCursor（可选，不传时返回第一页）
+     * @param size 每页大小（默认20，最大100）
      * @param authentication 认证信息（用于提取教师ID）
-     * @return 分页的问答历史响应
+     * @return 游标分页的问答历史响应
      * 
      * Requirements: 4.1, 4.2, 4.3, 4.4, 4.5, 10.2, 10.4
      */
     @GetMapping("/{id}/qa-history")
-    public ApiResponse<Page<QaHistoryResponse>> getStudentQaHistory(
+    public ApiResponse<CursorPage<QaHistoryResponse>> getStudentQaHistory(
             @PathVariable UUID id,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int size,
             Authentication authentication) {
         
         UUID teacherId = extractTeacherId(authentication);
-        log.info("教师 {} 请求学生 {} 的问答历史, 日期范围: {} - {}, 页码: {}, 每页: {}", 
-                teacherId, id, startDate, endDate, page, size);
+        log.info("教师 {} 请求学生 {} 的问答历史, 日期范围: {} - {}, 关键词: {}, 游标: {}, 每页: {}", 
+                teacherId, id, startDate, endDate, keyword, cursor, size);
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<QaHistoryResponse> history = teacherStudentService.getStudentQaHistory(
-                teacherId, id, startDate, endDate, pageable);
+        CursorPage<QaHistoryResponse> history = teacherStudentService.getStudentQaHistory(
+                teacherId, id, startDate, endDate, keyword, cursor, size);
         
-        log.info("返回 {} 条问答记录, 共 {} 条", history.getNumberOfElements(), history.getTotalElements());
+        log.info("返回 {} 条问答记录, 是否还有下一页: {}", history.getContent().size(), history.isHasNext());
         return ApiResponse.success(history);
     }
 
@@ -291,22 +293,22 @@ public class TeacherStudentController {
      * @param endDate 结束日期（可选，ISO格式，用于过滤活动数据）
      * @param format 导出格式（csv或excel，默认csv）
      * @param authentication 认证信息（用于提取教师ID）
-     * @return 报表文件响应
+     * @param response HTTP响应（报表直接写入响应输出流）
+     * @throws IOException 写出失败时抛出
      * 
      * Requirements: 9.1, 9.2, 9.3, 9.4, 9.5, 10.2
      */
     @PostMapping("/export")
-    public ResponseEntity<byte[]> exportStudentReport(
+    public void exportStudentReport(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
             @RequestParam(defaultValue = "csv") String format,
-            Authentication authentication) {
+            Authentication authentication,
+            HttpServletResponse response) throws IOException {
         
         UUID teacherId = extractTeacherId(authentication);
         log.info("教师 {} 请求导出学生报表, 日期范围: {} - {}, 格式: {}", teacherId, startDate, endDate, format);
         
-        byte[] reportData = teacherStudentService.exportStudentReport(teacherId, startDate, endDate, format);
-        
         // 生成文件名（包含时间戳）
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         String filename = "student_report_" + timestamp;
@@ -322,12 +324,12 @@ public class TeacherStudentController {
             extension = ".csv";
         }
         
-        log.info("成功生成学生报表, 文件名: {}{}, 大小: {} 字节", filename, extension, reportData.length);
+        // 报表直接写入响应流，不在内存中生成完整文件（使用分块传输，不设置Content-Length）
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + extension + "\"");
+        response.setContentType(contentType);
+        teacherStudentService.writeStudentReport(teacherId, startDate, endDate, format, response.getOutputStream());
         
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + extension + "\"")
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(reportData);
+        log.info("学生报表已写出, 文件名: {}{}", filename, extension);
     }
 
     /**
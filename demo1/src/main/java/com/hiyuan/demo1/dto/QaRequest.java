@@ -16,12 +16,18 @@ public class QaRequest {
     private String question;
     
     /**
-     * 前一轮用户问题（可选）
+     * 问答会话 ID（可选）
+     * 传入后由服务端维护多轮上下文（滚动摘要 + 最后一轮），无需再回传上一轮问答
+     */
+    private String sessionId;
+
+    /**
+     * 前一轮用户问题（可选，未使用会话的旧客户端）
      */
     private String previousQuestion;
 
     /**
-     * 前一轮 AI 回答（可选）
+     * 前一轮 AI 回答（可选，未使用会话的旧客户端）
      */
     private String previousAnswer;
     
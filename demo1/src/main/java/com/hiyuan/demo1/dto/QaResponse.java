@@ -1,11 +1,13 @@
 package com.hiyuan.demo1.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.UUID;
 
 /**
  * 问答响应 DTO
@@ -58,5 +60,23 @@ public class QaResponse {
          * 相似度分数
          */
         private Double score;
+
+        /**
+         * 引用的分块ID（仅用于写入 t_citation，不返回给前端）
+         */
+        @JsonIgnore
+        private UUID chunkId;
+
+        /**
+         * 分块页码（仅用于写入 t_citation）
+         */
+        @JsonIgnore
+        private Integer pageNum;
+
+        /**
+         * 分块索引（仅用于写入 t_citation）
+         */
+        @JsonIgnore
+        private Integer chunkIndex;
     }
 }
@@ -18,6 +18,7 @@ public class AiProviderConfigResponse {
     private BigDecimal temperature;
     private Integer maxTokens;
     private Boolean isActive;
+    private Boolean routingEnabled;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
@@ -29,4 +29,7 @@ public class UpdateAiProviderConfigRequest {
     @Min(value = 1, message = "最大token数必须大于0")
     @Max(value = 8192, message = "最大token数不能超过8192")
     private Integer maxTokens;
+
+    // 是否参与多提供商路由（为空时保持不变 / 默认关闭）
+    private Boolean routingEnabled;
 }
@@ -0,0 +1,73 @@
+package com.hiyuan.demo1.dto.document;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.hiyuan.demo1.enums.DocumentStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 文档处理进度事件
+ *
+ * 由 DocumentProcessorService 在处理过程中发布，经 DocumentStatusEventBus 以 SSE 推送给前端
+ *
+ * @param documentId 文档ID
+ * @param ownerId    文档拥有者ID（用于按用户过滤订阅）
+ * @param stage      处理阶段
+ * @param status     该阶段对应的文档状态
+ * @param processed  已处理的分块数（仅 PARSED / EMBEDDING / SUCCESS）
+ * @param total      分块总数（仅 PARSED / EMBEDDING / SUCCESS）
+ * @param message    失败原因（仅 FAILED）
+ * @param at         事件时间
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DocumentStatusEvent(UUID documentId,
+                                  UUID ownerId,
+                                  Stage stage,
+                                  DocumentStatus status,
+                                  Integer processed,
+                                  Integer total,
+                                  String message,
+                                  LocalDateTime at) {
+
+    /**
+     * 处理阶段
+     */
+    public enum Stage {
+        /** 开始处理（状态变为 PROCESSING） */
+        STARTED,
+        /** 解析和分块完成，total 为分块数 */
+        PARSED,
+        /** 向量化进度，processed / total */
+        EMBEDDING,
+        /** 处理成功 */
+        SUCCESS,
+        /** 处理失败 */
+        FAILED
+    }
+
+    public static DocumentStatusEvent started(UUID documentId, UUID ownerId) {
+        return new DocumentStatusEvent(documentId, ownerId, Stage.STARTED, DocumentStatus.PROCESSING,
+                null, null, null, LocalDateTime.now());
+    }
+
+    public static DocumentStatusEvent parsed(UUID documentId, UUID ownerId, int total) {
+        return new DocumentStatusEvent(documentId, ownerId, Stage.PARSED, DocumentStatus.PROCESSING,
+                0, total, null, LocalDateTime.now());
+    }
+
+    public static DocumentStatusEvent embedding(UUID documentId, UUID ownerId, int processed, int total) {
+        return new DocumentStatusEvent(documentId, ownerId, Stage.EMBEDDING, DocumentStatus.PROCESSING,
+                processed, total, null, LocalDateTime.now());
+    }
+
+    public static DocumentStatusEvent succeeded(UUID documentId, UUID ownerId, int chunkCount) {
+        return new DocumentStatusEvent(documentId, ownerId, Stage.SUCCESS, DocumentStatus.SUCCESS,
+                chunkCount, chunkCount, null, LocalDateTime.now());
+    }
+
+    public static DocumentStatusEvent failed(UUID documentId, UUID ownerId, String message) {
+        return new DocumentStatusEvent(documentId, ownerId, Stage.FAILED, DocumentStatus.FAILED,
+                null, null, message, LocalDateTime.now());
+    }
+}
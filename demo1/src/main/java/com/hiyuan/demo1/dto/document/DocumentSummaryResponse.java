@@ -0,0 +1,81 @@
+package com.hiyuan.demo1.dto.document;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.hiyuan.demo1.enums.DocumentStatus;
+import com.hiyuan.demo1.enums.FileType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 文档列表摘要 DTO
+ *
+ * 用于文档列表和处理状态轮询，只包含列表展示需要的字段，
+ * 不序列化文档实体（文件路径、错误详情、分块和向量关联）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DocumentSummaryResponse {
+
+    /**
+     * 文档ID
+     */
+    private UUID id;
+
+    /**
+     * 原始文件名
+     */
+    private String filename;
+
+    /**
+     * 文件大小（字节）
+     */
+    private Long fileSize;
+
+    /**
+     * 文件类型
+     */
+    private FileType fileType;
+
+    /**
+     * 处理状态
+     */
+    private DocumentStatus status;
+
+    /**
+     * 分块数量
+     */
+    private Integer chunkCount;
+
+    /**
+     * 文档描述
+     */
+    private String description;
+
+    /**
+     * 上传者用户名（仅管理员列表返回）
+     */
+    private String uploaderName;
+
+    /**
+     * 上传时间
+     */
+    private LocalDateTime uploadedAt;
+
+    /**
+     * 处理完成时间
+     */
+    private LocalDateTime processedAt;
+
+    /**
+     * 最后更新时间（状态、分块数变化时更新）
+     */
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,60 @@
+package com.hiyuan.demo1.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果
+ *
+ * 与 Page 不同，不返回总条数和总页数（不做 COUNT），
+ * 客户端用 nextCursor 请求下一页
+ *
+ * @param <T> 记录类型
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    /**
+     * 当前页记录
+     */
+    private List<T> content;
+
+    /**
+     * 每页大小
+     */
+    private int size;
+
+    /**
+     * 下一页游标，没有下一页时为 null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+
+    /**
+     * 由多查一条的结果构建分页
+     *
+     * @param rows     按 size + 1 查询得到的记录
+     * @param size     每页大小
+     * @param cursorOf 由当前页最后一条记录生成下一页游标
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new CursorPage<>(content, size, nextCursor, hasNext);
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(content.stream().map(mapper).toList(), size, nextCursor, hasNext);
+    }
+}
@@ -41,4 +41,9 @@ public class QaHistoryResponse {
      * 提问时间
      */
     private LocalDateTime askedAt;
+
+    /**
+     * 答案是否被截断（学生中途关闭页面）
+     */
+    private Boolean truncated;
 }
@@ -46,6 +46,11 @@ public class AiProviderConfig {
     
     @Column(name = "is_active")
     private Boolean isActive;
+
+    // 是否参与多提供商路由；激活的配置始终参与
+    @Column(name = "routing_enabled", nullable = false)
+    @Builder.Default
+    private Boolean routingEnabled = false;
     
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
@@ -6,6 +6,7 @@ import lombok.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * 问答历史实体
@@ -27,6 +28,12 @@ public class QaHistory extends BaseEntity {
     @JoinColumn(name = "user_id", nullable = true)
     private User user;
 
+    /**
+     * 所属问答会话（可选，旧客户端未使用会话）
+     */
+    @Column(name = "session_id")
+    private UUID sessionId;
+
     /**
      * 用户问题
      */
@@ -70,6 +77,13 @@ public class QaHistory extends BaseEntity {
     @Builder.Default
     private LocalDateTime askedAt = LocalDateTime.now();
 
+    /**
+     * 答案是否被截断（客户端中途断开，仅保存了部分答案）
+     */
+    @Column(name = "truncated", nullable = false)
+    @Builder.Default
+    private Boolean truncated = false;
+
     /**
      * 关联的引用列表
      */
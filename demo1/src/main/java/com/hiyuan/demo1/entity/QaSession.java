@@ -0,0 +1,69 @@
+package com.hiyuan.demo1.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 问答会话实体
+ * 映射 t_qa_session 表
+ *
+ * 多轮对话的上下文保存在服务端：summary 是除最后一轮外所有轮次的滚动摘要，
+ * lastQuestion / lastAnswer 是最后一轮原文，pendingTurns 是已被替换下来、尚未并入摘要的轮次。
+ * 客户端只需携带会话 ID。
+ */
+@Entity
+@Table(name = "t_qa_session")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QaSession extends BaseEntity {
+
+    /**
+     * 所属用户
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    /**
+     * 历史对话的滚动摘要（不含最后一轮和待并入的轮次）
+     */
+    @Column(name = "summary", columnDefinition = "TEXT")
+    private String summary;
+
+    /**
+     * 最后一轮的问题
+     */
+    @Column(name = "last_question", length = 1000)
+    private String lastQuestion;
+
+    /**
+     * 最后一轮的回答
+     */
+    @Column(name = "last_answer", columnDefinition = "TEXT")
+    private String lastAnswer;
+
+    /**
+     * 已被替换下来、尚未并入摘要的轮次，每项包含 question / answer
+     * 只通过 QaSessionRepository 的原生 UPDATE 维护，实体保存时不写入
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "pending_turns", columnDefinition = "jsonb", insertable = false, updatable = false)
+    @Builder.Default
+    private List<Map<String, String>> pendingTurns = new ArrayList<>();
+
+    /**
+     * 已完成的对话轮数
+     */
+    @Column(name = "turn_count", nullable = false)
+    @Builder.Default
+    private Integer turnCount = 0;
+}
@@ -0,0 +1,29 @@
+package com.hiyuan.demo1.enums;
+
+/**
+ * 向量检索的量化方式
+ *
+ * 量化索引只用于召回候选，候选再用 float32 原始向量精确重排，
+ * 因此量化主要影响索引体积和召回率，不影响最终相似度分数。
+ *
+ * 数据库中只保留当前模式对应的一个分块向量索引，由 R__vector_search_indexes.sql 按
+ * spring.flyway.placeholders.vector_quantization 在启动迁移时创建或删除
+ */
+public enum VectorQuantization {
+
+    /**
+     * 不量化，直接使用 float32 HNSW 索引（idx_vector_embedding_ip）
+     */
+    NONE,
+
+    /**
+     * float16 半精度（idx_vector_embedding_halfvec），索引约缩小 2 倍
+     */
+    HALFVEC,
+
+    /**
+     * 二值量化 + 汉明距离（idx_vector_embedding_binary），索引约缩小 32 倍
+     * 召回损失较大，建议配合更大的重排候选倍数
+     */
+    BINARY
+}
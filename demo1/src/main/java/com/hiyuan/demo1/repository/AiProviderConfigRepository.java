@@ -4,12 +4,15 @@ import com.hiyuan.demo1.entity.AiProviderConfig;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AiProviderConfigRepository extends JpaRepository<AiProviderConfig, Long> {
     
     Optional<AiProviderConfig> findByIsActiveTrue();
+
+    List<AiProviderConfig> findByIsActiveTrueOrRoutingEnabledTrue();
     
     boolean existsByProviderCodeAndIsActiveTrue(String providerCode);
     
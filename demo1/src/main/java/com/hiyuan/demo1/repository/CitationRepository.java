@@ -2,6 +2,9 @@ package com.hiyuan.demo1.repository;
 
 import com.hiyuan.demo1.entity.Citation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -32,4 +35,11 @@ public interface CitationRepository extends JpaRepository<Citation, UUID> {
      * 删除问答的所有引用
      */
     void deleteByQaHistoryId(UUID qaHistoryId);
+
+    /**
+     * 删除引用了指定文档的所有引用记录（删除文档前调用）
+     */
+    @Modifying
+    @Query(value = "DELETE FROM t_citation WHERE document_id = :documentId", nativeQuery = true)
+    int deleteByDocumentId(@Param("documentId") UUID documentId);
 }
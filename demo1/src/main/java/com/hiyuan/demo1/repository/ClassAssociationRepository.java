@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,6 +24,8 @@ import java.util.UUID;
  * 3. 查找和删除特定关联
  * 4. 统计教师的学生数量
  * 5. 支持分页查询
+ * 6. 学生列表聚合查询（关联 + 用户 + 提问统计一次查出）
+ * 7. 学生报表流式查询（按日期范围分组统计，游标逐行读取）
  * 
  * @author 开发团队
  * @version 1.0.0
@@ -61,6 +64,220 @@ public interface ClassAssociationRepository extends JpaRepository<ClassAssociati
      */
     Page<ClassAssociation> findByTeacherId(UUID teacherId, Pageable pageable);
 
+    /**
+     * 分页查询教师的学生列表（含提问统计），按统计字段排序
+     * 
+     * 用途：教师学生列表页按 totalQuestions / lastActivity 排序时使用，
+     * 排序依赖每个学生的统计值，只能先聚合该教师全部学生的提问再分页
+     * 
+     * 说明：
+     * - 提问统计按 user_id 分组后 LEFT JOIN，只统计该教师名下的学生
+     * - 搜索条件为用户名小写后的 LIKE 模式，由 idx_user_username_lower_trgm 支撑
+     * - sortKey 取 totalQuestions / lastActivity，其余取值按加入时间降序；
+     *   按 enrolledAt / username 排序请用 {@link #findStudentListPageRows}，不必聚合全部学生
+     * - 最后按关联 ID 保证翻页顺序稳定
+     * - pageable 不能带排序，排序只由 sortKey / descending 决定
+     * 
+     * @param teacherId 教师用户ID
+     * @param searchPattern 小写的 LIKE 模式（如 %zhang%），为 null 时不过滤
+     * @param sortKey 排序字段
+     * @param descending 是否降序
+     * @param pageable 分页参数（只使用页码和每页大小）
+     * @return 分页的学生列表行
+     * 
+     * 使用示例：
+     * Page<StudentListRow> page = repository.findStudentListRows(teacherId, "%zhang%", "totalQuestions", true, PageRequest.of(0, 20));
+     */
+    @Query(value = """
+            SELECT u.id AS studentId,
+                   u.username AS username,
+                   u.email AS email,
+                   ca.enrolled_at AS enrolledAt,
+                   COALESCE(stats.total_questions, 0) AS totalQuestions,
+                   stats.last_activity AS lastActivity
+            FROM t_class_association ca
+            JOIN t_user u ON u.id = ca.student_id
+            LEFT JOIN (
+                SELECT h.user_id,
+                       COUNT(*) AS total_questions,
+                       MAX(h.asked_at) AS last_activity
+                FROM t_qa_history h
+                WHERE h.user_id IN (
+                    SELECT c.student_id FROM t_class_association c WHERE c.teacher_id = :teacherId
+                )
+                GROUP BY h.user_id
+            ) stats ON stats.user_id = ca.student_id
+            WHERE ca.teacher_id = :teacherId
+              AND (CAST(:searchPattern AS TEXT) IS NULL
+                   OR LOWER(u.username) LIKE CAST(:searchPattern AS TEXT) ESCAPE '\\')
+            ORDER BY
+              CASE WHEN :sortKey = 'totalQuestions' AND NOT :descending THEN COALESCE(stats.total_questions, 0) END ASC,
+              CASE WHEN :sortKey = 'totalQuestions' AND :descending THEN COALESCE(stats.total_questions, 0) END DESC,
+              CASE WHEN :sortKey = 'lastActivity' AND NOT :descending THEN stats.last_activity END ASC NULLS FIRST,
+              CASE WHEN :sortKey = 'lastActivity' AND :descending THEN stats.last_activity END DESC NULLS LAST,
+              ca.enrolled_at DESC,
+              ca.id
+            """,
+            countQuery = """
+            SELECT COUNT(*)
+            FROM t_class_association ca
+            JOIN t_user u ON u.id = ca.student_id
+            WHERE ca.teacher_id = :teacherId
+              AND (CAST(:searchPattern AS TEXT) IS NULL
+                   OR LOWER(u.username) LIKE CAST(:searchPattern AS TEXT) ESCAPE '\\')
+            """,
+            nativeQuery = true)
+    Page<StudentListRow> findStudentListRows(
+            @Param("teacherId") UUID teacherId,
+            @Param("searchPattern") String searchPattern,
+            @Param("sortKey") String sortKey,
+            @Param("descending") boolean descending,
+            Pageable pageable);
+
+    /**
+     * 查询教师学生列表的一页（含提问统计），按加入时间或用户名排序
+     * 
+     * 用途：教师学生列表页的默认排序（enrolledAt / username）。
+     * 先只对关联和用户行排序、分页，再用 LATERAL 子查询为本页每个学生统计提问，
+     * 每页只访问本页学生的提问记录（idx_qa_user_asked_at_id），与该教师学生总数无关
+     * 
+     * 说明：
+     * - 分页必须在内层子查询完成，所以用 limit / offset 参数而不是 Pageable
+     * - sortKey 取 username 时按用户名排序，其余取值按加入时间排序；
+     *   外层按同样的顺序重新排序，最后按关联 ID 保证翻页顺序稳定
+     * - 总数用 {@link #countStudentListRows} 单独查询
+     * 
+     * @param teacherId 教师用户ID
+     * @param searchPattern 小写的 LIKE 模式（如 %zhang%），为 null 时不过滤
+     * @param sortKey 排序字段（enrolledAt / username）
+     * @param descending 是否降序
+     * @param limit 每页大小
+     * @param offset 跳过的行数
+     * @return 本页的学生列表行
+     * 
+     * 使用示例：
+     * List<StudentListRow> rows = repository.findStudentListPageRows(teacherId, null, "enrolledAt", true, 20, 0);
+     */
+    @Query(value = """
+            SELECT page.student_id AS studentId,
+                   page.username AS username,
+                   page.email AS email,
+                   page.enrolled_at AS enrolledAt,
+                   stats.total_questions AS totalQuestions,
+                   stats.last_activity AS lastActivity
+            FROM (
+                SELECT ca.id, ca.student_id, ca.enrolled_at, u.username, u.email
+                FROM t_class_association ca
+                JOIN t_user u ON u.id = ca.student_id
+                WHERE ca.teacher_id = :teacherId
+                  AND (CAST(:searchPattern AS TEXT) IS NULL
+                       OR LOWER(u.username) LIKE CAST(:searchPattern AS TEXT) ESCAPE '\\')
+                ORDER BY
+                  CASE WHEN :sortKey = 'username' AND NOT :descending THEN u.username END ASC,
+                  CASE WHEN :sortKey = 'username' AND :descending THEN u.username END DESC,
+                  CASE WHEN :sortKey <> 'username' AND NOT :descending THEN ca.enrolled_at END ASC,
+                  ca.enrolled_at DESC,
+                  ca.id
+                LIMIT :limit OFFSET :offset
+            ) page
+            CROSS JOIN LATERAL (
+                SELECT COUNT(*) AS total_questions,
+                       MAX(h.asked_at) AS last_activity
+                FROM t_qa_history h
+                WHERE h.user_id = page.student_id
+            ) stats
+            ORDER BY
+              CASE WHEN :sortKey = 'username' AND NOT :descending THEN page.username END ASC,
+              CASE WHEN :sortKey = 'username' AND :descending THEN page.username END DESC,
+              CASE WHEN :sortKey <> 'username' AND NOT :descending THEN page.enrolled_at END ASC,
+              page.enrolled_at DESC,
+              page.id
+            """,
+            nativeQuery = true)
+    List<StudentListRow> findStudentListPageRows(
+            @Param("teacherId") UUID teacherId,
+            @Param("searchPattern") String searchPattern,
+            @Param("sortKey") String sortKey,
+            @Param("descending") boolean descending,
+            @Param("limit") int limit,
+            @Param("offset") long offset);
+
+    /**
+     * 统计教师学生列表的总行数（与 {@link #findStudentListPageRows} 的过滤条件一致）
+     * 
+     * @param teacherId 教师用户ID
+     * @param searchPattern 小写的 LIKE 模式，为 null 时不过滤
+     * @return 符合条件的学生数
+     */
+    @Query(value = """
+            SELECT COUNT(*)
+            FROM t_class_association ca
+            JOIN t_user u ON u.id = ca.student_id
+            WHERE ca.teacher_id = :teacherId
+              AND (CAST(:searchPattern AS TEXT) IS NULL
+                   OR LOWER(u.username) LIKE CAST(:searchPattern AS TEXT) ESCAPE '\\')
+            """,
+            nativeQuery = true)
+    long countStudentListRows(
+            @Param("teacherId") UUID teacherId,
+            @Param("searchPattern") String searchPattern);
+
+    /**
+     * 按游标分批查询教师的学生报表数据（enrolled_at DESC, id DESC）
+     * 
+     * 用途：导出学生报表。每批是一次独立的短查询，批与批之间调用方写出数据，
+     * 下载较慢的客户端不会一直占用数据库连接
+     * 
+     * 说明：
+     * - 先在子查询中按游标取出本批关联行，再用 LATERAL 只统计这些学生的提问，
+     *   由 idx_qa_user_asked_at_id 按学生定位，不对教师名下全部学生做聚合
+     * - 总提问数只统计日期范围内的记录，最后活动时间不受日期范围限制
+     * - 日期参数为 null 时表示不限制该端
+     * 
+     * @param teacherId 教师用户ID
+     * @param startDate 开始日期（可选）
+     * @param endDate 结束日期（可选）
+     * @param cursorEnrolledAt 上一批最后一行的加入时间，为 null 时从第一批开始
+     * @param cursorId 上一批最后一行的关联ID，与 cursorEnrolledAt 同时为 null 或非 null
+     * @param limit 每批行数
+     * @return 报表行，按加入班级时间降序
+     */
+    @Query(value = """
+            SELECT page.id AS associationId,
+                   page.enrolled_at AS enrolledAt,
+                   u.username AS username,
+                   u.email AS email,
+                   stats.total_questions AS totalQuestions,
+                   stats.last_activity AS lastActivity
+            FROM (
+                SELECT ca.id, ca.student_id, ca.enrolled_at
+                FROM t_class_association ca
+                WHERE ca.teacher_id = :teacherId
+                  AND (CAST(:cursorEnrolledAt AS TIMESTAMP) IS NULL
+                       OR (ca.enrolled_at, ca.id) < (CAST(:cursorEnrolledAt AS TIMESTAMP), CAST(:cursorId AS UUID)))
+                ORDER BY ca.enrolled_at DESC, ca.id DESC
+                LIMIT :limit
+            ) page
+            JOIN t_user u ON u.id = page.student_id
+            CROSS JOIN LATERAL (
+                SELECT COUNT(*) FILTER (
+                           WHERE (CAST(:startDate AS TIMESTAMP) IS NULL OR h.asked_at >= CAST(:startDate AS TIMESTAMP))
+                             AND (CAST(:endDate AS TIMESTAMP) IS NULL OR h.asked_at <= CAST(:endDate AS TIMESTAMP))
+                       ) AS total_questions,
+                       MAX(h.asked_at) AS last_activity
+                FROM t_qa_history h
+                WHERE h.user_id = page.student_id
+            ) stats
+            ORDER BY page.enrolled_at DESC, page.id DESC
+            """, nativeQuery = true)
+    List<StudentReportRow> findStudentReportBatch(
+            @Param("teacherId") UUID teacherId,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("cursorEnrolledAt") LocalDateTime cursorEnrolledAt,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
     /**
      * 查询学生关联的所有教师班级记录
      */
@@ -136,4 +353,38 @@ public interface ClassAssociationRepository extends JpaRepository<ClassAssociati
      */
     @Query("SELECT ca.teacher.id FROM ClassAssociation ca WHERE ca.student.id = :studentId")
     List<UUID> findTeacherIdsByStudentId(@Param("studentId") UUID studentId);
+
+    /**
+     * 学生列表聚合查询的结果行
+     */
+    interface StudentListRow {
+        UUID getStudentId();
+
+        String getUsername();
+
+        String getEmail();
+
+        LocalDateTime getEnrolledAt();
+
+        Long getTotalQuestions();
+
+        LocalDateTime getLastActivity();
+    }
+
+    /**
+     * 学生报表分批查询的结果行
+     */
+    interface StudentReportRow {
+        UUID getAssociationId();
+
+        LocalDateTime getEnrolledAt();
+
+        String getUsername();
+
+        String getEmail();
+
+        Long getTotalQuestions();
+
+        LocalDateTime getLastActivity();
+    }
 }
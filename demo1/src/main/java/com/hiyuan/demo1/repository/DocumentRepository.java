@@ -2,13 +2,12 @@ package com.hiyuan.demo1.repository;
 
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.enums.DocumentStatus;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -24,11 +23,6 @@ public interface DocumentRepository extends JpaRepository<Document, UUID> {
      */
     List<Document> findByUserId(UUID userId);
 
-    /**
-     * 根据用户 ID 分页查找文档
-     */
-    Page<Document> findByUserId(UUID userId, Pageable pageable);
-
     /**
      * 根据用户 ID 和状态查找文档
      */
@@ -54,4 +48,137 @@ public interface DocumentRepository extends JpaRepository<Document, UUID> {
      */
     @Query("SELECT d FROM Document d WHERE d.status = :status ORDER BY d.uploadedAt ASC")
     List<Document> findDocumentsToProcess(@Param("status") DocumentStatus status);
+
+    /**
+     * 按游标分页查询用户的文档列表摘要（uploaded_at DESC, id DESC）
+     * 
+     * 用途：文档列表和处理状态轮询。只读取列表需要的列，不加载实体和关联，
+     * 游标条件由 idx_document_user_uploaded_at_id 直接定位
+     * 
+     * @param userId 文档拥有者ID
+     * @param cursorUploadedAt 上一页最后一条的上传时间，为 null 时从第一页开始
+     * @param cursorId 上一页最后一条的ID，与 cursorUploadedAt 同时为 null 或非 null
+     * @param limit 返回条数（调用方传每页大小 + 1 用来判断是否还有下一页）
+     * @return 文档摘要行
+     */
+    @Query(value = """
+            SELECT d.id AS id,
+                   d.filename AS filename,
+                   d.file_size AS fileSize,
+                   d.file_type AS fileType,
+                   d.status AS status,
+                   d.chunk_count AS chunkCount,
+                   d.description AS description,
+                   CAST(NULL AS VARCHAR) AS uploaderName,
+                   d.uploaded_at AS uploadedAt,
+                   d.processed_at AS processedAt,
+                   d.updated_at AS updatedAt
+            FROM t_document d
+            WHERE d.user_id = :userId
+              AND (CAST(:cursorUploadedAt AS TIMESTAMP) IS NULL
+                   OR (d.uploaded_at, d.id) < (CAST(:cursorUploadedAt AS TIMESTAMP), CAST(:cursorId AS UUID)))
+            ORDER BY d.uploaded_at DESC, d.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<DocumentSummaryRow> findSummaryPageByUserId(
+            @Param("userId") UUID userId,
+            @Param("cursorUploadedAt") LocalDateTime cursorUploadedAt,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
+    /**
+     * 按游标分页查询全部文档的列表摘要（管理员，uploaded_at DESC, id DESC）
+     * 
+     * 同时返回上传者用户名，游标条件由 idx_document_uploaded_at_id 直接定位
+     */
+    @Query(value = """
+            SELECT d.id AS id,
+                   d.filename AS filename,
+                   d.file_size AS fileSize,
+                   d.file_type AS fileType,
+                   d.status AS status,
+                   d.chunk_count AS chunkCount,
+                   d.description AS description,
+                   u.username AS uploaderName,
+                   d.uploaded_at AS uploadedAt,
+                   d.processed_at AS processedAt,
+                   d.updated_at AS updatedAt
+            FROM t_document d
+            LEFT JOIN t_user u ON u.id = d.user_id
+            WHERE CAST(:cursorUploadedAt AS TIMESTAMP) IS NULL
+               OR (d.uploaded_at, d.id) < (CAST(:cursorUploadedAt AS TIMESTAMP), CAST(:cursorId AS UUID))
+            ORDER BY d.uploaded_at DESC, d.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<DocumentSummaryRow> findSummaryPage(
+            @Param("cursorUploadedAt") LocalDateTime cursorUploadedAt,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
+    /**
+     * 按文档质心做粗筛（原生 SQL，依赖 idx_document_centroid_ip）
+     *
+     * @param queryVector 查询向量（字符串格式）
+     * @param limit       候选文档数量
+     * @return 质心与问题最接近的文档 ID 列表
+     */
+    @Query(value = """
+            SELECT d.id FROM t_document d
+            WHERE d.status = 'SUCCESS'
+              AND d.centroid IS NOT NULL
+            ORDER BY d.centroid <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestDocumentIdsByCentroid(
+            @Param("queryVector") String queryVector,
+            @Param("limit") int limit);
+
+    /**
+     * 按文档拥有者列表做质心粗筛
+     */
+    @Query(value = """
+            SELECT d.id FROM t_document d
+            WHERE d.user_id IN (:ownerIds)
+              AND d.status = 'SUCCESS'
+              AND d.centroid IS NOT NULL
+            ORDER BY d.centroid <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestDocumentIdsByCentroidAndOwnerIds(
+            @Param("queryVector") String queryVector,
+            @Param("ownerIds") List<UUID> ownerIds,
+            @Param("limit") int limit);
+
+    /**
+     * 统计指定文档的分块总数，用于判断候选文档内直接精确检索还是走 HNSW 索引
+     */
+    @Query("SELECT COALESCE(SUM(d.chunkCount), 0) FROM Document d WHERE d.id IN :ids")
+    long sumChunkCountByIds(@Param("ids") List<UUID> ids);
+
+    /**
+     * 文档列表摘要行（原生查询投影）
+     */
+    interface DocumentSummaryRow {
+        UUID getId();
+
+        String getFilename();
+
+        Long getFileSize();
+
+        String getFileType();
+
+        String getStatus();
+
+        Integer getChunkCount();
+
+        String getDescription();
+
+        String getUploaderName();
+
+        LocalDateTime getUploadedAt();
+
+        LocalDateTime getProcessedAt();
+
+        LocalDateTime getUpdatedAt();
+    }
 }
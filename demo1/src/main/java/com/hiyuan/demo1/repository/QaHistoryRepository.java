@@ -1,8 +1,6 @@
 package com.hiyuan.demo1.repository;
 
 import com.hiyuan.demo1.entity.QaHistory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -25,21 +23,65 @@ public interface QaHistoryRepository extends JpaRepository<QaHistory, UUID> {
     List<QaHistory> findByUserIdOrderByAskedAtDesc(UUID userId);
 
     /**
-     * 根据用户 ID 分页查找问答历史
+     * 按游标分页查询用户的问答历史（asked_at DESC, id DESC）
+     * 
+     * 用途：问答历史列表和教师查看学生问答历史。游标条件 (asked_at, id) < (:cursorAskedAt, :cursorId)
+     * 由 idx_qa_user_asked_at_id 直接定位，翻到第 N 页不需要先扫描前面的 N 页，也不做 COUNT
+     * 
+     * @param userId 用户ID
+     * @param startDate 开始日期（包含，可为null）
+     * @param endDate 结束日期（包含，可为null）
+     * @param cursorAskedAt 上一页最后一条的提问时间，为 null 时从第一页开始
+     * @param cursorId 上一页最后一条的ID，与 cursorAskedAt 同时为 null 或非 null
+     * @param limit 返回条数（调用方传每页大小 + 1 用来判断是否还有下一页）
+     * @return 问答历史记录
      */
-    Page<QaHistory> findByUserId(UUID userId, Pageable pageable);
+    @Query(value = """
+            SELECT q.* FROM t_qa_history q
+            WHERE q.user_id = :userId
+              AND (CAST(:startDate AS TIMESTAMP) IS NULL OR q.asked_at >= CAST(:startDate AS TIMESTAMP))
+              AND (CAST(:endDate AS TIMESTAMP) IS NULL OR q.asked_at <= CAST(:endDate AS TIMESTAMP))
+              AND (CAST(:cursorAskedAt AS TIMESTAMP) IS NULL
+                   OR (q.asked_at, q.id) < (CAST(:cursorAskedAt AS TIMESTAMP), CAST(:cursorId AS UUID)))
+            ORDER BY q.asked_at DESC, q.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<QaHistory> findPageByUserId(
+            @Param("userId") UUID userId,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("cursorAskedAt") LocalDateTime cursorAskedAt,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
 
     /**
-     * 根据用户 ID 和关键词搜索问答历史
+     * 按关键词搜索用户的问答历史，游标分页（asked_at DESC, id DESC）
+     * 
+     * question / answer 上的 ILIKE 由 V25 的 pg_trgm GIN 索引支撑（中文子串同样适用），
+     * 其余条件与 {@link #findPageByUserId} 相同
+     * 
+     * @param keywordPattern 已转义的 ILIKE 模式（如 %向量%），不能为 null
      */
-    @Query("SELECT q FROM QaHistory q WHERE q.user.id = :userId AND " +
-            "(LOWER(q.question) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "LOWER(q.answer) LIKE LOWER(CONCAT('%', :keyword, '%'))) " +
-            "ORDER BY q.askedAt DESC")
-    Page<QaHistory> searchByKeyword(
+    @Query(value = """
+            SELECT q.* FROM t_qa_history q
+            WHERE q.user_id = :userId
+              AND (q.question ILIKE CAST(:keywordPattern AS TEXT) ESCAPE '\\'
+                   OR q.answer ILIKE CAST(:keywordPattern AS TEXT) ESCAPE '\\')
+              AND (CAST(:startDate AS TIMESTAMP) IS NULL OR q.asked_at >= CAST(:startDate AS TIMESTAMP))
+              AND (CAST(:endDate AS TIMESTAMP) IS NULL OR q.asked_at <= CAST(:endDate AS TIMESTAMP))
+              AND (CAST(:cursorAskedAt AS TIMESTAMP) IS NULL
+                   OR (q.asked_at, q.id) < (CAST(:cursorAskedAt AS TIMESTAMP), CAST(:cursorId AS UUID)))
+            ORDER BY q.asked_at DESC, q.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<QaHistory> searchPageByKeyword(
             @Param("userId") UUID userId,
-            @Param("keyword") String keyword,
-            Pageable pageable);
+            @Param("keywordPattern") String keywordPattern,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("cursorAskedAt") LocalDateTime cursorAskedAt,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
 
     /**
      * 统计用户的问答数量
@@ -79,26 +121,6 @@ public interface QaHistoryRepository extends JpaRepository<QaHistory, UUID> {
     @Query("SELECT COUNT(q) FROM QaHistory q WHERE q.user.id = :userId AND q.askedAt >= :since")
     long countByUserIdAndAskedAtAfter(@Param("userId") UUID userId, @Param("since") LocalDateTime since);
 
-    /**
-     * 根据用户ID和日期范围查询问答历史（分页）
-     * 
-     * 用途：教师查看学生在指定日期范围内的问答历史
-     * 
-     * @param userId 用户ID
-     * @param startDate 开始日期（包含）
-     * @param endDate 结束日期（包含）
-     * @param pageable 分页参数
-     * @return 分页的问答历史记录
-     */
-    @Query("SELECT q FROM QaHistory q WHERE q.user.id = :userId " +
-            "AND (:startDate IS NULL OR q.askedAt >= :startDate) " +
-            "AND (:endDate IS NULL OR q.askedAt <= :endDate)")
-    Page<QaHistory> findByUserIdAndDateRange(
-            @Param("userId") UUID userId,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate,
-            Pageable pageable);
-
     /**
      * 统计用户在指定日期范围内的提问数量
      * 
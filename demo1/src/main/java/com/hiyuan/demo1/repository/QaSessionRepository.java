@@ -0,0 +1,78 @@
+package com.hiyuan.demo1.repository;
+
+import com.hiyuan.demo1.entity.QaSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 问答会话数据访问接口
+ */
+@Repository
+public interface QaSessionRepository extends JpaRepository<QaSession, UUID> {
+
+    /**
+     * 查找属于指定用户的会话
+     */
+    Optional<QaSession> findByIdAndUserId(UUID id, UUID userId);
+
+    /**
+     * 加行锁读取会话，同一会话并发记录轮次时串行读取“上一轮”
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM QaSession s WHERE s.id = :id")
+    Optional<QaSession> findByIdForUpdate(@Param("id") UUID id);
+
+    /**
+     * 记录最新一轮问答，轮数加一；被替换下来的上一轮在同一条语句中追加到 pending_turns
+     *
+     * @return 更新的行数，会话不存在时为 0
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE t_qa_session
+            SET pending_turns = CASE
+                    WHEN COALESCE(last_question, '') = '' AND COALESCE(last_answer, '') = '' THEN pending_turns
+                    ELSE pending_turns || jsonb_build_array(
+                            jsonb_build_object('question', last_question, 'answer', last_answer))
+                END,
+                last_question = :question,
+                last_answer = :answer,
+                turn_count = turn_count + 1,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE id = :id
+            """, nativeQuery = true)
+    int updateLastTurn(@Param("id") UUID id,
+                       @Param("question") String question,
+                       @Param("answer") String answer);
+
+    /**
+     * 提交滚动摘要，并移除已并入摘要的前 folded 个待并入轮次
+     * 摘要生成期间新追加的轮次保留在 pending_turns 中
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE t_qa_session
+            SET summary = :summary,
+                pending_turns = COALESCE((
+                    SELECT jsonb_agg(t.turn ORDER BY t.idx)
+                    FROM jsonb_array_elements(pending_turns) WITH ORDINALITY AS t(turn, idx)
+                    WHERE t.idx > :folded
+                ), CAST('[]' AS jsonb)),
+                updated_at = CURRENT_TIMESTAMP
+            WHERE id = :id
+            """, nativeQuery = true)
+    int foldPendingTurns(@Param("id") UUID id,
+                         @Param("summary") String summary,
+                         @Param("folded") int folded);
+}
@@ -1,9 +1,14 @@
 package com.hiyuan.demo1.repository;
 
 import com.hiyuan.demo1.entity.User;
+import com.hiyuan.demo1.entity.UserRole;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -46,4 +51,32 @@ public interface UserRepository extends JpaRepository<User, UUID> {
      * Optional<User> user = userRepository.findByUsernameOrEmail(identifier, identifier);
      */
     Optional<User> findByUsernameOrEmail(String username, String email);
+
+    /**
+     * 按用户名或邮箱批量查找用户身份信息
+     * 
+     * 用途：批量导入班级名单时一次解析多个标识符，代替逐个调用 findByUsernameOrEmail
+     * 
+     * @param identifiers 用户名或邮箱（调用方负责分批，单批不宜超过 1000 个）
+     * @return 用户名或邮箱命中任一标识符的用户
+     * 
+     * 使用示例：
+     * List<UserIdentity> users = userRepository.findIdentitiesByUsernameOrEmailIn(List.of("zhangsan", "lisi@example.com"));
+     */
+    @Query("SELECT u.id AS id, u.username AS username, u.email AS email, u.role AS role " +
+            "FROM User u WHERE u.username IN :identifiers OR u.email IN :identifiers")
+    List<UserIdentity> findIdentitiesByUsernameOrEmailIn(@Param("identifiers") Collection<String> identifiers);
+
+    /**
+     * 用户身份信息（只包含匹配标识符和校验角色所需的列）
+     */
+    interface UserIdentity {
+        UUID getId();
+
+        String getUsername();
+
+        String getEmail();
+
+        UserRole getRole();
+    }
 }
@@ -58,7 +58,7 @@ public interface VectorRecordRepository extends JpaRepository<VectorRecord, UUID
 
     /**
      * 向量相似度查询（原生 SQL）
-     * 使用 pgvector 的 <=> 操作符计算 cosine 距离
+     * 使用 pgvector 的 <#> 操作符（负内积）排序，入库向量均已归一化，等价于余弦距离
      * 返回向量记录的 ID 列表，需要后续查询加载完整对象
      *
      * @param queryVector 查询向量（字符串格式）
@@ -71,7 +71,7 @@ public interface VectorRecordRepository extends JpaRepository<VectorRecord, UUID
             JOIN t_document d ON vr.document_id = d.id
             WHERE (CAST(:userId AS UUID) IS NULL OR d.user_id = :userId)
               AND d.status = 'SUCCESS'
-            ORDER BY vr.embedding <=> CAST(:queryVector AS vector)
+            ORDER BY vr.embedding <#> CAST(:queryVector AS vector)
             LIMIT :limit
             """, nativeQuery = true)
     List<UUID> findNearestVectorIds(
@@ -87,14 +87,238 @@ public interface VectorRecordRepository extends JpaRepository<VectorRecord, UUID
             JOIN t_document d ON vr.document_id = d.id
             WHERE d.user_id IN (:ownerIds)
               AND d.status = 'SUCCESS'
-            ORDER BY vr.embedding <=> CAST(:queryVector AS vector)
+            ORDER BY vr.embedding <#> CAST(:queryVector AS vector)
             LIMIT :limit
             """, nativeQuery = true)
     List<UUID> findNearestVectorIdsByOwnerIds(
             @Param("queryVector") String queryVector,
             @Param("ownerIds") List<UUID> ownerIds,
             @Param("limit") int limit);
-    
+
+    /**
+     * 在文档拥有者范围内做精确（全量比较）向量检索
+     * 按拥有者过滤发生在 HNSW 扫描之后，拥有者的文档只占语料一小部分时索引检索可能返回不足 limit 条；
+     * 这里先用 MATERIALIZED 子查询取出范围内的全部分块，排序不再走 HNSW 索引
+     */
+    @Query(value = """
+            WITH scoped AS MATERIALIZED (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                JOIN t_document d ON vr.document_id = d.id
+                WHERE d.user_id IN (:ownerIds)
+                  AND d.status = 'SUCCESS'
+            )
+            SELECT s.id FROM scoped s
+            ORDER BY s.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsByOwnerIdsExact(
+            @Param("queryVector") String queryVector,
+            @Param("ownerIds") List<UUID> ownerIds,
+            @Param("limit") int limit);
+
+    /**
+     * 半精度量化检索（依赖 idx_vector_embedding_halfvec）
+     * 先用 halfvec 索引召回 candidateLimit 条候选，再用 float32 原始向量精确重排
+     * 排序表达式必须与索引表达式保持一致，否则不会走索引
+     *
+     * @param queryVector    查询向量（字符串格式）
+     * @param candidateLimit 量化索引召回的候选数量
+     * @param limit          精确重排后返回数量
+     * @return 最相似的向量记录 ID 列表
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                JOIN t_document d ON vr.document_id = d.id
+                WHERE d.status = 'SUCCESS'
+                ORDER BY CAST(vr.embedding AS halfvec(1024)) <#> CAST(:queryVector AS halfvec(1024))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsHalfvec(
+            @Param("queryVector") String queryVector,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 按文档拥有者列表进行半精度量化检索
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                JOIN t_document d ON vr.document_id = d.id
+                WHERE d.user_id IN (:ownerIds)
+                  AND d.status = 'SUCCESS'
+                ORDER BY CAST(vr.embedding AS halfvec(1024)) <#> CAST(:queryVector AS halfvec(1024))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsHalfvecByOwnerIds(
+            @Param("queryVector") String queryVector,
+            @Param("ownerIds") List<UUID> ownerIds,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 二值量化检索（依赖 idx_vector_embedding_binary）
+     * 先按汉明距离召回 candidateLimit 条候选，再用 float32 原始向量精确重排
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                JOIN t_document d ON vr.document_id = d.id
+                WHERE d.status = 'SUCCESS'
+                ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize(CAST(:queryVector AS vector))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsBinary(
+            @Param("queryVector") String queryVector,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 按文档拥有者列表进行二值量化检索
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                JOIN t_document d ON vr.document_id = d.id
+                WHERE d.user_id IN (:ownerIds)
+                  AND d.status = 'SUCCESS'
+                ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize(CAST(:queryVector AS vector))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsBinaryByOwnerIds(
+            @Param("queryVector") String queryVector,
+            @Param("ownerIds") List<UUID> ownerIds,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 在粗筛出的候选文档内做分块级向量检索（依赖 float32 索引 idx_vector_embedding_ip，仅 NONE 模式使用）
+     * 候选文档已经过权限与状态过滤，这里不再关联 t_document
+     */
+    @Query(value = """
+            SELECT vr.id FROM t_vector_record vr
+            WHERE vr.document_id IN (:documentIds)
+            ORDER BY vr.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsByDocumentIds(
+            @Param("queryVector") String queryVector,
+            @Param("documentIds") List<UUID> documentIds,
+            @Param("limit") int limit);
+
+    /**
+     * 在粗筛出的候选文档内做半精度量化检索（依赖 idx_vector_embedding_halfvec），再用 float32 精确重排
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                WHERE vr.document_id IN (:documentIds)
+                ORDER BY CAST(vr.embedding AS halfvec(1024)) <#> CAST(:queryVector AS halfvec(1024))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsHalfvecByDocumentIds(
+            @Param("queryVector") String queryVector,
+            @Param("documentIds") List<UUID> documentIds,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 在粗筛出的候选文档内做二值量化检索（依赖 idx_vector_embedding_binary），再用 float32 精确重排
+     */
+    @Query(value = """
+            SELECT c.id FROM (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                WHERE vr.document_id IN (:documentIds)
+                ORDER BY CAST(binary_quantize(vr.embedding) AS bit(1024)) <~> binary_quantize(CAST(:queryVector AS vector))
+                LIMIT :candidateLimit
+            ) c
+            ORDER BY c.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsBinaryByDocumentIds(
+            @Param("queryVector") String queryVector,
+            @Param("documentIds") List<UUID> documentIds,
+            @Param("candidateLimit") int candidateLimit,
+            @Param("limit") int limit);
+
+    /**
+     * 在候选文档内做精确（全量比较）向量检索
+     * HNSW 扫描后再按 document_id 过滤，候选文档占比很小时可能返回不足 limit 条；
+     * 这里先用 MATERIALIZED 子查询经 idx_vector_document_id 取出候选文档的全部分块，
+     * 排序无法再走 HNSW 索引，结果精确且数量完整。候选文档只有粗筛保留的少数几个，开销可控。
+     */
+    @Query(value = """
+            WITH scoped AS MATERIALIZED (
+                SELECT vr.id, vr.embedding FROM t_vector_record vr
+                WHERE vr.document_id IN (:documentIds)
+            )
+            SELECT s.id FROM scoped s
+            ORDER BY s.embedding <#> CAST(:queryVector AS vector)
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findNearestVectorIdsByDocumentIdsExact(
+            @Param("queryVector") String queryVector,
+            @Param("documentIds") List<UUID> documentIds,
+            @Param("limit") int limit);
+
+    /**
+     * 关键词召回（原生 SQL，依赖 idx_chunk_content_trgm）
+     * 使用 ~* 正则过滤包含任一关键词的分块，再按 word_similarity 排序
+     *
+     * @param pattern  关键词正则（形如 term1|term2，仅包含字母数字和汉字）
+     * @param keywords 用于相似度排序的关键词文本
+     * @param limit    返回数量
+     * @return 关键词最相关的向量记录 ID 列表
+     */
+    @Query(value = """
+            SELECT vr.id FROM t_vector_record vr
+            JOIN t_document_chunk dc ON vr.chunk_id = dc.id
+            JOIN t_document d ON vr.document_id = d.id
+            WHERE d.status = 'SUCCESS'
+              AND dc.content ~* :pattern
+            ORDER BY word_similarity(:keywords, dc.content) DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findLexicalMatchIds(
+            @Param("pattern") String pattern,
+            @Param("keywords") String keywords,
+            @Param("limit") int limit);
+
+    /**
+     * 按文档拥有者列表进行关键词召回
+     */
+    @Query(value = """
+            SELECT vr.id FROM t_vector_record vr
+            JOIN t_document_chunk dc ON vr.chunk_id = dc.id
+            JOIN t_document d ON vr.document_id = d.id
+            WHERE d.user_id IN (:ownerIds)
+              AND d.status = 'SUCCESS'
+              AND dc.content ~* :pattern
+            ORDER BY word_similarity(:keywords, dc.content) DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UUID> findLexicalMatchIdsByOwnerIds(
+            @Param("pattern") String pattern,
+            @Param("keywords") String keywords,
+            @Param("ownerIds") List<UUID> ownerIds,
+            @Param("limit") int limit);
+
     /**
      * 根据ID列表查询向量记录（带关联对象，保持顺序）
      * 用于在原生SQL查询后加载完整对象图
@@ -106,6 +106,7 @@ public class AiProviderConfigService {
             .temperature(request.getTemperature())
             .maxTokens(request.getMaxTokens())
             .isActive(false)
+            .routingEnabled(Boolean.TRUE.equals(request.getRoutingEnabled()))
             .build();
         
         AiProviderConfig saved = configRepository.save(config);
@@ -127,10 +128,14 @@ public class AiProviderConfigService {
         config.setChatModel(request.getChatModel());
         config.setTemperature(request.getTemperature());
         config.setMaxTokens(request.getMaxTokens());
+        boolean wasRouted = Boolean.TRUE.equals(config.getRoutingEnabled());
+        if (request.getRoutingEnabled() != null) {
+            config.setRoutingEnabled(request.getRoutingEnabled());
+        }
         
         AiProviderConfig updated = configRepository.save(config);
         log.info("Updated AI provider config: id={}", updated.getId());
-        if (Boolean.TRUE.equals(updated.getIsActive())) {
+        if (Boolean.TRUE.equals(updated.getIsActive()) || wasRouted || Boolean.TRUE.equals(updated.getRoutingEnabled())) {
             modelManager.refresh();
         }
         
@@ -148,6 +153,9 @@ public class AiProviderConfigService {
         
         configRepository.delete(config);
         log.info("Deleted AI provider config: id={}", id);
+        if (Boolean.TRUE.equals(config.getRoutingEnabled())) {
+            modelManager.refresh();
+        }
     }
     
     @Transactional
@@ -181,6 +189,7 @@ public class AiProviderConfigService {
             .temperature(config.getTemperature())
             .maxTokens(config.getMaxTokens())
             .isActive(config.getIsActive())
+            .routingEnabled(config.getRoutingEnabled())
             .createdAt(config.getCreatedAt())
             .updatedAt(config.getUpdatedAt())
             .build();
@@ -11,6 +11,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
@@ -41,6 +44,7 @@ public class AiProviderModelManager {
     private int defaultMaxTokens;
 
     private final AtomicReference<ModelHolder> holder = new AtomicReference<>();
+    private final AtomicReference<List<ProviderRoute>> routes = new AtomicReference<>();
 
     public ChatLanguageModel getChatModel() {
         return ensureHolder().model();
@@ -72,8 +76,70 @@ public class AiProviderModelManager {
         return info.providerName() + " - " + info.modelName();
     }
 
+    /**
+     * 参与路由的全部提供商：激活配置排在第一位，其余为开启 routing_enabled 的配置
+     * 单个配置加载失败（例如密钥无法解密）时跳过；一个都没有时回退到当前模型
+     */
+    public List<ProviderRoute> getRoutes() {
+        List<ProviderRoute> existing = routes.get();
+        if (existing != null) {
+            return existing;
+        }
+
+        synchronized (this) {
+            existing = routes.get();
+            if (existing == null) {
+                existing = loadRoutes();
+                routes.set(existing);
+                log.info("AI提供商路由已加载: {}", existing.stream().map(ProviderRoute::key).toList());
+            }
+            return existing;
+        }
+    }
+
     public void refresh() {
         holder.set(null);
+        routes.set(null);
+    }
+
+    private List<ProviderRoute> loadRoutes() {
+        ModelHolder primary = ensureHolder();
+        List<ProviderRoute> loaded = new ArrayList<>();
+        loaded.add(toRoute(primary.settings(), primary.model()));
+
+        List<AiProviderConfig> configs = new ArrayList<>(configRepository.findByIsActiveTrueOrRoutingEnabledTrue());
+        configs.sort(Comparator.comparing(AiProviderConfig::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        for (AiProviderConfig config : configs) {
+            if (Boolean.TRUE.equals(config.getIsActive())) {
+                continue;
+            }
+            try {
+                ModelSettings settings = fromEntity(config);
+                ProviderRoute route = toRoute(settings, buildModel(settings));
+                if (loaded.stream().noneMatch(r -> r.key().equals(route.key()))) {
+                    loaded.add(route);
+                }
+            } catch (Exception e) {
+                log.warn("加载路由候选AI配置失败，已跳过: id={}, provider={}, error={}",
+                        config.getId(), config.getProviderCode(), e.getMessage());
+            }
+        }
+        return List.copyOf(loaded);
+    }
+
+    private ProviderRoute toRoute(ModelSettings settings, ChatLanguageModel model) {
+        return new ProviderRoute(
+                settings.providerCode(),
+                settings.providerName(),
+                new ChatModelSettings(
+                        settings.baseUrl(),
+                        settings.modelName(),
+                        settings.apiKey(),
+                        settings.temperature(),
+                        settings.maxTokens()
+                ),
+                model
+        );
     }
 
     private ModelHolder ensureHolder() {
@@ -183,4 +249,14 @@ public class AiProviderModelManager {
     public record CurrentProviderInfo(String providerCode, String providerName, String modelName, String baseUrl) { }
 
     public record ChatModelSettings(String baseUrl, String modelName, String apiKey, double temperature, int maxTokens) { }
+
+    /**
+     * 一个可路由的提供商：同步调用用 model，流式调用用 settings 直接请求 /chat/completions
+     */
+    public record ProviderRoute(String providerCode, String providerName, ChatModelSettings settings, ChatLanguageModel model) {
+
+        public String key() {
+            return providerCode + "/" + settings.modelName();
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package com.hiyuan.demo1.service;
+
+/**
+ * 发送给 LLM 的一次对话提示词
+ *
+ * system 为每次请求都相同的静态指令，放在 messages 最前面，便于提供商命中前缀缓存；
+ * user 只包含随请求变化的部分（历史、参考资料、问题）
+ *
+ * @param system 系统消息
+ * @param user   用户消息
+ */
+public record ChatPrompt(String system, String user) {
+
+    public int length() {
+        return system.length() + user.length();
+    }
+}
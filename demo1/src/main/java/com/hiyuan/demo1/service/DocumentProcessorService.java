@@ -1,5 +1,6 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.dto.document.DocumentStatusEvent;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.DocumentChunk;
 import com.hiyuan.demo1.enums.DocumentStatus;
@@ -55,6 +56,7 @@ public class DocumentProcessorService {
     private final EmbeddingModel embeddingModel;
     private final MrlService mrlService;
     private final AliyunOcrService aliyunOcrService;
+    private final DocumentStatusEventBus statusEventBus;
 
     @Value("${document.chunk-size:1000}")
     private int chunkSize;
@@ -80,6 +82,7 @@ public class DocumentProcessorService {
             // 更新状态为处理中
             document.setStatus(DocumentStatus.PROCESSING);
             documentRepository.save(document);
+            statusEventBus.publish(DocumentStatusEvent.started(documentId, ownerIdOf(document)));
 
             // 1. 解析文档内容
             String content = parseDocument(document);
@@ -91,6 +94,7 @@ public class DocumentProcessorService {
             // 2. 文本分块
             List<String> chunks = splitIntoChunks(content);
             log.info("文本分块完成，共 {} 个分块", chunks.size());
+            statusEventBus.publish(DocumentStatusEvent.parsed(documentId, ownerIdOf(document), chunks.size()));
 
             // 3. 保存分块并向量化
             saveChunksAndVectors(document, chunks);
@@ -100,6 +104,7 @@ public class DocumentProcessorService {
             document.setChunkCount(chunks.size());
             document.setProcessedAt(LocalDateTime.now());
             documentRepository.save(document);
+            statusEventBus.publish(DocumentStatusEvent.succeeded(documentId, ownerIdOf(document), chunks.size()));
 
             log.info("文档处理成功: id={}, chunks={}", documentId, chunks.size());
             log.info("[METRIC][DOC_PROCESS] documentId={}, status=SUCCESS, chunkCount={}, durationMs={}",
@@ -113,6 +118,7 @@ public class DocumentProcessorService {
             document.setErrorMessage(e.getMessage());
             document.setProcessedAt(LocalDateTime.now());
             documentRepository.save(document);
+            statusEventBus.publish(DocumentStatusEvent.failed(documentId, ownerIdOf(document), e.getMessage()));
             log.info("[METRIC][DOC_PROCESS] documentId={}, status=FAILED, durationMs={}",
                     documentId,
                     System.currentTimeMillis() - startTime);
@@ -406,6 +412,7 @@ public class DocumentProcessorService {
         int successCount = 0;
         int failCount = 0;
         List<ChunkVectorTask> tasks = new ArrayList<>();
+        CentroidAccumulator centroid = new CentroidAccumulator();
 
         for (int i = 0; i < chunks.size(); i++) {
             // 清理分块内容，移除非法字符
@@ -434,9 +441,11 @@ public class DocumentProcessorService {
             int end = Math.min(start + safeBatchSize, tasks.size());
             List<ChunkVectorTask> batch = tasks.subList(start, end);
 
-            int batchSuccess = processBatch(document, batch);
+            int batchSuccess = processBatch(document, batch, centroid);
             successCount += batchSuccess;
             failCount += (batch.size() - batchSuccess);
+            statusEventBus.publish(DocumentStatusEvent.embedding(
+                    document.getId(), ownerIdOf(document), successCount + failCount, chunks.size()));
         }
 
         log.info("分块向量化完成: 成功={}, 失败={}", successCount, failCount);
@@ -447,9 +456,33 @@ public class DocumentProcessorService {
                     document.getId(),
                     "所有分块向量化都失败了，请检查嵌入服务配置");
         }
+
+        updateCentroid(document, centroid);
+    }
+
+    // 懒加载代理上取ID不会触发查询
+    private static UUID ownerIdOf(Document document) {
+        return document.getUser() != null ? document.getUser().getId() : null;
     }
 
-    private int processBatch(Document document, List<ChunkVectorTask> batch) {
+    /**
+     * 写入文档质心，用于问答时的文档粗筛
+     * 质心写入失败不影响文档可用性，只是该文档暂不参与粗筛
+     */
+    private void updateCentroid(Document document, CentroidAccumulator centroid) {
+        if (centroid.isEmpty()) {
+            return;
+        }
+        try {
+            vectorStorageService.updateDocumentCentroid(
+                    document.getId(), VectorUtils.vectorToString(centroid.mean()));
+            log.info("文档质心已更新: documentId={}, 参与分块={}", document.getId(), centroid.count());
+        } catch (Exception e) {
+            log.warn("文档质心更新失败: documentId={}, error={}", document.getId(), e.getMessage());
+        }
+    }
+
+    private int processBatch(Document document, List<ChunkVectorTask> batch, CentroidAccumulator centroid) {
         List<TextSegment> segments = batch.stream()
                 .map(task -> TextSegment.from(task.content()))
                 .toList();
@@ -464,7 +497,7 @@ public class DocumentProcessorService {
             for (int i = 0; i < batch.size(); i++) {
                 ChunkVectorTask task = batch.get(i);
                 try {
-                    if (storeVector(document, task, embeddings.get(i).vector())) {
+                    if (storeVector(document, task, embeddings.get(i).vector(), centroid)) {
                         success++;
                     }
                 } catch (Exception e) {
@@ -476,16 +509,16 @@ public class DocumentProcessorService {
             return success;
         } catch (Exception e) {
             log.warn("批量向量化失败，降级为逐条处理: {}, batchSize={}", e.getMessage(), batch.size());
-            return processBatchFallback(document, batch);
+            return processBatchFallback(document, batch, centroid);
         }
     }
 
-    private int processBatchFallback(Document document, List<ChunkVectorTask> batch) {
+    private int processBatchFallback(Document document, List<ChunkVectorTask> batch, CentroidAccumulator centroid) {
         int success = 0;
         for (ChunkVectorTask task : batch) {
             try {
                 float[] fullVector = embeddingModel.embed(task.content()).content().vector();
-                if (storeVector(document, task, fullVector)) {
+                if (storeVector(document, task, fullVector, centroid)) {
                     success++;
                 }
             } catch (Exception e) {
@@ -497,7 +530,8 @@ public class DocumentProcessorService {
         return success;
     }
 
-    private boolean storeVector(Document document, ChunkVectorTask task, float[] fullVector) {
+    private boolean storeVector(Document document, ChunkVectorTask task, float[] fullVector,
+                                CentroidAccumulator centroid) {
         if (fullVector == null || fullVector.length == 0) {
             log.warn("分块 {} 向量为空，跳过", task.chunkIndex());
             return false;
@@ -515,6 +549,7 @@ public class DocumentProcessorService {
                 truncatedVector.length,
                 "Qwen/Qwen3-Embedding-0.6B"
         );
+        centroid.add(truncatedVector);
 
         log.info("分块 {} 向量化完成 ({}维 -> {}维)", task.chunkIndex(), fullVector.length, truncatedVector.length);
         return true;
@@ -523,4 +558,42 @@ public class DocumentProcessorService {
     private record ChunkVectorTask(int chunkIndex, String content, DocumentChunk chunk) {
     }
 
+    /**
+     * 文档质心累加器：累加归一化后的分块向量，取均值后再归一化，便于按内积检索
+     */
+    private static final class CentroidAccumulator {
+        private double[] sum;
+        private int count;
+
+        void add(float[] vector) {
+            double norm = VectorUtils.l2Norm(vector);
+            if (norm == 0.0 || (sum != null && sum.length != vector.length)) {
+                return;
+            }
+            if (sum == null) {
+                sum = new double[vector.length];
+            }
+            for (int i = 0; i < vector.length; i++) {
+                sum[i] += vector[i] / norm;
+            }
+            count++;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        int count() {
+            return count;
+        }
+
+        float[] mean() {
+            float[] mean = new float[sum.length];
+            for (int i = 0; i < sum.length; i++) {
+                mean[i] = (float) (sum[i] / count);
+            }
+            return VectorUtils.l2Norm(mean) == 0.0 ? mean : VectorUtils.normalize(mean);
+        }
+    }
+
 }
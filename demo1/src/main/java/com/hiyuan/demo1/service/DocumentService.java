@@ -1,5 +1,7 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.dto.document.DocumentSummaryResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.User;
 import com.hiyuan.demo1.enums.DocumentStatus;
@@ -7,8 +9,10 @@ import com.hiyuan.demo1.enums.FileType;
 import com.hiyuan.demo1.exception.DocumentNotFoundException;
 import com.hiyuan.demo1.exception.AuthorizationException;
 import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.CitationRepository;
 import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.util.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,10 +20,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -36,9 +42,13 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class DocumentService {
 
+    // 文档列表单页上限
+    static final int MAX_LIST_PAGE_SIZE = 100;
+
     private final DocumentRepository documentRepository;
     private final UserRepository userRepository;
     private final DocumentProcessorService processorService;
+    private final CitationRepository citationRepository;
 
     @Value("${document.upload-dir:./uploads}")
     private String uploadDir;
@@ -163,6 +173,76 @@ public class DocumentService {
                 .anyMatch(normalizedFilename::equals);
     }
 
+    /**
+     * 按游标分页查询用户的文档列表摘要（最新上传的在前）
+     *
+     * @param userId 文档拥有者ID
+     * @param cursor 上一页返回的 nextCursor，为空时查询第一页
+     * @param size   每页大小（1 ~ 100）
+     * @throws BusinessException 游标无效
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<DocumentSummaryResponse> listDocumentSummaries(UUID userId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_LIST_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        List<DocumentRepository.DocumentSummaryRow> rows = documentRepository.findSummaryPageByUserId(userId,
+                after != null ? after.at() : null, after != null ? after.id() : null, pageSize + 1);
+        return toSummaryPage(rows, pageSize);
+    }
+
+    /**
+     * 按游标分页查询全部文档的列表摘要（管理员，最新上传的在前）
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时查询第一页
+     * @param size   每页大小（1 ~ 100）
+     * @throws BusinessException 游标无效
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<DocumentSummaryResponse> listAllDocumentSummaries(String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_LIST_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        List<DocumentRepository.DocumentSummaryRow> rows = documentRepository.findSummaryPage(
+                after != null ? after.at() : null, after != null ? after.id() : null, pageSize + 1);
+        return toSummaryPage(rows, pageSize);
+    }
+
+    /**
+     * 文档列表的 ETag
+     *
+     * 由本页每个文档的ID、状态、分块数和更新时间以及下一页游标计算，
+     * 处理状态变化、文档增删都会改变 ETag；轮询时内容未变则返回 304，不再序列化和传输列表
+     */
+    public static String listETag(CursorPage<DocumentSummaryResponse> page) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (DocumentSummaryResponse document : page.getContent()) {
+            fingerprint.append(document.getId()).append(':')
+                    .append(document.getStatus()).append(':')
+                    .append(document.getChunkCount()).append(':')
+                    .append(document.getUpdatedAt()).append(';');
+        }
+        fingerprint.append(page.getNextCursor());
+        return "\"" + DigestUtils.md5DigestAsHex(fingerprint.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private CursorPage<DocumentSummaryResponse> toSummaryPage(List<DocumentRepository.DocumentSummaryRow> rows,
+                                                             int pageSize) {
+        return CursorPage.of(rows, pageSize,
+                        last -> new KeysetCursor(last.getUploadedAt(), last.getId()).encode())
+                .map(row -> DocumentSummaryResponse.builder()
+                        .id(row.getId())
+                        .filename(row.getFilename())
+                        .fileSize(row.getFileSize())
+                        .fileType(row.getFileType() != null ? FileType.valueOf(row.getFileType()) : null)
+                        .status(row.getStatus() != null ? DocumentStatus.valueOf(row.getStatus()) : null)
+                        .chunkCount(row.getChunkCount())
+                        .description(row.getDescription())
+                        .uploaderName(row.getUploaderName())
+                        .uploadedAt(row.getUploadedAt())
+                        .processedAt(row.getProcessedAt())
+                        .updatedAt(row.getUpdatedAt())
+                        .build());
+    }
+
     /**
      * 删除文档及其所有关联数据
      */
@@ -178,8 +258,10 @@ public class DocumentService {
             log.warn("删除文件失败: {}", e.getMessage());
         }
 
+        // t_citation 引用分块和文档，先删引用再级联删除分块和向量（V27 同时加了 ON DELETE CASCADE）
+        int citations = citationRepository.deleteByDocumentId(documentId);
         documentRepository.delete(document);
-        log.info("文档已删除: id={}", documentId);
+        log.info("文档已删除: id={}, citations={}", documentId, citations);
     }
 
     /**
@@ -0,0 +1,102 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hiyuan.demo1.dto.document.DocumentStatusEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * 文档处理进度事件总线（进程内）
+ *
+ * 文档处理线程通过 {@link #publish} 发布状态变化和向量化进度，前端通过 SSE 订阅，
+ * 不再轮询文档列表。发布不阻塞处理线程：无订阅者时事件直接丢弃，
+ * 每个订阅者有独立的有界缓冲区，消费过慢时丢弃最旧的进度事件。
+ *
+ * 多实例部署时，跨节点桥接（如 PostgreSQL LISTEN/NOTIFY、Redis Pub/Sub）订阅 {@link #events()}
+ * 转发本节点事件，并把其他节点的事件经 {@link #publish} 注入，SSE 订阅端无需改动。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentStatusEventBus {
+
+    static final String EVENT_NAME = "status";
+
+    private final ObjectMapper objectMapper;
+
+    private final Sinks.Many<DocumentStatusEvent> sink = Sinks.many().multicast().directBestEffort();
+
+    // SSE 心跳间隔，便于及时发现客户端断开（<=0 关闭）
+    @Value("${document.events.heartbeat-seconds:15}")
+    private long heartbeatSeconds;
+
+    // 单个订阅者最多缓冲的事件数
+    @Value("${document.events.subscriber-buffer:256}")
+    private int subscriberBuffer;
+
+    /**
+     * 发布事件，可在任意线程调用
+     */
+    public void publish(DocumentStatusEvent event) {
+        Sinks.EmitResult result;
+        // 多个处理线程并发发布，串行化后再写入 Sink
+        synchronized (sink) {
+            result = sink.tryEmitNext(event);
+        }
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            log.warn("文档状态事件发布失败: documentId={}, stage={}, result={}",
+                    event.documentId(), event.stage(), result);
+        }
+    }
+
+    /**
+     * 本节点的全部事件（供跨节点桥接使用）
+     */
+    public Flux<DocumentStatusEvent> events() {
+        return sink.asFlux();
+    }
+
+    /**
+     * 订阅文档状态事件的 SSE 流
+     *
+     * @param ownerId      当前用户ID，只推送该用户的文档
+     * @param allDocuments 是否推送所有用户的文档（管理员）
+     */
+    public Flux<ServerSentEvent<String>> stream(UUID ownerId, boolean allDocuments) {
+        Flux<ServerSentEvent<String>> events = sink.asFlux()
+                .filter(event -> allDocuments || ownerId.equals(event.ownerId()))
+                .onBackpressureBuffer(Math.max(1, subscriberBuffer),
+                        dropped -> log.debug("订阅者消费过慢，丢弃文档状态事件: documentId={}, stage={}",
+                                dropped.documentId(), dropped.stage()),
+                        BufferOverflowStrategy.DROP_OLDEST)
+                .map(this::toServerSentEvent);
+        if (heartbeatSeconds > 0) {
+            events = events.mergeWith(Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+                    .map(tick -> ServerSentEvent.<String>builder().comment("keepalive").build()));
+        }
+        // 连接建立后立即写出一帧，让浏览器及时触发 open（前端在断线重连后据此刷新一次列表）
+        return Flux.just(ServerSentEvent.<String>builder().comment("connected").build())
+                .concatWith(events);
+    }
+
+    private ServerSentEvent<String> toServerSentEvent(DocumentStatusEvent event) {
+        try {
+            return ServerSentEvent.<String>builder()
+                    .event(EVENT_NAME)
+                    .data(objectMapper.writeValueAsString(event))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("文档状态事件序列化失败", e);
+        }
+    }
+}
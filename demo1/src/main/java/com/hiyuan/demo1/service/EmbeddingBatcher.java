@@ -0,0 +1,272 @@
+package com.hiyuan.demo1.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单文本向量化的跨请求微批处理
+ *
+ * 问答时每个问题都要单独调用一次 /embeddings，课堂集中提问时会在短时间内打出大量请求并触发限流。
+ * 这里把并发的单文本请求放进有界队列，由收集线程在 max-wait-ms 内或凑满 max-batch-size 条后
+ * 合并为一次 embedAll 调用，再把结果分发回各调用方。
+ * <ul>
+ *   <li>低负载时首条请求最多多等 max-wait-ms 毫秒；批次只有一条时仍走单文本接口</li>
+ *   <li>同一批次内相同的文本只向量化一次</li>
+ *   <li>批次在独立线程池中发送，多个批次可以同时在途，收集线程不被 HTTP 调用阻塞</li>
+ *   <li>关闭、请求队列已满或待发送批次已满时退化为调用线程直接请求，不丢弃请求</li>
+ *   <li>调用方最多等待 request-timeout-ms，提供商无响应时不会无限阻塞</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class EmbeddingBatcher {
+
+    private final EmbeddingService embeddingService;
+
+    @Value("${qa.embedding-batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qa.embedding-batch.max-batch-size:16}")
+    private int maxBatchSize;
+
+    @Value("${qa.embedding-batch.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    @Value("${qa.embedding-batch.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${qa.embedding-batch.max-concurrent-batches:4}")
+    private int maxConcurrentBatches;
+
+    @Value("${qa.embedding-batch.max-queued-batches:8}")
+    private int maxQueuedBatches;
+
+    @Value("${qa.embedding-batch.request-timeout-ms:60000}")
+    private long requestTimeoutMs;
+
+    private BlockingQueue<PendingEmbedding> queue;
+    private ThreadPoolExecutor dispatcher;
+    private Thread collectorThread;
+    private volatile boolean running;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchedTextCount = new AtomicLong();
+
+    public EmbeddingBatcher(EmbeddingService embeddingService) {
+        this.embeddingService = embeddingService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("向量化微批处理已关闭");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, maxConcurrentBatches);
+        // 有界队列：待发送批次已满时拒绝，由调用方各自直接请求
+        dispatcher = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueuedBatches)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "embedding-batch-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        running = true;
+        collectorThread = new Thread(this::runLoop, "embedding-batch-collector");
+        collectorThread.setDaemon(true);
+        collectorThread.start();
+        log.info("向量化微批处理已启动: maxBatchSize={}, maxWaitMs={}, maxConcurrentBatches={}",
+                maxBatchSize, maxWaitMs, maxConcurrentBatches);
+    }
+
+    /**
+     * 停止收集，队列中剩余请求改为逐条直接向量化，保证调用方都能拿到结果
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        collectorThread.interrupt();
+        try {
+            collectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingEmbedding> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingEmbedding pending : remaining) {
+            completeDirectly(pending);
+        }
+        dispatcher.shutdown();
+        log.info("向量化微批处理已停止: batches={}, batchedTexts={}", batchCount.get(), batchedTextCount.get());
+    }
+
+    /**
+     * 向量化单个文本，与同一时间窗口内的其他请求合并发送
+     *
+     * @param text 要向量化的文本
+     * @return 向量数组
+     */
+    public float[] embed(String text) {
+        if (!running || text == null || text.isBlank()) {
+            // 空文本交给 EmbeddingService 按原有方式校验并报错
+            return embeddingService.embed(text);
+        }
+        PendingEmbedding pending = new PendingEmbedding(text, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            log.warn("向量化微批队列已满，直接请求: queueCapacity={}", queueCapacity);
+            return embeddingService.embed(text);
+        }
+        if (!running && queue.remove(pending)) {
+            // 入队时恰好在关闭，收集线程和 shutdown 都不会再处理这条请求
+            return embeddingService.embed(text);
+        }
+        try {
+            return pending.result().get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                log.warn("待发送的向量化批次已满，直接请求: maxQueuedBatches={}", maxQueuedBatches);
+                return embeddingService.embed(text);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException("文本向量化失败: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            // 仍在排队时撤回；已在发送的批次完成后结果被忽略
+            queue.remove(pending);
+            throw new RuntimeException("文本向量化超时: 等待超过 " + requestTimeoutMs + "ms");
+        } catch (InterruptedException e) {
+            queue.remove(pending);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("向量化被中断", e);
+        }
+    }
+
+    public long batchCount() {
+        return batchCount.get();
+    }
+
+    public long batchedTextCount() {
+        return batchedTextCount.get();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                PendingEmbedding first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remainingNanos <= 0) {
+                        break;
+                    }
+                    PendingEmbedding next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                // 关闭信号，剩余请求由 shutdown 处理
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("向量化微批收集线程异常: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void dispatch(List<PendingEmbedding> batch) {
+        try {
+            dispatcher.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            // 收集线程不等待，通知批次内调用方改为直接请求
+            for (PendingEmbedding pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 发送一个批次：相同文本去重后调用 embedAll，按文本把结果分发给各调用方；
+     * 失败时整批调用方都收到同一异常（EmbeddingService 内部已处理限流重试）
+     */
+    void send(List<PendingEmbedding> batch) {
+        Map<String, List<PendingEmbedding>> byText = new LinkedHashMap<>();
+        for (PendingEmbedding pending : batch) {
+            byText.computeIfAbsent(pending.text(), key -> new ArrayList<>()).add(pending);
+        }
+        List<String> texts = new ArrayList<>(byText.keySet());
+        try {
+            List<float[]> vectors = texts.size() == 1
+                    ? List.of(embeddingService.embed(texts.get(0)))
+                    : embeddingService.embedAll(texts);
+            if (vectors.size() != texts.size()) {
+                throw new IllegalStateException("批量向量化返回数量不一致: expected=" + texts.size()
+                        + ", actual=" + vectors.size());
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                for (PendingEmbedding pending : byText.get(texts.get(i))) {
+                    pending.result().complete(vectors.get(i));
+                }
+            }
+            batchCount.incrementAndGet();
+            batchedTextCount.addAndGet(batch.size());
+            log.debug("[METRIC][EMBEDDING_BATCH] requests={}, distinctTexts={}", batch.size(), texts.size());
+        } catch (Throwable e) {
+            // Error 也要通知调用方，否则等待方只能等到超时
+            log.warn("批量向量化失败，通知批次内 {} 个请求: {}", batch.size(), e.getMessage());
+            for (PendingEmbedding pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    private void completeDirectly(PendingEmbedding pending) {
+        try {
+            pending.result().complete(embeddingService.embed(pending.text()));
+        } catch (Throwable e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    record PendingEmbedding(String text, CompletableFuture<float[]> result) {
+    }
+}
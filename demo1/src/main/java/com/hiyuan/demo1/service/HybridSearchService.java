@@ -0,0 +1,264 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.repository.VectorRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 混合检索服务 - 关键词召回 + 向量召回，使用 RRF（Reciprocal Rank Fusion）融合排序
+ *
+ * 纯向量检索对公式名、课程代码、中文里夹杂的英文关键词召回较差，
+ * 这里基于 pg_trgm 索引做一路关键词召回，与向量召回并行执行后按排名融合。
+ * 关键词查询在只读事务中执行，并用 set_config('statement_timeout', ..., true) 限制单条语句耗时，
+ * 超时后数据库取消查询、归还连接，而不只是调用方停止等待。
+ */
+@Slf4j
+@Service
+public class HybridSearchService {
+
+    /**
+     * 常见疑问词/虚词，在抽取中文关键词前作为分隔符去掉
+     */
+    private static final String[] CJK_STOP_WORDS = {
+            "为什么", "什么", "怎么样", "怎么", "如何", "请问", "哪些", "哪个", "是否", "可以", "一下",
+            "是", "的", "了", "吗", "呢", "吧"
+    };
+
+    private static final int TRIGRAM_LENGTH = 3;
+
+    private static final String SET_STATEMENT_TIMEOUT_SQL = "SELECT set_config('statement_timeout', ?, true)";
+
+    private final VectorRecordRepository vectorRecordRepository;
+    private final Executor retrievalExecutor;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${qa.retrieval.hybrid-enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${qa.retrieval.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${qa.retrieval.max-lexical-terms:16}")
+    private int maxLexicalTerms;
+
+    @Value("${qa.retrieval.lexical-timeout-ms:800}")
+    private long lexicalTimeoutMs;
+
+    public HybridSearchService(VectorRecordRepository vectorRecordRepository,
+                               @Qualifier("retrievalExecutor") Executor retrievalExecutor,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager) {
+        this.vectorRecordRepository = vectorRecordRepository;
+        this.retrievalExecutor = retrievalExecutor;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return hybridEnabled;
+    }
+
+    /**
+     * 异步启动关键词召回，调用方可在此期间完成向量化和向量召回
+     * 关键词召回失败、超时或检索线程池已满时只降级为纯向量检索，不影响问答
+     */
+    public CompletableFuture<List<UUID>> searchLexicalAsync(String question,
+                                                            QaDocumentAccessScopeResolver.AccessScope scope,
+                                                            int limit) {
+        if (!hybridEnabled) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (!scope.queryAllDocuments() && scope.ownerIds().isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        LexicalQuery query = buildLexicalQuery(question, maxLexicalTerms);
+        if (query == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        CompletableFuture<List<UUID>> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> searchLexical(query, scope, limit), retrievalExecutor);
+        } catch (RejectedExecutionException e) {
+            // 不在调用线程上同步执行，避免关键词召回与向量化串行且不受超时约束
+            log.warn("检索线程池已满，跳过关键词召回");
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return future
+                .completeOnTimeout(List.of(), lexicalTimeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(ex -> {
+                    log.warn("关键词召回失败，降级为纯向量检索: {}", ex.getMessage());
+                    return List.of();
+                });
+    }
+
+    private List<UUID> searchLexical(LexicalQuery query, QaDocumentAccessScopeResolver.AccessScope scope, int limit) {
+        long start = System.currentTimeMillis();
+        List<UUID> ids = readOnlyTransaction.execute(status -> {
+            jdbcTemplate.queryForObject(SET_STATEMENT_TIMEOUT_SQL, String.class, String.valueOf(lexicalTimeoutMs));
+            return scope.queryAllDocuments()
+                    ? vectorRecordRepository.findLexicalMatchIds(query.pattern(), query.keywords(), limit)
+                    : vectorRecordRepository.findLexicalMatchIdsByOwnerIds(
+                            query.pattern(), query.keywords(), scope.ownerIds(), limit);
+        });
+        log.debug("关键词召回完成: terms={}, hits={}, 耗时={}ms",
+                query.pattern(), ids.size(), System.currentTimeMillis() - start);
+        return ids;
+    }
+
+    /**
+     * 问题中完整英文术语/课程代码的匹配器，用于判断关键词召回的分块是否“精确命中”
+     * 中文三字滑窗只要命中任意一个就会被召回，不能视为精确命中
+     *
+     * @return 大小写不敏感、按词边界匹配的正则；问题中没有完整英文术语时返回 null
+     */
+    public Pattern exactTermPattern(String question) {
+        LexicalQuery query = buildLexicalQuery(question, maxLexicalTerms);
+        if (query == null || query.exactTerms().isEmpty()) {
+            return null;
+        }
+        String alternation = query.exactTerms().stream()
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|"));
+        return Pattern.compile("(?<![A-Za-z0-9_])(?:" + alternation + ")(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * RRF 融合：score(d) = Σ 1 / (k + rank)，rank 从 1 开始
+     * 同分时向量召回排名靠前者优先
+     */
+    public List<UUID> fuse(List<UUID> vectorIds, List<UUID> lexicalIds, int limit) {
+        if (lexicalIds == null || lexicalIds.isEmpty()) {
+            return vectorIds.size() <= limit ? vectorIds : vectorIds.subList(0, limit);
+        }
+
+        Map<UUID, Double> scores = new LinkedHashMap<>();
+        accumulate(scores, vectorIds);
+        accumulate(scores, lexicalIds);
+
+        // List.sort 是稳定排序，同分时保留 LinkedHashMap 的插入顺序（向量召回优先）
+        List<UUID> fused = new ArrayList<>(scores.keySet());
+        fused.sort(Comparator.comparingDouble((UUID id) -> scores.get(id)).reversed());
+        return fused.size() <= limit ? fused : fused.subList(0, limit);
+    }
+
+    private void accumulate(Map<UUID, Double> scores, List<UUID> rankedIds) {
+        for (int i = 0; i < rankedIds.size(); i++) {
+            scores.merge(rankedIds.get(i), 1.0 / (rrfK + i + 1), Double::sum);
+        }
+    }
+
+    /**
+     * 从问题中抽取关键词
+     * <ul>
+     *   <li>英文/数字连续串（长度 >= 2）：课程代码、英文术语、公式名</li>
+     *   <li>中文连续串：去掉疑问词后按 3 字滑窗切分，保证每个过滤词都能命中三元组索引</li>
+     * </ul>
+     *
+     * @return 关键词查询；没有可用关键词时返回 null
+     */
+    static LexicalQuery buildLexicalQuery(String question, int maxTerms) {
+        if (!StringUtils.hasText(question)) {
+            return null;
+        }
+
+        String text = question;
+        for (String stopWord : CJK_STOP_WORDS) {
+            text = text.replace(stopWord, " ");
+        }
+
+        Set<String> terms = new LinkedHashSet<>();
+        List<String> keywords = new ArrayList<>();
+        StringBuilder ascii = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean isAscii = c < 128 && (Character.isLetterOrDigit(c) || c == '_');
+            boolean isCjk = Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+
+            if (!isAscii && ascii.length() > 0) {
+                addTerm(ascii.toString(), terms, keywords);
+                ascii.setLength(0);
+            }
+            if (!isCjk && cjk.length() > 0) {
+                addCjkTerms(cjk.toString(), terms, keywords);
+                cjk.setLength(0);
+            }
+
+            if (isAscii) {
+                ascii.append(c);
+            } else if (isCjk) {
+                cjk.append(c);
+            }
+        }
+
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        List<String> limited = new ArrayList<>(terms);
+        if (limited.size() > maxTerms) {
+            limited = limited.subList(0, maxTerms);
+        }
+        List<String> exactTerms = limited.stream()
+                .filter(term -> term.chars().allMatch(c -> c < 128))
+                .toList();
+        return new LexicalQuery(String.join("|", limited), String.join(" ", keywords), exactTerms);
+    }
+
+    /**
+     * 不足三个字符的词无法形成三元组，仅参与排序，不参与过滤，避免正则退化为全索引扫描
+     */
+    private static void addTerm(String token, Set<String> terms, List<String> keywords) {
+        if (token.length() < 2) {
+            return;
+        }
+        keywords.add(token);
+        if (token.length() >= TRIGRAM_LENGTH) {
+            terms.add(token);
+        }
+    }
+
+    private static void addCjkTerms(String run, Set<String> terms, List<String> keywords) {
+        if (run.length() < 2) {
+            return;
+        }
+        keywords.add(run);
+        for (int i = 0; i + TRIGRAM_LENGTH <= run.length(); i++) {
+            terms.add(run.substring(i, i + TRIGRAM_LENGTH));
+        }
+    }
+
+    /**
+     * @param pattern    过滤用的正则交替式
+     * @param keywords   排序用的关键词文本
+     * @param exactTerms 过滤词中的完整英文术语/课程代码（不含中文滑窗）
+     */
+    record LexicalQuery(String pattern, String keywords, List<String> exactTerms) {
+    }
+}
@@ -0,0 +1,391 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.service.AiProviderModelManager.ProviderRoute;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 多提供商 LLM 路由
+ *
+ * 在激活配置和开启 routing_enabled 的配置之间路由 LLM 请求：
+ * <ul>
+ *   <li>按各提供商近期延迟中位数的倒数加权随机选择首选提供商，其余按延迟升序作为备选</li>
+ *   <li>对冲（仅流式调用）：首选提供商超过其延迟分位数（默认 P95）仍未输出首个 token 时，订阅备选，
+ *       谁先出结果用谁，另一个取消订阅并关闭连接</li>
+ *   <li>失败切换：尚未输出任何内容就失败时，立即改用下一个提供商；已开始输出后的错误直接抛出，避免答案重复</li>
+ *   <li>失败的提供商进入冷却期，冷却期内排在候选末尾</li>
+ * </ul>
+ * 只有一个提供商时不做对冲，行为与直接调用一致。
+ * 同步调用（含会话摘要）只做失败切换，不对冲：阻塞调用无法中途取消，对冲落败的请求仍会完整生成。
+ * 每个提供商的延迟以直方图形式发布到 llm.provider.latency（phase = first_token / complete / sync）。
+ */
+@Slf4j
+@Component
+public class LlmRouter {
+
+    private final AiProviderModelManager modelManager;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ProviderStats> stats = new ConcurrentHashMap<>();
+
+    @Value("${qa.llm-routing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qa.llm-routing.hedge-enabled:true}")
+    private boolean hedgeEnabled;
+
+    // 对冲阈值取首选提供商近期延迟的该分位数
+    @Value("${qa.llm-routing.hedge-percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${qa.llm-routing.hedge-min-delay-ms:1500}")
+    private long hedgeMinDelayMs;
+
+    // 样本不足时使用的对冲阈值
+    @Value("${qa.llm-routing.hedge-initial-delay-ms:5000}")
+    private long hedgeInitialDelayMs;
+
+    @Value("${qa.llm-routing.latency-window:100}")
+    private int latencyWindow;
+
+    @Value("${qa.llm-routing.failure-cooldown-seconds:30}")
+    private long failureCooldownSeconds;
+
+    public LlmRouter(AiProviderModelManager modelManager, MeterRegistry meterRegistry) {
+        this.modelManager = modelManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 同步调用：按候选顺序在调用线程上依次请求，失败时切换到下一个提供商
+     * <p>
+     * 同步调用不做对冲：阻塞的 ChatLanguageModel.generate 不响应中断，落败的请求无法取消，
+     * 只会占住线程并付出一次完整生成的费用
+     */
+    public String call(Function<ProviderRoute, String> request) {
+        List<ProviderRoute> routes = candidates(Mode.SYNC);
+        RuntimeException lastError = null;
+        for (int i = 0; i < routes.size(); i++) {
+            try {
+                return trackedCall(routes.get(i), request);
+            } catch (RuntimeException e) {
+                lastError = e;
+                if (i + 1 < routes.size()) {
+                    log.warn("LLM 调用失败，切换到 {}: {}", routes.get(i + 1).key(), e.getMessage());
+                    counter("llm.failover", "mode", "sync").increment();
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 流式调用：首选提供商超过对冲阈值未输出首个 token（或提前失败）时订阅备选，先输出的一方胜出
+     */
+    public Flux<String> stream(Function<ProviderRoute, Flux<String>> request) {
+        return Flux.defer(() -> streamFrom(candidates(Mode.STREAM), request));
+    }
+
+    private Flux<String> streamFrom(List<ProviderRoute> candidates, Function<ProviderRoute, Flux<String>> request) {
+        ProviderRoute primary = candidates.get(0);
+        List<ProviderRoute> rest = candidates.subList(1, candidates.size());
+        if (rest.isEmpty()) {
+            return trackedStream(primary, request);
+        }
+
+        Flux<String> attempt;
+        List<ProviderRoute> fallback;
+        if (hedgeEnabled) {
+            ProviderRoute hedge = rest.get(0);
+            Sinks.Empty<Void> primaryTerminated = Sinks.empty();
+            Flux<String> first = trackedStream(primary, request)
+                    .doOnTerminate(primaryTerminated::tryEmitEmpty);
+            Mono<Void> hedgeTimer = Mono.delay(Duration.ofMillis(hedgeDelayMillis(primary, Mode.STREAM)))
+                    .doOnNext(tick -> {
+                        log.info("首选提供商 {} 超过对冲阈值未输出，对冲请求 {}", primary.key(), hedge.key());
+                        counter("llm.hedge.triggered", "mode", "stream").increment();
+                    })
+                    .then();
+            Flux<String> second = Mono.firstWithSignal(hedgeTimer, primaryTerminated.asMono())
+                    .thenMany(Flux.defer(() -> trackedStream(hedge, request)));
+            attempt = Flux.firstWithValue(first, second)
+                    .onErrorResume(NoSuchElementException.class, LlmRouter::unwrapRaceError);
+            fallback = rest.subList(1, rest.size());
+        } else {
+            attempt = trackedStream(primary, request);
+            fallback = rest;
+        }
+
+        AtomicBoolean emitted = new AtomicBoolean();
+        return attempt
+                .doOnNext(token -> emitted.set(true))
+                .onErrorResume(error -> {
+                    if (emitted.get() || fallback.isEmpty()) {
+                        return Flux.error(error);
+                    }
+                    log.warn("流式 LLM 调用失败，切换到 {}: {}", fallback.get(0).key(), error.getMessage());
+                    counter("llm.failover", "mode", "stream").increment();
+                    return streamFrom(fallback, request);
+                });
+    }
+
+    /**
+     * firstWithValue 在所有来源都失败或都没有输出时抛 NoSuchElementException，
+     * 取出第一个真实错误；全部正常结束但没有内容时视为空回答
+     */
+    private static Flux<String> unwrapRaceError(NoSuchElementException error) {
+        if (error.getCause() == null) {
+            return Flux.error(error);
+        }
+        for (Throwable cause : Exceptions.unwrapMultiple(error.getCause())) {
+            if (!(cause instanceof NoSuchElementException)) {
+                return Flux.error(cause);
+            }
+        }
+        return Flux.empty();
+    }
+
+    /**
+     * 候选提供商排序：健康的提供商按延迟倒数加权随机选出首选，其余按延迟升序，冷却中的排在最后
+     */
+    List<ProviderRoute> candidates(Mode mode) {
+        return candidates(mode, ThreadLocalRandom.current().nextDouble());
+    }
+
+    List<ProviderRoute> candidates(Mode mode, double pick) {
+        List<ProviderRoute> routes = modelManager.getRoutes();
+        if (!enabled || routes.size() <= 1) {
+            return routes.subList(0, 1);
+        }
+
+        long now = System.currentTimeMillis();
+        List<ProviderRoute> healthy = new ArrayList<>();
+        List<ProviderRoute> cooling = new ArrayList<>();
+        for (ProviderRoute route : routes) {
+            (statsFor(route).coolingDown(now) ? cooling : healthy).add(route);
+        }
+        if (healthy.isEmpty()) {
+            healthy.addAll(cooling);
+            cooling.clear();
+        }
+
+        double[] expected = expectedLatencies(healthy, mode);
+        double total = Arrays.stream(expected).map(latency -> 1.0 / latency).sum();
+        double target = pick * total;
+        int chosen = healthy.size() - 1;
+        for (int i = 0; i < healthy.size(); i++) {
+            target -= 1.0 / expected[i];
+            if (target < 0) {
+                chosen = i;
+                break;
+            }
+        }
+
+        List<ProviderRoute> ordered = new ArrayList<>(routes.size());
+        ordered.add(healthy.get(chosen));
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < healthy.size(); i++) {
+            if (i != chosen) {
+                others.add(i);
+            }
+        }
+        others.sort(Comparator.comparingDouble(i -> expected[i]));
+        others.forEach(i -> ordered.add(healthy.get(i)));
+        ordered.addAll(cooling);
+        return ordered;
+    }
+
+    /**
+     * 预期延迟取近期中位数；没有样本的提供商按已知最快的延迟估计，保证新提供商也能被探测到
+     */
+    private double[] expectedLatencies(List<ProviderRoute> routes, Mode mode) {
+        double[] expected = new double[routes.size()];
+        double fastestKnown = Double.MAX_VALUE;
+        for (int i = 0; i < routes.size(); i++) {
+            LatencyWindow window = statsFor(routes.get(i)).window(mode);
+            expected[i] = window.isEmpty() ? Double.NaN : Math.max(1, window.percentile(0.5));
+            if (!Double.isNaN(expected[i])) {
+                fastestKnown = Math.min(fastestKnown, expected[i]);
+            }
+        }
+        double unknown = fastestKnown == Double.MAX_VALUE ? hedgeInitialDelayMs : fastestKnown;
+        for (int i = 0; i < expected.length; i++) {
+            if (Double.isNaN(expected[i])) {
+                expected[i] = Math.max(1, unknown);
+            }
+        }
+        return expected;
+    }
+
+    long hedgeDelayMillis(ProviderRoute route, Mode mode) {
+        LatencyWindow window = statsFor(route).window(mode);
+        if (window.size() < LatencyWindow.MIN_SAMPLES) {
+            return hedgeInitialDelayMs;
+        }
+        return Math.max(hedgeMinDelayMs, window.percentile(hedgePercentile));
+    }
+
+    private String trackedCall(ProviderRoute route, Function<ProviderRoute, String> request) {
+        long start = System.nanoTime();
+        try {
+            String result = request.apply(route);
+            recordLatency(route, Mode.SYNC, "sync", start);
+            recordOutcome(route, "success");
+            return result;
+        } catch (RuntimeException e) {
+            recordFailure(route, e);
+            throw e;
+        }
+    }
+
+    private Flux<String> trackedStream(ProviderRoute route, Function<ProviderRoute, Flux<String>> request) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean();
+            return request.apply(route)
+                    .doOnNext(token -> {
+                        if (firstToken.compareAndSet(false, true)) {
+                            recordLatency(route, Mode.STREAM, "first_token", start);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        recordLatency(route, null, "complete", start);
+                        recordOutcome(route, "success");
+                    })
+                    .doOnError(error -> recordFailure(route, error))
+                    .doOnCancel(() -> recordOutcome(route, "cancelled"));
+        });
+    }
+
+    private void recordLatency(ProviderRoute route, Mode mode, String phase, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        ProviderStats providerStats = statsFor(route);
+        providerStats.timer(phase).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (mode != null) {
+            providerStats.window(mode).record(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+    }
+
+    private void recordFailure(ProviderRoute route, Throwable error) {
+        statsFor(route).cooldownUntil = System.currentTimeMillis() + Math.max(0, failureCooldownSeconds) * 1000;
+        recordOutcome(route, "error");
+        log.warn("AI提供商 {} 调用失败，冷却 {} 秒: {}", route.key(), failureCooldownSeconds, error.getMessage());
+    }
+
+    private void recordOutcome(ProviderRoute route, String outcome) {
+        Counter.builder("llm.provider.requests")
+                .description("按提供商统计的 LLM 请求结果")
+                .tag("provider", route.providerCode())
+                .tag("model", route.settings().modelName())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Counter counter(String name, String tagKey, String tagValue) {
+        return Counter.builder(name).tag(tagKey, tagValue).register(meterRegistry);
+    }
+
+    private ProviderStats statsFor(ProviderRoute route) {
+        return stats.computeIfAbsent(route.key(), key -> new ProviderStats(route));
+    }
+
+    enum Mode {
+        SYNC,
+        STREAM
+    }
+
+    private final class ProviderStats {
+        private final ProviderRoute route;
+        private final Map<Mode, LatencyWindow> windows = new EnumMap<>(Mode.class);
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        private volatile long cooldownUntil;
+
+        ProviderStats(ProviderRoute route) {
+            this.route = route;
+            for (Mode mode : Mode.values()) {
+                windows.put(mode, new LatencyWindow(Math.max(LatencyWindow.MIN_SAMPLES, latencyWindow)));
+            }
+        }
+
+        LatencyWindow window(Mode mode) {
+            return windows.get(mode);
+        }
+
+        boolean coolingDown(long now) {
+            return now < cooldownUntil;
+        }
+
+        Timer timer(String phase) {
+            return timers.computeIfAbsent(phase, key -> Timer.builder("llm.provider.latency")
+                    .description("按提供商统计的 LLM 延迟")
+                    .tag("provider", route.providerCode())
+                    .tag("model", route.settings().modelName())
+                    .tag("phase", key)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 最近 N 次延迟的环形窗口，用于排序和计算对冲阈值
+     */
+    static final class LatencyWindow {
+        static final int MIN_SAMPLES = 10;
+
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.min(size - 1, Math.max(0, index))];
+        }
+    }
+}
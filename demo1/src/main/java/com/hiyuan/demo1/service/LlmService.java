@@ -1,5 +1,9 @@
 package com.hiyuan.demo1.service;
 
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.output.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -13,15 +17,38 @@ import org.springframework.stereotype.Service;
 public class LlmService {
 
     private final AiProviderModelManager modelManager;
+    private final LlmRouter llmRouter;
+    private final LlmUsageMetrics usageMetrics;
 
     /**
      * 简单的文本生成
+     * 经 LlmRouter 在多个提供商间路由（失败切换，同步调用不对冲）
      */
     public String generate(String prompt) {
         log.debug("简单生成，Prompt 长度: {} 字符", prompt.length());
         
         try {
-            return modelManager.getChatModel().generate(prompt);
+            return llmRouter.call(route -> route.model().generate(prompt));
+        } catch (Exception e) {
+            log.error("LLM 调用失败: {}", e.getMessage(), e);
+            throw new RuntimeException("LLM 服务调用失败", e);
+        }
+    }
+
+    /**
+     * 以系统消息 + 用户消息生成，系统消息为静态前缀，便于提供商命中前缀缓存
+     */
+    public String generate(ChatPrompt prompt) {
+        log.debug("对话生成，Prompt 长度: {} 字符", prompt.length());
+
+        try {
+            return llmRouter.call(route -> {
+                Response<AiMessage> response = route.model().generate(
+                        SystemMessage.from(prompt.system()),
+                        UserMessage.from(prompt.user()));
+                usageMetrics.record(route, response.tokenUsage(), "sync");
+                return response.content().text();
+            });
         } catch (Exception e) {
             log.error("LLM 调用失败: {}", e.getMessage(), e);
             throw new RuntimeException("LLM 服务调用失败", e);
@@ -38,7 +65,7 @@ public class LlmService {
         try {
             String prompt = buildRagPrompt(question, context);
             long startTime = System.currentTimeMillis();
-            String answer = modelManager.getChatModel().generate(prompt);
+            String answer = llmRouter.call(route -> route.model().generate(prompt));
             long duration = System.currentTimeMillis() - startTime;
             
             log.info("答案生成完成，耗时: {}ms", duration);
@@ -0,0 +1,77 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按提供商统计 LLM token 用量，重点是命中提供商前缀缓存的提示词 token
+ *
+ * 指标：llm.usage.prompt.tokens、llm.usage.cached.tokens、llm.usage.completion.tokens
+ * （tag：provider、model）。cached / prompt 即前缀缓存命中率。
+ * 缓存 token 字段各家不同：OpenAI / 通义千问兼容模式为 usage.prompt_tokens_details.cached_tokens，
+ * DeepSeek 为 usage.prompt_cache_hit_tokens，两者都会识别。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LlmUsageMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 记录 OpenAI 兼容响应中的 usage 对象（流式响应在最后一个数据块中返回）
+     */
+    public void record(AiProviderModelManager.ProviderRoute route, JsonNode usage, String mode) {
+        if (usage == null || !usage.isObject()) {
+            return;
+        }
+        long promptTokens = usage.path("prompt_tokens").asLong(0);
+        long completionTokens = usage.path("completion_tokens").asLong(0);
+        long cachedTokens = usage.path("prompt_tokens_details").path("cached_tokens").asLong(0);
+        if (cachedTokens == 0) {
+            cachedTokens = usage.path("prompt_cache_hit_tokens").asLong(0);
+        }
+        record(route, promptTokens, cachedTokens, completionTokens, mode);
+    }
+
+    /**
+     * 记录 LangChain4j 返回的用量；该版本的 TokenUsage 不包含缓存 token，只统计提示词与生成 token
+     */
+    public void record(AiProviderModelManager.ProviderRoute route, TokenUsage usage, String mode) {
+        if (usage == null) {
+            return;
+        }
+        record(route,
+                usage.inputTokenCount() == null ? 0 : usage.inputTokenCount(),
+                0,
+                usage.outputTokenCount() == null ? 0 : usage.outputTokenCount(),
+                mode);
+    }
+
+    void record(AiProviderModelManager.ProviderRoute route,
+                long promptTokens,
+                long cachedTokens,
+                long completionTokens,
+                String mode) {
+        counter("llm.usage.prompt.tokens", "提示词 token 数", route).increment(promptTokens);
+        counter("llm.usage.cached.tokens", "命中提供商前缀缓存的提示词 token 数", route).increment(cachedTokens);
+        counter("llm.usage.completion.tokens", "生成 token 数", route).increment(completionTokens);
+        log.info("[METRIC][LLM_USAGE] mode={}, provider={}, promptTokens={}, cachedTokens={}, completionTokens={}, cacheHitRatio={}",
+                mode, route.key(), promptTokens, cachedTokens, completionTokens,
+                promptTokens == 0 ? "0.00" : String.format("%.2f", (double) cachedTokens / promptTokens));
+    }
+
+    private Counter counter(String name, String description, AiProviderModelManager.ProviderRoute route) {
+        return Counter.builder(name)
+                .description(description)
+                .baseUnit("tokens")
+                .tag("provider", route.providerCode())
+                .tag("model", route.settings().modelName())
+                .register(meterRegistry);
+    }
+}
@@ -1,5 +1,6 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.util.VectorUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -13,6 +14,9 @@ import java.util.Arrays;
  * 这样可以在存储空间和检索性能之间取得平衡
  * 
  * 支持的维度：256, 512, 1024, 2048
+ *
+ * 截断会破坏向量的单位长度，因此截断后统一做 L2 归一化：
+ * 入库和查询向量都是单位向量，数据库可直接用内积（<#>）检索，Java 侧用点积打分
  */
 @Slf4j
 @Service
@@ -25,10 +29,10 @@ public class MrlService {
     private int originalDimension;
 
     /**
-     * 截断向量到目标维度
+     * 截断向量到目标维度并归一化
      * 
      * @param fullVector 完整的向量（例如 4096 维）
-     * @return 截断后的向量（例如 2048 维）
+     * @return 截断并 L2 归一化后的向量（例如 2048 维，新数组）
      */
     public float[] truncateVector(float[] fullVector) {
         if (fullVector == null) {
@@ -37,18 +41,29 @@ public class MrlService {
 
         if (fullVector.length < targetDimension) {
             log.warn("向量维度 {} 小于目标维度 {}，返回原向量", fullVector.length, targetDimension);
-            return fullVector;
+            return normalize(fullVector);
         }
 
         if (fullVector.length == targetDimension) {
-            return fullVector;
+            return normalize(fullVector);
         }
 
         // MRL 的核心：直接截取前 N 维
         float[] truncated = Arrays.copyOf(fullVector, targetDimension);
         
         log.debug("向量截断: {} -> {} 维", fullVector.length, targetDimension);
-        return truncated;
+        return normalize(truncated);
+    }
+
+    /**
+     * 零向量无法归一化，原样返回（内积为 0，不会被误判为相关）
+     */
+    private float[] normalize(float[] vector) {
+        if (VectorUtils.l2Norm(vector) == 0.0) {
+            log.warn("零向量无法归一化，维度={}", vector.length);
+            return vector;
+        }
+        return VectorUtils.normalize(vector);
     }
 
     /**
@@ -0,0 +1,394 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.util.CjkTokenEstimator;
+import com.hiyuan.demo1.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 提示词上下文装箱
+ *
+ * 在固定的 token 预算内放入指令、历史对话和参考资料，使提示词长度（以及提供商延迟和费用）可控：
+ * <ul>
+ *   <li>指令和问题原样保留，其余预算先分给历史对话，再按检索排名分给参考资料</li>
+ *   <li>会话摘要和上一轮回答只保留开头的句子（答案结构以“直接回答”开头，信息最集中）</li>
+ *   <li>单条参考资料超出配额时，按与问题的字符二元组重合度挑选句子，再恢复原文顺序</li>
+ *   <li>与已选句子高度重复的句子（二元组 Jaccard 相似度超过阈值）直接丢弃</li>
+ *   <li>预算耗尽后排名靠后的参考资料整条丢弃，但至少保留一条</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class PromptContextPacker {
+
+    private static final String ELLIPSIS = "……";
+    // 剩余预算不足该值时不再放入新的参考资料
+    private static final int MIN_CITATION_TOKENS = 32;
+    // 过短的句子不做近似去重（例如“是的。”），只去除完全相同的
+    private static final int MIN_SIMILARITY_LENGTH = 8;
+
+    private final List<TokenEstimator> customEstimators;
+    private final Supplier<String> modelName;
+    private final Map<String, TokenEstimator> estimatorCache = new ConcurrentHashMap<>();
+
+    @Value("${qa.prompt.max-tokens:3000}")
+    private int maxTokens;
+
+    @Value("${qa.prompt.history-max-tokens:400}")
+    private int historyMaxTokens;
+
+    @Value("${qa.prompt.citation-max-tokens:600}")
+    private int citationMaxTokens;
+
+    @Value("${qa.prompt.redundancy-threshold:0.8}")
+    private double redundancyThreshold;
+
+    @Value("${qa.prompt.cjk-tokens-per-char:1.0}")
+    private double cjkTokensPerChar;
+
+    @Value("${qa.prompt.latin-chars-per-token:4.0}")
+    private double latinCharsPerToken;
+
+    private volatile TokenEstimator defaultEstimator;
+
+    @Autowired
+    public PromptContextPacker(ObjectProvider<TokenEstimator> customEstimators, AiProviderModelManager modelManager) {
+        this(customEstimators.orderedStream().toList(), () -> modelManager.getCurrentProviderInfo().modelName());
+    }
+
+    PromptContextPacker(List<TokenEstimator> customEstimators, Supplier<String> modelName) {
+        this.customEstimators = List.copyOf(customEstimators);
+        this.modelName = modelName;
+    }
+
+    /**
+     * 装箱
+     *
+     * @param instructions      固定部分（指令 + 问题），原样保留
+     * @param question          当前问题，用于给参考资料中的句子打分
+     * @param summary           会话中更早轮次的滚动摘要（可为空）
+     * @param citationContents  按检索排名排列的参考资料原文
+     */
+    public PackedContext pack(String instructions,
+                              String question,
+                              String summary,
+                              String previousQuestion,
+                              String previousAnswer,
+                              List<String> citationContents) {
+        TokenEstimator estimator = currentEstimator();
+        int instructionTokens = estimator.estimate(instructions);
+        int remaining = Math.max(0, maxTokens - instructionTokens);
+
+        // 历史对话：摘要最多占历史预算的三分之一；剩余部分上一问最多占一半，其余给上一答
+        int historyBudget = Math.min(historyMaxTokens, remaining);
+        String packedSummary = fitHead(summary, historyBudget / 3, estimator);
+        int summaryTokens = estimator.estimate(packedSummary);
+        int turnBudget = historyBudget - summaryTokens;
+        String packedQuestion = fitHead(previousQuestion, turnBudget / 2, estimator);
+        int questionTokens = estimator.estimate(packedQuestion);
+        String packedAnswer = fitHead(previousAnswer, turnBudget - questionTokens, estimator);
+        int historyTokens = summaryTokens + questionTokens + estimator.estimate(packedAnswer);
+        remaining -= historyTokens;
+
+        Set<Integer> questionBigrams = bigrams(question);
+        List<Set<Integer>> keptSentences = new ArrayList<>();
+        Set<String> keptExact = new HashSet<>();
+        List<Integer> citationIndexes = new ArrayList<>();
+        List<String> excerpts = new ArrayList<>();
+        int citationTokens = 0;
+        int droppedSentences = 0;
+
+        for (int i = 0; i < citationContents.size(); i++) {
+            if (remaining < MIN_CITATION_TOKENS && !excerpts.isEmpty()) {
+                break;
+            }
+            List<String> sentences = splitSentences(citationContents.get(i));
+            List<Sentence> unique = new ArrayList<>(sentences.size());
+            for (int s = 0; s < sentences.size(); s++) {
+                String text = sentences.get(s);
+                String exact = text.replaceAll("\\s+", "");
+                Set<Integer> grams = bigrams(exact);
+                if (keptExact.contains(exact) || isRedundant(exact, grams, keptSentences)) {
+                    droppedSentences++;
+                    continue;
+                }
+                unique.add(new Sentence(s, text, grams, estimator.estimate(text)));
+            }
+            if (unique.isEmpty()) {
+                continue;
+            }
+
+            int quota = Math.max(MIN_CITATION_TOKENS, Math.min(citationMaxTokens, remaining));
+            List<Sentence> selected = selectSentences(unique, quota, questionBigrams);
+            droppedSentences += unique.size() - selected.size();
+            String excerpt;
+            if (selected.isEmpty()) {
+                // 每一句都超出配额：保留首句的开头
+                excerpt = fitHead(unique.get(0).text(), quota, estimator);
+                selected = List.of(unique.get(0));
+            } else {
+                excerpt = join(selected);
+            }
+            if (excerpt == null) {
+                continue;
+            }
+
+            int tokens = estimator.estimate(excerpt);
+            remaining -= tokens;
+            citationTokens += tokens;
+            citationIndexes.add(i);
+            excerpts.add(excerpt);
+            for (Sentence sentence : selected) {
+                keptSentences.add(sentence.bigrams());
+                keptExact.add(sentence.text().replaceAll("\\s+", ""));
+            }
+        }
+
+        return new PackedContext(
+                packedSummary,
+                packedQuestion,
+                packedAnswer,
+                List.copyOf(citationIndexes),
+                List.copyOf(excerpts),
+                instructionTokens + historyTokens + citationTokens,
+                historyTokens,
+                droppedSentences
+        );
+    }
+
+    /**
+     * 当前模型对应的估算器
+     */
+    public TokenEstimator currentEstimator() {
+        if (customEstimators.isEmpty()) {
+            return defaultEstimator();
+        }
+        String model;
+        try {
+            model = modelName.get();
+        } catch (RuntimeException e) {
+            // 估算器选择不能影响问答本身（例如提供商配置暂不可用）
+            log.debug("获取当前模型失败，使用默认 token 估算: {}", e.getMessage());
+            return defaultEstimator();
+        }
+        if (model == null) {
+            return defaultEstimator();
+        }
+        return estimatorCache.computeIfAbsent(model, key -> customEstimators.stream()
+                .filter(estimator -> estimator.supports(key))
+                .findFirst()
+                .orElseGet(this::defaultEstimator));
+    }
+
+    private TokenEstimator defaultEstimator() {
+        TokenEstimator estimator = defaultEstimator;
+        if (estimator == null) {
+            estimator = cjkTokensPerChar > 0 && latinCharsPerToken > 0
+                    ? new CjkTokenEstimator(cjkTokensPerChar, latinCharsPerToken)
+                    : CjkTokenEstimator.DEFAULT;
+            defaultEstimator = estimator;
+        }
+        return estimator;
+    }
+
+    /**
+     * 在配额内按相关度选句：与问题的二元组重合度高的优先，同分时靠前的优先；结果恢复原文顺序
+     */
+    private List<Sentence> selectSentences(List<Sentence> sentences, int quota, Set<Integer> questionBigrams) {
+        int total = sentences.stream().mapToInt(Sentence::tokens).sum();
+        if (total <= quota) {
+            return sentences;
+        }
+        List<Sentence> ranked = new ArrayList<>(sentences);
+        ranked.sort(Comparator.comparingInt((Sentence s) -> -overlap(s.bigrams(), questionBigrams))
+                .thenComparingInt(Sentence::index));
+        List<Sentence> selected = new ArrayList<>();
+        int used = 0;
+        for (Sentence sentence : ranked) {
+            if (used + sentence.tokens() <= quota) {
+                selected.add(sentence);
+                used += sentence.tokens();
+            }
+        }
+        selected.sort(Comparator.comparingInt(Sentence::index));
+        return selected;
+    }
+
+    private boolean isRedundant(String text, Set<Integer> grams, List<Set<Integer>> kept) {
+        if (text.length() < MIN_SIMILARITY_LENGTH) {
+            return false;
+        }
+        for (Set<Integer> other : kept) {
+            if (jaccard(grams, other) >= redundancyThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 截取开头的句子直到用完配额；一句都放不下时按字符截断
+     */
+    static String fitHead(String text, int budget, TokenEstimator estimator) {
+        if (!StringUtils.hasText(text) || budget <= 0) {
+            return null;
+        }
+        String trimmed = text.strip();
+        if (estimator.estimate(trimmed) <= budget) {
+            return trimmed;
+        }
+        int ellipsisTokens = estimator.estimate(ELLIPSIS);
+        StringBuilder head = new StringBuilder();
+        int used = ellipsisTokens;
+        for (String sentence : splitSentences(trimmed)) {
+            int tokens = estimator.estimate(sentence);
+            if (used + tokens > budget) {
+                break;
+            }
+            if (!head.isEmpty() && !endsWithCjk(head)) {
+                head.append(' ');
+            }
+            head.append(sentence);
+            used += tokens;
+        }
+        if (head.isEmpty()) {
+            // 二分查找能放下的最长前缀
+            int low = 0;
+            int high = trimmed.length();
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (estimator.estimate(trimmed.substring(0, mid)) + ellipsisTokens <= budget) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (low > 0 && Character.isHighSurrogate(trimmed.charAt(low - 1))) {
+                low--;
+            }
+            if (low == 0) {
+                return null;
+            }
+            head.append(trimmed, 0, low);
+        }
+        return head.append(ELLIPSIS).toString();
+    }
+
+    /**
+     * 按中英文句末标点和换行切分，标点保留在句子末尾
+     */
+    static List<String> splitSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        if (!StringUtils.hasText(text)) {
+            return sentences;
+        }
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean end = c == '。' || c == '！' || c == '？' || c == '；' || c == '!' || c == '?' || c == ';' || c == '\n'
+                    || (c == '.' && (i + 1 == length || Character.isWhitespace(text.charAt(i + 1))));
+            if (end) {
+                addSentence(sentences, text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            addSentence(sentences, text.substring(start));
+        }
+        return sentences;
+    }
+
+    private static void addSentence(List<String> sentences, String sentence) {
+        String trimmed = sentence.strip();
+        if (!trimmed.isEmpty()) {
+            sentences.add(trimmed);
+        }
+    }
+
+    private static String join(List<Sentence> sentences) {
+        StringBuilder joined = new StringBuilder();
+        for (Sentence sentence : sentences) {
+            if (!joined.isEmpty() && !endsWithCjk(joined)) {
+                joined.append(' ');
+            }
+            joined.append(sentence.text());
+        }
+        return joined.toString();
+    }
+
+    private static boolean endsWithCjk(CharSequence text) {
+        char last = text.charAt(text.length() - 1);
+        return last > 0x2E80;
+    }
+
+    private static Set<Integer> bigrams(String text) {
+        Set<Integer> grams = new HashSet<>();
+        if (text == null) {
+            return grams;
+        }
+        String normalized = text.toLowerCase();
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            char first = normalized.charAt(i);
+            char second = normalized.charAt(i + 1);
+            if (Character.isWhitespace(first) || Character.isWhitespace(second)) {
+                continue;
+            }
+            grams.add((first << 16) | second);
+        }
+        return grams;
+    }
+
+    private static int overlap(Set<Integer> a, Set<Integer> b) {
+        Set<Integer> smaller = a.size() <= b.size() ? a : b;
+        Set<Integer> larger = smaller == a ? b : a;
+        int count = 0;
+        for (Integer gram : smaller) {
+            if (larger.contains(gram)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double jaccard(Set<Integer> a, Set<Integer> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int intersection = overlap(a, b);
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    private record Sentence(int index, String text, Set<Integer> bigrams, int tokens) {
+    }
+
+    /**
+     * 装箱结果
+     *
+     * @param citationIndexes 放入提示词的参考资料在原列表中的下标（按排名）
+     * @param excerpts        与 citationIndexes 一一对应的摘录
+     * @param totalTokens     估算的提示词 token 数
+     */
+    public record PackedContext(String summary,
+                                String previousQuestion,
+                                String previousAnswer,
+                                List<Integer> citationIndexes,
+                                List<String> excerpts,
+                                int totalTokens,
+                                int historyTokens,
+                                int droppedSentences) {
+    }
+}
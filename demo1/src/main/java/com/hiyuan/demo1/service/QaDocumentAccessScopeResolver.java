@@ -3,14 +3,21 @@ package com.hiyuan.demo1.service;
 import com.hiyuan.demo1.repository.ClassAssociationRepository;
 import com.hiyuan.demo1.security.UserPrincipal;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 @RequiredArgsConstructor
@@ -18,6 +25,24 @@ public class QaDocumentAccessScopeResolver {
 
     private final ClassAssociationRepository classAssociationRepository;
 
+    /**
+     * 学生 ID -> 可访问的文档拥有者列表
+     * 班级关系变化时由 TeacherStudentService 调用 invalidateStudent 失效，TTL 只作为兜底
+     */
+    private final Map<UUID, CachedOwnerIds> studentOwnerCache = new ConcurrentHashMap<>();
+
+    /**
+     * 每次失效递增；加载期间发生过失效的结果不写入缓存，避免把旧关系写回去
+     */
+    private final AtomicLong invalidationGeneration = new AtomicLong();
+
+    // <= 0 表示关闭缓存
+    @Value("${qa.scope-cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${qa.scope-cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
     public AccessScope resolve(Authentication authentication) {
         if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal userPrincipal)) {
             return new AccessScope(null, true, List.of(), "未找到认证用户，将查询所有文档");
@@ -31,9 +56,61 @@ public class QaDocumentAccessScopeResolver {
             return new AccessScope(currentUserId, true, List.of(), "管理员/教师权限：可查询全部文档");
         }
 
+        return new AccessScope(currentUserId, false, resolveStudentOwnerIds(currentUserId),
+                "学生权限：可查询本人和已关联教师文档");
+    }
+
+    /**
+     * 学生的班级关系发生变化（加入/移出班级）时调用
+     * 在事务内调用时，提交后会再失效一次，防止提交前的并发请求把旧关系重新写入缓存
+     */
+    public void invalidateStudent(UUID studentId) {
+        if (studentId == null) {
+            return;
+        }
+        evict(studentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(studentId);
+                }
+            });
+        }
+    }
+
+    private void evict(UUID studentId) {
+        invalidationGeneration.incrementAndGet();
+        studentOwnerCache.remove(studentId);
+    }
+
+    private List<UUID> resolveStudentOwnerIds(UUID studentId) {
+        if (cacheTtlSeconds <= 0) {
+            return loadStudentOwnerIds(studentId);
+        }
+
+        long now = System.nanoTime();
+        CachedOwnerIds cached = studentOwnerCache.get(studentId);
+        if (cached != null && cached.expiresAtNanos() - now > 0) {
+            return cached.ownerIds();
+        }
+
+        long generation = invalidationGeneration.get();
+        List<UUID> ownerIds = loadStudentOwnerIds(studentId);
+        if (generation == invalidationGeneration.get()) {
+            if (studentOwnerCache.size() >= cacheMaxEntries) {
+                studentOwnerCache.clear();
+            }
+            studentOwnerCache.put(studentId,
+                    new CachedOwnerIds(ownerIds, now + TimeUnit.SECONDS.toNanos(cacheTtlSeconds)));
+        }
+        return ownerIds;
+    }
+
+    private List<UUID> loadStudentOwnerIds(UUID studentId) {
         Set<UUID> ownerIds = new LinkedHashSet<>();
-        ownerIds.add(currentUserId);
-        ownerIds.addAll(classAssociationRepository.findTeacherIdsByStudentId(currentUserId));
+        ownerIds.add(studentId);
+        ownerIds.addAll(classAssociationRepository.findTeacherIdsByStudentId(studentId));
 
         List<UUID> normalizedOwnerIds = new ArrayList<>();
         for (UUID ownerId : ownerIds) {
@@ -41,9 +118,7 @@ public class QaDocumentAccessScopeResolver {
                 normalizedOwnerIds.add(ownerId);
             }
         }
-
-        return new AccessScope(currentUserId, false, normalizedOwnerIds,
-                "学生权限：可查询本人和已关联教师文档");
+        return List.copyOf(normalizedOwnerIds);
     }
 
     public record AccessScope(UUID currentUserId,
@@ -51,4 +126,7 @@ public class QaDocumentAccessScopeResolver {
                               List<UUID> ownerIds,
                               String description) {
     }
+
+    private record CachedOwnerIds(List<UUID> ownerIds, long expiresAtNanos) {
+    }
 }
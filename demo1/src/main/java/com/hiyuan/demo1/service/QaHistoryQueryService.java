@@ -0,0 +1,77 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.dto.response.CursorPage;
+import com.hiyuan.demo1.entity.QaHistory;
+import com.hiyuan.demo1.repository.QaHistoryRepository;
+import com.hiyuan.demo1.util.KeysetCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 问答历史分页查询
+ *
+ * 按 (asked_at, id) 游标分页：每页只按索引读取 size + 1 条，
+ * 翻页代价与页码无关，也不再为总页数做 COUNT；关键词搜索走 question / answer 上的 pg_trgm 索引
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QaHistoryQueryService {
+
+    static final int MAX_PAGE_SIZE = 100;
+
+    private final QaHistoryRepository qaHistoryRepository;
+
+    /**
+     * 查询用户的一页问答历史（最新的在前）
+     *
+     * @param userId    用户ID
+     * @param keyword   关键词（可选，匹配问题或答案，不区分大小写）
+     * @param startDate 开始日期（可选，包含）
+     * @param endDate   结束日期（可选，包含）
+     * @param cursor    上一页返回的 nextCursor，为空时查询第一页
+     * @param size      每页大小（1 ~ 100）
+     * @throws com.hiyuan.demo1.exception.BusinessException 游标无效
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<QaHistory> page(UUID userId, String keyword, LocalDateTime startDate, LocalDateTime endDate,
+                                      String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        LocalDateTime afterAskedAt = after != null ? after.at() : null;
+        UUID afterId = after != null ? after.id() : null;
+        String pattern = toILikePattern(keyword);
+
+        List<QaHistory> rows = pattern == null
+                ? qaHistoryRepository.findPageByUserId(userId, startDate, endDate, afterAskedAt, afterId, pageSize + 1)
+                : qaHistoryRepository.searchPageByKeyword(userId, pattern, startDate, endDate, afterAskedAt, afterId,
+                        pageSize + 1);
+
+        log.debug("查询问答历史: userId={}, keyword={}, cursor={}, size={}, rows={}",
+                userId, keyword, cursor, pageSize, rows.size());
+        return CursorPage.of(rows, pageSize,
+                last -> new KeysetCursor(last.getAskedAt(), last.getId()).encode());
+    }
+
+    /**
+     * 关键词转为 ILIKE 模式，转义通配符（ESCAPE '\'）
+     *
+     * @return %关键词%，关键词为空时返回 null
+     */
+    static String toILikePattern(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        String escaped = keyword.trim()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,274 @@
+package com.hiyuan.demo1.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 问答历史异步写入（write-behind）
+ *
+ * 问答线程只把完成的记录放进有界队列，由单独的写入线程按批次用 JDBC batch
+ * 写入 t_qa_history 和 t_citation，问答链路上不再占用数据库连接。
+ * <ul>
+ *   <li>队列满时丢弃新记录并计数，不阻塞问答线程（流式模式下调用方是 Reactor 线程）</li>
+ *   <li>应用关闭时停止接收，并把队列中剩余记录全部写完</li>
+ *   <li>historyId 由调用方预先生成，接口可以在落库前返回</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class QaHistoryWriter {
+
+    private static final String INSERT_HISTORY_SQL = """
+            INSERT INTO t_qa_history (id, user_id, session_id, question, answer, response_time, model_version, asked_at, truncated, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW())
+            """;
+
+    private static final String INSERT_CITATION_SQL = """
+            INSERT INTO t_citation (id, qa_id, chunk_id, document_id, page_num, chunk_index, relevance_score, citation_text, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, NOW(), NOW())
+            """;
+
+    private static final int MAX_QUESTION_LENGTH = 1000;
+    private static final int MAX_CITATION_TEXT_LENGTH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${qa.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${qa.history.batch-size:100}")
+    private int batchSize;
+
+    @Value("${qa.history.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    private BlockingQueue<QaHistoryRecord> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public QaHistoryWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        writerThread = new Thread(this::runLoop, "qa-history-writer");
+        writerThread.start();
+        log.info("问答历史异步写入已启动: queueCapacity={}, batchSize={}, flushIntervalMs={}",
+                queueCapacity, batchSize, flushIntervalMs);
+    }
+
+    /**
+     * 应用关闭时停止写入线程，并同步写完剩余记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<QaHistoryRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flushInChunks(remaining);
+        }
+        log.info("问答历史异步写入已停止: written={}, dropped={}, failed={}",
+                writtenCount.get(), droppedCount.get(), failedCount.get());
+    }
+
+    /**
+     * 提交一条问答记录，不阻塞调用线程
+     *
+     * @return 是否成功入队；匿名请求或队列已满时返回 false
+     */
+    public boolean submit(QaHistoryRecord record) {
+        if (record.userId() == null) {
+            // t_qa_history.user_id 非空，匿名请求不记录历史
+            log.debug("匿名请求不记录问答历史: historyId={}", record.id());
+            return false;
+        }
+        if (!running || !queue.offer(record)) {
+            long dropped = droppedCount.incrementAndGet();
+            log.warn("[METRIC][QA_HISTORY] 写入队列已满或已关闭，丢弃问答历史: historyId={}, droppedTotal={}",
+                    record.id(), dropped);
+            return false;
+        }
+        return true;
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    public long writtenCount() {
+        return writtenCount.get();
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    private void runLoop() {
+        List<QaHistoryRecord> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                QaHistoryRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // 关闭信号，剩余记录由 shutdown 写完
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("问答历史写入线程异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushInChunks(List<QaHistoryRecord> records) {
+        for (int start = 0; start < records.size(); start += batchSize) {
+            flush(records.subList(start, Math.min(start + batchSize, records.size())));
+        }
+    }
+
+    /**
+     * 一个批次在同一事务中写入历史和引用；批次失败时记录日志并丢弃，不影响后续批次
+     */
+    void flush(List<QaHistoryRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Object[]> historyRows = new ArrayList<>(batch.size());
+        List<Object[]> citationRows = new ArrayList<>();
+        for (QaHistoryRecord record : batch) {
+            historyRows.add(new Object[]{
+                    record.id(),
+                    record.userId(),
+                    record.sessionId(),
+                    truncate(record.question(), MAX_QUESTION_LENGTH),
+                    record.answer(),
+                    record.responseTime(),
+                    record.modelVersion(),
+                    Timestamp.valueOf(record.askedAt()),
+                    record.truncated()
+            });
+            for (CitationRecord citation : record.citations()) {
+                if (citation.chunkId() == null || citation.documentId() == null) {
+                    continue;
+                }
+                citationRows.add(new Object[]{
+                        UUID.randomUUID(),
+                        record.id(),
+                        citation.chunkId(),
+                        citation.documentId(),
+                        citation.pageNum(),
+                        citation.chunkIndex(),
+                        citation.relevanceScore(),
+                        truncate(citation.citationText(), MAX_CITATION_TEXT_LENGTH)
+                });
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, historyRows);
+                if (!citationRows.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_CITATION_SQL, citationRows);
+                }
+            });
+            writtenCount.addAndGet(batch.size());
+            log.debug("[METRIC][QA_HISTORY] flushed={}, citations={}, durationMs={}",
+                    batch.size(), citationRows.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            if (batch.size() == 1 && !batch.get(0).citations().isEmpty()) {
+                // 引用写入失败时至少保住问答记录本身
+                log.warn("写入问答引用失败，仅保存问答记录: historyId={}, error={}", batch.get(0).id(), e.getMessage());
+                flush(List.of(batch.get(0).withoutCitations()));
+                return;
+            }
+            if (batch.size() == 1) {
+                failedCount.incrementAndGet();
+                log.warn("写入问答历史失败，丢弃记录: historyId={}, error={}", batch.get(0).id(), e.getMessage());
+                return;
+            }
+            // 单条脏数据（例如引用的分块已被删除）不应拖累整批，逐条重试
+            log.warn("批量写入问答历史失败，改为逐条写入: batchSize={}, error={}", batch.size(), e.getMessage());
+            for (QaHistoryRecord record : batch) {
+                flush(List.of(record));
+            }
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+
+    /**
+     * 待写入的问答记录
+     */
+    public record QaHistoryRecord(UUID id,
+                                  UUID userId,
+                                  UUID sessionId,
+                                  String question,
+                                  String answer,
+                                  Integer responseTime,
+                                  String modelVersion,
+                                  LocalDateTime askedAt,
+                                  boolean truncated,
+                                  List<CitationRecord> citations) {
+
+        QaHistoryRecord withoutCitations() {
+            return new QaHistoryRecord(id, userId, sessionId, question, answer, responseTime, modelVersion, askedAt,
+                    truncated, List.of());
+        }
+    }
+
+    /**
+     * 待写入的引用记录（t_citation）
+     */
+    public record CitationRecord(UUID documentId,
+                                 UUID chunkId,
+                                 Integer pageNum,
+                                 Integer chunkIndex,
+                                 Float relevanceScore,
+                                 String citationText) {
+    }
+}
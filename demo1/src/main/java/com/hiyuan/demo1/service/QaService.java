@@ -4,36 +4,53 @@ import com.hiyuan.demo1.dto.QaRequest;
 import com.hiyuan.demo1.dto.QaResponse;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.DocumentChunk;
-import com.hiyuan.demo1.entity.QaHistory;
-import com.hiyuan.demo1.entity.User;
 import com.hiyuan.demo1.entity.VectorRecord;
+import com.hiyuan.demo1.enums.VectorQuantization;
 import com.hiyuan.demo1.exception.BusinessException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.hiyuan.demo1.repository.QaHistoryRepository;
-import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.repository.VectorRecordRepository;
 import com.hiyuan.demo1.security.UserPrincipal;
+import com.hiyuan.demo1.util.FluxSingleFlight;
+import com.hiyuan.demo1.util.PromptTemplate;
+import com.hiyuan.demo1.util.SingleFlight;
+import com.hiyuan.demo1.util.SseEventEncoder;
 import com.hiyuan.demo1.util.VectorUtils;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -41,37 +58,171 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class QaService {
 
     private final LlmService llmService;
     private final EmbeddingModel embeddingModel;
     private final MrlService mrlService;
     private final VectorRecordRepository vectorRecordRepository;
-    private final UserRepository userRepository;
-    private final QaHistoryRepository qaHistoryRepository;
+    private final DocumentRepository documentRepository;
+    private final QaHistoryWriter qaHistoryWriter;
     private final StreamingChatService streamingChatService;
     private final ObjectMapper objectMapper;
     private final QaDocumentAccessScopeResolver accessScopeResolver;
+    private final HybridSearchService hybridSearchService;
+    private final QaStreamReplayRegistry replayRegistry;
+    private final PromptContextPacker contextPacker;
+    private final QaSessionService sessionService;
+    private final VectorSearchExecutor vectorSearchExecutor;
+
+    // 指标在构造时注册一次，事件路径上直接使用
+    private final Counter abandonedStreams;
+    private final Timer timeToFirstToken;
+    private final DistributionSummary promptTokens;
     
     // 相似度阈值：低于此值的文档将被过滤
-    // 余弦相似度范围 [-1, 1]，通常相关文档 > 0.7，不相关 < 0.5
+    // 余弦相似度（归一化向量的点积）范围 [-1, 1]，通常相关文档 > 0.7，不相关 < 0.5
     private static final double SIMILARITY_THRESHOLD = 0.65;
     // 每个文档最多保留一条引用，避免同一文档重复刷屏
     private static final int MAX_CITATIONS_PER_DOCUMENT = 1;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // 系统消息每次请求完全相同，放在 messages 最前面，提供商可以缓存这段前缀；变化的部分都在用户消息中
+    private static final PromptTemplate SYSTEM_PROMPT = PromptTemplate.compile("""
+            你是一位经验丰富的教育专家，擅长讲解教材和学习指南。
+            请帮助学生深入理解问题，而不仅仅是给出简短答案。
+
+            【回答要求】
+            - 目标长度：500-1500字，详细但不啰嗦
+            - 使用Markdown格式，关键概念用**粗体**
+            - 如果资料不足，说明依据有限
+            - 用户消息中的【历史对话】用于保持回答连贯，【参考资料】按 [参考N] 编号给出
+
+            【答案结构（按顺序）】
+            1. **直接回答**（50-100字）：开门见山给出核心答案
+            2. **详细解释**（200-500字）：分点说明，使用类比帮助理解
+            3. **实际应用**（100-200字）：举2个贴近生活或课程的案例
+            4. **关键要点总结**（50-100字）：用✓列出3-5条重要结论
+            """);
+    private static final PromptTemplate HISTORY_SUMMARY_PROMPT = PromptTemplate.compile("更早的对话摘要：{{summary}}\n");
+    private static final PromptTemplate HISTORY_QUESTION_PROMPT = PromptTemplate.compile("学生上一问：{{question}}\n");
+    private static final PromptTemplate HISTORY_ANSWER_PROMPT = PromptTemplate.compile("你的上一答：{{answer}}\n");
+    private static final PromptTemplate REFERENCE_PROMPT = PromptTemplate.compile("[参考{{index}}] {{content}}\n");
+    private static final PromptTemplate QUESTION_PROMPT = PromptTemplate.compile("【问题】{{question}}\n\n请严格按照系统消息中的结构回答：\n");
 
     @Value("${qa.min-citations:2}")
     private int minCitations;
 
+    // 混合检索时每一路召回的候选数量，融合后再截取 topK
+    @Value("${qa.retrieval.candidate-top-n:20}")
+    private int candidateTopN;
+
+    // 两阶段检索：先按文档质心粗筛候选文档，再在候选文档内检索分块
+    @Value("${qa.retrieval.coarse-to-fine-enabled:false}")
+    private boolean coarseToFineEnabled;
+
+    @Value("${qa.retrieval.coarse-document-top-m:8}")
+    private int coarseDocumentTopM;
+
+    // 量化检索：量化索引召回 limit * rescoreMultiplier 条候选（ef_search 随之调整），再用 float32 精确重排
+    @Value("${qa.retrieval.quantization:NONE}")
+    private VectorQuantization quantization;
+
+    @Value("${qa.retrieval.rescore-multiplier:4}")
+    private int rescoreMultiplier;
+
+    // 候选文档分块总数不超过该值时直接精确检索，不走 HNSW 索引
+    @Value("${qa.retrieval.exact-search-max-rows:2000}")
+    private long exactSearchMaxRows;
+
+    // 流式增量合并：时间窗口内的相邻 token 合并为一个 SSE 帧，减少帧数与序列化开销
+    @Value("${qa.stream.coalesce-window-ms:40}")
+    private long coalesceWindowMs;
+
+    @Value("${qa.stream.coalesce-max-chunks:16}")
+    private int coalesceMaxChunks;
+
+    @Value("${qa.stream.heartbeat-seconds:15}")
+    private long heartbeatSeconds;
+
+    // 相同问题（同一访问范围）的并发请求合并为一次检索 + 生成
+    @Value("${qa.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    private final SingleFlight<FlightKey, SharedAnswer> answerFlights = new SingleFlight<>();
+    private final FluxSingleFlight<FlightKey, SharedEvent> streamFlights = new FluxSingleFlight<>();
+
+    public QaService(LlmService llmService,
+                     EmbeddingModel embeddingModel,
+                     MrlService mrlService,
+                     VectorRecordRepository vectorRecordRepository,
+                     DocumentRepository documentRepository,
+                     QaHistoryWriter qaHistoryWriter,
+                     StreamingChatService streamingChatService,
+                     ObjectMapper objectMapper,
+                     QaDocumentAccessScopeResolver accessScopeResolver,
+                     HybridSearchService hybridSearchService,
+                     MeterRegistry meterRegistry,
+                     QaStreamReplayRegistry replayRegistry,
+                     PromptContextPacker contextPacker,
+                     QaSessionService sessionService,
+                     VectorSearchExecutor vectorSearchExecutor) {
+        this.llmService = llmService;
+        this.embeddingModel = embeddingModel;
+        this.mrlService = mrlService;
+        this.vectorRecordRepository = vectorRecordRepository;
+        this.documentRepository = documentRepository;
+        this.qaHistoryWriter = qaHistoryWriter;
+        this.streamingChatService = streamingChatService;
+        this.objectMapper = objectMapper;
+        this.accessScopeResolver = accessScopeResolver;
+        this.hybridSearchService = hybridSearchService;
+        this.replayRegistry = replayRegistry;
+        this.contextPacker = contextPacker;
+        this.sessionService = sessionService;
+        this.vectorSearchExecutor = vectorSearchExecutor;
+
+        FunctionCounter.builder("qa.singleflight.joined", answerFlights, SingleFlight::joinedCount)
+                .description("加入进行中的相同问题而未重复生成的请求数")
+                .tag("mode", "sync")
+                .register(meterRegistry);
+        FunctionCounter.builder("qa.singleflight.joined", streamFlights, FluxSingleFlight::joinedCount)
+                .description("加入进行中的相同问题而未重复生成的请求数")
+                .tag("mode", "stream")
+                .register(meterRegistry);
+        this.abandonedStreams = Counter.builder("qa.stream.abandoned")
+                .description("客户端断开且未在宽限期内重连的流式问答数")
+                .register(meterRegistry);
+        this.timeToFirstToken = Timer.builder("qa.stream.ttft")
+                .description("流式问答从收到请求到首个 LLM 增量的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.promptTokens = DistributionSummary.builder("qa.prompt.tokens")
+                .description("问答提示词估算 token 数")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
     /**
      * 处理问答请求
+     *
+     * 不加 @Transactional：检索阶段的向量近邻查询在 VectorSearchExecutor 的短只读事务中执行，
+     * 其余仓储查询（自定义 @Query 方法默认不开事务）以自动提交方式执行，每条语句借用连接后立即归还；
+     * 问答历史交给 QaHistoryWriter 异步批量写入，等待 LLM 生成期间不占用数据库连接。
+     * 相同问题的并发请求只执行一次检索与生成，其余请求等待并共享结果
      */
-    @Transactional
     public QaResponse ask(QaRequest request) {
         try {
-            QaProcessingContext context = prepareContext(request);
-            String answer = llmService.generate(context.prompt());
-            QaHistory history = saveHistory(context.user(), context.question(), answer, context.startTime());
+            long startTime = System.currentTimeMillis();
+            QaDocumentAccessScopeResolver.AccessScope accessScope =
+                    resolveAccessScope(request, SecurityContextHolder.getContext().getAuthentication());
+            SharedAnswer shared = singleFlightEnabled
+                    ? answerFlights.execute(FlightKey.of(request, accessScope), () -> generateAnswer(request, accessScope))
+                    : generateAnswer(request, accessScope);
+            QaProcessingContext context = new QaProcessingContext(accessScope.currentUserId(),
+                    parseSessionId(request), request.getQuestion(), shared.retrieval(), startTime);
+            String answer = shared.answer();
+            String historyId = recordHistory(context, answer, false);
             log.info("[METRIC][QA] mode=sync, topKHits={}, citationsAfterFilter={}, durationMs={}",
                     context.retrievedCount(),
                     context.citations().size(),
@@ -79,7 +230,7 @@ public class QaService {
             return QaResponse.builder()
                     .answer(answer)
                     .citations(context.citations())
-                    .historyId(history == null ? null : history.getId().toString())
+                    .historyId(historyId)
                     .build();
         } catch (BusinessException e) {
             throw e;
@@ -89,72 +240,253 @@ public class QaService {
         }
     }
 
+    private SharedAnswer generateAnswer(QaRequest request, QaDocumentAccessScopeResolver.AccessScope accessScope) {
+        RetrievalResult retrieval = retrieve(request, accessScope);
+        String answer = llmService.generate(retrieval.prompt());
+        // 每次生成只记录一轮会话（合并的请求不重复记录），并在返回答案前写入
+        recordSessionTurn(request, answer);
+        return new SharedAnswer(retrieval, answer);
+    }
+
+    /**
+     * 流式问答
+     *
+     * 整条链路非阻塞：订阅后立即推送 status 事件，检索（向量化、数据库查询、范围解析）
+     * 放到 boundedElastic 线程池执行，引用就绪后马上推送 meta，随后转发 LLM 增量。
+     * 首字节不再包含检索耗时；首个增量到达的时间记录为 qa.stream.ttft 指标
+     */
     public Flux<ServerSentEvent<String>> streamAnswer(QaRequest request) {
-        QaProcessingContext context;
-        try {
-            context = prepareContext(request);
-        } catch (BusinessException e) {
-            return Flux.just(buildEvent("error", Map.of("message", e.getMessage())));
-        } catch (Exception e) {
-            log.error("流式问答处理失败: {}", e.getMessage(), e);
-            return Flux.just(buildEvent("error", Map.of("message", "问答处理失败: " + e.getMessage())));
+        return streamAnswer(request, null);
+    }
+
+    /**
+     * 流式问答（支持断线续传）
+     *
+     * 相同问题（同一访问范围与对话上下文）的并发请求共享同一次检索与 LLM 生成，每个请求仍各自写入问答历史，
+     * 会话轮次按生成只记录一次
+     *
+     * @param lastEventId 重连时浏览器携带的 Last-Event-ID；能续传时从回放缓冲区补发并接续进行中的生成，
+     *                    否则重新生成
+     */
+    public Flux<ServerSentEvent<String>> streamAnswer(QaRequest request, String lastEventId) {
+        long startTime = System.currentTimeMillis();
+        // 检索在其他线程执行，SecurityContextHolder 取不到当前用户，需要在订阅线程先取出
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UUID ownerId = authentication != null && authentication.getPrincipal() instanceof UserPrincipal userPrincipal
+                ? userPrincipal.getId()
+                : null;
+
+        if (StringUtils.hasText(lastEventId)) {
+            Flux<ServerSentEvent<String>> resumed = replayRegistry.resume(lastEventId, ownerId);
+            if (resumed != null) {
+                return withHeartbeat(resumed);
+            }
+            log.info("无法续传，重新生成回答: lastEventId={}", lastEventId);
         }
 
+        // retry 缩短浏览器断线后的重连等待
+        Flux<ServerSentEvent<String>> statusFlux = Flux.just(ServerSentEvent.<String>builder()
+                .event("status")
+                .data(SseEventEncoder.STATUS_RETRIEVING)
+                .retry(Duration.ofSeconds(1))
+                .build());
+
+        Flux<ServerSentEvent<String>> answerFlux = Mono.fromCallable(() -> resolveAccessScope(request, authentication))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(accessScope -> {
+                    Flux<SharedEvent> generation = singleFlightEnabled
+                            ? streamFlights.share(FlightKey.of(request, accessScope), () -> sharedGeneration(request, accessScope))
+                            : sharedGeneration(request, accessScope);
+                    return subscriberEvents(generation, accessScope.currentUserId(), parseSessionId(request),
+                            request.getQuestion(), startTime);
+                })
+                .onErrorResume(ex -> {
+                    if (ex instanceof BusinessException) {
+                        return Flux.just(buildEvent("error", Map.of("message", ex.getMessage())));
+                    }
+                    log.error("流式问答处理失败: {}", ex.getMessage(), ex);
+                    return Flux.just(buildEvent("error", Map.of("message", "问答处理失败: " + ex.getMessage())));
+                });
+
+        Flux<ServerSentEvent<String>> events = statusFlux.concatWith(answerFlux)
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        abandonedStreams.increment();
+                    }
+                });
+        return withHeartbeat(replayRegistry.start(ownerId, events));
+    }
+
+    /**
+     * 在事件间隙发送 SSE 注释心跳
+     * Servlet 容器只有在写出失败时才能发现客户端已断开，LLM 长时间无输出时靠心跳尽早触发取消
+     */
+    private Flux<ServerSentEvent<String>> withHeartbeat(Flux<ServerSentEvent<String>> events) {
+        if (heartbeatSeconds <= 0) {
+            return events;
+        }
+        Sinks.Empty<Void> finished = Sinks.empty();
+        Flux<ServerSentEvent<String>> heartbeat = Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+                .map(tick -> ServerSentEvent.<String>builder().comment("keepalive").build())
+                .takeUntilOther(finished.asMono());
+        return events
+                .doFinally(signal -> finished.tryEmitEmpty())
+                .mergeWith(heartbeat);
+    }
+
+    /**
+     * 可被多个订阅者共享的生成流：先发出检索结果，再逐个发出 LLM 增量
+     * 只包含与用户无关的部分（会话轮次在生成结束时记录一次），历史记录、首字耗时、截断保存等由每个订阅者各自处理
+     */
+    private Flux<SharedEvent> sharedGeneration(QaRequest request, QaDocumentAccessScopeResolver.AccessScope accessScope) {
+        return Mono.fromCallable(() -> retrieve(request, accessScope))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(retrieval -> {
+                    StringBuilder answer = new StringBuilder();
+                    return Flux.<SharedEvent>concat(
+                            Mono.just(new Retrieved(retrieval)),
+                            streamingChatService.streamChatCompletion(retrieval.prompt())
+                                    .doOnNext(answer::append)
+                                    .map(Token::new),
+                            // 生成完整结束后记录会话轮次：每次生成只记录一次，先于各订阅者的 done 事件写入；
+                            // 取消或失败的生成不会走到这里，截断的回答不进入会话上下文
+                            Mono.<SharedEvent>fromRunnable(() -> recordSessionTurn(request, answer.toString()))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                    );
+                });
+    }
+
+    private Flux<ServerSentEvent<String>> subscriberEvents(Flux<SharedEvent> generation,
+                                                           UUID userId,
+                                                           UUID sessionId,
+                                                           String question,
+                                                           long startTime) {
+        return generation.switchOnFirst((first, events) -> {
+            if (!(first.get() instanceof Retrieved retrieved)) {
+                // 检索失败或无结果：直接传递终止信号
+                return events.thenMany(Flux.<ServerSentEvent<String>>empty());
+            }
+            QaProcessingContext context = new QaProcessingContext(userId, sessionId, question, retrieved.retrieval(), startTime);
+            Flux<String> chunks = events.skip(1).map(event -> ((Token) event).text());
+            return streamGeneration(context, chunks);
+        });
+    }
+
+    private Flux<ServerSentEvent<String>> streamGeneration(QaProcessingContext context, Flux<String> upstreamChunks) {
         Flux<ServerSentEvent<String>> metaFlux = Flux.just(
                 buildEvent("meta", Map.of("citations", context.citations()))
         );
 
-        Flux<ServerSentEvent<String>> deltaFlux = streamingChatService.streamChatCompletion(context.prompt())
-                .map(chunk -> {
+        Flux<String> chunks = upstreamChunks
+                .doOnNext(chunk -> {
+                    if (context.markFirstToken()) {
+                        recordTimeToFirstToken(context);
+                    }
                     context.appendAnswer(chunk);
-                    return buildEvent("delta", Map.of("content", chunk));
-                })
+                });
+
+        Flux<ServerSentEvent<String>> deltaFlux = coalesceDeltas(chunks)
+                .map(json -> encodedEvent("delta", json))
                 .concatWith(Mono.fromCallable(() -> {
-                    QaHistory history = saveHistory(
-                            context.user(),
-                            context.question(),
-                            context.answerBuilder().toString(),
-                            context.startTime()
-                    );
-                    log.info("[METRIC][QA] mode=stream, topKHits={}, citationsAfterFilter={}, durationMs={}",
+                    String historyId = context.markHistoryRecorded()
+                            ? recordHistory(context, context.answer(), false)
+                            : null;
+                    log.info("[METRIC][QA] mode=stream, topKHits={}, citationsAfterFilter={}, ttftMs={}, durationMs={}",
                             context.retrievedCount(),
                             context.citations().size(),
+                            context.firstTokenMillis(),
                             System.currentTimeMillis() - context.startTime());
-                    return buildEvent("done", Map.of(
-                            "historyId", history == null ? null : history.getId().toString(),
-                            "answer", context.answerBuilder().toString(),
-                            "citations", context.citations()
-                    ));
+                    // historyId 可能为 null，Map.of 不接受 null 值
+                    Map<String, Object> payload = new LinkedHashMap<>();
+                    payload.put("historyId", historyId);
+                    payload.put("answer", context.answer());
+                    payload.put("citations", context.citations());
+                    return buildEvent("done", payload);
                 }))
                 .onErrorResume(ex -> {
                     log.error("流式生成失败: {}", ex.getMessage(), ex);
                     return Flux.just(buildEvent("error", Map.of("message", "流式生成失败: " + ex.getMessage())));
+                })
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        saveTruncatedAnswer(context);
+                    }
                 });
 
         return metaFlux.concatWith(deltaFlux);
     }
 
-    private QaProcessingContext prepareContext(QaRequest request) {
+    /**
+     * 客户端断开后保存已生成的部分答案
+     * 取消信号已沿订阅链传到 WebClient，上游连接随之关闭，不再继续消耗 token
+     */
+    private void saveTruncatedAnswer(QaProcessingContext context) {
+        String partialAnswer = context.answer();
+        String historyId = context.markHistoryRecorded()
+                ? recordHistory(context, partialAnswer, true)
+                : null;
+        log.info("[METRIC][QA] mode=stream, abandoned=true, answerChars={}, historyId={}, durationMs={}",
+                partialAnswer.length(),
+                historyId,
+                System.currentTimeMillis() - context.startTime());
+    }
+
+    /**
+     * 合并相邻增量并预编码为 delta JSON
+     * 首个增量立即发出，不影响首字延迟；之后在时间窗口内最多合并 coalesceMaxChunks 个增量为一帧。
+     * 窗口 <= 0 时逐 token 发送
+     */
+    private Flux<String> coalesceDeltas(Flux<String> chunks) {
+        if (coalesceWindowMs <= 0 || coalesceMaxChunks <= 1) {
+            return chunks.map(SseEventEncoder::delta);
+        }
+        Duration window = Duration.ofMillis(coalesceWindowMs);
+        return chunks.switchOnFirst((first, flux) -> {
+            if (!first.hasValue()) {
+                return flux.map(SseEventEncoder::delta);
+            }
+            return Flux.concat(
+                    Mono.just(SseEventEncoder.delta(first.get())),
+                    flux.skip(1)
+                            .bufferTimeout(coalesceMaxChunks, window, true)
+                            .map(SseEventEncoder::delta)
+            );
+        });
+    }
+
+    private void recordTimeToFirstToken(QaProcessingContext context) {
+        long ttftMillis = context.firstTokenMillis();
+        timeToFirstToken.record(ttftMillis, TimeUnit.MILLISECONDS);
+        log.debug("流式问答首个增量耗时: {}ms", ttftMillis);
+    }
+
+    private QaDocumentAccessScopeResolver.AccessScope resolveAccessScope(QaRequest request, Authentication authentication) {
         log.info("处理问答请求: {}", request.getQuestion());
 
-        long startTime = System.currentTimeMillis();
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         QaDocumentAccessScopeResolver.AccessScope accessScope = accessScopeResolver.resolve(authentication);
-        UUID userId = accessScope.currentUserId();
-        User user = null;
         if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal userPrincipal) {
-            user = userRepository.findById(userId).orElse(null);
             log.info("当前用户: {} (ID: {}), 范围: {}",
                     userPrincipal.getUsername(),
-                    userId,
+                    accessScope.currentUserId(),
                     accessScope.description());
         } else {
             log.warn(accessScope.description());
         }
+        return accessScope;
+    }
 
+    /**
+     * 检索并构建提示词；结果只取决于问题、对话上下文和访问范围，可在相同请求间共享
+     */
+    private RetrievalResult retrieve(QaRequest request, QaDocumentAccessScopeResolver.AccessScope accessScope) {
         int topK = request.getTopK() == null ? 5 : request.getTopK();
         if (topK < 1) topK = 1;
         if (topK > 20) topK = 20;
+        int candidateK = hybridSearchService.isEnabled() ? Math.max(topK, candidateTopN) : topK;
+
+        // 关键词召回不依赖问题向量，与向量化 + 向量召回并行执行
+        CompletableFuture<List<UUID>> lexicalFuture =
+                hybridSearchService.searchLexicalAsync(request.getQuestion(), accessScope, candidateK);
 
         float[] fullQuestionVector = embeddingModel.embed(request.getQuestion()).content().vector();
         float[] truncatedVector = mrlService.truncateVector(fullQuestionVector);
@@ -162,31 +494,158 @@ public class QaService {
 
         log.debug("问题向量维度: {} -> {}", fullQuestionVector.length, truncatedVector.length);
 
-        List<UUID> nearestIds;
-        if (accessScope.queryAllDocuments()) {
-            nearestIds = vectorRecordRepository.findNearestVectorIds(queryVector, null, topK);
-        } else if (accessScope.ownerIds().isEmpty()) {
-            nearestIds = List.of();
-        } else {
-            nearestIds = vectorRecordRepository.findNearestVectorIdsByOwnerIds(queryVector, accessScope.ownerIds(), topK);
-        }
-        log.info("找到 {} 条相似向量ID", nearestIds.size());
+        List<UUID> vectorIds = findVectorCandidates(queryVector, accessScope, candidateK);
+
+        List<UUID> lexicalIds = lexicalFuture.join();
+        List<UUID> nearestIds = hybridSearchService.fuse(vectorIds, lexicalIds, topK);
+        log.info("找到 {} 条相似向量ID（向量召回 {} 条，关键词召回 {} 条）",
+                nearestIds.size(), vectorIds.size(), lexicalIds.size());
 
         List<VectorRecord> nearestRecords = nearestIds.isEmpty()
                 ? List.of()
                 : reorderByIds(nearestIds, vectorRecordRepository.findByIdsWithRelations(nearestIds));
 
-        List<QaResponse.CitationInfo> citations = buildCitations(nearestRecords, truncatedVector);
+        List<QaResponse.CitationInfo> citations = buildCitations(nearestRecords, truncatedVector,
+                Set.copyOf(lexicalIds), hybridSearchService.exactTermPattern(request.getQuestion()));
         log.info("过滤后剩余 {} 条相关引用", citations.size());
 
-        String prompt = buildPromptWithHistory(
+        ConversationHistory history = resolveConversation(request, accessScope);
+        // 指令部分按“无资料”版本估算，比实际多出一行提示，预算略偏保守
+        ChatPrompt instructions = buildPrompt(request.getQuestion(), List.of(), null, null, null);
+        PromptContextPacker.PackedContext packed = contextPacker.pack(
+                instructions.system() + instructions.user(),
                 request.getQuestion(),
-                citations,
-                request.getPreviousQuestion(),
-                request.getPreviousAnswer()
+                history.summary(),
+                history.previousQuestion(),
+                history.previousAnswer(),
+                citations.stream().map(QaResponse.CitationInfo::getContent).toList()
         );
+        // 只返回实际放入提示词的引用，保证 [参考N] 编号与前端展示一致
+        List<QaResponse.CitationInfo> promptCitations = packed.citationIndexes().stream()
+                .map(citations::get)
+                .toList();
+        ChatPrompt prompt = buildPrompt(
+                request.getQuestion(),
+                packed.excerpts(),
+                packed.summary(),
+                packed.previousQuestion(),
+                packed.previousAnswer()
+        );
+        promptTokens.record(packed.totalTokens());
+        log.info("[METRIC][QA_PROMPT] promptTokens={}, historyTokens={}, citationsInPrompt={}/{}, droppedSentences={}",
+                packed.totalTokens(), packed.historyTokens(), promptCitations.size(), citations.size(),
+                packed.droppedSentences());
+
+        return new RetrievalResult(promptCitations, prompt, nearestIds.size());
+    }
+
+    /**
+     * 对话上下文：携带会话 ID 时读取服务端保存的摘要和最后一轮，否则使用请求中的上一轮问答
+     */
+    private ConversationHistory resolveConversation(QaRequest request,
+                                                    QaDocumentAccessScopeResolver.AccessScope accessScope) {
+        UUID sessionId = parseSessionId(request);
+        if (sessionId != null) {
+            QaSessionService.ConversationContext session =
+                    sessionService.loadContext(sessionId, accessScope.currentUserId());
+            if (session.turnCount() > 0) {
+                return new ConversationHistory(session.summary(), session.lastQuestion(), session.lastAnswer());
+            }
+            // 新会话尚无上下文：客户端切换到会话前已有的对话仍按请求中的上一轮处理
+        }
+        return new ConversationHistory(null, request.getPreviousQuestion(), request.getPreviousAnswer());
+    }
+
+    private static UUID parseSessionId(QaRequest request) {
+        if (!StringUtils.hasText(request.getSessionId())) {
+            return null;
+        }
+        try {
+            return UUID.fromString(request.getSessionId().trim());
+        } catch (IllegalArgumentException e) {
+            throw BusinessException.badRequest("sessionId", "会话 ID 格式错误");
+        }
+    }
+
+    /**
+     * 向量召回
+     * 开启两阶段检索时先用文档质心选出 top-M 文档，只在这些文档的分块中做近邻搜索；
+     * 质心尚未生成（例如迁移前的老数据）时回退为全范围分块检索
+     */
+    private List<UUID> findVectorCandidates(String queryVector,
+                                            QaDocumentAccessScopeResolver.AccessScope accessScope,
+                                            int limit) {
+        if (!accessScope.queryAllDocuments() && accessScope.ownerIds().isEmpty()) {
+            return List.of();
+        }
+
+        if (coarseToFineEnabled) {
+            List<UUID> documentIds = accessScope.queryAllDocuments()
+                    ? documentRepository.findNearestDocumentIdsByCentroid(queryVector, coarseDocumentTopM)
+                    : documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds(
+                            queryVector, accessScope.ownerIds(), coarseDocumentTopM);
+            if (!documentIds.isEmpty()) {
+                long availableRows = documentRepository.sumChunkCountByIds(documentIds);
+                log.debug("质心粗筛命中 {} 个候选文档，共 {} 个分块", documentIds.size(), availableRows);
+                if (availableRows <= exactSearchMaxRows) {
+                    // 候选范围很小，精确扫描比 HNSW 扫描后再过滤更便宜，也不会漏召回
+                    return vectorRecordRepository.findNearestVectorIdsByDocumentIdsExact(queryVector, documentIds, limit);
+                }
+                List<UUID> ids = findNearestInDocuments(queryVector, documentIds, limit);
+                if (ids.size() < Math.min(limit, availableRows)) {
+                    // HNSW 扫描后才按文档过滤，候选文档的分块足够却没召回够时，在候选文档内改为精确检索
+                    log.debug("候选文档内近邻检索仅返回 {} 条（需要 {} 条，可用 {} 条），回退为精确检索",
+                            ids.size(), limit, availableRows);
+                    ids = vectorRecordRepository.findNearestVectorIdsByDocumentIdsExact(queryVector, documentIds, limit);
+                }
+                return ids;
+            }
+            log.debug("质心粗筛无结果，回退为全范围分块检索");
+        }
+
+        return findScopedNearest(queryVector, accessScope, limit);
+    }
+
+    /**
+     * 候选文档内的近邻检索，与全范围检索使用同一种量化模式，只依赖当前模式的 HNSW 索引
+     */
+    private List<UUID> findNearestInDocuments(String queryVector, List<UUID> documentIds, int limit) {
+        int candidateLimit = limit * Math.max(1, rescoreMultiplier);
+        return switch (quantization == null ? VectorQuantization.NONE : quantization) {
+            case HALFVEC -> vectorSearchExecutor.execute(candidateLimit, () -> vectorRecordRepository
+                    .findNearestVectorIdsHalfvecByDocumentIds(queryVector, documentIds, candidateLimit, limit));
+            case BINARY -> vectorSearchExecutor.execute(candidateLimit, () -> vectorRecordRepository
+                    .findNearestVectorIdsBinaryByDocumentIds(queryVector, documentIds, candidateLimit, limit));
+            case NONE -> vectorSearchExecutor.execute(limit,
+                    () -> vectorRecordRepository.findNearestVectorIdsByDocumentIds(queryVector, documentIds, limit));
+        };
+    }
+
+    private List<UUID> findScopedNearest(String queryVector,
+                                         QaDocumentAccessScopeResolver.AccessScope accessScope,
+                                         int limit) {
+        boolean all = accessScope.queryAllDocuments();
+        List<UUID> ownerIds = accessScope.ownerIds();
+        int candidateLimit = limit * Math.max(1, rescoreMultiplier);
 
-        return new QaProcessingContext(user, request.getQuestion(), citations, prompt, startTime, nearestIds.size());
+        // ef_search 按本次需要的候选数设置，重排候选不会被 HNSW 扫描上限截断
+        List<UUID> ids = switch (quantization == null ? VectorQuantization.NONE : quantization) {
+            case HALFVEC -> vectorSearchExecutor.execute(candidateLimit, () -> all
+                    ? vectorRecordRepository.findNearestVectorIdsHalfvec(queryVector, candidateLimit, limit)
+                    : vectorRecordRepository.findNearestVectorIdsHalfvecByOwnerIds(queryVector, ownerIds, candidateLimit, limit));
+            case BINARY -> vectorSearchExecutor.execute(candidateLimit, () -> all
+                    ? vectorRecordRepository.findNearestVectorIdsBinary(queryVector, candidateLimit, limit)
+                    : vectorRecordRepository.findNearestVectorIdsBinaryByOwnerIds(queryVector, ownerIds, candidateLimit, limit));
+            case NONE -> vectorSearchExecutor.execute(limit, () -> all
+                    ? vectorRecordRepository.findNearestVectorIds(queryVector, null, limit)
+                    : vectorRecordRepository.findNearestVectorIdsByOwnerIds(queryVector, ownerIds, limit));
+        };
+        if (!all && ids.size() < limit) {
+            // 按拥有者过滤发生在 HNSW 扫描之后，范围只占语料一小部分时结果不足，改为范围内精确检索
+            log.debug("拥有者范围内近邻检索仅返回 {} 条（需要 {} 条），回退为精确检索", ids.size(), limit);
+            ids = vectorRecordRepository.findNearestVectorIdsByOwnerIdsExact(queryVector, ownerIds, limit);
+        }
+        return ids;
     }
 
     private List<VectorRecord> reorderByIds(List<UUID> nearestIds, List<VectorRecord> loadedRecords) {
@@ -202,7 +661,17 @@ public class QaService {
         return ordered;
     }
 
-    private List<QaResponse.CitationInfo> buildCitations(List<VectorRecord> records, float[] truncatedVector) {
+    /**
+     * 构建引用列表
+     *
+     * @param lexicalMatchIds 关键词召回命中的向量记录 ID
+     * @param exactTermPattern 问题中完整英文术语/课程代码的匹配器；关键词召回命中且正文包含完整术语的分块
+     *                         视为精确命中，不受相似度阈值过滤。仅命中中文滑窗的分块仍按阈值过滤
+     */
+    private List<QaResponse.CitationInfo> buildCitations(List<VectorRecord> records,
+                                                         float[] truncatedVector,
+                                                         Set<UUID> lexicalMatchIds,
+                                                         Pattern exactTermPattern) {
         List<CitationCandidate> citations = new ArrayList<>(records.size());
         List<CitationCandidate> candidates = new ArrayList<>(records.size());
         for (VectorRecord vr : records) {
@@ -214,6 +683,7 @@ public class QaService {
                     document != null ? document.getFilename() : "NULL",
                     chunk != null ? "存在" : "NULL");
 
+            // 展示用的长度上限；放入提示词的摘录由 PromptContextPacker 按 token 预算裁剪
             String content = chunk != null ? chunk.getContent() : null;
             if (content != null && content.length() > 2000) {
                 content = content.substring(0, 2000);
@@ -222,7 +692,8 @@ public class QaService {
             Double score = null;
             try {
                 float[] docVector = VectorUtils.parseVectorString(vr.getEmbedding());
-                score = VectorUtils.cosineSimilarity(truncatedVector, docVector);
+                // 入库向量与问题向量均已归一化，点积即余弦相似度
+                score = VectorUtils.dotProduct(truncatedVector, docVector);
 
                 log.info("文档: {}, 相似度分数: {}",
                         document != null ? document.getFilename() : "NULL",
@@ -237,6 +708,9 @@ public class QaService {
                     .documentTitle(document == null ? null : document.getFilename())
                     .content(content)
                     .score(score)
+                    .chunkId(chunk == null ? null : chunk.getId())
+                    .pageNum(chunk == null ? null : chunk.getPageNum())
+                    .chunkIndex(chunk == null ? null : chunk.getChunkIndex())
                     .build();
 
             String documentKey;
@@ -250,7 +724,11 @@ public class QaService {
 
             CitationCandidate candidate = new CitationCandidate(documentKey, citation);
             candidates.add(candidate);
-            if (score == null || score >= SIMILARITY_THRESHOLD) {
+            boolean exactMatch = exactTermPattern != null
+                    && vr.getId() != null && lexicalMatchIds.contains(vr.getId())
+                    && chunk != null && chunk.getContent() != null
+                    && exactTermPattern.matcher(chunk.getContent()).find();
+            if (score == null || score >= SIMILARITY_THRESHOLD || exactMatch) {
                 citations.add(candidate);
             } else {
                 log.info("过滤低相似度文档: {} (score: {}, threshold: {})",
@@ -312,61 +790,181 @@ public class QaService {
     private record CitationCandidate(String documentKey, QaResponse.CitationInfo citation) {
     }
 
-    private QaHistory saveHistory(User user, String question, String answer, long startTime) {
+    /**
+     * 提交问答历史到异步写入队列
+     * historyId 在此预先生成并立即返回，记录随后由 QaHistoryWriter 批量落库
+     *
+     * @return historyId；答案为空、匿名请求或队列已满时返回 null
+     */
+    private String recordHistory(QaProcessingContext context, String answer, boolean truncated) {
         if (!StringUtils.hasText(answer)) {
             return null;
         }
-        QaHistory history = new QaHistory();
-        history.setUser(user);
-        history.setQuestion(question);
-        history.setAnswer(answer);
-        history.setModelVersion(llmService.getModelInfo());
-        history.setResponseTime((int) (System.currentTimeMillis() - startTime));
+        UUID historyId = UUID.randomUUID();
+        QaHistoryWriter.QaHistoryRecord record = new QaHistoryWriter.QaHistoryRecord(
+                historyId,
+                context.userId(),
+                context.sessionId(),
+                context.question(),
+                answer,
+                (int) (System.currentTimeMillis() - context.startTime()),
+                llmService.getModelInfo(),
+                LocalDateTime.now(),
+                truncated,
+                toCitationRecords(context.citations())
+        );
+        return qaHistoryWriter.submit(record) ? historyId.toString() : null;
+    }
 
-        try {
-            return qaHistoryRepository.save(history);
-        } catch (Exception e) {
-            log.warn("保存问答历史失败，但不影响问答功能: {}", e.getMessage());
-            return null;
+    /**
+     * 记录会话的最新一轮；未携带会话 ID 时忽略
+     */
+    private void recordSessionTurn(QaRequest request, String answer) {
+        UUID sessionId = parseSessionId(request);
+        if (sessionId != null) {
+            sessionService.recordTurn(sessionId, request.getQuestion(), answer);
         }
     }
 
+    private List<QaHistoryWriter.CitationRecord> toCitationRecords(List<QaResponse.CitationInfo> citations) {
+        List<QaHistoryWriter.CitationRecord> records = new ArrayList<>(citations.size());
+        for (QaResponse.CitationInfo citation : citations) {
+            if (citation.getChunkId() == null || citation.getDocumentId() == null) {
+                continue;
+            }
+            // t_citation.relevance_score 约束在 [0, 1]
+            Float relevance = citation.getScore() == null
+                    ? null
+                    : (float) Math.max(0.0, Math.min(1.0, citation.getScore()));
+            records.add(new QaHistoryWriter.CitationRecord(
+                    UUID.fromString(citation.getDocumentId()),
+                    citation.getChunkId(),
+                    citation.getPageNum(),
+                    citation.getChunkIndex(),
+                    relevance,
+                    citation.getContent()
+            ));
+        }
+        return records;
+    }
+
     private ServerSentEvent<String> buildEvent(String eventName, Object payload) {
         try {
-            return ServerSentEvent.<String>builder()
-                    .event(eventName)
-                    .data(objectMapper.writeValueAsString(payload))
-                    .build();
+            return encodedEvent(eventName, objectMapper.writeValueAsString(payload));
         } catch (JsonProcessingException e) {
             throw new RuntimeException("序列化流式事件失败", e);
         }
     }
 
+    private ServerSentEvent<String> encodedEvent(String eventName, String json) {
+        return ServerSentEvent.<String>builder()
+                .event(eventName)
+                .data(json)
+                .build();
+    }
+
+    /**
+     * 检索结果：引用、提示词与召回数量
+     */
+    private record RetrievalResult(List<QaResponse.CitationInfo> citations, ChatPrompt prompt, int retrievedCount) {
+        RetrievalResult {
+            citations = List.copyOf(citations);
+        }
+    }
+
+    private record SharedAnswer(RetrievalResult retrieval, String answer) {
+    }
+
+    /**
+     * 放入提示词之前的对话上下文
+     */
+    private record ConversationHistory(String summary, String previousQuestion, String previousAnswer) {
+    }
+
+    /**
+     * 共享生成流中的元素：首个元素为检索结果，其后为 LLM 增量
+     */
+    private sealed interface SharedEvent permits Retrieved, Token {
+    }
+
+    private record Retrieved(RetrievalResult retrieval) implements SharedEvent {
+    }
+
+    private record Token(String text) implements SharedEvent {
+    }
+
+    /**
+     * single-flight 键：规范化后的问题 + 对话上下文 + 访问范围
+     * 访问范围不同的请求检索到的文档不同，不能合并；
+     * 使用会话时上下文在服务端，键中带上会话 ID 和当前用户，避免他人借会话 ID 合并到别人的对话
+     */
+    private record FlightKey(String question,
+                             String sessionId,
+                             UUID sessionUserId,
+                             String previousQuestion,
+                             String previousAnswer,
+                             Integer topK,
+                             boolean allDocuments,
+                             Set<UUID> ownerIds) {
+
+        static FlightKey of(QaRequest request, QaDocumentAccessScopeResolver.AccessScope accessScope) {
+            boolean withSession = StringUtils.hasText(request.getSessionId());
+            return new FlightKey(
+                    normalizeQuestion(request.getQuestion()),
+                    withSession ? request.getSessionId().trim() : null,
+                    withSession ? accessScope.currentUserId() : null,
+                    request.getPreviousQuestion(),
+                    request.getPreviousAnswer(),
+                    request.getTopK(),
+                    accessScope.queryAllDocuments(),
+                    accessScope.queryAllDocuments() ? Set.of() : Set.copyOf(accessScope.ownerIds())
+            );
+        }
+    }
+
+    /**
+     * 问题规范化：全角转半角（NFKC）、合并空白、忽略大小写
+     */
+    static String normalizeQuestion(String question) {
+        if (question == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(question, Normalizer.Form.NFKC).strip();
+        return WHITESPACE.matcher(normalized).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
     private static class QaProcessingContext {
-        private final User user;
+        private final UUID userId;
+        private final UUID sessionId;
         private final String question;
         private final List<QaResponse.CitationInfo> citations;
-        private final String prompt;
+        private final ChatPrompt prompt;
         private final long startTime;
         private final int retrievedCount;
         private final StringBuilder answerBuilder = new StringBuilder();
+        private volatile long firstTokenAt;
+        private final AtomicBoolean historyRecorded = new AtomicBoolean();
 
-        QaProcessingContext(User user,
+        QaProcessingContext(UUID userId,
+                            UUID sessionId,
                             String question,
-                            List<QaResponse.CitationInfo> citations,
-                            String prompt,
-                            long startTime,
-                            int retrievedCount) {
-            this.user = user;
+                            RetrievalResult retrieval,
+                            long startTime) {
+            this.userId = userId;
+            this.sessionId = sessionId;
             this.question = question;
-            this.citations = List.copyOf(citations);
-            this.prompt = prompt;
+            this.citations = retrieval.citations();
+            this.prompt = retrieval.prompt();
             this.startTime = startTime;
-            this.retrievedCount = retrievedCount;
+            this.retrievedCount = retrieval.retrievedCount();
         }
 
-        public User user() {
-            return user;
+        public UUID userId() {
+            return userId;
+        }
+
+        public UUID sessionId() {
+            return sessionId;
         }
 
         public String question() {
@@ -377,7 +975,7 @@ public class QaService {
             return citations;
         }
 
-        public String prompt() {
+        public ChatPrompt prompt() {
             return prompt;
         }
 
@@ -389,69 +987,76 @@ public class QaService {
             return retrievedCount;
         }
 
-        public void appendAnswer(String chunk) {
-            this.answerBuilder.append(chunk);
+        /**
+         * 标记首个增量到达，仅第一次调用返回 true
+         */
+        public boolean markFirstToken() {
+            if (firstTokenAt != 0) {
+                return false;
+            }
+            firstTokenAt = System.currentTimeMillis();
+            return true;
         }
 
-        public StringBuilder answerBuilder() {
-            return answerBuilder;
+        /**
+         * 首个增量相对请求开始的耗时，尚未收到增量时返回 -1
+         */
+        public long firstTokenMillis() {
+            return firstTokenAt == 0 ? -1 : firstTokenAt - startTime;
         }
-    }
-
-    /**
-     * 构建提示词
-     */
-    private String buildPrompt(String question, List<QaResponse.CitationInfo> citations) {
-        StringBuilder prompt = new StringBuilder();
-
-        prompt.append("你是一位经验丰富的教育专家，擅长讲解教材和学习指南。\n");
-        prompt.append("请帮助学生深入理解问题，而不仅仅是给出简短答案。\n\n");
 
-        prompt.append("【回答要求】\n");
-        prompt.append("- 目标长度：500-1500字，详细但不啰嗦\n");
-        prompt.append("- 使用Markdown格式，关键概念用**粗体**\n");
-        prompt.append("- 如果资料不足，说明依据有限\n\n");
-
-        prompt.append("【答案结构（按顺序）】\n");
-        prompt.append("1. **直接回答**（50-100字）：开门见山给出核心答案\n");
-        prompt.append("2. **详细解释**（200-500字）：分点说明，使用类比帮助理解\n");
-        prompt.append("3. **实际应用**（100-200字）：举2个贴近生活或课程的案例\n");
-        prompt.append("4. **关键要点总结**（50-100字）：用✓列出3-5条重要结论\n\n");
-
-        if (citations.isEmpty()) {
-            prompt.append("【参考资料】\n无可用资料，请基于常识回答，但避免编造。\n\n");
-        } else {
-            prompt.append("【参考资料】\n");
-            for (int i = 0; i < citations.size(); i++) {
-                prompt.append(String.format("[参考%d] %s\n", i + 1, citations.get(i).getContent()));
-            }
-            prompt.append("\n");
+        /**
+         * 标记问答历史已提交；完成与断开可能并发触发，仅第一次调用返回 true
+         */
+        public boolean markHistoryRecorded() {
+            return historyRecorded.compareAndSet(false, true);
         }
 
-        prompt.append("【问题】").append(question).append("\n\n");
-        prompt.append("请严格按照上述结构回答：\n");
+        // 增量在 Netty 线程追加，断开回调可能在容器线程读取
+        public synchronized void appendAnswer(String chunk) {
+            this.answerBuilder.append(chunk);
+        }
 
-        return prompt.toString();
+        public synchronized String answer() {
+            return answerBuilder.toString();
+        }
     }
 
-    private String buildPromptWithHistory(String question,
-                                          List<QaResponse.CitationInfo> citations,
-                                          String previousQuestion,
-                                          String previousAnswer) {
-        StringBuilder prompt = new StringBuilder();
+    /**
+     * 构建提示词：静态指令作为系统消息，历史对话、参考资料和问题按变化频率依次放在用户消息中
+     */
+    private ChatPrompt buildPrompt(String question,
+                                   List<String> excerpts,
+                                   String summary,
+                                   String previousQuestion,
+                                   String previousAnswer) {
+        StringBuilder user = new StringBuilder(256 + excerpts.stream().mapToInt(String::length).sum());
 
-        if (StringUtils.hasText(previousQuestion) || StringUtils.hasText(previousAnswer)) {
-            prompt.append("【历史对话】\n");
+        if (StringUtils.hasText(summary) || StringUtils.hasText(previousQuestion) || StringUtils.hasText(previousAnswer)) {
+            user.append("【历史对话】\n");
+            if (StringUtils.hasText(summary)) {
+                HISTORY_SUMMARY_PROMPT.renderTo(user, Map.of("summary", summary));
+            }
             if (StringUtils.hasText(previousQuestion)) {
-                prompt.append("学生上一问：").append(previousQuestion).append("\n");
+                HISTORY_QUESTION_PROMPT.renderTo(user, Map.of("question", previousQuestion));
             }
             if (StringUtils.hasText(previousAnswer)) {
-                prompt.append("你的上一答：").append(previousAnswer).append("\n");
+                HISTORY_ANSWER_PROMPT.renderTo(user, Map.of("answer", previousAnswer));
+            }
+            user.append("请参考以上上下文，保持回答连贯。\n\n");
+        }
+
+        if (excerpts.isEmpty()) {
+            user.append("【参考资料】\n无可用资料，请基于常识回答，但避免编造。\n\n");
+        } else {
+            user.append("【参考资料】\n");
+            for (int i = 0; i < excerpts.size(); i++) {
+                REFERENCE_PROMPT.renderTo(user, Map.of("index", i + 1, "content", excerpts.get(i)));
             }
-            prompt.append("请参考以上上下文，保持回答连贯。\n\n");
+            user.append("\n");
         }
 
-        prompt.append(buildPrompt(question, citations));
-        return prompt.toString();
+        QUESTION_PROMPT.renderTo(user, Map.of("question", question));
+        return new ChatPrompt(SYSTEM_PROMPT.staticText(), user.toString());
     }
 }
@@ -0,0 +1,361 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.entity.QaSession;
+import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.QaSessionRepository;
+import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.util.TokenEstimator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 问答会话：服务端维护的多轮对话上下文
+ *
+ * 客户端只携带会话 ID，提示词使用“滚动摘要 + 最后一轮原文”，不再需要回传完整的上一轮回答。
+ * <ul>
+ *   <li>每轮结束时同步记录最新一轮，下一次提问一定能读到刚完成的这一轮</li>
+ *   <li>被替换下来的上一轮在同一条语句中进入待并入列表（pending_turns），再异步并入摘要；
+ *       摘要提交前读取上下文时，待并入轮次以抽取式摘要拼在已有摘要之后，快速追问不会丢失上一轮</li>
+ *   <li>同一会话的摘要更新按提交顺序串行执行，不同会话并行；每次更新并入当时全部待并入轮次</li>
+ *   <li>摘要优先由 LLM 压缩；LLM 失败时退化为抽取式摘要（保留最近的内容）</li>
+ *   <li>摘要队列已满时跳过本次摘要更新并记录日志，不阻塞问答线程；待并入轮次留到下一次更新</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class QaSessionService {
+
+    private static final int MAX_QUESTION_LENGTH = 1000;
+    // 抽取式摘要中每轮问答各保留的 token 数
+    private static final int FALLBACK_TURN_TOKENS = 80;
+
+    private final QaSessionRepository sessionRepository;
+    private final UserRepository userRepository;
+    private final LlmService llmService;
+    private final PromptContextPacker contextPacker;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${qa.session.summary-max-tokens:300}")
+    private int summaryMaxTokens;
+
+    @Value("${qa.session.llm-summary-enabled:true}")
+    private boolean llmSummaryEnabled;
+
+    @Value("${qa.session.summarizer-threads:2}")
+    private int summarizerThreads;
+
+    @Value("${qa.session.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ExecutorService summarizer;
+    private final Map<UUID, CompletableFuture<Void>> pendingUpdates = new ConcurrentHashMap<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public QaSessionService(QaSessionRepository sessionRepository,
+                            UserRepository userRepository,
+                            LlmService llmService,
+                            PromptContextPacker contextPacker,
+                            TransactionTemplate transactionTemplate) {
+        this.sessionRepository = sessionRepository;
+        this.userRepository = userRepository;
+        this.llmService = llmService;
+        this.contextPacker = contextPacker;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        int threads = Math.max(1, summarizerThreads);
+        AtomicInteger threadIndex = new AtomicInteger();
+        summarizer = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "qa-session-summary-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 等待进行中的摘要更新完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (summarizer == null) {
+            return;
+        }
+        summarizer.shutdown();
+        try {
+            if (!summarizer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("会话摘要更新未在关闭前完成: pending={}", pendingUpdates.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 创建会话
+     */
+    public UUID create(UUID userId) {
+        if (userId == null) {
+            throw BusinessException.unauthorized("请登录后再创建会话");
+        }
+        QaSession session = QaSession.builder()
+                .user(userRepository.getReferenceById(userId))
+                .build();
+        UUID sessionId = sessionRepository.save(session).getId();
+        log.info("创建问答会话: sessionId={}, userId={}", sessionId, userId);
+        return sessionId;
+    }
+
+    /**
+     * 读取会话上下文
+     *
+     * @throws BusinessException 会话不存在或不属于当前用户
+     */
+    public ConversationContext loadContext(UUID sessionId, UUID userId) {
+        if (userId == null) {
+            throw BusinessException.unauthorized("会话需要登录后使用");
+        }
+        QaSession session = sessionRepository.findByIdAndUserId(sessionId, userId)
+                .orElseThrow(() -> BusinessException.notFound("问答会话", sessionId.toString()));
+        return new ConversationContext(
+                session.getId(),
+                summaryWithPendingTurns(session),
+                session.getLastQuestion(),
+                session.getLastAnswer(),
+                session.getTurnCount() == null ? 0 : session.getTurnCount()
+        );
+    }
+
+    /**
+     * 记录一轮已完成的问答
+     *
+     * 最后一轮在调用线程同步写入（一次短事务），返回后下一次 loadContext 即可读到；
+     * 被替换下来的上一轮在同一事务中进入待并入列表，再提交到摘要线程异步并入滚动摘要，LLM 摘要不阻塞调用线程
+     */
+    public void recordTurn(UUID sessionId, String question, String answer) {
+        if (sessionId == null || !StringUtils.hasText(answer)) {
+            return;
+        }
+        Turn previous;
+        try {
+            previous = transactionTemplate.execute(status -> replaceLastTurn(sessionId, question, answer));
+        } catch (RuntimeException e) {
+            log.warn("记录会话最后一轮失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return;
+        }
+        if (previous != null) {
+            foldAsync(sessionId);
+        }
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 写入最新一轮，返回被替换下来的上一轮（已追加到待并入列表）；会话不存在或这是第一轮时返回 null
+     */
+    Turn replaceLastTurn(UUID sessionId, String question, String answer) {
+        QaSession session = sessionRepository.findByIdForUpdate(sessionId).orElse(null);
+        if (session == null) {
+            log.debug("会话已删除，忽略本轮记录: sessionId={}", sessionId);
+            return null;
+        }
+        String previousQuestion = session.getLastQuestion();
+        String previousAnswer = session.getLastAnswer();
+        sessionRepository.updateLastTurn(sessionId, truncate(question, MAX_QUESTION_LENGTH), answer);
+        if (!StringUtils.hasText(previousQuestion) && !StringUtils.hasText(previousAnswer)) {
+            return null;
+        }
+        return new Turn(previousQuestion, previousAnswer);
+    }
+
+    private void foldAsync(UUID sessionId) {
+        // 接在同一会话上一个摘要更新之后执行；完成回调放在 compute 之外，避免在映射更新中途修改映射
+        CompletableFuture<Void> next = pendingUpdates.compute(sessionId, (id, pending) -> {
+            CompletableFuture<Void> tail = pending == null
+                    ? CompletableFuture.completedFuture(null)
+                    : pending.exceptionally(ex -> null);
+            return tail.thenRunAsync(() -> foldIntoSummary(id), summarizer);
+        });
+        next.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof RejectedExecutionException) {
+                    log.warn("[METRIC][QA_SESSION] 摘要更新队列已满，跳过本次摘要更新: sessionId={}, droppedTotal={}",
+                            sessionId, droppedCount.incrementAndGet());
+                } else {
+                    log.warn("更新会话摘要失败: sessionId={}, error={}", sessionId, cause.getMessage());
+                }
+            }
+            pendingUpdates.remove(sessionId, next);
+        });
+    }
+
+    /**
+     * 把当前全部待并入轮次按顺序并入滚动摘要；摘要与移除待并入轮次在同一条语句中提交
+     */
+    void foldIntoSummary(UUID sessionId) {
+        QaSession session = sessionRepository.findById(sessionId).orElse(null);
+        if (session == null) {
+            log.debug("会话已删除，忽略摘要更新: sessionId={}", sessionId);
+            return;
+        }
+        List<Turn> pending = pendingTurns(session);
+        if (pending.isEmpty()) {
+            // 上一次更新已一并并入
+            return;
+        }
+        long start = System.currentTimeMillis();
+        String summary = session.getSummary();
+        for (Turn turn : pending) {
+            summary = summarize(summary, turn.question(), turn.answer());
+        }
+        sessionRepository.foldPendingTurns(sessionId, summary, pending.size());
+        log.debug("[METRIC][QA_SESSION] sessionId={}, turns={}, folded={}, summaryChars={}, durationMs={}",
+                sessionId, session.getTurnCount(), pending.size(), summary == null ? 0 : summary.length(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 提示词使用的摘要：已提交的摘要 + 尚未并入的轮次（抽取式），不调用 LLM
+     */
+    private String summaryWithPendingTurns(QaSession session) {
+        String summary = session.getSummary();
+        List<Turn> pending = pendingTurns(session);
+        if (pending.isEmpty()) {
+            return summary;
+        }
+        TokenEstimator estimator = contextPacker.currentEstimator();
+        for (Turn turn : pending) {
+            summary = extractiveSummary(summary, turn.question(), turn.answer(), estimator);
+        }
+        return summary;
+    }
+
+    private static List<Turn> pendingTurns(QaSession session) {
+        if (session.getPendingTurns() == null) {
+            return List.of();
+        }
+        return session.getPendingTurns().stream()
+                .filter(Objects::nonNull)
+                .map(turn -> new Turn(turn.get("question"), turn.get("answer")))
+                .toList();
+    }
+
+    /**
+     * 把一轮问答并入已有摘要，结果不超过 summaryMaxTokens
+     */
+    String summarize(String summary, String question, String answer) {
+        TokenEstimator estimator = contextPacker.currentEstimator();
+        if (llmSummaryEnabled) {
+            try {
+                String generated = llmService.generate(buildSummaryPrompt(summary, question, answer));
+                if (StringUtils.hasText(generated)) {
+                    return PromptContextPacker.fitHead(generated, summaryMaxTokens, estimator);
+                }
+            } catch (RuntimeException e) {
+                log.warn("LLM 生成会话摘要失败，改用抽取式摘要: {}", e.getMessage());
+            }
+        }
+        return extractiveSummary(summary, question, answer, estimator);
+    }
+
+    private String buildSummaryPrompt(String summary, String question, String answer) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("你负责维护一段师生问答的对话摘要。\n");
+        prompt.append("请把【新的一轮】合并进【已有摘要】，输出新的摘要：\n");
+        prompt.append("- 保留学生关心的主题、已经讲解过的概念和结论、尚未解决的疑问\n");
+        prompt.append("- 去掉寒暄、格式和举例细节，使用第三人称陈述\n");
+        prompt.append("- 不超过").append(summaryMaxTokens).append("字，只输出摘要正文\n\n");
+        prompt.append("【已有摘要】\n").append(StringUtils.hasText(summary) ? summary : "（无）").append("\n\n");
+        prompt.append("【新的一轮】\n");
+        prompt.append("学生：").append(question == null ? "" : question).append("\n");
+        prompt.append("回答：").append(answer == null ? "" : answer).append("\n");
+        return prompt.toString();
+    }
+
+    /**
+     * 抽取式摘要：追加本轮问题和回答开头，超出预算时从最早的句子开始丢弃
+     */
+    static String extractiveSummary(String summary, String question, String answer, TokenEstimator estimator,
+                                    int maxTokens) {
+        StringBuilder turn = new StringBuilder();
+        String questionHead = PromptContextPacker.fitHead(question, FALLBACK_TURN_TOKENS, estimator);
+        String answerHead = PromptContextPacker.fitHead(answer, FALLBACK_TURN_TOKENS, estimator);
+        if (questionHead != null) {
+            turn.append("学生问：").append(questionHead).append("\n");
+        }
+        if (answerHead != null) {
+            turn.append("回答要点：").append(answerHead).append("\n");
+        }
+
+        Deque<String> kept = new ArrayDeque<>();
+        int used = 0;
+        List<String> sentences = PromptContextPacker.splitSentences(
+                (StringUtils.hasText(summary) ? summary.strip() + "\n" : "") + turn);
+        for (int i = sentences.size() - 1; i >= 0; i--) {
+            int tokens = estimator.estimate(sentences.get(i));
+            if (used + tokens > maxTokens) {
+                break;
+            }
+            kept.addFirst(sentences.get(i));
+            used += tokens;
+        }
+        return kept.isEmpty() ? null : String.join("\n", kept);
+    }
+
+    private String extractiveSummary(String summary, String question, String answer, TokenEstimator estimator) {
+        return extractiveSummary(summary, question, answer, estimator, summaryMaxTokens);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+
+    /**
+     * 一轮问答原文
+     */
+    record Turn(String question, String answer) {
+    }
+
+    /**
+     * 会话上下文
+     *
+     * @param summary   除最后一轮外历史对话的滚动摘要，包含尚未并入摘要的轮次
+     * @param turnCount 已完成的轮数；为 0 时会话尚无上下文
+     */
+    public record ConversationContext(UUID sessionId,
+                                      String summary,
+                                      String lastQuestion,
+                                      String lastAnswer,
+                                      int turnCount) {
+    }
+}
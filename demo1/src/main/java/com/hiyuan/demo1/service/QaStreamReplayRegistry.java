@@ -0,0 +1,292 @@
+package com.hiyuan.demo1.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式问答续传注册表
+ *
+ * 每个进行中的回答对应一个回放会话：生成流与 HTTP 连接解耦，事件按序编号（id = streamId:seq）
+ * 写入有界回放缓冲区。客户端断线重连时携带 Last-Event-ID，从缓冲区补发之后的事件并接续仍在进行的生成，
+ * 不再重新检索和调用 LLM。
+ *
+ * 所有客户端都断开后保留生成一段宽限期，期满无人重连才取消上游；会话结束后按 TTL 保留供晚到的重连回放。
+ * 会话从创建起最多保留 max-lifetime-seconds，生成一直未开始或未结束的会话到期后取消并清理。
+ * 只有登录用户的回答可以续传，匿名请求直接返回原始生成流。
+ */
+@Slf4j
+@Component
+public class QaStreamReplayRegistry {
+
+    private static final char ID_SEPARATOR = ':';
+    private static final long SWEEP_INTERVAL_MILLIS = 5_000;
+
+    private final Map<UUID, ReplaySession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepAt = new AtomicLong();
+
+    // 单个回答最多缓存的事件数（增量合并后一个回答通常只有几十帧）
+    @Value("${qa.stream.replay.max-events:512}")
+    private int maxEvents;
+
+    // 回答结束后会话保留时间
+    @Value("${qa.stream.replay.ttl-seconds:120}")
+    private long ttlSeconds;
+
+    // 所有客户端断开后继续生成、等待重连的时间；<=0 时立即取消上游
+    @Value("${qa.stream.replay.detach-grace-seconds:20}")
+    private long detachGraceSeconds;
+
+    @Value("${qa.stream.replay.max-sessions:2000}")
+    private int maxSessions;
+
+    // 会话从创建起的最长保留时间，应大于一次生成的最长耗时
+    @Value("${qa.stream.replay.max-lifetime-seconds:600}")
+    private long maxLifetimeSeconds;
+
+    /**
+     * 以可续传方式启动生成，并返回当前客户端订阅的事件流
+     * 匿名请求或会话数已达上限时直接返回原始生成流（不可续传）
+     */
+    public Flux<ServerSentEvent<String>> start(UUID ownerId, Flux<ServerSentEvent<String>> generation) {
+        sweepExpired();
+        if (ownerId == null) {
+            // 匿名请求无法校验续传者身份，任何人拿到事件 ID 都能接续，不开放续传
+            return generation;
+        }
+        if (sessions.size() >= maxSessions) {
+            log.warn("续传会话数已达上限 {}，本次回答不可续传", maxSessions);
+            return generation;
+        }
+
+        ReplaySession session = new ReplaySession(UUID.randomUUID(), ownerId, Math.max(1, maxEvents), generation,
+                System.currentTimeMillis() + Math.max(0, maxLifetimeSeconds) * 1000);
+        sessions.put(session.streamId, session);
+        return attach(session, 0);
+    }
+
+    /**
+     * 断线重连：返回 Last-Event-ID 之后的事件，并接续仍在进行的生成
+     *
+     * @return 无法续传（匿名请求、会话不存在或已过期、属于其他用户、所需事件已被挤出缓冲区）时返回 null
+     */
+    public Flux<ServerSentEvent<String>> resume(String lastEventId, UUID ownerId) {
+        if (ownerId == null || !StringUtils.hasText(lastEventId)) {
+            return null;
+        }
+        int separator = lastEventId.lastIndexOf(ID_SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+
+        UUID streamId;
+        long lastSeq;
+        try {
+            streamId = UUID.fromString(lastEventId.substring(0, separator));
+            lastSeq = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            log.debug("无效的 Last-Event-ID: {}", lastEventId);
+            return null;
+        }
+
+        ReplaySession session = sessions.get(streamId);
+        if (session == null || session.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        if (!ownerId.equals(session.ownerId)) {
+            log.warn("拒绝续传其他用户的回答: streamId={}", streamId);
+            return null;
+        }
+        if (lastSeq + 1 < session.firstBufferedSeq()) {
+            log.info("续传所需事件已被挤出缓冲区: streamId={}, lastSeq={}", streamId, lastSeq);
+            return null;
+        }
+        log.info("续传流式回答: streamId={}, lastSeq={}", streamId, lastSeq);
+        return attach(session, lastSeq);
+    }
+
+    private Flux<ServerSentEvent<String>> attach(ReplaySession session, long afterSeq) {
+        return session.sink.asFlux()
+                .filter(event -> sequenceOf(event) > afterSeq)
+                .doOnSubscribe(subscription -> {
+                    session.subscribers.incrementAndGet();
+                    session.startGeneration();
+                })
+                .doFinally(signal -> {
+                    if (session.subscribers.decrementAndGet() == 0 && signal == SignalType.CANCEL) {
+                        scheduleDetach(session);
+                    }
+                });
+    }
+
+    /**
+     * 最后一个客户端断开：宽限期内无人重连则取消生成
+     * 取消信号沿生成流传到上游 LLM 请求，部分答案按截断保存
+     */
+    private void scheduleDetach(ReplaySession session) {
+        if (session.terminated) {
+            return;
+        }
+        if (detachGraceSeconds <= 0) {
+            cancelIfDetached(session);
+            return;
+        }
+        Mono.delay(Duration.ofSeconds(detachGraceSeconds))
+                .subscribe(tick -> cancelIfDetached(session));
+    }
+
+    private void cancelIfDetached(ReplaySession session) {
+        if (session.subscribers.get() > 0 || session.terminated) {
+            return;
+        }
+        log.info("客户端未在宽限期内重连，取消生成: streamId={}", session.streamId);
+        session.cancel();
+    }
+
+    private void sweepExpired() {
+        long now = System.currentTimeMillis();
+        long last = lastSweepAt.get();
+        if (now - last < SWEEP_INTERVAL_MILLIS || !lastSweepAt.compareAndSet(last, now)) {
+            return;
+        }
+        sessions.values().removeIf(session -> {
+            if (!session.isExpired(now)) {
+                return false;
+            }
+            if (!session.terminated) {
+                log.warn("续传会话超过最长保留时间仍未结束，取消生成: streamId={}", session.streamId);
+                session.cancel();
+            }
+            return true;
+        });
+    }
+
+    private long ttlMillis() {
+        return Math.max(0, ttlSeconds) * 1000;
+    }
+
+    private static long sequenceOf(ServerSentEvent<String> event) {
+        String id = event.id();
+        if (id == null) {
+            return 0;
+        }
+        return Long.parseLong(id.substring(id.lastIndexOf(ID_SEPARATOR) + 1));
+    }
+
+    private final class ReplaySession {
+        private final UUID streamId;
+        private final UUID ownerId;
+        private final int capacity;
+        private final Sinks.Many<ServerSentEvent<String>> sink;
+        private final Flux<ServerSentEvent<String>> source;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicInteger subscribers = new AtomicInteger();
+        private volatile Disposable generation;
+        private volatile boolean terminated;
+        private volatile long expiresAt;
+
+        ReplaySession(UUID streamId, UUID ownerId, int capacity, Flux<ServerSentEvent<String>> source,
+                      long expiresAt) {
+            this.streamId = streamId;
+            this.ownerId = ownerId;
+            this.capacity = capacity;
+            this.source = source;
+            this.sink = Sinks.many().replay().limit(capacity);
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * 首个客户端订阅时启动生成，此后生成不再受单个连接的取消影响
+         */
+        synchronized void startGeneration() {
+            // 已被取消（例如超过最长保留时间）的会话不再启动生成
+            if (!terminated && started.compareAndSet(false, true)) {
+                generation = source
+                        .map(this::assignId)
+                        .subscribe(this::emit, this::fail, this::complete);
+            }
+        }
+
+        ServerSentEvent<String> assignId(ServerSentEvent<String> event) {
+            String id = streamId.toString() + ID_SEPARATOR + sequence.incrementAndGet();
+            return ServerSentEvent.<String>builder()
+                    .id(id)
+                    .event(event.event())
+                    .data(event.data())
+                    .retry(event.retry())
+                    .comment(event.comment())
+                    .build();
+        }
+
+        long firstBufferedSeq() {
+            return Math.max(1, sequence.get() - capacity + 1);
+        }
+
+        // Sink 不允许并发写入：生成线程的 emit 与计时器线程的 cancel 都在会话锁内执行，终止后不再写入
+
+        synchronized void emit(ServerSentEvent<String> event) {
+            if (terminated) {
+                return;
+            }
+            Sinks.EmitResult result = sink.tryEmitNext(event);
+            if (result.isFailure()) {
+                log.warn("写入续传缓冲区失败: streamId={}, result={}", streamId, result);
+            }
+        }
+
+        synchronized void fail(Throwable error) {
+            if (terminate()) {
+                sink.tryEmitError(error);
+            }
+        }
+
+        synchronized void complete() {
+            if (terminate()) {
+                sink.tryEmitComplete();
+            }
+        }
+
+        /**
+         * 取消生成并结束会话；已连接的客户端收到完成信号
+         */
+        synchronized void cancel() {
+            Disposable running = generation;
+            if (running != null) {
+                running.dispose();
+            }
+            complete();
+        }
+
+        /**
+         * 标记终止并开始 TTL 计时；已终止时返回 false
+         */
+        private boolean terminate() {
+            if (terminated) {
+                return false;
+            }
+            terminated = true;
+            expiresAt = System.currentTimeMillis() + ttlMillis();
+            return true;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.exception.BusinessException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 系统统计：只读取 V24 建立的计数器和时间序列汇总表
+ *
+ * 计数器和汇总由 t_document / t_qa_history 上的触发器随写入增量维护，
+ * 这里的查询只按主键读取少量行，不再对文档表和问答历史表做 COUNT(*) 全表扫描。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StatisticsService {
+
+    public static final String DOCUMENT_TOTAL = "document.total";
+    public static final String QA_TOTAL = "qa.total";
+
+    public static final String DOCUMENT_UPLOADED = "document.uploaded";
+    public static final String DOCUMENT_SUCCEEDED = "document.succeeded";
+    public static final String DOCUMENT_FAILED = "document.failed";
+    public static final String QA_ASKED = "qa.asked";
+
+    static final Set<String> ROLLUP_METRICS = Set.of(DOCUMENT_UPLOADED, DOCUMENT_SUCCEEDED, DOCUMENT_FAILED, QA_ASKED);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 统计概览：文档总数、问答总数和今日新增
+     */
+    public Map<String, Object> overview() {
+        Map<String, Long> counters = new HashMap<>();
+        jdbcTemplate.query("SELECT name, value FROM t_stats_counter",
+                rs -> {
+                    counters.put(rs.getString("name"), rs.getLong("value"));
+                });
+
+        Map<String, Long> today = new HashMap<>();
+        jdbcTemplate.query("SELECT metric, event_count FROM t_stats_rollup_daily WHERE bucket_start = ?",
+                rs -> {
+                    today.put(rs.getString("metric"), rs.getLong("event_count"));
+                },
+                Timestamp.valueOf(Granularity.DAY.truncate(LocalDateTime.now())));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalDocuments", counters.getOrDefault(DOCUMENT_TOTAL, 0L));
+        stats.put("totalQuestions", counters.getOrDefault(QA_TOTAL, 0L));
+        stats.put("documentsUploadedToday", today.getOrDefault(DOCUMENT_UPLOADED, 0L));
+        stats.put("questionsToday", today.getOrDefault(QA_ASKED, 0L));
+        stats.put("timestamp", LocalDateTime.now());
+        return stats;
+    }
+
+    /**
+     * 查询时间序列，缺失的时间桶补 0
+     *
+     * @param metric      指标名，见 ROLLUP_METRICS
+     * @param granularity 时间粒度
+     * @param from        开始时间（含，按粒度向下取整）；为 null 时取 to 之前的默认范围
+     * @param to          结束时间（不含，按粒度向上取整）；为 null 时包含当前所在的时间桶
+     * @throws BusinessException 指标不存在、时间范围无效或超过该粒度允许的最大范围
+     */
+    public List<StatsPoint> timeSeries(String metric, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        if (!ROLLUP_METRICS.contains(metric)) {
+            throw BusinessException.badRequest("metric", "不支持的统计指标: " + metric);
+        }
+        // 结束时间向上取整到桶边界，默认包含当前所在的桶
+        LocalDateTime end = to != null
+                ? granularity.ceil(to)
+                : granularity.truncate(LocalDateTime.now()).plus(1, granularity.unit);
+        LocalDateTime start = granularity.truncate(from != null ? from : end.minus(granularity.defaultRange));
+        if (!start.isBefore(end)) {
+            throw BusinessException.badRequest("from", "开始时间必须早于结束时间");
+        }
+        if (Duration.between(start, end).compareTo(granularity.maxRange) > 0) {
+            throw BusinessException.badRequest("from",
+                    "时间范围过大，" + granularity.name().toLowerCase(Locale.ROOT) + " 粒度最多查询 "
+                            + granularity.maxRange.toDays() + " 天");
+        }
+
+        Map<LocalDateTime, long[]> buckets = new HashMap<>();
+        jdbcTemplate.query("SELECT bucket_start, event_count, value_sum FROM " + granularity.table
+                        + " WHERE metric = ? AND bucket_start >= ? AND bucket_start < ?",
+                rs -> {
+                    buckets.put(rs.getTimestamp("bucket_start").toLocalDateTime(),
+                            new long[]{rs.getLong("event_count"), rs.getLong("value_sum")});
+                },
+                metric, Timestamp.valueOf(start), Timestamp.valueOf(end));
+
+        // 只有 qa.asked 记录了数值（响应时间）
+        boolean hasValue = QA_ASKED.equals(metric);
+        List<StatsPoint> points = new ArrayList<>();
+        for (LocalDateTime bucket = start; bucket.isBefore(end); bucket = bucket.plus(1, granularity.unit)) {
+            long[] values = buckets.get(bucket);
+            if (values == null) {
+                points.add(new StatsPoint(bucket, 0, null));
+            } else {
+                points.add(new StatsPoint(bucket, values[0],
+                        hasValue && values[0] > 0 ? (double) values[1] / values[0] : null));
+            }
+        }
+        log.debug("查询统计时间序列: metric={}, granularity={}, start={}, end={}, points={}",
+                metric, granularity, start, end, points.size());
+        return points;
+    }
+
+    /**
+     * 时间粒度
+     */
+    public enum Granularity {
+        HOUR("t_stats_rollup_hourly", ChronoUnit.HOURS, Duration.ofHours(24), Duration.ofDays(31)),
+        DAY("t_stats_rollup_daily", ChronoUnit.DAYS, Duration.ofDays(30), Duration.ofDays(366));
+
+        private final String table;
+        private final ChronoUnit unit;
+        private final Duration defaultRange;
+        private final Duration maxRange;
+
+        Granularity(String table, ChronoUnit unit, Duration defaultRange, Duration maxRange) {
+            this.table = table;
+            this.unit = unit;
+            this.defaultRange = defaultRange;
+            this.maxRange = maxRange;
+        }
+
+        LocalDateTime truncate(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+
+        LocalDateTime ceil(LocalDateTime time) {
+            LocalDateTime truncated = truncate(time);
+            return truncated.equals(time) ? time : truncated.plus(1, unit);
+        }
+
+        public static Granularity from(String value) {
+            try {
+                return Granularity.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw BusinessException.badRequest("granularity", "只支持 hour 或 day");
+            }
+        }
+    }
+
+    /**
+     * 时间序列中的一个时间桶
+     *
+     * @param count    桶内事件数
+     * @param avgValue 桶内数值平均值（qa.asked 为平均响应时间毫秒），无事件或无数值时为 null
+     */
+    public record StatsPoint(LocalDateTime bucketStart, long count, Double avgValue) {
+    }
+}
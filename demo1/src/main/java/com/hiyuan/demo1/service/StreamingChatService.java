@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -14,6 +15,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -27,23 +29,38 @@ public class StreamingChatService {
             new ParameterizedTypeReference<>() {};
 
     private final WebClient.Builder webClientBuilder;
-    private final AiProviderModelManager modelManager;
+    private final LlmRouter llmRouter;
     private final ObjectMapper objectMapper;
+    private final LlmUsageMetrics usageMetrics;
 
-    public Flux<String> streamChatCompletion(String prompt) {
-        AiProviderModelManager.ChatModelSettings settings = modelManager.getCurrentModelSettings();
+    // 请求在最后一个数据块返回 usage（含缓存命中 token）；不支持 stream_options 的提供商可关闭
+    @Value("${qa.prompt.stream-usage-enabled:true}")
+    private boolean streamUsageEnabled;
+
+    /**
+     * 流式生成，经 LlmRouter 在多个提供商间路由（首 token 对冲 + 失败切换）
+     */
+    public Flux<String> streamChatCompletion(ChatPrompt prompt) {
+        return llmRouter.stream(route -> streamFrom(route, prompt));
+    }
+
+    private Flux<String> streamFrom(AiProviderModelManager.ProviderRoute route, ChatPrompt prompt) {
+        AiProviderModelManager.ChatModelSettings settings = route.settings();
         WebClient client = webClientBuilder.baseUrl(settings.baseUrl()).build();
 
-        Map<String, Object> body = Map.of(
-                "model", settings.modelName(),
-                "temperature", settings.temperature(),
-                "max_tokens", settings.maxTokens(),
-                "stream", true,
-                "messages", List.of(
-                        Map.of("role", "system", "content", "You are a helpful teaching assistant."),
-                        Map.of("role", "user", "content", prompt)
-                )
-        );
+        // 静态的系统消息在前、变化的用户消息在后，请求之间的公共前缀最长
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", settings.modelName());
+        body.put("messages", List.of(
+                Map.of("role", "system", "content", prompt.system()),
+                Map.of("role", "user", "content", prompt.user())
+        ));
+        body.put("temperature", settings.temperature());
+        body.put("max_tokens", settings.maxTokens());
+        body.put("stream", true);
+        if (streamUsageEnabled) {
+            body.put("stream_options", Map.of("include_usage", true));
+        }
 
         return client.post()
                 .uri("/chat/completions")
@@ -55,14 +72,16 @@ public class StreamingChatService {
                 .bodyToFlux(SSE_TYPE)
                 .map(ServerSentEvent::data)
                 .filter(Objects::nonNull)
-                .flatMap(this::extractChunks)
+                .flatMap(data -> extractChunks(route, data))
+                // 下游取消（客户端断开）时 Reactor Netty 丢弃未读完的响应并关闭该连接，不会继续接收 token
+                .doOnCancel(() -> log.info("流式请求已取消，释放上游连接: model={}", settings.modelName()))
                 .onErrorResume(ex -> {
                     log.error("调用流式模型失败: {}", ex.getMessage(), ex);
                     return Flux.error(new RuntimeException("流式模型调用失败: " + ex.getMessage(), ex));
                 });
     }
 
-    private Flux<String> extractChunks(String data) {
+    private Flux<String> extractChunks(AiProviderModelManager.ProviderRoute route, String data) {
         String trimmed = data.trim();
         if ("[DONE]".equals(trimmed)) {
             return Flux.empty();
@@ -70,6 +89,10 @@ public class StreamingChatService {
 
         try {
             JsonNode root = objectMapper.readTree(data);
+            JsonNode usage = root.path("usage");
+            if (usage.isObject()) {
+                usageMetrics.record(route, usage, "stream");
+            }
             JsonNode choices = root.path("choices");
             if (!choices.isArray()) {
                 return Flux.empty();
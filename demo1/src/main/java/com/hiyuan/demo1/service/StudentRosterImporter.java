@@ -0,0 +1,156 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.dto.teacher.BatchAddStudentResponse;
+import com.hiyuan.demo1.dto.teacher.BatchError;
+import com.hiyuan.demo1.entity.UserRole;
+import com.hiyuan.demo1.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 班级名单批量导入
+ *
+ * 按集合处理整份名单，数据库往返次数与名单行数无关：
+ * <ul>
+ *   <li>标识符按批用 IN 查询一次解析（用户名优先，其次邮箱），只读取 id / 用户名 / 邮箱 / 角色</li>
+ *   <li>新关联按批用多行 INSERT ... ON CONFLICT DO NOTHING RETURNING 写入，
+ *       已在班级中的学生由唯一约束 uk_teacher_student 跳过，并发导入也不会重复</li>
+ * </ul>
+ * 结果语义与逐条处理一致：不存在或非学生角色的标识符记为失败；已在班级中、
+ * 或与名单中前面的标识符指向同一学生的记为跳过；结果列表保持名单顺序。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StudentRosterImporter {
+
+    // 单批 IN 列表长度
+    static final int LOOKUP_BATCH_SIZE = 1000;
+    // 单条 INSERT 的行数（每行 2 个参数，远低于 PostgreSQL 的 32767 个参数上限）
+    static final int INSERT_BATCH_SIZE = 1000;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO t_class_association (teacher_id, student_id, enrolled_at, created_at, updated_at) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, NOW(), NOW(), NOW())";
+    private static final String INSERT_SUFFIX =
+            " ON CONFLICT (teacher_id, student_id) DO NOTHING RETURNING student_id";
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final QaDocumentAccessScopeResolver accessScopeResolver;
+
+    /**
+     * 把名单中的学生加入教师班级
+     *
+     * @param teacherId   教师用户ID
+     * @param identifiers 名单中的用户名或邮箱（保持文件顺序，可以重复）
+     * @return 批量添加结果摘要
+     */
+    @Transactional
+    public BatchAddStudentResponse importRoster(UUID teacherId, List<String> identifiers) {
+        long start = System.currentTimeMillis();
+
+        // 1. 批量解析标识符
+        Map<String, UserRepository.UserIdentity> byUsername = new HashMap<>();
+        Map<String, UserRepository.UserIdentity> byEmail = new HashMap<>();
+        for (List<String> batch : partition(new ArrayList<>(new LinkedHashSet<>(identifiers)), LOOKUP_BATCH_SIZE)) {
+            for (UserRepository.UserIdentity user : userRepository.findIdentitiesByUsernameOrEmailIn(batch)) {
+                byUsername.put(user.getUsername(), user);
+                if (user.getEmail() != null) {
+                    byEmail.put(user.getEmail(), user);
+                }
+            }
+        }
+
+        // 2. 校验角色，同一学生只取名单中第一次出现的位置
+        String[] failures = new String[identifiers.size()];
+        Map<UUID, Integer> firstPositions = new LinkedHashMap<>();
+        UUID[] studentIds = new UUID[identifiers.size()];
+        for (int i = 0; i < identifiers.size(); i++) {
+            String identifier = identifiers.get(i);
+            UserRepository.UserIdentity user = byUsername.getOrDefault(identifier, byEmail.get(identifier));
+            if (user == null) {
+                failures[i] = "用户不存在";
+            } else if (user.getRole() != UserRole.STUDENT) {
+                failures[i] = "目标用户不是学生角色";
+            } else {
+                studentIds[i] = user.getId();
+                firstPositions.putIfAbsent(user.getId(), i);
+            }
+        }
+
+        // 3. 批量写入关联，已存在的由唯一约束跳过
+        Set<UUID> inserted = new HashSet<>();
+        for (List<UUID> batch : partition(new ArrayList<>(firstPositions.keySet()), INSERT_BATCH_SIZE)) {
+            inserted.addAll(insertAssociations(teacherId, batch));
+        }
+        inserted.forEach(accessScopeResolver::invalidateStudent);
+
+        // 4. 按名单顺序汇总结果
+        List<String> successList = new ArrayList<>();
+        List<String> skippedList = new ArrayList<>();
+        List<BatchError> failedList = new ArrayList<>();
+        for (int i = 0; i < identifiers.size(); i++) {
+            String identifier = identifiers.get(i);
+            if (failures[i] != null) {
+                failedList.add(BatchError.builder()
+                        .identifier(identifier)
+                        .reason(failures[i])
+                        .build());
+            } else if (inserted.contains(studentIds[i]) && firstPositions.get(studentIds[i]) == i) {
+                successList.add(identifier);
+            } else {
+                skippedList.add(identifier);
+            }
+        }
+
+        log.info("[METRIC][ROSTER_IMPORT] teacherId={}, total={}, success={}, skipped={}, failed={}, durationMs={}",
+                teacherId, identifiers.size(), successList.size(), skippedList.size(), failedList.size(),
+                System.currentTimeMillis() - start);
+
+        return BatchAddStudentResponse.builder()
+                .totalProcessed(identifiers.size())
+                .successCount(successList.size())
+                .skippedCount(skippedList.size())
+                .failedCount(failedList.size())
+                .successList(successList)
+                .skippedList(skippedList)
+                .failedList(failedList)
+                .build();
+    }
+
+    /**
+     * 多行 INSERT，返回实际新增的学生ID
+     */
+    private List<UUID> insertAssociations(UUID teacherId, List<UUID> studentIds) {
+        String sql = INSERT_PREFIX + String.join(", ", Collections.nCopies(studentIds.size(), INSERT_ROW)) + INSERT_SUFFIX;
+        Object[] args = new Object[studentIds.size() * 2];
+        for (int i = 0; i < studentIds.size(); i++) {
+            args[i * 2] = teacherId;
+            args[i * 2 + 1] = studentIds.get(i);
+        }
+        return jdbcTemplate.queryForList(sql, UUID.class, args);
+    }
+
+    private static <T> List<List<T>> partition(List<T> values, int size) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += size) {
+            batches.add(values.subList(from, Math.min(values.size(), from + size)));
+        }
+        return batches;
+    }
+}
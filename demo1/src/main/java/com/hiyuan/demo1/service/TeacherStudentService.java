@@ -1,7 +1,7 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.dto.teacher.BatchAddStudentResponse;
-import com.hiyuan.demo1.dto.teacher.BatchError;
 import com.hiyuan.demo1.dto.teacher.DocumentAccessResponse;
 import com.hiyuan.demo1.dto.teacher.QaHistoryResponse;
 import com.hiyuan.demo1.dto.teacher.RecentActivitySummary;
@@ -9,6 +9,7 @@ import com.hiyuan.demo1.dto.teacher.StudentDetailResponse;
 import com.hiyuan.demo1.dto.teacher.StudentListResponse;
 import com.hiyuan.demo1.dto.teacher.StudentReportData;
 import com.hiyuan.demo1.entity.ClassAssociation;
+import com.hiyuan.demo1.entity.QaHistory;
 import com.hiyuan.demo1.entity.User;
 import com.hiyuan.demo1.entity.UserRole;
 import com.hiyuan.demo1.exception.AuthorizationException;
@@ -24,8 +25,7 @@ import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -35,14 +35,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -68,10 +73,46 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class TeacherStudentService {
 
+    /**
+     * 学生列表支持的排序字段
+     */
+    private static final Set<String> STUDENT_LIST_SORT_KEYS =
+            Set.of("enrolledAt", "username", "totalQuestions", "lastActivity");
+
+    /**
+     * 依赖提问统计的排序字段，需要先聚合全部学生再分页
+     */
+    private static final Set<String> STUDENT_LIST_STAT_SORT_KEYS = Set.of("totalQuestions", "lastActivity");
+
+    /**
+     * 报表表头与列宽（字符数）
+     */
+    private static final String[] REPORT_HEADERS = {"用户名", "邮箱", "真实姓名", "总提问数", "总文档访问数", "最后活动时间"};
+    private static final int[] REPORT_COLUMN_WIDTHS = {20, 32, 16, 12, 14, 22};
+    private static final DateTimeFormatter REPORT_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Excel流式导出时内存中保留的行数
+     */
+    private static final int EXCEL_ROW_WINDOW = 100;
+
+    /**
+     * CSV写出缓冲区大小（字符）
+     */
+    private static final int CSV_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 报表每批查询的学生数
+     */
+    static final int REPORT_BATCH_SIZE = 500;
+
     private final ClassAssociationRepository classAssociationRepository;
     private final UserRepository userRepository;
     private final QaHistoryRepository qaHistoryRepository;
+    private final QaHistoryQueryService qaHistoryQueryService;
     private final StudentFileParser studentFileParser;
+    private final QaDocumentAccessScopeResolver accessScopeResolver;
+    private final StudentRosterImporter studentRosterImporter;
 
     /**
      * 添加学生到班级
@@ -122,6 +163,7 @@ public class TeacherStudentService {
                 .build();
         
         classAssociationRepository.save(association);
+        accessScopeResolver.invalidateStudent(targetUser.getId());
         
         log.info("成功添加学生 {} 到教师 {} 的班级", targetUser.getUsername(), teacherId);
     }
@@ -130,13 +172,12 @@ public class TeacherStudentService {
      * 批量添加学生到班级
      * 
      * 业务流程：
-     * 1. 使用StudentFileParser解析上传的文件（支持CSV和Excel格式）
-     * 2. 对每个学生标识符：
-     *    - 查找用户（通过用户名或邮箱）
+     * 1. 使用StudentFileParser解析上传的文件（支持CSV和Excel格式，Excel流式读取）
+     * 2. 由StudentRosterImporter按集合处理整份名单：
+     *    - 批量查找用户（通过用户名或邮箱）
      *    - 验证用户角色为STUDENT
-     *    - 检查关联是否已存在（已存在则跳过）
-     *    - 创建ClassAssociation记录
-     * 3. 即使部分条目失败，也继续处理剩余条目
+     *    - 批量创建ClassAssociation记录（已存在则跳过）
+     * 3. 部分条目失败不影响其余条目
      * 4. 返回详细的处理结果摘要
      * 
      * @param teacherId 教师用户ID
@@ -161,38 +202,8 @@ public class TeacherStudentService {
         
         log.info("从文件中解析出 {} 个学生标识符", identifiers.size());
 
-        // 2. 初始化结果列表
-        List<String> successList = new ArrayList<>();
-        List<String> skippedList = new ArrayList<>();
-        List<BatchError> failedList = new ArrayList<>();
-
-        // 3. 获取教师引用（用于创建关联）
-        User teacher = userRepository.getReferenceById(teacherId);
-
-        // 4. 逐个处理学生标识符
-        for (String identifier : identifiers) {
-            try {
-                processStudentIdentifier(teacherId, teacher, identifier, successList, skippedList, failedList);
-            } catch (Exception e) {
-                // 捕获所有异常，确保继续处理剩余学生
-                log.error("处理学生标识符 {} 时发生未预期的错误: {}", identifier, e.getMessage());
-                failedList.add(BatchError.builder()
-                        .identifier(identifier)
-                        .reason("处理失败: " + e.getMessage())
-                        .build());
-            }
-        }
-
-        // 5. 构建并返回结果摘要
-        BatchAddStudentResponse response = BatchAddStudentResponse.builder()
-                .totalProcessed(identifiers.size())
-                .successCount(successList.size())
-                .skippedCount(skippedList.size())
-                .failedCount(failedList.size())
-                .successList(successList)
-                .skippedList(skippedList)
-                .failedList(failedList)
-                .build();
+        // 2. 批量导入
+        BatchAddStudentResponse response = studentRosterImporter.importRoster(teacherId, identifiers);
 
         log.info("批量添加学生完成 - 总数: {}, 成功: {}, 跳过: {}, 失败: {}", 
                 response.getTotalProcessed(), 
@@ -203,68 +214,6 @@ public class TeacherStudentService {
         return response;
     }
 
-    /**
-     * 处理单个学生标识符
-     * 
-     * 业务逻辑：
-     * 1. 查找用户（通过用户名或邮箱）
-     * 2. 验证用户角色为STUDENT
-     * 3. 检查关联是否已存在
-     * 4. 创建ClassAssociation记录
-     * 
-     * @param teacherId 教师ID
-     * @param teacher 教师用户引用
-     * @param identifier 学生标识符（用户名或邮箱）
-     * @param successList 成功列表（用于记录成功添加的标识符）
-     * @param skippedList 跳过列表（用于记录已存在关联的标识符）
-     * @param failedList 失败列表（用于记录失败的标识符和原因）
-     */
-    private void processStudentIdentifier(UUID teacherId, User teacher, String identifier,
-                                          List<String> successList, List<String> skippedList,
-                                          List<BatchError> failedList) {
-        // 1. 查找目标用户（通过用户名或邮箱）
-        Optional<User> userOptional = userRepository.findByUsernameOrEmail(identifier, identifier);
-        
-        if (userOptional.isEmpty()) {
-            log.debug("用户不存在: {}", identifier);
-            failedList.add(BatchError.builder()
-                    .identifier(identifier)
-                    .reason("用户不存在")
-                    .build());
-            return;
-        }
-
-        User targetUser = userOptional.get();
-
-        // 2. 验证角色 - 只能添加学生角色的用户
-        if (targetUser.getRole() != UserRole.STUDENT) {
-            log.debug("目标用户 {} 不是学生角色，当前角色: {}", identifier, targetUser.getRole());
-            failedList.add(BatchError.builder()
-                    .identifier(identifier)
-                    .reason("目标用户不是学生角色")
-                    .build());
-            return;
-        }
-
-        // 3. 检查关联是否已存在 - 已存在则跳过
-        if (classAssociationRepository.existsByTeacherIdAndStudentId(teacherId, targetUser.getId())) {
-            log.debug("学生 {} 已在教师 {} 的班级中，跳过", identifier, teacherId);
-            skippedList.add(identifier);
-            return;
-        }
-
-        // 4. 创建关联记录
-        ClassAssociation association = ClassAssociation.builder()
-                .teacher(teacher)
-                .student(targetUser)
-                .build();
-        
-        classAssociationRepository.save(association);
-        successList.add(identifier);
-        
-        log.debug("成功添加学生 {} 到教师 {} 的班级", identifier, teacherId);
-    }
-
     /**
      * 从班级移除学生
      * 
@@ -298,6 +247,7 @@ public class TeacherStudentService {
 
         // 2. 删除关联记录（不会删除用户账号或学习记录）
         classAssociationRepository.deleteByTeacherIdAndStudentId(teacherId, studentId);
+        accessScopeResolver.invalidateStudent(studentId);
         
         log.info("成功从教师 {} 的班级移除学生 {}", teacherId, studentId);
     }
@@ -307,9 +257,9 @@ public class TeacherStudentService {
      * 
      * 业务流程：
      * 1. 通过ClassAssociation过滤教师的学生
-     * 2. 支持按用户名或真实姓名搜索（大小写不敏感）
-     * 3. 支持分页和排序（默认按enrolledAt降序）
-     * 4. 聚合统计数据（总提问数、最后活动时间）
+     * 2. 支持按用户名或真实姓名搜索（大小写不敏感，在数据库中过滤）
+     * 3. 支持分页和排序（默认按enrolledAt降序，可按username、totalQuestions、lastActivity排序）
+     * 4. 聚合统计数据（总提问数、最后活动时间），与分页在同一条SQL中完成
      * 
      * @param teacherId 教师用户ID
      * @param search 搜索关键词（可选，按用户名或真实姓名搜索）
@@ -326,106 +276,115 @@ public class TeacherStudentService {
     public Page<StudentListResponse> getStudentList(UUID teacherId, String search, Pageable pageable) {
         log.info("教师 {} 查询学生列表, 搜索关键词: {}, 分页: {}", teacherId, search, pageable);
 
-        // 1. 确保默认排序为enrolledAt降序（最近加入的学生优先）
-        Pageable sortedPageable = ensureDefaultSort(pageable);
-
-        // 2. 获取教师的所有学生关联（分页）
-        Page<ClassAssociation> associationPage = classAssociationRepository.findByTeacherId(teacherId, sortedPageable);
-
-        // 3. 转换为StudentListResponse并聚合统计数据
-        List<StudentListResponse> studentResponses = associationPage.getContent().stream()
-                .map(association -> {
-                    User student = association.getStudent();
-                    
-                    // 如果有搜索条件，过滤不匹配的学生
-                    if (search != null && !search.trim().isEmpty()) {
-                        String searchLower = search.toLowerCase().trim();
-                        String username = student.getUsername() != null ? student.getUsername().toLowerCase() : "";
-                        // 注意：当前User实体没有realName字段，使用username作为替代
-                        // 如果将来添加realName字段，需要在此处添加对realName的搜索
-                        if (!username.contains(searchLower)) {
-                            return null; // 不匹配，将被过滤
-                        }
-                    }
-                    
-                    return buildStudentListResponse(association, student);
-                })
-                .filter(response -> response != null) // 过滤掉不匹配搜索条件的学生
-                .collect(Collectors.toList());
-
-        // 4. 如果有搜索条件，需要重新计算分页信息
-        // 注意：这种方式在大数据量时效率不高，建议后续优化为数据库层面的搜索
-        if (search != null && !search.trim().isEmpty()) {
-            // 获取所有匹配的学生数量（用于分页）
-            long totalMatchingStudents = countMatchingStudents(teacherId, search);
-            return new PageImpl<>(studentResponses, sortedPageable, totalMatchingStudents);
+        // 1. 解析排序（默认按enrolledAt降序，最近加入的学生优先）
+        Sort.Order order = resolveStudentListOrder(pageable);
+
+        // 2. 按统计字段排序时只能先聚合全部学生的提问再分页；
+        //    按加入时间/用户名排序时先分页，再只为本页学生统计提问
+        // 注意：当前User实体没有realName字段，只按用户名搜索
+        String searchPattern = toLikePattern(search);
+        Page<ClassAssociationRepository.StudentListRow> rows;
+        if (STUDENT_LIST_STAT_SORT_KEYS.contains(order.getProperty())) {
+            rows = classAssociationRepository.findStudentListRows(
+                    teacherId,
+                    searchPattern,
+                    order.getProperty(),
+                    order.isDescending(),
+                    PageRequest.of(pageable.getPageNumber(), pageable.getPageSize())
+            );
+        } else {
+            rows = findStudentListPage(teacherId, searchPattern, order, pageable);
         }
 
-        return new PageImpl<>(studentResponses, sortedPageable, associationPage.getTotalElements());
+        // 3. 转换为StudentListResponse
+        List<StudentListResponse> studentResponses = rows.getContent().stream()
+                .map(this::buildStudentListResponse)
+                .collect(Collectors.toList());
+
+        return new PageImpl<>(studentResponses, withOrder(pageable, order), rows.getTotalElements());
     }
 
     /**
-     * 确保分页参数包含默认排序（enrolledAt降序）
+     * 按加入时间或用户名分页查询学生列表，提问统计只覆盖本页学生
      * 
+     * @param teacherId 教师用户ID
+     * @param searchPattern 小写的LIKE模式，为null时不过滤
+     * @param order 排序条件（enrolledAt / username）
      * @param pageable 原始分页参数
-     * @return 包含默认排序的分页参数
+     * @return 分页的学生列表行
      */
-    private Pageable ensureDefaultSort(Pageable pageable) {
-        if (pageable.getSort().isUnsorted()) {
-            return PageRequest.of(
-                    pageable.getPageNumber(),
-                    pageable.getPageSize(),
-                    Sort.by(Sort.Direction.DESC, "enrolledAt")
-            );
+    private Page<ClassAssociationRepository.StudentListRow> findStudentListPage(
+            UUID teacherId, String searchPattern, Sort.Order order, Pageable pageable) {
+        long total = classAssociationRepository.countStudentListRows(teacherId, searchPattern);
+        Pageable pageRequest = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        if (pageRequest.getOffset() >= total) {
+            return new PageImpl<>(List.of(), pageRequest, total);
         }
-        return pageable;
+        List<ClassAssociationRepository.StudentListRow> content = classAssociationRepository.findStudentListPageRows(
+                teacherId,
+                searchPattern,
+                order.getProperty(),
+                order.isDescending(),
+                pageRequest.getPageSize(),
+                pageRequest.getOffset()
+        );
+        return new PageImpl<>(content, pageRequest, total);
     }
 
     /**
-     * 构建学生列表响应对象
+     * 解析学生列表排序字段，未指定时按enrolledAt降序
      * 
-     * @param association 班级关联记录
-     * @param student 学生用户
-     * @return 学生列表响应
+     * @param pageable 原始分页参数
+     * @return 第一个排序条件
+     * @throws BusinessException 排序字段不受支持时抛出
      */
-    private StudentListResponse buildStudentListResponse(ClassAssociation association, User student) {
-        UUID studentId = student.getId();
-        
-        // 获取总提问数
-        long totalQuestions = qaHistoryRepository.countByUserId(studentId);
-        
-        // 获取最后活动时间
-        LocalDateTime lastActivity = qaHistoryRepository.findLastActivityByUserId(studentId)
-                .orElse(null);
+    private Sort.Order resolveStudentListOrder(Pageable pageable) {
+        Sort.Order order = pageable.getSort().stream()
+                .findFirst()
+                .orElse(Sort.Order.desc("enrolledAt"));
+        if (!STUDENT_LIST_SORT_KEYS.contains(order.getProperty())) {
+            throw BusinessException.badRequest("sort", "不支持的排序字段: " + order.getProperty());
+        }
+        return order;
+    }
 
-        return StudentListResponse.builder()
-                .id(studentId)
-                .username(student.getUsername())
-                .email(student.getEmail())
-                .realName(null) // 当前User实体没有realName字段，设为null
-                .enrolledAt(association.getEnrolledAt())
-                .totalQuestions(totalQuestions)
-                .lastActivity(lastActivity)
-                .build();
+    private static Pageable withOrder(Pageable pageable, Sort.Order order) {
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(order));
     }
 
     /**
-     * 统计匹配搜索条件的学生数量
+     * 将搜索关键词转换为小写的LIKE模式，转义%、_和\
      * 
-     * @param teacherId 教师ID
      * @param search 搜索关键词
-     * @return 匹配的学生数量
+     * @return LIKE模式；关键词为空时返回null（不过滤）
      */
-    private long countMatchingStudents(UUID teacherId, String search) {
-        String searchLower = search.toLowerCase().trim();
-        
-        return classAssociationRepository.findByTeacherId(teacherId).stream()
-                .filter(association -> {
-                    User student = association.getStudent();
-                    String username = student.getUsername() != null ? student.getUsername().toLowerCase() : "";
-                    return username.contains(searchLower);
-                })
-                .count();
+    static String toLikePattern(String search) {
+        if (search == null || search.trim().isEmpty()) {
+            return null;
+        }
+        String escaped = search.trim().toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * 构建学生列表响应对象
+     * 
+     * @param row 聚合查询结果行
+     * @return 学生列表响应
+     */
+    private StudentListResponse buildStudentListResponse(ClassAssociationRepository.StudentListRow row) {
+        return StudentListResponse.builder()
+                .id(row.getStudentId())
+                .username(row.getUsername())
+                .email(row.getEmail())
+                .realName(null) // 当前User实体没有realName字段，设为null
+                .enrolledAt(row.getEnrolledAt())
+                .totalQuestions(row.getTotalQuestions() == null ? 0L : row.getTotalQuestions())
+                .lastActivity(row.getLastActivity())
+                .build();
     }
 
     /**
@@ -509,57 +468,57 @@ public class TeacherStudentService {
     }
 
     /**
-     * 获取学生问答历史（分页）
+     * 获取学生问答历史（游标分页）
      * 
      * 业务流程：
      * 1. 验证教师有权访问该学生（通过ClassAssociation检查）
-     * 2. 支持日期范围过滤（startDate和endDate参数）
-     * 3. 支持分页和排序（默认按askedAt降序，最新的在前）
+     * 2. 支持日期范围过滤（startDate和endDate参数）和关键词搜索
+     * 3. 按 (askedAt, id) 降序游标分页（最新的在前），翻页代价与页码无关
      * 4. 返回问题文本、答案文本和时间戳
      * 
      * @param teacherId 教师用户ID
      * @param studentId 学生用户ID
      * @param startDate 开始日期（可选，包含）
      * @param endDate 结束日期（可选，包含）
-     * @param pageable 分页参数
-     * @return 分页的问答历史响应
+     * @param keyword 关键词（可选，匹配问题或答案）
+     * @param cursor 上一页返回的 nextCursor，为空时查询第一页
+     * @param size 每页大小
+     * @return 游标分页的问答历史响应
      * @throws AuthorizationException 当教师无权访问该学生时抛出
      * 
      * 使用示例：
-     * Pageable pageable = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "askedAt"));
-     * Page<QaHistoryResponse> history = teacherStudentService.getStudentQaHistory(
-     *     teacherId, studentId, startDate, endDate, pageable);
+     * CursorPage<QaHistoryResponse> history = teacherStudentService.getStudentQaHistory(
+     *     teacherId, studentId, startDate, endDate, null, null, 20);
      * 
      * Requirements: 4.1, 4.2, 4.3, 4.4, 4.5
      */
     @Transactional(readOnly = true)
-    public Page<QaHistoryResponse> getStudentQaHistory(UUID teacherId, UUID studentId,
-                                                        LocalDateTime startDate, LocalDateTime endDate,
-                                                        Pageable pageable) {
-        log.info("教师 {} 查询学生 {} 的问答历史, 日期范围: {} - {}, 分页: {}", 
-                teacherId, studentId, startDate, endDate, pageable);
+    public CursorPage<QaHistoryResponse> getStudentQaHistory(UUID teacherId, UUID studentId,
+                                                             LocalDateTime startDate, LocalDateTime endDate,
+                                                             String keyword, String cursor, int size) {
+        log.info("教师 {} 查询学生 {} 的问答历史, 日期范围: {} - {}, 关键词: {}, 游标: {}, 每页: {}", 
+                teacherId, studentId, startDate, endDate, keyword, cursor, size);
 
         // 1. 验证教师有权访问该学生
         verifyTeacherStudentAccess(teacherId, studentId);
 
-        // 2. 确保默认排序为askedAt降序（最新的问答在前）
-        Pageable sortedPageable = ensureQaHistoryDefaultSort(pageable);
-
-        // 3. 查询问答历史（支持日期范围过滤）
-        Page<com.hiyuan.demo1.entity.QaHistory> qaHistoryPage = qaHistoryRepository.findByUserIdAndDateRange(
-                studentId, startDate, endDate, sortedPageable);
+        // 2. 按游标查询问答历史（支持日期范围过滤和关键词搜索）
+        CursorPage<QaHistory> qaHistoryPage = qaHistoryQueryService.page(
+                studentId, keyword, startDate, endDate, cursor, size);
 
-        // 4. 转换为QaHistoryResponse
-        Page<QaHistoryResponse> responsePage = qaHistoryPage.map(qaHistory -> 
+        // 3. 转换为QaHistoryResponse
+        CursorPage<QaHistoryResponse> responsePage = qaHistoryPage.map(qaHistory -> 
                 QaHistoryResponse.builder()
                         .id(qaHistory.getId())
                         .question(qaHistory.getQuestion())
                         .answer(qaHistory.getAnswer())
                         .askedAt(qaHistory.getAskedAt())
+                        .truncated(qaHistory.getTruncated())
                         .build()
         );
 
-        log.info("成功获取学生 {} 的问答历史, 共 {} 条记录", studentId, responsePage.getTotalElements());
+        log.info("成功获取学生 {} 的问答历史, 本页 {} 条, 是否还有下一页: {}",
+                studentId, responsePage.getContent().size(), responsePage.isHasNext());
         return responsePage;
     }
 
@@ -577,23 +536,6 @@ public class TeacherStudentService {
         }
     }
 
-    /**
-     * 确保问答历史分页参数包含默认排序（askedAt降序）
-     * 
-     * @param pageable 原始分页参数
-     * @return 包含默认排序的分页参数
-     */
-    private Pageable ensureQaHistoryDefaultSort(Pageable pageable) {
-        if (pageable.getSort().isUnsorted()) {
-            return PageRequest.of(
-                    pageable.getPageNumber(),
-                    pageable.getPageSize(),
-                    Sort.by(Sort.Direction.DESC, "askedAt")
-            );
-        }
-        return pageable;
-    }
-
     /**
      * 获取学生文档访问记录（分页）
      * 
@@ -673,13 +615,17 @@ public class TeacherStudentService {
     }
 
     /**
-     * 导出学生数据报表
+     * 导出学生数据报表（流式写出）
      * 
      * 业务流程：
-     * 1. 获取教师的所有学生（通过ClassAssociation过滤）
-     * 2. 为每个学生构建报表数据（支持日期范围过滤活动数据）
-     * 3. 根据format参数生成CSV或Excel格式的报表
-     * 4. 返回报表文件的字节数组
+     * 1. 按 (加入时间, 关联ID) 游标分批查询学生报表数据，每批 REPORT_BATCH_SIZE 行（支持日期范围过滤活动数据）
+     * 2. 写完一批再查询下一批，每批查询是独立的短事务，写出期间不占用数据库连接
+     * 3. 根据format参数写出CSV或Excel格式的报表
+     * 
+     * 内存占用与学生数量无关：CSV经缓冲写出，Excel使用SXSSF只在内存保留最近的
+     * EXCEL_ROW_WINDOW行，其余行写入临时文件。
+     * 不在事务中执行：下载较慢的客户端不会长时间占住连接池中的连接；
+     * 各批次不共享快照，导出期间新加入的学生可能不出现在报表中。
      * 
      * 报表包含字段：
      * - username: 用户名
@@ -693,88 +639,106 @@ public class TeacherStudentService {
      * @param startDate 开始日期（可选，用于过滤活动数据）
      * @param endDate 结束日期（可选，用于过滤活动数据）
      * @param format 导出格式，支持 "csv" 或 "excel"，默认为 "csv"
-     * @return 报表文件的字节数组
-     * @throws BusinessException 当生成报表失败时抛出
+     * @param outputStream 报表输出流（通常为HTTP响应输出流），由调用方负责关闭
+     * @throws IOException 写出失败（如客户端断开连接）时抛出
      * 
      * 使用示例：
      * // 导出CSV格式报表（全部数据）
-     * byte[] csvReport = teacherStudentService.exportStudentReport(teacherId, null, null, "csv");
+     * teacherStudentService.writeStudentReport(teacherId, null, null, "csv", response.getOutputStream());
      * 
      * // 导出Excel格式报表（指定日期范围）
-     * byte[] excelReport = teacherStudentService.exportStudentReport(
+     * teacherStudentService.writeStudentReport(
      *     teacherId, 
      *     LocalDateTime.of(2024, 1, 1, 0, 0), 
      *     LocalDateTime.of(2024, 12, 31, 23, 59), 
-     *     "excel"
+     *     "excel",
+     *     response.getOutputStream()
      * );
      * 
      * Requirements: 9.1, 9.2, 9.3, 9.4, 9.5
      */
-    @Transactional(readOnly = true)
-    public byte[] exportStudentReport(UUID teacherId, LocalDateTime startDate, LocalDateTime endDate, String format) {
+    public void writeStudentReport(UUID teacherId, LocalDateTime startDate, LocalDateTime endDate,
+                                   String format, OutputStream outputStream) throws IOException {
         log.info("教师 {} 导出学生报表, 日期范围: {} - {}, 格式: {}", teacherId, startDate, endDate, format);
+        long start = System.currentTimeMillis();
 
-        // 1. 获取教师的所有学生关联
-        List<ClassAssociation> associations = classAssociationRepository.findByTeacherId(teacherId);
-        
-        log.info("找到 {} 个学生关联", associations.size());
-
-        // 2. 为每个学生构建报表数据
-        List<StudentReportData> reportData = associations.stream()
-                .map(association -> buildStudentReportData(association.getStudent(), startDate, endDate))
-                .collect(Collectors.toList());
-
-        // 3. 根据格式生成报表
-        byte[] reportBytes;
+        Iterator<StudentReportData> reportData = new StudentReportIterator(teacherId, startDate, endDate);
+        long rowCount;
         if ("excel".equalsIgnoreCase(format)) {
-            reportBytes = generateExcelReport(reportData);
+            rowCount = writeExcelReport(reportData, outputStream);
         } else {
-            reportBytes = generateCsvReport(reportData);
+            rowCount = writeCsvReport(reportData, outputStream);
+        }
+
+        log.info("成功导出学生报表, 格式: {}, 学生数量: {}, 耗时: {}ms",
+                format, rowCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 按游标分批读取报表行：当前批次读完后才查询下一批
+     */
+    private final class StudentReportIterator implements Iterator<StudentReportData> {
+
+        private final UUID teacherId;
+        private final LocalDateTime startDate;
+        private final LocalDateTime endDate;
+        private Iterator<ClassAssociationRepository.StudentReportRow> batch = Collections.emptyIterator();
+        private ClassAssociationRepository.StudentReportRow last;
+        private boolean exhausted;
+
+        StudentReportIterator(UUID teacherId, LocalDateTime startDate, LocalDateTime endDate) {
+            this.teacherId = teacherId;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!batch.hasNext() && !exhausted) {
+                List<ClassAssociationRepository.StudentReportRow> rows = classAssociationRepository.findStudentReportBatch(
+                        teacherId, startDate, endDate,
+                        last == null ? null : last.getEnrolledAt(),
+                        last == null ? null : last.getAssociationId(),
+                        REPORT_BATCH_SIZE);
+                exhausted = rows.size() < REPORT_BATCH_SIZE;
+                batch = rows.iterator();
+            }
+            return batch.hasNext();
         }
 
-        log.info("成功生成学生报表, 格式: {}, 大小: {} 字节", format, reportBytes.length);
-        return reportBytes;
+        @Override
+        public StudentReportData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = batch.next();
+            return buildStudentReportData(last);
+        }
     }
 
     /**
      * 构建单个学生的报表数据
      * 
-     * @param student 学生用户
-     * @param startDate 开始日期（可选，用于过滤活动数据）
-     * @param endDate 结束日期（可选，用于过滤活动数据）
+     * @param row 报表查询结果行
      * @return 学生报表数据
      */
-    private StudentReportData buildStudentReportData(User student, LocalDateTime startDate, LocalDateTime endDate) {
-        UUID studentId = student.getId();
-        
-        // 计算总提问数（支持日期范围过滤）
-        long totalQuestions;
-        if (startDate != null || endDate != null) {
-            totalQuestions = qaHistoryRepository.countByUserIdAndDateRange(studentId, startDate, endDate);
-        } else {
-            totalQuestions = qaHistoryRepository.countByUserId(studentId);
-        }
-        
+    private StudentReportData buildStudentReportData(ClassAssociationRepository.StudentReportRow row) {
         // 文档访问数：当前没有文档访问记录表，设为0
-        // TODO: 如果将来添加文档访问记录表，需要在此处更新统计逻辑
+        // TODO: 如果将来添加文档访问记录表，需要在报表查询中加入统计
         long totalDocumentAccesses = 0L;
-        
-        // 获取最后活动时间
-        LocalDateTime lastActivity = qaHistoryRepository.findLastActivityByUserId(studentId)
-                .orElse(null);
 
         return StudentReportData.builder()
-                .username(student.getUsername())
-                .email(student.getEmail())
+                .username(row.getUsername())
+                .email(row.getEmail())
                 .realName(null) // 当前User实体没有realName字段，设为null
-                .totalQuestions(totalQuestions)
+                .totalQuestions(row.getTotalQuestions() == null ? 0L : row.getTotalQuestions())
                 .totalDocumentAccesses(totalDocumentAccesses)
-                .lastActivity(lastActivity)
+                .lastActivity(row.getLastActivity())
                 .build();
     }
 
     /**
-     * 生成CSV格式报表
+     * 写出CSV格式报表
      * 
      * CSV格式说明：
      * - 使用UTF-8编码（带BOM，确保Excel正确识别中文）
@@ -782,34 +746,41 @@ public class TeacherStudentService {
      * - 字段值包含逗号、引号或换行符时，使用双引号包裹
      * - 字段值中的双引号使用两个双引号转义
      * 
-     * @param reportData 学生报表数据列表
-     * @return CSV文件的字节数组
+     * @param reportData 学生报表数据
+     * @param outputStream 输出流
+     * @return 写出的学生数量
+     * @throws IOException 写出失败时抛出
      */
-    private byte[] generateCsvReport(List<StudentReportData> reportData) {
-        log.debug("生成CSV格式报表, 学生数量: {}", reportData.size());
-        
-        StringBuilder csv = new StringBuilder();
+    private long writeCsvReport(Iterator<StudentReportData> reportData, OutputStream outputStream) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
         
         // 添加UTF-8 BOM，确保Excel正确识别中文
-        csv.append('\uFEFF');
+        csv.write('\uFEFF');
         
         // 添加表头
-        csv.append("用户名,邮箱,真实姓名,总提问数,总文档访问数,最后活动时间\n");
-        
-        // 日期时间格式化器
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        csv.write("用户名,邮箱,真实姓名,总提问数,总文档访问数,最后活动时间\n");
         
-        // 添加数据行
-        for (StudentReportData data : reportData) {
-            csv.append(escapeCsvField(data.getUsername())).append(",");
-            csv.append(escapeCsvField(data.getEmail())).append(",");
-            csv.append(escapeCsvField(data.getRealName())).append(",");
-            csv.append(data.getTotalQuestions() != null ? data.getTotalQuestions() : 0).append(",");
-            csv.append(data.getTotalDocumentAccesses() != null ? data.getTotalDocumentAccesses() : 0).append(",");
-            csv.append(data.getLastActivity() != null ? data.getLastActivity().format(formatter) : "").append("\n");
+        // 逐行写出数据，缓冲区写满时自动刷到输出流
+        long rowCount = 0;
+        while (reportData.hasNext()) {
+            StudentReportData data = reportData.next();
+            csv.write(escapeCsvField(data.getUsername()));
+            csv.write(',');
+            csv.write(escapeCsvField(data.getEmail()));
+            csv.write(',');
+            csv.write(escapeCsvField(data.getRealName()));
+            csv.write(',');
+            csv.write(String.valueOf(data.getTotalQuestions() != null ? data.getTotalQuestions() : 0));
+            csv.write(',');
+            csv.write(String.valueOf(data.getTotalDocumentAccesses() != null ? data.getTotalDocumentAccesses() : 0));
+            csv.write(',');
+            csv.write(data.getLastActivity() != null ? data.getLastActivity().format(REPORT_TIME_FORMATTER) : "");
+            csv.write('\n');
+            rowCount++;
         }
         
-        return csv.toString().getBytes(StandardCharsets.UTF_8);
+        csv.flush();
+        return rowCount;
     }
 
     /**
@@ -837,23 +808,23 @@ public class TeacherStudentService {
     }
 
     /**
-     * 生成Excel格式报表
+     * 写出Excel格式报表
      * 
      * Excel格式说明：
-     * - 使用Apache POI生成XLSX格式（Office 2007+）
+     * - 使用Apache POI SXSSF流式生成XLSX格式（Office 2007+），内存中只保留最近的EXCEL_ROW_WINDOW行
      * - 第一行为表头，使用粗体样式
-     * - 自动调整列宽以适应内容
+     * - 使用固定列宽（流式写出时无法按全部内容自动调整列宽）
      * 
-     * @param reportData 学生报表数据列表
-     * @return Excel文件的字节数组
-     * @throws BusinessException 当生成Excel失败时抛出
+     * @param reportData 学生报表数据
+     * @param outputStream 输出流
+     * @return 写出的学生数量
+     * @throws IOException 写出失败时抛出
      */
-    private byte[] generateExcelReport(List<StudentReportData> reportData) {
-        log.debug("生成Excel格式报表, 学生数量: {}", reportData.size());
-        
-        try (Workbook workbook = new XSSFWorkbook();
-             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            
+    private long writeExcelReport(Iterator<StudentReportData> reportData, OutputStream outputStream) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW);
+        // 临时文件压缩，避免大报表占用过多磁盘
+        workbook.setCompressTempFiles(true);
+        try {
             // 创建工作表
             Sheet sheet = workbook.createSheet("学生数据报表");
             
@@ -863,21 +834,19 @@ public class TeacherStudentService {
             headerFont.setBold(true);
             headerStyle.setFont(headerFont);
             
-            // 创建表头行
+            // 创建表头行并设置列宽
             Row headerRow = sheet.createRow(0);
-            String[] headers = {"用户名", "邮箱", "真实姓名", "总提问数", "总文档访问数", "最后活动时间"};
-            for (int i = 0; i < headers.length; i++) {
+            for (int i = 0; i < REPORT_HEADERS.length; i++) {
                 Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
+                cell.setCellValue(REPORT_HEADERS[i]);
                 cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, REPORT_COLUMN_WIDTHS[i] * 256);
             }
             
-            // 日期时间格式化器
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            
-            // 添加数据行
+            // 添加数据行，超出窗口的行由SXSSF写入临时文件
             int rowNum = 1;
-            for (StudentReportData data : reportData) {
+            while (reportData.hasNext()) {
+                StudentReportData data = reportData.next();
                 Row row = sheet.createRow(rowNum++);
                 
                 row.createCell(0).setCellValue(data.getUsername() != null ? data.getUsername() : "");
@@ -885,22 +854,17 @@ public class TeacherStudentService {
                 row.createCell(2).setCellValue(data.getRealName() != null ? data.getRealName() : "");
                 row.createCell(3).setCellValue(data.getTotalQuestions() != null ? data.getTotalQuestions() : 0);
                 row.createCell(4).setCellValue(data.getTotalDocumentAccesses() != null ? data.getTotalDocumentAccesses() : 0);
-                row.createCell(5).setCellValue(data.getLastActivity() != null ? data.getLastActivity().format(formatter) : "");
-            }
-            
-            // 自动调整列宽
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
+                row.createCell(5).setCellValue(data.getLastActivity() != null ? data.getLastActivity().format(REPORT_TIME_FORMATTER) : "");
             }
             
             // 写入输出流
             workbook.write(outputStream);
-            
-            return outputStream.toByteArray();
-            
-        } catch (IOException e) {
-            log.error("生成Excel报表失败: {}", e.getMessage(), e);
-            throw new BusinessException("生成Excel报表失败: " + e.getMessage());
+            outputStream.flush();
+            return rowNum - 1L;
+        } finally {
+            // 删除SXSSF临时文件
+            workbook.dispose();
+            workbook.close();
         }
     }
 }
@@ -0,0 +1,82 @@
+package com.hiyuan.demo1.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * 向量近邻查询的执行环境
+ *
+ * HNSW 单次索引扫描最多返回 hnsw.ef_search 条结果，量化检索召回的重排候选数超过它时会被静默截断。
+ * 这里把近邻查询放进一个只读事务，先用 set_config(..., true)（等价于 SET LOCAL）
+ * 把 ef_search 调到不小于本次候选数，事务结束后自动恢复。
+ * 设置只在事务内生效，经 Supabase 事务模式连接池时也可靠（会话级 SET 不保证落在同一后端连接上）。
+ *
+ * 带过滤条件的近邻查询（如限定候选文档）在索引扫描之后才过滤，命中行可能少于 LIMIT。
+ * pgvector 0.8 及以上可开启 hnsw.iterative_scan，索引扫描会持续推进直到凑够结果；
+ * 旧版本不认识该参数，因此默认关闭，由调用方在结果不足时回退为精确检索。
+ */
+@Slf4j
+@Component
+public class VectorSearchExecutor {
+
+    // pgvector 允许的 ef_search 上限
+    static final int MAX_EF_SEARCH = 1000;
+
+    private static final String SET_EF_SEARCH_SQL = "SELECT set_config('hnsw.ef_search', ?, true)";
+    private static final String SET_ITERATIVE_SCAN_SQL = "SELECT set_config('hnsw.iterative_scan', ?, true)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    // 候选数较少时使用的 ef_search（pgvector 默认 40），值越大召回越好、扫描越慢
+    @Value("${qa.retrieval.ef-search:40}")
+    private int baseEfSearch;
+
+    // HNSW 迭代扫描模式：off / strict_order / relaxed_order（需要 pgvector 0.8+）
+    @Value("${qa.retrieval.iterative-scan:off}")
+    private String iterativeScan;
+
+    public VectorSearchExecutor(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 在只读事务中执行近邻查询，ef_search 不小于 candidates
+     *
+     * @param candidates 本次查询需要 HNSW 索引返回的候选数（量化检索为重排前的候选数）
+     */
+    public <T> T execute(int candidates, Supplier<T> query) {
+        int efSearch = efSearchFor(candidates);
+        return readOnlyTransaction.execute(status -> {
+            jdbcTemplate.queryForObject(SET_EF_SEARCH_SQL, String.class, String.valueOf(efSearch));
+            if (iterativeScanEnabled()) {
+                jdbcTemplate.queryForObject(SET_ITERATIVE_SCAN_SQL, String.class, iterativeScan);
+            }
+            return query.get();
+        });
+    }
+
+    private boolean iterativeScanEnabled() {
+        return iterativeScan != null && !iterativeScan.isBlank() && !"off".equalsIgnoreCase(iterativeScan);
+    }
+
+    /**
+     * 候选数超过 pgvector 上限时按上限执行，召回数可能少于候选数
+     */
+    int efSearchFor(int candidates) {
+        int efSearch = Math.max(baseEfSearch, candidates);
+        if (efSearch > MAX_EF_SEARCH) {
+            log.warn("向量检索候选数 {} 超过 ef_search 上限 {}，按上限执行", candidates, MAX_EF_SEARCH);
+            return MAX_EF_SEARCH;
+        }
+        return efSearch;
+    }
+}
@@ -43,4 +43,20 @@ public class VectorStorageService {
         
         log.debug("向量记录插入成功: id={}", id);
     }
+
+    /**
+     * 更新文档质心向量
+     * centroid 列未映射到实体，使用原生 SQL 写入
+     */
+    @Transactional
+    public void updateDocumentCentroid(UUID documentId, String centroid) {
+        log.debug("更新文档质心: documentId={}", documentId);
+
+        entityManager.createNativeQuery("""
+            UPDATE t_document SET centroid = CAST(:centroid AS vector) WHERE id = :documentId
+            """)
+            .setParameter("centroid", centroid)
+            .setParameter("documentId", documentId)
+            .executeUpdate();
+    }
 }
@@ -0,0 +1,69 @@
+package com.hiyuan.demo1.util;
+
+/**
+ * 区分中日韩文字与拉丁文字的通用 token 估算
+ * <ul>
+ *   <li>中日韩文字：每个字按 cjkTokensPerChar 计（主流中文模型约 0.6~1.0，默认取 1.0 偏保守）</li>
+ *   <li>连续的字母数字：按 latinCharsPerToken 个字符一个 token 计</li>
+ *   <li>标点和其他符号：每个 1 个 token；空白不计</li>
+ * </ul>
+ * 估算宁高勿低，超出预算的风险比少放一点上下文更大。
+ */
+public final class CjkTokenEstimator implements TokenEstimator {
+
+    public static final CjkTokenEstimator DEFAULT = new CjkTokenEstimator(1.0, 4.0);
+
+    private final double cjkTokensPerChar;
+    private final double latinCharsPerToken;
+
+    public CjkTokenEstimator(double cjkTokensPerChar, double latinCharsPerToken) {
+        if (cjkTokensPerChar <= 0 || latinCharsPerToken <= 0) {
+            throw new IllegalArgumentException("token 估算系数必须大于 0");
+        }
+        this.cjkTokensPerChar = cjkTokensPerChar;
+        this.latinCharsPerToken = latinCharsPerToken;
+    }
+
+    @Override
+    public boolean supports(String modelName) {
+        return true;
+    }
+
+    @Override
+    public int estimate(CharSequence text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        double tokens = 0;
+        int latinRun = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint) && !isCjk(codePoint)) {
+                latinRun++;
+                continue;
+            }
+            if (latinRun > 0) {
+                tokens += Math.ceil(latinRun / latinCharsPerToken);
+                latinRun = 0;
+            }
+            if (isCjk(codePoint)) {
+                tokens += cjkTokensPerChar;
+            } else if (!Character.isWhitespace(codePoint)) {
+                tokens += 1;
+            }
+        }
+        if (latinRun > 0) {
+            tokens += Math.ceil(latinRun / latinCharsPerToken);
+        }
+        return (int) Math.ceil(tokens);
+    }
+
+    static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,67 @@
+package com.hiyuan.demo1.util;
+
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 流式调用的 single-flight 合并
+ *
+ * 相同 key 的并发订阅共享同一个上游订阅：上游通过 replay().refCount() 多播，
+ * 晚加入的订阅者先收到已发出的全部元素再接续实时元素；所有订阅者都取消时才取消上游。
+ * 上游结束（完成、出错或被取消）时，在结束信号传给订阅者之前就标记并移除 key，
+ * 之后的订阅一律重新发起。否则结束后、移除前到达的订阅者会加入已结束的 replay().refCount()，
+ * 在引用计数归零后重新连接上游，绕过合并重复生成。
+ * 加入或新建在订阅时进行，已标记结束的条目视同不存在。
+ */
+public final class FluxSingleFlight<K, T> {
+
+    private final Map<K, Flight<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong joinedCount = new AtomicLong();
+
+    public Flux<T> share(K key, Supplier<Flux<T>> supplier) {
+        return Flux.defer(() -> acquire(key, supplier).shared);
+    }
+
+    private Flight<T> acquire(K key, Supplier<Flux<T>> supplier) {
+        AtomicReference<Flight<T>> created = new AtomicReference<>();
+        Flight<T> flight = inFlight.compute(key, (k, existing) -> {
+            if (existing != null && !existing.terminated) {
+                return existing;
+            }
+            Flight<T> fresh = new Flight<>();
+            fresh.shared = supplier.get()
+                    .doOnTerminate(() -> release(k, fresh))
+                    .doOnCancel(() -> release(k, fresh))
+                    .replay()
+                    .refCount();
+            created.set(fresh);
+            return fresh;
+        });
+        if (flight != created.get()) {
+            joinedCount.incrementAndGet();
+        }
+        return flight;
+    }
+
+    private void release(K key, Flight<T> flight) {
+        flight.terminated = true;
+        inFlight.remove(key, flight);
+    }
+
+    /**
+     * 加入已有上游而非新建上游的订阅次数
+     */
+    public long joinedCount() {
+        return joinedCount.get();
+    }
+
+    private static final class Flight<T> {
+        private Flux<T> shared;
+        private volatile boolean terminated;
+    }
+}
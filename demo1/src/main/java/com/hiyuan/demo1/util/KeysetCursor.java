@@ -0,0 +1,51 @@
+package com.hiyuan.demo1.util;
+
+import com.hiyuan.demo1.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * 按 (时间, ID) 排序的游标分页位置
+ *
+ * 对外编码为不透明的 URL 安全 Base64 字符串，客户端只原样回传，
+ * 不依赖其中的格式
+ *
+ * @param at 上一页最后一条记录的排序时间
+ * @param id 上一页最后一条记录的ID（时间相同时用来区分先后）
+ */
+public record KeysetCursor(LocalDateTime at, UUID id) {
+
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        String raw = at.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析客户端回传的游标
+     *
+     * @param cursor 游标字符串，为空时返回 null（表示第一页）
+     * @throws BusinessException 游标格式无效
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw BusinessException.badRequest("cursor", "无效的分页游标");
+            }
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw BusinessException.badRequest("cursor", "无效的分页游标");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.hiyuan.demo1.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的提示词模板
+ *
+ * 模板在类加载时解析一次，拆成静态文本段和 {{name}} 占位符；渲染时只按顺序拼接，
+ * 不再每次调用 String.format 重新解析格式串。没有占位符的模板直接返回编译时得到的同一个字符串。
+ * <ul>
+ *   <li>占位符名只允许字母、数字和下划线，不支持转义和嵌套</li>
+ *   <li>渲染时缺少的变量或 null 值按空字符串处理</li>
+ * </ul>
+ */
+public final class PromptTemplate {
+
+    private final String[] literals;
+    private final String[] names;
+    private final int staticLength;
+    private final String staticText;
+
+    private PromptTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.staticLength = length;
+        this.staticText = names.length == 0 ? literals[0] : null;
+    }
+
+    public static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int open = template.indexOf("{{", start);
+            if (open < 0) {
+                break;
+            }
+            int close = template.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("提示词模板占位符未闭合: " + template.substring(open));
+            }
+            String name = template.substring(open + 2, close).strip();
+            if (!name.matches("\\w+")) {
+                throw new IllegalArgumentException("提示词模板占位符名称无效: " + name);
+            }
+            literals.add(template.substring(start, open));
+            names.add(name);
+            start = close + 2;
+        }
+        literals.add(template.substring(start));
+        return new PromptTemplate(literals.toArray(String[]::new), names.toArray(String[]::new));
+    }
+
+    /**
+     * 没有占位符时为模板原文，否则为 null
+     */
+    public String staticText() {
+        return staticText;
+    }
+
+    public String render(Map<String, ?> values) {
+        if (staticText != null) {
+            return staticText;
+        }
+        StringBuilder out = new StringBuilder(staticLength + 256);
+        renderTo(out, values);
+        return out.toString();
+    }
+
+    public void renderTo(StringBuilder out, Map<String, ?> values) {
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            Object value = values.get(names[i]);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals[names.length]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.hiyuan.demo1.util;
+
+/**
+ * 标量实现：未启用 Vector API 时的回退方案，也是 SIMD 实现的正确性基准
+ * <p>
+ * 逐元素乘积和累加都用 double，与 SIMD 实现一致，1024 维点积不会因 float 累加误差改变排序
+ */
+final class ScalarVectorKernels implements VectorKernels {
+
+    static final ScalarVectorKernels INSTANCE = new ScalarVectorKernels();
+
+    private ScalarVectorKernels() {
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        return (float) dotAt(a, b, 0, length);
+    }
+
+    @Override
+    public float l2Norm(float[] vector, int length) {
+        return (float) Math.sqrt(dotAt(vector, vector, 0, length));
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b, int length) {
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < length; i++) {
+            dot += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        double denom = Math.sqrt(normA) * Math.sqrt(normB);
+        return denom == 0.0 ? 0f : (float) (dot / denom);
+    }
+
+    @Override
+    public void dotBatch(float[] query, float[] matrix, int dimension, int rows, float[] scores) {
+        for (int row = 0; row < rows; row++) {
+            scores[row] = (float) dotAt(query, matrix, row * dimension, dimension);
+        }
+    }
+
+    private static double dotAt(float[] query, float[] matrix, int offset, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += (double) query[i] * matrix[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,56 @@
+package com.hiyuan.demo1.util;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.List;
+
+/**
+ * 流式问答 SSE 事件的预编码 JSON 写入器
+ *
+ * delta / status 事件结构固定，直接拼接 JSON 字符串，
+ * 避免每个 token 都创建 Map 并经过 ObjectMapper 序列化
+ */
+public final class SseEventEncoder {
+
+    private static final String DELTA_PREFIX = "{\"content\":\"";
+    private static final String DELTA_SUFFIX = "\"}";
+
+    /**
+     * status 事件：检索开始
+     */
+    public static final String STATUS_RETRIEVING = "{\"stage\":\"retrieving\"}";
+
+    private SseEventEncoder() {
+    }
+
+    /**
+     * 编码单个增量，输出与 {"content": chunk} 经 Jackson 序列化的结果一致
+     */
+    public static String delta(String chunk) {
+        StringBuilder json = new StringBuilder(chunk.length() + DELTA_PREFIX.length() + DELTA_SUFFIX.length() + 8);
+        json.append(DELTA_PREFIX);
+        JsonStringEncoder.getInstance().quoteAsString(chunk, json);
+        return json.append(DELTA_SUFFIX).toString();
+    }
+
+    /**
+     * 将相邻的多个增量合并编码为一个 delta 事件
+     * JSON 转义逐字符进行，分段转义后拼接与整体转义结果相同
+     */
+    public static String delta(List<String> chunks) {
+        if (chunks.size() == 1) {
+            return delta(chunks.get(0));
+        }
+        int length = DELTA_PREFIX.length() + DELTA_SUFFIX.length() + 8;
+        for (String chunk : chunks) {
+            length += chunk.length();
+        }
+        StringBuilder json = new StringBuilder(length);
+        json.append(DELTA_PREFIX);
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        for (String chunk : chunks) {
+            encoder.quoteAsString(chunk, json);
+        }
+        return json.append(DELTA_SUFFIX).toString();
+    }
+}
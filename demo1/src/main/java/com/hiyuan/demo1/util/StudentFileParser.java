@@ -2,21 +2,30 @@ package com.hiyuan.demo1.util;
 
 import com.hiyuan.demo1.exception.BusinessException;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -26,7 +35,7 @@ import java.util.List;
  * 
  * 支持的文件格式：
  * - CSV文件（.csv）：逗号分隔值，每行一个学生标识符
- * - Excel文件（.xlsx）：第一列为学生标识符
+ * - Excel文件（.xlsx）：第一列为学生标识符（SAX 流式读取）
  * 
  * 文件格式要求：
  * - CSV文件：每行包含一个学生标识符（用户名或邮箱），可以有标题行
@@ -168,6 +177,9 @@ public class StudentFileParser {
      * - 自动跳过空行和空单元格
      * - 自动跳过常见的标题行
      * 
+     * 使用 XSSF 事件模型（SAX）逐行读取工作表 XML，不构建完整的 XSSFWorkbook 对象树，
+     * 大名单（数千行）解析时内存占用只与标识符数量相关。
+     * 
      * @param inputStream 文件输入流
      * @return 学生标识符列表
      * @throws IOException 当读取文件失败时抛出
@@ -177,45 +189,29 @@ public class StudentFileParser {
     List<String> parseExcelFile(InputStream inputStream) throws IOException {
         List<String> identifiers = new ArrayList<>();
 
-        try (Workbook workbook = new XSSFWorkbook(inputStream)) {
-            // 获取第一个工作表
-            Sheet sheet = workbook.getSheetAt(0);
+        try (OPCPackage pkg = OPCPackage.open(inputStream)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
             
-            if (sheet == null) {
+            // 获取第一个工作表
+            if (!sheets.hasNext()) {
                 throw new BusinessException("Excel 文件中没有工作表");
             }
 
-            int rowNumber = 0;
+            XMLReader sheetParser = XMLHelper.newXMLReader();
+            sheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                    reader.getStylesTable(),
+                    new ReadOnlySharedStringsTable(pkg),
+                    new FirstColumnHandler(identifiers),
+                    new DataFormatter(),
+                    false));
             
-            for (Row row : sheet) {
-                rowNumber++;
-                
-                // 获取第一列单元格
-                Cell cell = row.getCell(0);
-                
-                if (cell == null) {
-                    continue;
-                }
-
-                // 获取单元格值
-                String identifier = getCellValueAsString(cell);
-                
-                // 去除首尾空白
-                identifier = identifier.trim();
-                
-                // 跳过空标识符
-                if (identifier.isEmpty()) {
-                    continue;
-                }
-
-                // 跳过标题行
-                if (rowNumber == 1 && isHeaderRow(identifier)) {
-                    log.debug("跳过标题行: {}", identifier);
-                    continue;
-                }
-
-                identifiers.add(identifier);
+            try (InputStream sheet = sheets.next()) {
+                sheetParser.parse(new InputSource(sheet));
             }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            log.error("解析 Excel 文件失败", e);
+            throw new BusinessException("Excel 文件解析失败: " + e.getMessage());
         }
 
         if (identifiers.isEmpty()) {
@@ -225,6 +221,56 @@ public class StudentFileParser {
         return identifiers;
     }
 
+    /**
+     * 工作表行回调：只收集第一列（A列）的单元格值
+     */
+    private class FirstColumnHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final List<String> identifiers;
+        private int rowNumber;
+        private int cellIndex;
+
+        FirstColumnHandler(List<String> identifiers) {
+            this.identifiers = identifiers;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            rowNumber++;
+            cellIndex = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // 没有 r 属性时按单元格在行内的顺序判断列
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : cellIndex;
+            cellIndex++;
+            if (column != 0 || formattedValue == null) {
+                return;
+            }
+
+            // 去除首尾空白
+            String identifier = formattedValue.trim();
+            
+            // 跳过空标识符
+            if (identifier.isEmpty()) {
+                return;
+            }
+
+            // 跳过标题行
+            if (rowNumber == 1 && isHeaderRow(identifier)) {
+                log.debug("跳过标题行: {}", identifier);
+                return;
+            }
+
+            identifiers.add(identifier);
+        }
+    }
+
     /**
      * 从 CSV 行中提取第一列
      * 
@@ -297,48 +343,4 @@ public class StudentFileParser {
         
         return false;
     }
-
-    /**
-     * 获取单元格值作为字符串
-     * 
-     * 支持的单元格类型：
-     * - STRING：直接返回字符串值
-     * - NUMERIC：转换为字符串（去除小数点后的 .0）
-     * - BOOLEAN：转换为 "true" 或 "false"
-     * - FORMULA：获取公式计算结果
-     * - 其他类型：返回空字符串
-     * 
-     * @param cell Excel 单元格
-     * @return 单元格值的字符串表示
-     */
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null) {
-            return "";
-        }
-
-        CellType cellType = cell.getCellType();
-        
-        // 如果是公式，获取公式计算结果的类型
-        if (cellType == CellType.FORMULA) {
-            cellType = cell.getCachedFormulaResultType();
-        }
-
-        switch (cellType) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                // 将数字转换为字符串，去除小数点后的 .0
-                double numericValue = cell.getNumericCellValue();
-                if (numericValue == Math.floor(numericValue)) {
-                    return String.valueOf((long) numericValue);
-                }
-                return String.valueOf(numericValue);
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case BLANK:
-                return "";
-            default:
-                return "";
-        }
-    }
 }
@@ -0,0 +1,21 @@
+package com.hiyuan.demo1.util;
+
+/**
+ * 提示词 token 数估算
+ * <p>
+ * 不同模型的分词器对中英文的切分差别很大（同一段中文在不同模型上可相差一倍），
+ * 需要更准确估算的模型可以注册自己的实现（Spring Bean），按 {@link #supports(String)} 匹配当前模型；
+ * 没有匹配的实现时使用 {@link CjkTokenEstimator}。
+ */
+public interface TokenEstimator {
+
+    /**
+     * 是否适用于该模型（模型名称来自提供商配置，例如 deepseek-ai/DeepSeek-V3）
+     */
+    boolean supports(String modelName);
+
+    /**
+     * 估算文本的 token 数
+     */
+    int estimate(CharSequence text);
+}
@@ -0,0 +1,43 @@
+package com.hiyuan.demo1.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 运行时选择向量计算内核
+ * <p>
+ * SIMD 实现通过反射加载：未启用 jdk.incubator.vector 模块时不会触发相关类的链接，直接回退为标量实现
+ */
+@Slf4j
+final class VectorKernelSelector {
+
+    static final String FORCE_SCALAR_PROPERTY = "vector.kernels.scalar";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String SIMD_IMPLEMENTATION = "com.hiyuan.demo1.util.SimdVectorKernels";
+
+    static final VectorKernels INSTANCE = select();
+
+    private VectorKernelSelector() {
+    }
+
+    private static VectorKernels select() {
+        if (Boolean.getBoolean(FORCE_SCALAR_PROPERTY)) {
+            log.info("向量计算内核: scalar（{}=true）", FORCE_SCALAR_PROPERTY);
+            return ScalarVectorKernels.INSTANCE;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            log.warn("向量计算内核: scalar（未启用 --add-modules {}，java -jar 启动时需显式添加该参数）", VECTOR_MODULE);
+            return ScalarVectorKernels.INSTANCE;
+        }
+        try {
+            VectorKernels simd = (VectorKernels) Class.forName(SIMD_IMPLEMENTATION)
+                    .getDeclaredConstructor()
+                    .newInstance();
+            log.info("向量计算内核: {}", simd.name());
+            return simd;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector API 初始化失败，回退为标量实现: {}", e.toString());
+            return ScalarVectorKernels.INSTANCE;
+        }
+    }
+}
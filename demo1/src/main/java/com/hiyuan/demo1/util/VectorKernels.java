@@ -0,0 +1,101 @@
+package com.hiyuan.demo1.util;
+
+import java.util.PriorityQueue;
+
+/**
+ * 向量相似度计算内核
+ * <p>
+ * 提供两套实现，在类加载时按运行环境自动选择：
+ * <ul>
+ *   <li>{@link SimdVectorKernels}：基于 JDK Vector API（jdk.incubator.vector），
+ *       需要以 {@code --add-modules jdk.incubator.vector} 启动</li>
+ *   <li>{@link ScalarVectorKernels}：普通循环实现，未加载 Vector API 模块时使用</li>
+ * </ul>
+ * 启动参数 {@code -Dvector.kernels.scalar=true} 可强制使用标量实现，便于排查和对比。
+ * <p>
+ * 矩阵统一使用行优先的连续 float 数组（rows × dimension），避免 float[][] 带来的指针跳转。
+ */
+public interface VectorKernels {
+
+    /**
+     * 当前运行环境选中的实现
+     */
+    static VectorKernels get() {
+        return VectorKernelSelector.INSTANCE;
+    }
+
+    /**
+     * 实现名称，用于日志和基准测试
+     */
+    String name();
+
+    /**
+     * 计算前 length 维的点积
+     */
+    float dot(float[] a, float[] b, int length);
+
+    /**
+     * 计算前 length 维的 L2 范数
+     */
+    float l2Norm(float[] vector, int length);
+
+    /**
+     * 计算前 length 维的余弦相似度，任一向量为零向量时返回 0
+     */
+    float cosine(float[] a, float[] b, int length);
+
+    /**
+     * 批量点积：scores[i] = query · matrix[i]
+     *
+     * @param query     查询向量（dimension 维）
+     * @param matrix    行优先的连续矩阵（rows × dimension）
+     * @param dimension 向量维度
+     * @param rows      行数
+     * @param scores    输出数组，长度不小于 rows
+     */
+    void dotBatch(float[] query, float[] matrix, int dimension, int rows, float[] scores);
+
+    /**
+     * 在连续矩阵中按点积选出 top-k 行，结果按分数降序
+     * <p>
+     * 矩阵行与查询向量均为单位向量时，点积即余弦相似度
+     */
+    default TopK topK(float[] query, float[] matrix, int dimension, int rows, int k) {
+        int limit = Math.min(k, rows);
+        if (limit <= 0) {
+            return new TopK(new int[0], new float[0]);
+        }
+
+        float[] scores = new float[rows];
+        dotBatch(query, matrix, dimension, rows, scores);
+
+        // 小顶堆保留当前最大的 k 个分数，同分时保留行号较小者
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit, (x, y) -> {
+            int cmp = Float.compare(scores[x], scores[y]);
+            return cmp != 0 ? cmp : Integer.compare(y, x);
+        });
+        for (int row = 0; row < rows; row++) {
+            if (heap.size() < limit) {
+                heap.offer(row);
+            } else if (scores[row] > scores[heap.peek()]) {
+                heap.poll();
+                heap.offer(row);
+            }
+        }
+
+        int[] indices = new int[heap.size()];
+        float[] topScores = new float[heap.size()];
+        for (int i = indices.length - 1; i >= 0; i--) {
+            int row = heap.poll();
+            indices[i] = row;
+            topScores[i] = scores[row];
+        }
+        return new TopK(indices, topScores);
+    }
+
+    /**
+     * top-k 结果：行号与对应分数，按分数降序
+     */
+    record TopK(int[] indices, float[] scores) {
+    }
+}
@@ -8,11 +8,12 @@ import lombok.extern.slf4j.Slf4j;
  * 提供通用的向量操作方法，包括：
  * <ul>
  *   <li>向量与字符串之间的相互转换</li>
- *   <li>余弦相似度计算</li>
+ *   <li>点积 / 余弦相似度计算</li>
  *   <li>向量归一化（L2归一化）</li>
  * </ul>
  * <p>
  * 这个工具类是RAG系统的核心组件之一，被多个服务类共享使用。
+ * 点积、余弦、范数的计算委托给 {@link VectorKernels}，在支持的环境下使用 Vector API 加速。
  *
  * @author 开发团队
  * @version 1.0.0
@@ -99,6 +100,28 @@ public final class VectorUtils {
         return vector;
     }
 
+    /**
+     * 计算两个向量的点积
+     * <p>
+     * 入库向量和查询向量都已经过 L2 归一化（见 MrlService），
+     * 此时点积即余弦相似度，省去每次比较时重复计算两个范数。
+     * <p>
+     * 如果两个向量长度不同，只会比较较短长度的部分。
+     *
+     * @param vector1 向量1
+     * @param vector2 向量2
+     * @return 点积；两个向量均为单位向量时范围为[-1, 1]
+     * @throws IllegalArgumentException 如果任一向量为null
+     */
+    public static double dotProduct(float[] vector1, float[] vector2) {
+        if (vector1 == null || vector2 == null) {
+            throw new IllegalArgumentException("向量不能为null");
+        }
+
+        int len = Math.min(vector1.length, vector2.length);
+        return VectorKernels.get().dot(vector1, vector2, len);
+    }
+
     /**
      * 计算两个向量的余弦相似度
      * <p>
@@ -131,20 +154,7 @@ public final class VectorUtils {
 
         // 使用较短的长度进行计算
         int len = Math.min(vector1.length, vector2.length);
-
-        double dot = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-
-        for (int i = 0; i < len; i++) {
-            dot += vector1[i] * vector2[i];
-            norm1 += vector1[i] * vector1[i];
-            norm2 += vector2[i] * vector2[i];
-        }
-
-        double denom = Math.sqrt(norm1) * Math.sqrt(norm2);
-        if (denom == 0.0) return 0.0;
-        return dot / denom;
+        return VectorKernels.get().cosine(vector1, vector2, len);
     }
 
     /**
@@ -195,12 +205,7 @@ public final class VectorUtils {
             throw new IllegalArgumentException("向量不能为null");
         }
 
-        double norm = 0.0;
-        for (float v : vector) {
-            norm += v * v;
-        }
-
-        norm = Math.sqrt(norm);
+        double norm = VectorKernels.get().l2Norm(vector, vector.length);
         if (norm == 0.0) {
             throw new IllegalArgumentException("零向量无法归一化");
         }
@@ -227,12 +232,7 @@ public final class VectorUtils {
             throw new IllegalArgumentException("向量不能为null");
         }
 
-        double sum = 0.0;
-        for (float v : vector) {
-            sum += v * v;
-        }
-
-        return Math.sqrt(sum);
+        return VectorKernels.get().l2Norm(vector, vector.length);
     }
 
     /**
@@ -0,0 +1,47 @@
+-- ============================================
+-- Flyway Repeatable Migration: R__vector_search_indexes.sql
+-- 目标：分块向量只保留当前检索模式需要的一个 HNSW 索引，量化模式下不再额外保留 float32 索引
+-- 说明：
+-- 1) ${vector_quantization} 由 spring.flyway.placeholders.vector_quantization 传入，取值同 qa.retrieval.quantization
+-- 2) 占位符替换后的内容参与校验和，切换量化模式后下次启动会重新执行本脚本
+-- 3) NONE    -> idx_vector_embedding_ip（float32，vector_ip_ops）
+--    HALFVEC -> idx_vector_embedding_halfvec（约为 float32 的 1/2）
+--    BINARY  -> idx_vector_embedding_binary（约为 float32 的 1/32）
+--    量化模式的精确重排直接读堆表中的 embedding 列，不需要 float32 索引；
+--    两阶段检索的候选文档内检索同样走当前模式的索引（见 QaService.findNearestInDocuments）
+-- 4) 切换模式时新索引在迁移中同步构建，数据量大时启动变慢，建议在低峰期切换
+-- 5) V18 第 6 条“手动删除 idx_vector_embedding_cosine”已由 V19 和本脚本取代，无需手工处理
+-- ============================================
+
+DO $$
+DECLARE
+    quantization_mode TEXT := upper('${vector_quantization}');
+BEGIN
+    IF quantization_mode NOT IN ('NONE', 'HALFVEC', 'BINARY') THEN
+        RAISE EXCEPTION '未知的向量量化模式: %', quantization_mode;
+    END IF;
+
+    IF quantization_mode = 'NONE' THEN
+        CREATE INDEX IF NOT EXISTS idx_vector_embedding_ip ON t_vector_record
+        USING hnsw (embedding vector_ip_ops)
+        WITH (m = 16, ef_construction = 64);
+    ELSE
+        DROP INDEX IF EXISTS idx_vector_embedding_ip;
+    END IF;
+
+    IF quantization_mode = 'HALFVEC' THEN
+        CREATE INDEX IF NOT EXISTS idx_vector_embedding_halfvec ON t_vector_record
+        USING hnsw ((CAST(embedding AS halfvec(1024))) halfvec_ip_ops)
+        WITH (m = 16, ef_construction = 64);
+    ELSE
+        DROP INDEX IF EXISTS idx_vector_embedding_halfvec;
+    END IF;
+
+    IF quantization_mode = 'BINARY' THEN
+        CREATE INDEX IF NOT EXISTS idx_vector_embedding_binary ON t_vector_record
+        USING hnsw ((CAST(binary_quantize(embedding) AS bit(1024))) bit_hamming_ops)
+        WITH (m = 16, ef_construction = 64);
+    ELSE
+        DROP INDEX IF EXISTS idx_vector_embedding_binary;
+    END IF;
+END $$;
@@ -0,0 +1,12 @@
+-- ============================================
+-- Flyway Migration: V16__add_chunk_content_trigram_index.sql
+-- 目标：为分块正文建立 pg_trgm GIN 索引，支撑混合检索中的关键词召回
+-- 说明：
+-- 1) 纯向量检索对公式名、课程代码、中英混排关键词召回较差
+-- 2) gin_trgm_ops 同时支持 ~* 正则过滤和 word_similarity 排序
+-- ============================================
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_chunk_content_trgm ON t_document_chunk
+USING gin (content gin_trgm_ops);
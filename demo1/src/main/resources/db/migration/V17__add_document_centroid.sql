@@ -0,0 +1,27 @@
+-- ============================================
+-- Flyway Migration: V17__add_document_centroid.sql
+-- 目标：为文档增加质心向量，支撑“先粗筛文档、再检索分块”的两阶段检索
+-- 说明：
+-- 1) centroid = 文档所有分块向量（归一化后）的均值，由文档处理流程在写入向量后维护
+-- 2) 实体不映射该列，仅通过原生 SQL 读写，避免每次加载文档都携带 1024 维向量
+-- ============================================
+
+ALTER TABLE t_document ADD COLUMN IF NOT EXISTS centroid vector(1024);
+
+COMMENT ON COLUMN t_document.centroid IS '文档质心向量 - 分块向量均值，用于粗筛候选文档';
+
+-- 回填历史文档：直接取已有分块向量的均值（pgvector AVG 聚合）
+UPDATE t_document d
+SET centroid = s.centroid
+FROM (
+    SELECT document_id, AVG(embedding) AS centroid
+    FROM t_vector_record
+    WHERE embedding IS NOT NULL
+    GROUP BY document_id
+) s
+WHERE d.id = s.document_id
+  AND d.centroid IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_document_centroid_cosine ON t_document
+USING hnsw (centroid vector_cosine_ops)
+WITH (m = 16, ef_construction = 64);
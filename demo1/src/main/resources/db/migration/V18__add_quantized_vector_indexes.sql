@@ -0,0 +1,19 @@
+-- ============================================
+-- Flyway Migration: V18__add_quantized_vector_indexes.sql
+-- 目标：为向量检索提供量化索引，降低 HNSW 索引体积
+-- 说明：
+-- 1) 使用表达式索引而不是新增列：写入路径不变，堆表中不额外保存第二份向量
+-- 2) halfvec：float16 半精度，索引约为 float32 的 1/2，召回基本无损
+-- 3) binary：binary_quantize 后按汉明距离检索，索引约为 float32 的 1/32，需配合精确重排
+-- 4) 查询侧表达式必须与索引表达式完全一致（见 VectorRecordRepository 中的量化查询）
+-- 5) 依赖 pgvector >= 0.7.0
+-- 6) 切换 qa.retrieval.quantization 并验证召回后，可手动删除 idx_vector_embedding_cosine 回收空间
+-- ============================================
+
+CREATE INDEX IF NOT EXISTS idx_vector_embedding_halfvec ON t_vector_record
+USING hnsw ((CAST(embedding AS halfvec(1024))) halfvec_cosine_ops)
+WITH (m = 16, ef_construction = 64);
+
+CREATE INDEX IF NOT EXISTS idx_vector_embedding_binary ON t_vector_record
+USING hnsw ((CAST(binary_quantize(embedding) AS bit(1024))) bit_hamming_ops)
+WITH (m = 16, ef_construction = 64);
@@ -0,0 +1,45 @@
+-- ============================================
+-- Flyway Migration: V19__normalize_embeddings_inner_product.sql
+-- 目标：向量入库前统一 L2 归一化，检索从余弦距离切换为内积
+-- 说明：
+-- 1) MRL 截断会破坏单位长度，应用侧已在 MrlService.truncateVector 中归一化
+-- 2) 单位向量上内积与余弦相似度等价，<#> 省去每次比较时的范数计算
+-- 3) 先删除旧索引再回填，避免大批量 UPDATE 时逐行维护 HNSW 图
+-- 4) 二值量化索引（汉明距离）只看符号位，归一化不影响，保持不变
+-- 5) 依赖 pgvector >= 0.7.0（l2_normalize）
+-- ============================================
+
+DROP INDEX IF EXISTS idx_vector_embedding_cosine;
+DROP INDEX IF EXISTS idx_vector_embedding_halfvec;
+DROP INDEX IF EXISTS idx_document_centroid_cosine;
+
+-- 回填：只更新范数明显偏离 1 的记录
+UPDATE t_vector_record
+SET embedding = l2_normalize(embedding)
+WHERE embedding IS NOT NULL
+  AND vector_norm(embedding) > 0
+  AND abs(vector_norm(embedding) - 1) > 1e-4;
+
+-- 质心按归一化后的分块向量重新计算，并同样归一化
+UPDATE t_document d
+SET centroid = l2_normalize(s.centroid)
+FROM (
+    SELECT document_id, AVG(embedding) AS centroid
+    FROM t_vector_record
+    WHERE embedding IS NOT NULL
+    GROUP BY document_id
+) s
+WHERE d.id = s.document_id
+  AND vector_norm(s.centroid) > 0;
+
+CREATE INDEX IF NOT EXISTS idx_vector_embedding_ip ON t_vector_record
+USING hnsw (embedding vector_ip_ops)
+WITH (m = 16, ef_construction = 64);
+
+CREATE INDEX IF NOT EXISTS idx_vector_embedding_halfvec ON t_vector_record
+USING hnsw ((CAST(embedding AS halfvec(1024))) halfvec_ip_ops)
+WITH (m = 16, ef_construction = 64);
+
+CREATE INDEX IF NOT EXISTS idx_document_centroid_ip ON t_document
+USING hnsw (centroid vector_ip_ops)
+WITH (m = 16, ef_construction = 64);
@@ -0,0 +1,11 @@
+-- ============================================
+-- Flyway Migration: V20__add_qa_history_truncated.sql
+-- 目标：记录被中断的流式回答
+-- 说明：
+-- 1) 学生关闭页面时取消上游 LLM 流，已生成的部分答案仍写入历史
+-- 2) truncated = TRUE 表示该答案不完整
+-- ============================================
+
+ALTER TABLE t_qa_history ADD COLUMN IF NOT EXISTS truncated BOOLEAN NOT NULL DEFAULT FALSE;
+
+COMMENT ON COLUMN t_qa_history.truncated IS '答案是否因客户端断开而被截断';
@@ -0,0 +1,11 @@
+-- ============================================
+-- Flyway Migration: V21__add_ai_provider_routing.sql
+-- 目标：支持多个 AI 提供商同时参与路由（按延迟加权、对冲请求、失败切换）
+-- 说明：
+-- 1) 当前激活（is_active）的配置始终参与路由；其他配置开启 routing_enabled 后作为候选
+-- 2) 默认关闭，升级后行为与之前一致（只使用激活的配置）
+-- ============================================
+
+ALTER TABLE ai_provider_configs ADD COLUMN IF NOT EXISTS routing_enabled BOOLEAN NOT NULL DEFAULT FALSE;
+
+COMMENT ON COLUMN ai_provider_configs.routing_enabled IS '是否参与多提供商路由（激活配置始终参与）';
@@ -0,0 +1,32 @@
+-- ============================================
+-- Flyway Migration: V22__create_qa_session.sql
+-- 目标：多轮对话上下文改由服务端维护
+-- 说明：
+-- 1) 客户端只携带 session_id，不再每次回传完整的上一轮回答
+-- 2) summary 为除最后一轮外所有轮次的滚动摘要，每轮结束后异步更新
+-- 3) last_question / last_answer 保存最后一轮原文，提示词中按预算截取
+-- 4) t_qa_history.session_id 关联所属会话，会话删除时置空
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS t_qa_session (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    user_id UUID NOT NULL REFERENCES t_user(id) ON DELETE CASCADE,
+    summary TEXT,
+    last_question VARCHAR(1000),
+    last_answer TEXT,
+    turn_count INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_qa_session_user_id ON t_qa_session(user_id);
+
+COMMENT ON TABLE t_qa_session IS '问答会话表 - 服务端维护的多轮对话上下文';
+COMMENT ON COLUMN t_qa_session.summary IS '除最后一轮外历史对话的滚动摘要';
+COMMENT ON COLUMN t_qa_session.turn_count IS '已完成的对话轮数';
+
+ALTER TABLE t_qa_history ADD COLUMN IF NOT EXISTS session_id UUID REFERENCES t_qa_session(id) ON DELETE SET NULL;
+
+CREATE INDEX IF NOT EXISTS idx_qa_history_session_id ON t_qa_history(session_id);
+
+COMMENT ON COLUMN t_qa_history.session_id IS '所属问答会话（可为空，兼容旧客户端）';
@@ -0,0 +1,16 @@
+-- ============================================
+-- Flyway Migration: V23__add_student_list_search_indexes.sql
+-- 目标：支撑教师学生列表的聚合查询
+-- 说明：
+-- 1) 学生列表按 LOWER(username) LIKE '%关键词%' 搜索，前后通配无法使用 B-tree，
+--    建立 LOWER(username) 上的 pg_trgm GIN 表达式索引
+-- 2) 提问统计按 user_id 分组求 COUNT / MAX(asked_at)，(user_id, asked_at) 复合索引
+--    可只扫描索引完成聚合
+-- ============================================
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_user_username_lower_trgm ON t_user
+USING gin (LOWER(username) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_qa_user_asked_at ON t_qa_history(user_id, asked_at DESC);
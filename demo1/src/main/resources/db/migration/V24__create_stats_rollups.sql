@@ -0,0 +1,214 @@
+-- ============================================
+-- Flyway Migration: V24__create_stats_rollups.sql
+-- 目标：统计计数器与按小时/按天的时间序列汇总表，统计接口只读汇总表
+-- 说明：
+-- 1) t_stats_counter 保存全量计数（文档总数、问答总数），由触发器随增删增量维护，
+--    覆盖所有写入路径（JPA、JDBC 批量写入、删除用户时的级联删除）
+-- 2) t_stats_rollup_hourly / t_stats_rollup_daily 按事件时间分桶累加事件数和数值和，
+--    删除原始记录不回退汇总（汇总描述的是“发生过的事件”）
+-- 3) t_document / t_qa_history 的插入和删除使用语句级触发器 + 过渡表，
+--    一条语句只更新一次计数器；文档状态变化使用行级触发器
+-- 4) 迁移时按现有数据回填一次，之后不再扫描原始表
+--
+-- 指标：
+-- - document.total      文档总数（计数器）
+-- - qa.total            问答总数（计数器）
+-- - document.uploaded   上传文档数（按 uploaded_at 分桶）
+-- - document.succeeded  处理成功文档数（按 processed_at 分桶）
+-- - document.failed     处理失败文档数（按 processed_at 分桶）
+-- - qa.asked            提问数（按 asked_at 分桶，value_sum 为响应时间之和，单位毫秒）
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS t_stats_counter (
+    name VARCHAR(64) PRIMARY KEY,
+    value BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS t_stats_rollup_hourly (
+    metric VARCHAR(64) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    value_sum BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (metric, bucket_start)
+);
+
+CREATE TABLE IF NOT EXISTS t_stats_rollup_daily (
+    metric VARCHAR(64) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    value_sum BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (metric, bucket_start)
+);
+
+COMMENT ON TABLE t_stats_counter IS '统计计数器 - 由触发器增量维护的全量计数';
+COMMENT ON TABLE t_stats_rollup_hourly IS '统计汇总（小时） - 按事件时间分桶的事件数与数值和';
+COMMENT ON TABLE t_stats_rollup_daily IS '统计汇总（天） - 按事件时间分桶的事件数与数值和';
+
+-- ============================================
+-- 公共函数
+-- ============================================
+
+CREATE OR REPLACE FUNCTION stats_add_counter(p_name VARCHAR, p_delta BIGINT)
+RETURNS VOID AS $$
+BEGIN
+    IF p_delta = 0 THEN
+        RETURN;
+    END IF;
+    INSERT INTO t_stats_counter (name, value, updated_at)
+    VALUES (p_name, p_delta, CURRENT_TIMESTAMP)
+    ON CONFLICT (name) DO UPDATE
+        SET value = t_stats_counter.value + EXCLUDED.value,
+            updated_at = CURRENT_TIMESTAMP;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION stats_add_rollup(p_metric VARCHAR, p_at TIMESTAMP, p_count BIGINT, p_sum BIGINT)
+RETURNS VOID AS $$
+BEGIN
+    IF p_at IS NULL OR p_count = 0 THEN
+        RETURN;
+    END IF;
+    INSERT INTO t_stats_rollup_hourly (metric, bucket_start, event_count, value_sum)
+    VALUES (p_metric, date_trunc('hour', p_at), p_count, COALESCE(p_sum, 0))
+    ON CONFLICT (metric, bucket_start) DO UPDATE
+        SET event_count = t_stats_rollup_hourly.event_count + EXCLUDED.event_count,
+            value_sum = t_stats_rollup_hourly.value_sum + EXCLUDED.value_sum;
+    INSERT INTO t_stats_rollup_daily (metric, bucket_start, event_count, value_sum)
+    VALUES (p_metric, date_trunc('day', p_at), p_count, COALESCE(p_sum, 0))
+    ON CONFLICT (metric, bucket_start) DO UPDATE
+        SET event_count = t_stats_rollup_daily.event_count + EXCLUDED.event_count,
+            value_sum = t_stats_rollup_daily.value_sum + EXCLUDED.value_sum;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ============================================
+-- 问答历史触发器
+-- ============================================
+
+CREATE OR REPLACE FUNCTION stats_on_qa_insert()
+RETURNS TRIGGER AS $$
+DECLARE
+    bucket RECORD;
+BEGIN
+    PERFORM stats_add_counter('qa.total', (SELECT COUNT(*) FROM new_rows));
+    FOR bucket IN
+        SELECT date_trunc('hour', COALESCE(asked_at, created_at)) AS hour_start,
+               COUNT(*) AS event_count,
+               COALESCE(SUM(response_time), 0) AS value_sum
+        FROM new_rows
+        GROUP BY 1
+    LOOP
+        PERFORM stats_add_rollup('qa.asked', bucket.hour_start, bucket.event_count, bucket.value_sum);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION stats_on_qa_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM stats_add_counter('qa.total', -(SELECT COUNT(*) FROM old_rows));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS stats_qa_insert ON t_qa_history;
+CREATE TRIGGER stats_qa_insert AFTER INSERT ON t_qa_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION stats_on_qa_insert();
+
+DROP TRIGGER IF EXISTS stats_qa_delete ON t_qa_history;
+CREATE TRIGGER stats_qa_delete AFTER DELETE ON t_qa_history
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION stats_on_qa_delete();
+
+-- ============================================
+-- 文档触发器
+-- ============================================
+
+CREATE OR REPLACE FUNCTION stats_on_document_insert()
+RETURNS TRIGGER AS $$
+DECLARE
+    bucket RECORD;
+BEGIN
+    PERFORM stats_add_counter('document.total', (SELECT COUNT(*) FROM new_rows));
+    FOR bucket IN
+        SELECT date_trunc('hour', COALESCE(uploaded_at, created_at)) AS hour_start,
+               COUNT(*) AS event_count
+        FROM new_rows
+        GROUP BY 1
+    LOOP
+        PERFORM stats_add_rollup('document.uploaded', bucket.hour_start, bucket.event_count, 0);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION stats_on_document_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM stats_add_counter('document.total', -(SELECT COUNT(*) FROM old_rows));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION stats_on_document_status()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM stats_add_rollup(
+        CASE WHEN NEW.status = 'SUCCESS' THEN 'document.succeeded' ELSE 'document.failed' END,
+        COALESCE(NEW.processed_at, CURRENT_TIMESTAMP::TIMESTAMP), 1, 0);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS stats_document_insert ON t_document;
+CREATE TRIGGER stats_document_insert AFTER INSERT ON t_document
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION stats_on_document_insert();
+
+DROP TRIGGER IF EXISTS stats_document_delete ON t_document;
+CREATE TRIGGER stats_document_delete AFTER DELETE ON t_document
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION stats_on_document_delete();
+
+DROP TRIGGER IF EXISTS stats_document_status ON t_document;
+CREATE TRIGGER stats_document_status AFTER UPDATE OF status ON t_document
+    FOR EACH ROW
+    WHEN (NEW.status IS DISTINCT FROM OLD.status AND NEW.status IN ('SUCCESS', 'FAILED'))
+    EXECUTE FUNCTION stats_on_document_status();
+
+-- ============================================
+-- 按现有数据回填（仅此一次）
+-- ============================================
+
+INSERT INTO t_stats_counter (name, value)
+SELECT 'document.total', COUNT(*) FROM t_document
+ON CONFLICT (name) DO NOTHING;
+
+INSERT INTO t_stats_counter (name, value)
+SELECT 'qa.total', COUNT(*) FROM t_qa_history
+ON CONFLICT (name) DO NOTHING;
+
+INSERT INTO t_stats_rollup_hourly (metric, bucket_start, event_count, value_sum)
+SELECT 'qa.asked', date_trunc('hour', COALESCE(asked_at, created_at)), COUNT(*), COALESCE(SUM(response_time), 0)
+FROM t_qa_history
+GROUP BY 2
+UNION ALL
+SELECT 'document.uploaded', date_trunc('hour', COALESCE(uploaded_at, created_at)), COUNT(*), 0
+FROM t_document
+GROUP BY 2
+UNION ALL
+SELECT CASE WHEN status = 'SUCCESS' THEN 'document.succeeded' ELSE 'document.failed' END,
+       date_trunc('hour', processed_at), COUNT(*), 0
+FROM t_document
+WHERE status IN ('SUCCESS', 'FAILED') AND processed_at IS NOT NULL
+GROUP BY 1, 2
+ON CONFLICT (metric, bucket_start) DO NOTHING;
+
+INSERT INTO t_stats_rollup_daily (metric, bucket_start, event_count, value_sum)
+SELECT metric, date_trunc('day', bucket_start), SUM(event_count), SUM(value_sum)
+FROM t_stats_rollup_hourly
+GROUP BY 1, 2
+ON CONFLICT (metric, bucket_start) DO NOTHING;
@@ -0,0 +1,30 @@
+-- ============================================
+-- Flyway Migration: V25__add_qa_history_search_indexes.sql
+-- 目标：问答历史关键词搜索走索引，历史列表改为按 (asked_at, id) 游标分页
+-- 说明：
+-- 1) 关键词搜索为 question / answer 上的 ILIKE '%关键词%'，前后通配无法使用 B-tree，
+--    分别建立 pg_trgm GIN 索引，两个条件的 OR 由 BitmapOr 合并；
+--    pg_trgm 按字符切分三元组，中文子串同样可以命中（数据库 LC_CTYPE 需为 UTF-8 区域，
+--    C 区域下非 ASCII 字符不参与三元组）
+-- 2) 游标分页条件为 (asked_at, id) < (:askedAt, :id)，按 asked_at DESC, id DESC 排序，
+--    (user_id, asked_at DESC, id DESC) 复合索引可直接定位到游标位置，
+--    替代 V23 的 (user_id, asked_at DESC)（前缀相同，原有聚合查询同样可用）
+-- 3) 行比较遇到 NULL 会丢行，回填历史数据中为空的 asked_at 后加 NOT NULL 约束
+--    （QaHistoryWriter 和实体默认值都会写入 asked_at）
+-- ============================================
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+UPDATE t_qa_history SET asked_at = COALESCE(created_at, CURRENT_TIMESTAMP) WHERE asked_at IS NULL;
+
+ALTER TABLE t_qa_history ALTER COLUMN asked_at SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_qa_question_trgm ON t_qa_history
+USING gin (question gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_qa_answer_trgm ON t_qa_history
+USING gin (answer gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_qa_user_asked_at_id ON t_qa_history(user_id, asked_at DESC, id DESC);
+
+DROP INDEX IF EXISTS idx_qa_user_asked_at;
@@ -0,0 +1,19 @@
+-- ============================================
+-- Flyway Migration: V26__add_document_list_keyset_indexes.sql
+-- 目标：文档列表（用户 / 管理员）按 (uploaded_at, id) 游标分页
+-- 说明：
+-- 1) 列表按 uploaded_at DESC, id DESC 排序，游标条件为 (uploaded_at, id) < (:uploadedAt, :id)，
+--    用户列表使用 (user_id, uploaded_at DESC, id DESC)，管理员列表使用 (uploaded_at DESC, id DESC)，
+--    后者替代 V2 的 idx_document_uploaded_at
+-- 2) 行比较遇到 NULL 会丢行，回填为空的 uploaded_at 后加 NOT NULL 约束（实体默认值会写入 uploaded_at）
+-- ============================================
+
+UPDATE t_document SET uploaded_at = COALESCE(created_at, CURRENT_TIMESTAMP) WHERE uploaded_at IS NULL;
+
+ALTER TABLE t_document ALTER COLUMN uploaded_at SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_document_user_uploaded_at_id ON t_document(user_id, uploaded_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_document_uploaded_at_id ON t_document(uploaded_at DESC, id DESC);
+
+DROP INDEX IF EXISTS idx_document_uploaded_at;
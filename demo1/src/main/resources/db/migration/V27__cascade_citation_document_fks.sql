@@ -0,0 +1,29 @@
+-- ============================================
+-- Flyway Migration: V27__cascade_citation_document_fks.sql
+-- 目标：删除文档时级联删除其引用记录
+-- 说明：
+-- 1) 问答历史写入 t_citation 后，V1 中 chunk_id / document_id 外键没有 ON DELETE CASCADE，
+--    被引用过的文档无法删除（分块删除同理）
+-- 2) 历史库中的约束名可能不同，按引用表查找后删除再重建
+-- ============================================
+
+DO $$
+DECLARE
+    fk RECORD;
+BEGIN
+    FOR fk IN
+        SELECT conname
+        FROM pg_constraint
+        WHERE contype = 'f'
+          AND conrelid = 't_citation'::regclass
+          AND confrelid IN ('t_document_chunk'::regclass, 't_document'::regclass)
+    LOOP
+        EXECUTE format('ALTER TABLE t_citation DROP CONSTRAINT %I', fk.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE t_citation
+    ADD CONSTRAINT fk_citation_chunk FOREIGN KEY (chunk_id) REFERENCES t_document_chunk(id) ON DELETE CASCADE;
+
+ALTER TABLE t_citation
+    ADD CONSTRAINT fk_citation_document FOREIGN KEY (document_id) REFERENCES t_document(id) ON DELETE CASCADE;
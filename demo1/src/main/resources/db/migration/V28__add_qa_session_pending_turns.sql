@@ -0,0 +1,14 @@
+-- ============================================
+-- Flyway Migration: V28__add_qa_session_pending_turns.sql
+-- 目标：被替换下来、尚未并入摘要的轮次不再丢失
+-- 说明：
+-- 1) 每轮结束时 last_question / last_answer 立即被新一轮覆盖，而上一轮异步并入 summary；
+--    摘要提交前的追问既读不到上一轮原文也读不到它的摘要
+-- 2) pending_turns 按顺序保存被替换下来的轮次（{"question", "answer"}），
+--    写入最后一轮时在同一条 UPDATE 中追加，摘要提交时在同一条 UPDATE 中移除已并入的部分
+-- 3) 读取会话上下文时，pending_turns 以抽取式摘要的形式拼在 summary 之后
+-- ============================================
+
+ALTER TABLE t_qa_session ADD COLUMN IF NOT EXISTS pending_turns JSONB NOT NULL DEFAULT '[]'::jsonb;
+
+COMMENT ON COLUMN t_qa_session.pending_turns IS '已被替换下来、尚未并入滚动摘要的轮次（按时间顺序）';
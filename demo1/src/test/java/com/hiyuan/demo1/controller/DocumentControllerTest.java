@@ -1,8 +1,11 @@
 package com.hiyuan.demo1.controller;
 
+import com.hiyuan.demo1.dto.document.DocumentSummaryResponse;
 import com.hiyuan.demo1.dto.response.ApiResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.UserRole;
+import com.hiyuan.demo1.enums.DocumentStatus;
 import com.hiyuan.demo1.exception.BusinessException;
 import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.security.UserPrincipal;
@@ -12,11 +15,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -49,4 +57,34 @@ class DocumentControllerTest {
         assertEquals(400, response.getCode());
         assertTrue(response.getMessage().contains("已存在同名文件"));
     }
+
+    @Test
+    void listDocumentsShortCircuitsWithNotModifiedWhenEtagMatches() {
+        UUID userId = UUID.randomUUID();
+        UserPrincipal principal = new UserPrincipal(userId, "teacher", "pwd", UserRole.TEACHER);
+        CursorPage<DocumentSummaryResponse> page = new CursorPage<>(List.of(DocumentSummaryResponse.builder()
+                .id(UUID.randomUUID())
+                .filename("课件.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build()), 20, null, false);
+        when(documentService.listDocumentSummaries(userId, null, 20)).thenReturn(page);
+        String etag = DocumentService.listETag(page);
+
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        ApiResponse<CursorPage<DocumentSummaryResponse>> first = documentController.listDocuments(
+                principal, null, 20, new ServletWebRequest(new MockHttpServletRequest("GET", "/documents"), firstResponse));
+
+        assertEquals(200, first.getCode());
+        assertEquals(etag, firstResponse.getHeader("ETag"));
+        assertEquals("private, no-cache", firstResponse.getHeader("Cache-Control"));
+
+        MockHttpServletRequest poll = new MockHttpServletRequest("GET", "/documents");
+        poll.addHeader("If-None-Match", etag);
+        MockHttpServletResponse pollResponse = new MockHttpServletResponse();
+        ApiResponse<CursorPage<DocumentSummaryResponse>> notModified = documentController.listDocuments(
+                principal, null, 20, new ServletWebRequest(poll, pollResponse));
+
+        assertNull(notModified);
+        assertEquals(304, pollResponse.getStatus());
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.data.jpa.repository.Query;
 
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -13,7 +14,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 class VectorRecordRepositoryQueryTest {
 
     @Test
-    void findNearestVectorIdsUsesCosineOperator() throws NoSuchMethodException {
+    void findNearestVectorIdsUsesInnerProductOperator() throws NoSuchMethodException {
         Method method = VectorRecordRepository.class.getMethod(
                 "findNearestVectorIds",
                 String.class,
@@ -23,12 +24,13 @@ class VectorRecordRepositoryQueryTest {
 
         Query query = method.getAnnotation(Query.class);
         assertNotNull(query, "findNearestVectorIds must keep @Query annotation");
-        assertTrue(query.value().contains("<=>"), "findNearestVectorIds should use cosine operator <=>");
+        assertTrue(query.value().contains("<#>"), "findNearestVectorIds should use inner product operator <#>");
         assertFalse(query.value().contains("<->"), "findNearestVectorIds should not use L2 operator <->");
+        assertFalse(query.value().contains("<=>"), "findNearestVectorIds should not recompute norms with <=>");
     }
 
     @Test
-    void findNearestVectorIdsByOwnerIdsUsesCosineOperator() throws NoSuchMethodException {
+    void findNearestVectorIdsByOwnerIdsUsesInnerProductOperator() throws NoSuchMethodException {
         Method method = VectorRecordRepository.class.getMethod(
                 "findNearestVectorIdsByOwnerIds",
                 String.class,
@@ -38,7 +40,104 @@ class VectorRecordRepositoryQueryTest {
 
         Query query = method.getAnnotation(Query.class);
         assertNotNull(query, "findNearestVectorIdsByOwnerIds must keep @Query annotation");
-        assertTrue(query.value().contains("<=>"), "findNearestVectorIdsByOwnerIds should use cosine operator <=>");
+        assertTrue(query.value().contains("<#>"), "findNearestVectorIdsByOwnerIds should use inner product operator <#>");
         assertFalse(query.value().contains("<->"), "findNearestVectorIdsByOwnerIds should not use L2 operator <->");
+        assertFalse(query.value().contains("<=>"), "findNearestVectorIdsByOwnerIds should not recompute norms with <=>");
+    }
+
+    @Test
+    void findNearestVectorIdsByDocumentIdsUsesInnerProductOperator() throws NoSuchMethodException {
+        Method method = VectorRecordRepository.class.getMethod(
+                "findNearestVectorIdsByDocumentIds",
+                String.class,
+                java.util.List.class,
+                int.class
+        );
+
+        Query query = method.getAnnotation(Query.class);
+        assertNotNull(query, "findNearestVectorIdsByDocumentIds must keep @Query annotation");
+        assertTrue(query.value().contains("<#>"), "findNearestVectorIdsByDocumentIds should use inner product operator <#>");
+        assertTrue(query.value().contains("document_id IN (:documentIds)"),
+                "findNearestVectorIdsByDocumentIds should restrict search to candidate documents");
+    }
+
+    @Test
+    void exactDocumentScopedSearchMaterializesCandidatesBeforeOrdering() throws NoSuchMethodException {
+        Method method = VectorRecordRepository.class.getMethod(
+                "findNearestVectorIdsByDocumentIdsExact",
+                String.class,
+                java.util.List.class,
+                int.class
+        );
+
+        Query query = method.getAnnotation(Query.class);
+        assertNotNull(query, "findNearestVectorIdsByDocumentIdsExact must keep @Query annotation");
+        assertTrue(query.value().contains("AS MATERIALIZED"),
+                "exact search should materialize the filtered rows so the HNSW index is not used");
+        assertTrue(query.value().contains("document_id IN (:documentIds)"),
+                "exact search should restrict search to candidate documents");
+        assertTrue(query.value().contains("<#>"), "exact search should use inner product operator <#>");
+    }
+
+    @Test
+    void exactOwnerScopedSearchMaterializesScopeBeforeOrdering() throws NoSuchMethodException {
+        Method method = VectorRecordRepository.class.getMethod(
+                "findNearestVectorIdsByOwnerIdsExact", String.class, List.class, int.class);
+
+        Query query = method.getAnnotation(Query.class);
+        assertNotNull(query, "findNearestVectorIdsByOwnerIdsExact must keep @Query annotation");
+        assertTrue(query.value().contains("AS MATERIALIZED"),
+                "exact search should materialize the scoped rows so the HNSW index is not used");
+        assertTrue(query.value().contains("d.user_id IN (:ownerIds)"), "exact search should restrict to owners");
+        assertTrue(query.value().contains("<#>"), "exact search should use inner product operator <#>");
+    }
+
+    @Test
+    void documentScopedQuantizedQueriesUseQuantizedIndexAndRescoreWithFloat32() throws NoSuchMethodException {
+        for (String name : List.of("findNearestVectorIdsHalfvecByDocumentIds", "findNearestVectorIdsBinaryByDocumentIds")) {
+            Method method = VectorRecordRepository.class.getMethod(name, String.class, List.class, int.class, int.class);
+
+            Query query = method.getAnnotation(Query.class);
+            assertNotNull(query, name + " must keep @Query annotation");
+            assertTrue(query.value().contains("document_id IN (:documentIds)"), name + " should restrict to candidate documents");
+            assertTrue(query.value().contains("LIMIT :candidateLimit"), name + " should over-fetch quantized candidates");
+            assertTrue(query.value().contains("ORDER BY c.embedding <#> CAST(:queryVector AS vector)"),
+                    name + " should rescore with float32 vectors");
+            assertFalse(query.value().contains("ORDER BY vr.embedding <#>"),
+                    name + " must not depend on the float32 HNSW index");
+        }
+    }
+
+    @Test
+    void halfvecQueryMatchesIndexExpressionAndRescoresWithFloat32() throws NoSuchMethodException {
+        Method method = VectorRecordRepository.class.getMethod(
+                "findNearestVectorIdsHalfvecByOwnerIds",
+                String.class,
+                java.util.List.class,
+                int.class,
+                int.class
+        );
+
+        String sql = method.getAnnotation(Query.class).value();
+        assertTrue(sql.contains("CAST(vr.embedding AS halfvec(1024)) <#>"),
+                "halfvec query must use the same expression as idx_vector_embedding_halfvec");
+        assertTrue(sql.contains("ORDER BY c.embedding <#> CAST(:queryVector AS vector)"),
+                "halfvec candidates must be rescored against float32 embeddings");
+    }
+
+    @Test
+    void binaryQueryMatchesIndexExpressionAndRescoresWithFloat32() throws NoSuchMethodException {
+        Method method = VectorRecordRepository.class.getMethod(
+                "findNearestVectorIdsBinary",
+                String.class,
+                int.class,
+                int.class
+        );
+
+        String sql = method.getAnnotation(Query.class).value();
+        assertTrue(sql.contains("CAST(binary_quantize(vr.embedding) AS bit(1024)) <~>"),
+                "binary query must use the same expression as idx_vector_embedding_binary");
+        assertTrue(sql.contains("ORDER BY c.embedding <#> CAST(:queryVector AS vector)"),
+                "binary candidates must be rescored against float32 embeddings");
     }
 }
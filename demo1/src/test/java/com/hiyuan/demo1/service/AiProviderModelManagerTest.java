@@ -11,6 +11,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -120,4 +121,49 @@ class AiProviderModelManagerTest {
 
         assertEquals(4096, settings.maxTokens());
     }
+
+    @Test
+    void routesStartWithActiveConfigAndSkipUnloadableCandidates() {
+        AiProviderConfig active = AiProviderConfig.builder()
+                .id(1L)
+                .providerCode("SILICONFLOW")
+                .providerName("硅基流动")
+                .baseUrl("https://api.siliconflow.cn/v1")
+                .apiKey("encrypted-1")
+                .chatModel("deepseek-ai/DeepSeek-V3")
+                .isActive(true)
+                .build();
+        AiProviderConfig candidate = AiProviderConfig.builder()
+                .id(2L)
+                .providerCode("MODELSCOPE")
+                .providerName("魔搭社区")
+                .baseUrl("https://api-inference.modelscope.cn/v1")
+                .apiKey("encrypted-2")
+                .chatModel("deepseek-ai/DeepSeek-R1")
+                .isActive(false)
+                .routingEnabled(true)
+                .build();
+        AiProviderConfig broken = AiProviderConfig.builder()
+                .id(3L)
+                .providerCode("NVIDIA")
+                .providerName("NVIDIA")
+                .baseUrl("https://integrate.api.nvidia.com/v1")
+                .apiKey("encrypted-3")
+                .chatModel("meta/llama-3.1-405b-instruct")
+                .isActive(false)
+                .routingEnabled(true)
+                .build();
+
+        when(configRepository.findByIsActiveTrue()).thenReturn(Optional.of(active));
+        when(configRepository.findByIsActiveTrueOrRoutingEnabledTrue()).thenReturn(List.of(broken, candidate, active));
+        when(encryptionUtil.decrypt("encrypted-1")).thenReturn("plain-1");
+        when(encryptionUtil.decrypt("encrypted-2")).thenReturn("plain-2");
+        when(encryptionUtil.decrypt("encrypted-3")).thenThrow(new IllegalStateException("bad key"));
+
+        List<AiProviderModelManager.ProviderRoute> routes = manager.getRoutes();
+
+        assertEquals(List.of("SILICONFLOW", "MODELSCOPE"),
+                routes.stream().map(AiProviderModelManager.ProviderRoute::providerCode).toList());
+        assertEquals("plain-2", routes.get(1).settings().apiKey());
+    }
 }
@@ -1,15 +1,18 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.dto.document.DocumentStatusEvent;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.DocumentChunk;
 import com.hiyuan.demo1.repository.DocumentChunkRepository;
 import com.hiyuan.demo1.repository.DocumentRepository;
+import com.hiyuan.demo1.util.VectorUtils;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -19,8 +22,11 @@ import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -46,6 +52,9 @@ class DocumentProcessorServiceBatchingTest {
     @Mock
     private AliyunOcrService aliyunOcrService;
 
+    @Mock
+    private DocumentStatusEventBus statusEventBus;
+
     @InjectMocks
     private DocumentProcessorService documentProcessorService;
 
@@ -83,6 +92,55 @@ class DocumentProcessorServiceBatchingTest {
                 any(UUID.class), any(UUID.class), any(UUID.class), anyString(), any(Integer.class), anyString());
     }
 
+    @Test
+    void saveChunksAndVectorsUpdatesCentroidWithMeanOfNormalizedVectors() {
+        Document document = new Document();
+        document.setFilename("test.pdf");
+        UUID documentId = UUID.randomUUID();
+        ReflectionTestUtils.setField(document, "id", documentId);
+
+        when(chunkRepository.save(any(DocumentChunk.class))).thenAnswer(invocation -> {
+            DocumentChunk chunk = invocation.getArgument(0);
+            ReflectionTestUtils.setField(chunk, "id", UUID.randomUUID());
+            return chunk;
+        });
+        when(embeddingModel.embedAll(any()))
+                .thenReturn(Response.from(List.of(
+                        new Embedding(new float[]{1f, 2f}),
+                        new Embedding(new float[]{3f, 4f})
+                )));
+        when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        documentProcessorService.saveChunksAndVectors(document, List.of("第一段内容", "第二段内容"));
+
+        ArgumentCaptor<String> centroidCaptor = ArgumentCaptor.forClass(String.class);
+        verify(vectorStorageService, times(1)).updateDocumentCentroid(eq(documentId), centroidCaptor.capture());
+        float[] centroid = VectorUtils.parseVectorString(centroidCaptor.getValue());
+        // (1,2)/√5 与 (3,4)/5 的均值，再归一化
+        assertEquals(0.5258f, centroid[0], 1e-3f);
+        assertEquals(0.8507f, centroid[1], 1e-3f);
+    }
+
+    @Test
+    void saveChunksAndVectorsIgnoresCentroidFailure() {
+        Document document = new Document();
+        document.setFilename("test.pdf");
+        ReflectionTestUtils.setField(document, "id", UUID.randomUUID());
+
+        when(chunkRepository.save(any(DocumentChunk.class))).thenAnswer(invocation -> {
+            DocumentChunk chunk = invocation.getArgument(0);
+            ReflectionTestUtils.setField(chunk, "id", UUID.randomUUID());
+            return chunk;
+        });
+        when(embeddingModel.embedAll(any()))
+                .thenReturn(Response.from(List.of(new Embedding(new float[]{1f, 0f}))));
+        when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new RuntimeException("db down"))
+                .when(vectorStorageService).updateDocumentCentroid(any(UUID.class), anyString());
+
+        assertDoesNotThrow(() -> documentProcessorService.saveChunksAndVectors(document, List.of("第一段内容")));
+    }
+
     @Test
     void saveChunksAndVectorsFallsBackToSingleEmbeddingWhenBatchFails() {
         Document document = new Document();
@@ -110,4 +168,33 @@ class DocumentProcessorServiceBatchingTest {
         verify(vectorStorageService, times(2)).insertVectorRecord(
                 any(UUID.class), any(UUID.class), any(UUID.class), anyString(), any(Integer.class), anyString());
     }
+
+    @Test
+    void saveChunksAndVectorsPublishesEmbeddingProgressPerBatch() {
+        ReflectionTestUtils.setField(documentProcessorService, "embeddingBatchSize", 2);
+        Document document = new Document();
+        document.setFilename("test.pdf");
+        UUID documentId = UUID.randomUUID();
+        ReflectionTestUtils.setField(document, "id", documentId);
+
+        when(chunkRepository.save(any(DocumentChunk.class))).thenAnswer(invocation -> {
+            DocumentChunk chunk = invocation.getArgument(0);
+            ReflectionTestUtils.setField(chunk, "id", UUID.randomUUID());
+            return chunk;
+        });
+        when(embeddingModel.embedAll(any())).thenAnswer(invocation -> {
+            List<?> segments = invocation.getArgument(0);
+            return Response.from(segments.stream().map(segment -> new Embedding(new float[]{1f, 0f})).toList());
+        });
+        when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        documentProcessorService.saveChunksAndVectors(document, List.of("A", "B", "C"));
+
+        ArgumentCaptor<DocumentStatusEvent> events = ArgumentCaptor.forClass(DocumentStatusEvent.class);
+        verify(statusEventBus, times(2)).publish(events.capture());
+        assertEquals(List.of(2, 3), events.getAllValues().stream().map(DocumentStatusEvent::processed).toList());
+        assertEquals(DocumentStatusEvent.Stage.EMBEDDING, events.getValue().stage());
+        assertEquals(3, events.getValue().total());
+        assertEquals(documentId, events.getValue().documentId());
+    }
 }
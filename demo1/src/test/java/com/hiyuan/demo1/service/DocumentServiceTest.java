@@ -1,29 +1,44 @@
 package com.hiyuan.demo1.service;
 
+import com.hiyuan.demo1.dto.document.DocumentSummaryResponse;
+import com.hiyuan.demo1.dto.response.CursorPage;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.User;
+import com.hiyuan.demo1.enums.DocumentStatus;
+import com.hiyuan.demo1.enums.FileType;
 import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.CitationRepository;
 import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.util.KeysetCursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 @ExtendWith(MockitoExtension.class)
 class DocumentServiceTest {
@@ -37,6 +52,9 @@ class DocumentServiceTest {
     @Mock
     private DocumentProcessorService processorService;
 
+    @Mock
+    private CitationRepository citationRepository;
+
     @InjectMocks
     private DocumentService documentService;
 
@@ -68,4 +86,62 @@ class DocumentServiceTest {
 
         assertTrue(ex.getMessage().contains("已存在同名文件"));
     }
+
+    @Test
+    void documentSummariesArePagedByKeysetAndEtagFollowsStatus() {
+        UUID userId = UUID.randomUUID();
+        DocumentRepository.DocumentSummaryRow newest = summaryRow("b.pdf", "PROCESSING", 0,
+                LocalDateTime.of(2024, 5, 2, 9, 0));
+        DocumentRepository.DocumentSummaryRow older = summaryRow("a.docx", "SUCCESS", 12,
+                LocalDateTime.of(2024, 5, 1, 9, 0));
+        when(documentRepository.findSummaryPageByUserId(userId, null, null, 2)).thenReturn(List.of(newest, older));
+
+        CursorPage<DocumentSummaryResponse> page = documentService.listDocumentSummaries(userId, null, 1);
+
+        assertEquals(1, page.getContent().size());
+        DocumentSummaryResponse summary = page.getContent().get(0);
+        assertEquals(FileType.PDF, summary.getFileType());
+        assertEquals(DocumentStatus.PROCESSING, summary.getStatus());
+        assertTrue(page.isHasNext());
+        KeysetCursor cursor = KeysetCursor.decode(page.getNextCursor());
+        assertEquals(newest.getUploadedAt(), cursor.at());
+        assertEquals(newest.getId(), cursor.id());
+
+        String etag = DocumentService.listETag(page);
+        assertEquals(etag, DocumentService.listETag(documentService.listDocumentSummaries(userId, null, 1)));
+        summary.setStatus(DocumentStatus.SUCCESS);
+        assertNotEquals(etag, DocumentService.listETag(page));
+    }
+
+    @Test
+    void deleteDocumentRemovesCitationsBeforeDocument() throws Exception {
+        UUID documentId = UUID.randomUUID();
+        Path file = Files.createFile(tempDir.resolve("cited.pdf"));
+        Document document = Document.builder().filename("cited.pdf").filePath(file.toString()).build();
+        document.setId(documentId);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(citationRepository.deleteByDocumentId(documentId)).thenReturn(3);
+
+        documentService.deleteDocument(documentId);
+
+        InOrder order = inOrder(citationRepository, documentRepository);
+        order.verify(citationRepository).deleteByDocumentId(documentId);
+        order.verify(documentRepository).delete(document);
+        assertFalse(Files.exists(file));
+    }
+
+    private static DocumentRepository.DocumentSummaryRow summaryRow(String filename, String status, int chunkCount,
+                                                                    LocalDateTime uploadedAt) {
+        UUID id = UUID.randomUUID();
+        DocumentRepository.DocumentSummaryRow row = mock(DocumentRepository.DocumentSummaryRow.class,
+                withSettings().strictness(Strictness.LENIENT));
+        when(row.getId()).thenReturn(id);
+        when(row.getFilename()).thenReturn(filename);
+        when(row.getFileType()).thenReturn(filename.endsWith(".pdf") ? "PDF" : "DOCX");
+        when(row.getStatus()).thenReturn(status);
+        when(row.getChunkCount()).thenReturn(chunkCount);
+        when(row.getUploadedAt()).thenReturn(uploadedAt);
+        when(row.getUpdatedAt()).thenReturn(uploadedAt);
+        return row;
+    }
 }
@@ -0,0 +1,69 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hiyuan.demo1.dto.document.DocumentStatusEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentStatusEventBusTest {
+
+    private DocumentStatusEventBus bus;
+
+    @BeforeEach
+    void setUp() {
+        bus = new DocumentStatusEventBus(new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(bus, "heartbeatSeconds", 0L);
+        ReflectionTestUtils.setField(bus, "subscriberBuffer", 16);
+    }
+
+    @Test
+    void subscribersOnlyReceiveTheirOwnDocumentsUnlessAdmin() {
+        UUID owner = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        List<ServerSentEvent<String>> ownerEvents = new CopyOnWriteArrayList<>();
+        List<ServerSentEvent<String>> adminEvents = new CopyOnWriteArrayList<>();
+        Disposable ownerSubscription = bus.stream(owner, false).subscribe(ownerEvents::add);
+        Disposable adminSubscription = bus.stream(UUID.randomUUID(), true).subscribe(adminEvents::add);
+
+        UUID documentId = UUID.randomUUID();
+        bus.publish(DocumentStatusEvent.embedding(documentId, owner, 16, 40));
+        bus.publish(DocumentStatusEvent.started(UUID.randomUUID(), other));
+        ownerSubscription.dispose();
+        adminSubscription.dispose();
+
+        // 第一帧是连接注释
+        assertEquals("connected", ownerEvents.get(0).comment());
+        assertNull(ownerEvents.get(0).data());
+        assertEquals(2, ownerEvents.size());
+        ServerSentEvent<String> progress = ownerEvents.get(1);
+        assertEquals(DocumentStatusEventBus.EVENT_NAME, progress.event());
+        assertTrue(progress.data().contains("\"documentId\":\"" + documentId + "\""));
+        assertTrue(progress.data().contains("\"stage\":\"EMBEDDING\""));
+        assertTrue(progress.data().contains("\"processed\":16"));
+        assertTrue(progress.data().contains("\"total\":40"));
+        assertEquals(3, adminEvents.size());
+    }
+
+    @Test
+    void publishWithoutSubscribersIsDropped() {
+        assertDoesNotThrow(() -> bus.publish(DocumentStatusEvent.failed(UUID.randomUUID(), UUID.randomUUID(), "解析失败")));
+
+        List<ServerSentEvent<String>> events = new CopyOnWriteArrayList<>();
+        Disposable subscription = bus.stream(UUID.randomUUID(), true).subscribe(events::add);
+        subscription.dispose();
+
+        assertEquals(1, events.size());
+    }
+}
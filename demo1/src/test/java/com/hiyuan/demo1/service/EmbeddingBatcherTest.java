@@ -0,0 +1,224 @@
+package com.hiyuan.demo1.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmbeddingBatcherTest {
+
+    private static final int CALLERS = 8;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    private EmbeddingBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new EmbeddingBatcher(embeddingService);
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", CALLERS);
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 2000L);
+        ReflectionTestUtils.setField(batcher, "queueCapacity", 100);
+        ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 2);
+        ReflectionTestUtils.setField(batcher, "maxQueuedBatches", 8);
+        ReflectionTestUtils.setField(batcher, "requestTimeoutMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void concurrentRequestsAreSentAsOneBatchAndResultsRoutedBack() throws Exception {
+        batcher.start();
+        when(embeddingService.embedAll(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(EmbeddingBatcherTest::vectorOf).toList();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                String text = "问题" + i;
+                results.add(executor.submit(() -> batcher.embed(text)));
+            }
+            for (int i = 0; i < CALLERS; i++) {
+                assertArrayEquals(vectorOf("问题" + i), results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> texts = ArgumentCaptor.forClass(List.class);
+        verify(embeddingService, times(1)).embedAll(texts.capture());
+        assertEquals(CALLERS, texts.getValue().size());
+        verify(embeddingService, never()).embed(anyString());
+        assertEquals(1, batcher.batchCount());
+    }
+
+    @Test
+    void identicalTextsInBatchAreEmbeddedOnce() {
+        when(embeddingService.embedAll(List.of("什么是TCP", "什么是UDP")))
+                .thenReturn(List.of(new float[]{1f}, new float[]{2f}));
+        List<EmbeddingBatcher.PendingEmbedding> batch = List.of(
+                pending("什么是TCP"), pending("什么是UDP"), pending("什么是TCP"));
+
+        batcher.send(batch);
+
+        assertArrayEquals(new float[]{1f}, batch.get(0).result().join());
+        assertArrayEquals(new float[]{2f}, batch.get(1).result().join());
+        assertArrayEquals(new float[]{1f}, batch.get(2).result().join());
+    }
+
+    @Test
+    void singleTextBatchUsesSingleEmbeddingCall() {
+        when(embeddingService.embed("什么是TCP")).thenReturn(new float[]{1f});
+        EmbeddingBatcher.PendingEmbedding pending = pending("什么是TCP");
+
+        batcher.send(List.of(pending, pending("什么是TCP")));
+
+        assertArrayEquals(new float[]{1f}, pending.result().join());
+        verify(embeddingService, never()).embedAll(anyList());
+    }
+
+    @Test
+    void batchFailureIsReportedToEveryCaller() {
+        RuntimeException failure = new RuntimeException("嵌入API错误: rate limit");
+        when(embeddingService.embedAll(anyList())).thenThrow(failure);
+        List<EmbeddingBatcher.PendingEmbedding> batch = List.of(pending("问题1"), pending("问题2"));
+
+        batcher.send(batch);
+
+        for (EmbeddingBatcher.PendingEmbedding pending : batch) {
+            CompletionException error = assertThrows(CompletionException.class, () -> pending.result().join());
+            assertSame(failure, error.getCause());
+        }
+    }
+
+    @Test
+    void errorDuringSendCompletesEveryCaller() {
+        NoClassDefFoundError failure = new NoClassDefFoundError("okhttp3/Response");
+        when(embeddingService.embedAll(anyList())).thenThrow(failure);
+        List<EmbeddingBatcher.PendingEmbedding> batch = List.of(pending("问题1"), pending("问题2"));
+
+        assertThrows(NoClassDefFoundError.class, () -> batcher.send(batch));
+
+        for (EmbeddingBatcher.PendingEmbedding pending : batch) {
+            CompletionException error = assertThrows(CompletionException.class, () -> pending.result().join());
+            assertSame(failure, error.getCause());
+        }
+    }
+
+    @Test
+    void callerGivesUpWhenProviderHangs() throws Exception {
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 0L);
+        ReflectionTestUtils.setField(batcher, "requestTimeoutMs", 100L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingService.embed("什么是TCP")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new float[]{1f};
+        });
+        batcher.start();
+        try {
+            long start = System.currentTimeMillis();
+            RuntimeException error = assertThrows(RuntimeException.class, () -> batcher.embed("什么是TCP"));
+
+            assertTrue(error.getMessage().contains("超时"));
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void rejectedBatchFallsBackToDirectRequestOnCallerThread() throws Exception {
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 0L);
+        ReflectionTestUtils.setField(batcher, "maxConcurrentBatches", 1);
+        ReflectionTestUtils.setField(batcher, "maxQueuedBatches", 1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingService.embed(anyString())).thenAnswer(invocation -> {
+            String text = invocation.getArgument(0);
+            if (text.startsWith("阻塞")) {
+                firstStarted.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return vectorOf(text);
+        });
+        batcher.start();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 第一个批次占住唯一的发送线程，第二个批次占满待发送队列
+            Future<float[]> first = executor.submit(() -> batcher.embed("阻塞1"));
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            Future<float[]> second = executor.submit(() -> batcher.embed("阻塞2"));
+            ThreadPoolExecutor dispatcher = (ThreadPoolExecutor) ReflectionTestUtils.getField(batcher, "dispatcher");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (dispatcher.getQueue().isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline, "等待第二个批次入队超时");
+                Thread.sleep(10);
+            }
+
+            // 第三个批次被拒绝，调用线程直接请求，不等待前面的批次
+            assertArrayEquals(vectorOf("直接"), batcher.embed("直接"));
+
+            release.countDown();
+            assertArrayEquals(vectorOf("阻塞1"), first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(vectorOf("阻塞2"), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void disabledBatcherEmbedsDirectly() {
+        ReflectionTestUtils.setField(batcher, "enabled", false);
+        batcher.start();
+        when(embeddingService.embed("什么是TCP")).thenReturn(new float[]{1f});
+
+        assertArrayEquals(new float[]{1f}, batcher.embed("什么是TCP"));
+        verify(embeddingService, never()).embedAll(anyList());
+    }
+
+    private static EmbeddingBatcher.PendingEmbedding pending(String text) {
+        return new EmbeddingBatcher.PendingEmbedding(text, new CompletableFuture<>());
+    }
+
+    private static float[] vectorOf(String text) {
+        return new float[]{text.hashCode(), text.length()};
+    }
+}
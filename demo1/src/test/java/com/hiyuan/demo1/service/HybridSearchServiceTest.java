@@ -0,0 +1,189 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.repository.VectorRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HybridSearchServiceTest {
+
+    @Mock
+    private VectorRecordRepository vectorRecordRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private HybridSearchService hybridSearchService;
+
+    @BeforeEach
+    void setUp() {
+        hybridSearchService = new HybridSearchService(
+                vectorRecordRepository, Runnable::run, jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(hybridSearchService, "hybridEnabled", true);
+        ReflectionTestUtils.setField(hybridSearchService, "rrfK", 60);
+        ReflectionTestUtils.setField(hybridSearchService, "maxLexicalTerms", 16);
+        ReflectionTestUtils.setField(hybridSearchService, "lexicalTimeoutMs", 1000L);
+    }
+
+    @Test
+    void buildLexicalQueryExtractsCodesAndCjkTrigrams() {
+        HybridSearchService.LexicalQuery query =
+                HybridSearchService.buildLexicalQuery("CS101课程里牛顿定律是什么？", 16);
+
+        assertNotNull(query);
+        List<String> terms = List.of(query.pattern().split("\\|"));
+        assertTrue(terms.contains("CS101"));
+        assertTrue(terms.contains("牛顿定"));
+        assertTrue(terms.contains("顿定律"));
+        assertFalse(terms.contains("什么"));
+        assertTrue(query.keywords().contains("CS101"));
+    }
+
+    @Test
+    void buildLexicalQueryKeepsShortTokensOutOfFilterPattern() {
+        HybridSearchService.LexicalQuery query = HybridSearchService.buildLexicalQuery("AI 和 TCP 协议", 16);
+
+        assertNotNull(query);
+        assertEquals("TCP", query.pattern());
+        assertTrue(query.keywords().contains("AI"));
+        assertTrue(query.keywords().contains("协议"));
+    }
+
+    @Test
+    void exactTermPatternMatchesWholeAsciiTermsOnly() {
+        Pattern pattern = hybridSearchService.exactTermPattern("CS101课程里牛顿定律是什么？");
+
+        assertNotNull(pattern);
+        assertTrue(pattern.matcher("本节属于 cs101 的第三章").find());
+        assertFalse(pattern.matcher("CS1010 高级课程").find());
+        assertFalse(pattern.matcher("牛顿定律").find());
+        assertNull(hybridSearchService.exactTermPattern("牛顿定律是什么？"));
+    }
+
+    @Test
+    void buildLexicalQueryReturnsNullWithoutUsableTerms() {
+        assertNull(HybridSearchService.buildLexicalQuery("是什么？", 16));
+        assertNull(HybridSearchService.buildLexicalQuery("  ", 16));
+    }
+
+    @Test
+    void fuseRanksDocumentsFoundByBothLegsFirst() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        UUID d = UUID.randomUUID();
+
+        List<UUID> fused = hybridSearchService.fuse(List.of(a, b, c), List.of(c, d), 4);
+
+        // c 两路均命中排第一；b 与 d 同分时保留向量召回优先
+        assertEquals(List.of(c, a, b, d), fused);
+    }
+
+    @Test
+    void fuseKeepsVectorOrderWhenLexicalLegIsEmpty() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+
+        assertEquals(List.of(a, b), hybridSearchService.fuse(List.of(a, b, c), List.of(), 2));
+    }
+
+    @Test
+    void lexicalSearchIsScopedToOwnersForStudents() {
+        UUID owner = UUID.randomUUID();
+        UUID hit = UUID.randomUUID();
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(vectorRecordRepository.findLexicalMatchIdsByOwnerIds(
+                anyString(), anyString(), eq(List.of(owner)), anyInt()))
+                .thenReturn(List.of(hit));
+
+        List<UUID> ids = hybridSearchService.searchLexicalAsync("TCP 三次握手", scope, 10).join();
+
+        assertEquals(List.of(hit), ids);
+    }
+
+    @Test
+    void lexicalSearchSetsStatementTimeoutInsideReadOnlyTransaction() {
+        SimpleTransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部");
+        when(vectorRecordRepository.findLexicalMatchIds(anyString(), anyString(), anyInt())).thenReturn(List.of());
+
+        hybridSearchService.searchLexicalAsync("TCP 三次握手", scope, 10).join();
+
+        InOrder order = inOrder(transactionManager, jdbcTemplate, vectorRecordRepository);
+        order.verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        order.verify(jdbcTemplate).queryForObject(contains("statement_timeout"), eq(String.class), eq("1000"));
+        order.verify(vectorRecordRepository).findLexicalMatchIds(anyString(), anyString(), anyInt());
+        order.verify(transactionManager).commit(status);
+    }
+
+    @Test
+    void lexicalSearchIsSkippedWhenRetrievalPoolRejects() {
+        hybridSearchService = new HybridSearchService(vectorRecordRepository, command -> {
+            throw new RejectedExecutionException("pool full");
+        }, jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(hybridSearchService, "hybridEnabled", true);
+        ReflectionTestUtils.setField(hybridSearchService, "maxLexicalTerms", 16);
+        ReflectionTestUtils.setField(hybridSearchService, "lexicalTimeoutMs", 1000L);
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部");
+
+        assertTrue(hybridSearchService.searchLexicalAsync("TCP 三次握手", scope, 10).join().isEmpty());
+        verifyNoInteractions(vectorRecordRepository, jdbcTemplate);
+    }
+
+    @Test
+    void lexicalSearchFailureDegradesToEmptyResult() {
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部");
+        when(vectorRecordRepository.findLexicalMatchIds(anyString(), anyString(), anyInt()))
+                .thenThrow(new RuntimeException("db down"));
+
+        assertTrue(hybridSearchService.searchLexicalAsync("TCP 三次握手", scope, 10).join().isEmpty());
+    }
+
+    @Test
+    void lexicalSearchSkipsDatabaseWhenDisabled() {
+        ReflectionTestUtils.setField(hybridSearchService, "hybridEnabled", false);
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部");
+
+        assertTrue(hybridSearchService.searchLexicalAsync("TCP 三次握手", scope, 10).join().isEmpty());
+        verifyNoInteractions(vectorRecordRepository);
+    }
+}
@@ -0,0 +1,196 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.service.AiProviderModelManager.ChatModelSettings;
+import com.hiyuan.demo1.service.AiProviderModelManager.ProviderRoute;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LlmRouterTest {
+
+    private static final ProviderRoute FAST = route("SILICONFLOW");
+    private static final ProviderRoute SLOW = route("MODELSCOPE");
+
+    @Mock
+    private AiProviderModelManager modelManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LlmRouter router;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        router = new LlmRouter(modelManager, meterRegistry);
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(router, "hedgePercentile", 0.95d);
+        ReflectionTestUtils.setField(router, "hedgeMinDelayMs", 50L);
+        ReflectionTestUtils.setField(router, "hedgeInitialDelayMs", 100L);
+        ReflectionTestUtils.setField(router, "latencyWindow", 100);
+        ReflectionTestUtils.setField(router, "failureCooldownSeconds", 60L);
+    }
+
+    @Test
+    void singleProviderIsCalledDirectlyWithoutHedging() {
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW));
+        AtomicInteger calls = new AtomicInteger();
+
+        String answer = router.call(route -> {
+            calls.incrementAndGet();
+            sleep(300);
+            return route.providerCode();
+        });
+
+        assertEquals("MODELSCOPE", answer);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void syncCallDoesNotHedgeSlowPrimary() {
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+        Thread caller = Thread.currentThread();
+        List<ProviderRoute> called = new CopyOnWriteArrayList<>();
+
+        String answer = router.call(route -> {
+            called.add(route);
+            assertSame(caller, Thread.currentThread());
+            sleep(300);
+            return route.providerCode();
+        });
+
+        // 超过对冲阈值（100ms）也只请求首选提供商，阻塞调用无法取消，不发出第二个请求
+        assertEquals(1, called.size());
+        assertEquals(called.get(0).providerCode(), answer);
+        assertTrue(meterRegistry.find("llm.hedge.triggered").counters().isEmpty());
+    }
+
+    @Test
+    void syncCallFailsOverWhenProviderErrors() {
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+
+        String answer = router.call(route -> {
+            if (route == SLOW) {
+                throw new IllegalStateException("503 Service Unavailable");
+            }
+            return route.providerCode();
+        });
+
+        assertEquals("SILICONFLOW", answer);
+    }
+
+    @Test
+    void syncCallThrowsLastErrorWhenAllProvidersFail() {
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> router.call(route -> {
+            throw new IllegalStateException(route.providerCode() + " down");
+        }));
+
+        assertTrue(error.getMessage().endsWith("down"));
+    }
+
+    @Test
+    void failedProviderIsMovedToTheEndDuringCooldown() {
+        // 第一次只有 MODELSCOPE 可用并失败，之后两个提供商都参与路由
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW), List.of(SLOW, FAST));
+        assertThrows(IllegalStateException.class, () -> router.call(route -> {
+            throw new IllegalStateException("429 Too Many Requests");
+        }));
+
+        // pick = 0 时无冷却会选中第一个提供商
+        assertEquals(List.of(FAST, SLOW), router.candidates(LlmRouter.Mode.SYNC, 0.0));
+    }
+
+    @Test
+    void streamHedgesWhenFirstTokenIsSlow() {
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+
+        List<String> tokens = router.stream(route -> route == SLOW
+                        ? Mono.delay(Duration.ofSeconds(3)).thenMany(Flux.just("慢"))
+                        : Flux.just("快", "答"))
+                .collectList()
+                .block(Duration.ofSeconds(2));
+
+        assertEquals(List.of("快", "答"), tokens);
+    }
+
+    @Test
+    void streamFailsOverWhenProviderErrorsBeforeFirstToken() {
+        ReflectionTestUtils.setField(router, "hedgeEnabled", false);
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+
+        List<String> tokens = router.stream(route -> route == SLOW
+                        ? Flux.error(new IllegalStateException("connection reset"))
+                        : Flux.just("答案"))
+                .collectList()
+                .block(Duration.ofSeconds(2));
+
+        assertEquals(List.of("答案"), tokens);
+    }
+
+    @Test
+    void streamErrorAfterFirstTokenIsNotRetried() {
+        ReflectionTestUtils.setField(router, "hedgeInitialDelayMs", 5000L);
+        when(modelManager.getRoutes()).thenReturn(List.of(SLOW, FAST));
+        AtomicInteger attempts = new AtomicInteger();
+
+        Flux<String> stream = router.stream(route -> {
+            attempts.incrementAndGet();
+            return Flux.concat(Flux.just("部分"), Flux.error(new IllegalStateException("stream broken")));
+        });
+
+        assertThrows(IllegalStateException.class, () -> stream.collectList().block(Duration.ofSeconds(2)));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void providerLatencyIsPublishedPerProvider() {
+        when(modelManager.getRoutes()).thenReturn(List.of(FAST));
+
+        router.stream(route -> Flux.just("答", "案")).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(1, meterRegistry.get("llm.provider.latency")
+                .tag("provider", "SILICONFLOW")
+                .tag("phase", "first_token")
+                .timer()
+                .count());
+        assertEquals(1, meterRegistry.get("llm.provider.latency")
+                .tag("provider", "SILICONFLOW")
+                .tag("phase", "complete")
+                .timer()
+                .count());
+    }
+
+    private static ProviderRoute route(String providerCode) {
+        ChatModelSettings settings = new ChatModelSettings(
+                "https://" + providerCode.toLowerCase() + "/v1", providerCode + "-model", "sk-test", 0.7, 4096);
+        return new ProviderRoute(providerCode, providerCode, settings, null);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LlmUsageMetricsTest {
+
+    private static final AiProviderModelManager.ProviderRoute ROUTE = new AiProviderModelManager.ProviderRoute(
+            "qwen", "通义千问",
+            new AiProviderModelManager.ChatModelSettings("https://example.com/v1", "qwen-plus", "key", 0.7, 1024),
+            null);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LlmUsageMetrics usageMetrics = new LlmUsageMetrics(meterRegistry);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void openAiStyleCachedTokensAreRecorded() throws Exception {
+        usageMetrics.record(ROUTE, objectMapper.readTree("""
+                {"prompt_tokens": 1200, "completion_tokens": 300,
+                 "prompt_tokens_details": {"cached_tokens": 1024}}
+                """), "stream");
+
+        assertEquals(1200, count("llm.usage.prompt.tokens"));
+        assertEquals(1024, count("llm.usage.cached.tokens"));
+        assertEquals(300, count("llm.usage.completion.tokens"));
+    }
+
+    @Test
+    void deepSeekStyleCacheHitTokensAreRecorded() throws Exception {
+        usageMetrics.record(ROUTE, objectMapper.readTree("""
+                {"prompt_tokens": 800, "completion_tokens": 100, "prompt_cache_hit_tokens": 640}
+                """), "stream");
+
+        assertEquals(640, count("llm.usage.cached.tokens"));
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("provider", "qwen").tag("model", "qwen-plus").counter().count();
+    }
+}
@@ -0,0 +1,53 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.util.VectorUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MrlServiceTest {
+
+    private MrlService mrlService;
+
+    @BeforeEach
+    void setUp() {
+        mrlService = new MrlService();
+        ReflectionTestUtils.setField(mrlService, "targetDimension", 2);
+        ReflectionTestUtils.setField(mrlService, "originalDimension", 4);
+    }
+
+    @Test
+    void truncateVectorRestoresUnitNorm() {
+        float[] truncated = mrlService.truncateVector(new float[]{3f, 4f, 12f, 0f});
+
+        assertEquals(2, truncated.length);
+        assertEquals(1.0, VectorUtils.l2Norm(truncated), 1e-6);
+        assertArrayEquals(new float[]{0.6f, 0.8f}, truncated, 1e-6f);
+    }
+
+    @Test
+    void truncateVectorNormalizesWithoutMutatingInputWhenDimensionMatches() {
+        float[] input = {3f, 4f};
+
+        float[] normalized = mrlService.truncateVector(input);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, normalized, 1e-6f);
+        assertArrayEquals(new float[]{3f, 4f}, input);
+    }
+
+    @Test
+    void truncateVectorKeepsZeroVector() {
+        assertArrayEquals(new float[]{0f, 0f}, mrlService.truncateVector(new float[]{0f, 0f, 1f}));
+    }
+
+    @Test
+    void dotProductOfNormalizedVectorsMatchesCosine() {
+        float[] a = mrlService.truncateVector(new float[]{1f, 2f});
+        float[] b = mrlService.truncateVector(new float[]{3f, 1f});
+
+        assertEquals(VectorUtils.cosineSimilarity(a, b), VectorUtils.dotProduct(a, b), 1e-6);
+    }
+}
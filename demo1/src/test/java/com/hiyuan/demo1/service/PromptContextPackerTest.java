@@ -0,0 +1,125 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.util.CjkTokenEstimator;
+import com.hiyuan.demo1.util.TokenEstimator;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptContextPackerTest {
+
+    @Test
+    void lowRankedCitationsAreDroppedOnceBudgetIsUsed() {
+        PromptContextPacker packer = packer(100, 400, 600);
+        List<String> citations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            citations.add(distinctText(i, 40));
+        }
+
+        PromptContextPacker.PackedContext packed = packer.pack("指令", "问题", null, null, null, citations);
+
+        assertEquals(List.of(0, 1), packed.citationIndexes());
+        assertEquals(citations.subList(0, 2), packed.excerpts());
+        assertEquals(82, packed.totalTokens());
+        assertTrue(packed.totalTokens() <= 100);
+    }
+
+    @Test
+    void previousAnswerKeepsLeadingSentencesWithinHistoryBudget() {
+        PromptContextPacker packer = packer(3000, 20, 600);
+
+        PromptContextPacker.PackedContext packed = packer.pack("指令", "问题", null, "什么是TCP？",
+                "TCP是面向连接的协议。它通过三次握手建立连接。它还提供流量控制和拥塞控制，保证数据可靠传输。",
+                List.of());
+
+        assertEquals("什么是TCP？", packed.previousQuestion());
+        assertEquals("TCP是面向连接的协议。……", packed.previousAnswer());
+        assertEquals(17, packed.historyTokens());
+    }
+
+    @Test
+    void sentencesRepeatedAcrossCitationsAreDropped() {
+        PromptContextPacker packer = packer(3000, 400, 600);
+
+        PromptContextPacker.PackedContext packed = packer.pack("指令", "TCP", null, null, null, List.of(
+                "TCP通过三次握手建立可靠的连接。",
+                "TCP通过三次握手建立可靠的连接！另外UDP是无连接的协议。"));
+
+        assertEquals(List.of("TCP通过三次握手建立可靠的连接。", "另外UDP是无连接的协议。"), packed.excerpts());
+        assertEquals(1, packed.droppedSentences());
+    }
+
+    @Test
+    void firstCitationIsKeptEvenWhenInstructionsUseTheWholeBudget() {
+        PromptContextPacker packer = packer(10, 400, 600);
+
+        PromptContextPacker.PackedContext packed = packer.pack(distinctText(0, 20), "问题", null, "上一问", "上一答",
+                List.of("第一份资料。", "第二份资料。", "第三份资料。"));
+
+        assertEquals(List.of(0), packed.citationIndexes());
+        assertNull(packed.previousQuestion());
+        assertNull(packed.previousAnswer());
+    }
+
+    @Test
+    void sentencesRelevantToQuestionArePreferredWithinCitationQuota() {
+        PromptContextPacker packer = packer(3000, 400, 35);
+
+        PromptContextPacker.PackedContext packed = packer.pack("指令", "什么是拥塞控制？", null, null, null,
+                List.of("网络分层模型包括物理层数据链路层网络层等七层结构。"
+                        + "TCP使用慢启动和拥塞避免算法进行拥塞控制。"
+                        + "应用层协议有很多种类例如超文本传输协议。"));
+
+        assertEquals(List.of("TCP使用慢启动和拥塞避免算法进行拥塞控制。"), packed.excerpts());
+        assertEquals(2, packed.droppedSentences());
+    }
+
+    @Test
+    void customEstimatorIsChosenByModelName() {
+        TokenEstimator gptEstimator = new TokenEstimator() {
+            @Override
+            public boolean supports(String modelName) {
+                return modelName.startsWith("gpt-");
+            }
+
+            @Override
+            public int estimate(CharSequence text) {
+                return text == null ? 0 : text.length();
+            }
+        };
+        AtomicReference<String> model = new AtomicReference<>("gpt-4o");
+        PromptContextPacker packer = new PromptContextPacker(List.of(gptEstimator), model::get);
+
+        assertSame(gptEstimator, packer.currentEstimator());
+        model.set("qwen-plus");
+        assertSame(CjkTokenEstimator.DEFAULT, packer.currentEstimator());
+    }
+
+    private static PromptContextPacker packer(int maxTokens, int historyMaxTokens, int citationMaxTokens) {
+        PromptContextPacker packer = new PromptContextPacker(List.of(), () -> "test-model");
+        ReflectionTestUtils.setField(packer, "maxTokens", maxTokens);
+        ReflectionTestUtils.setField(packer, "historyMaxTokens", historyMaxTokens);
+        ReflectionTestUtils.setField(packer, "citationMaxTokens", citationMaxTokens);
+        ReflectionTestUtils.setField(packer, "redundancyThreshold", 0.8);
+        return packer;
+    }
+
+    /**
+     * 由互不重复的汉字组成、不含句末标点的文本，每个字计 1 个 token
+     */
+    private static String distinctText(int seed, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((char) (0x4E00 + seed * 100 + i));
+        }
+        return text.toString();
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
 import java.util.UUID;
@@ -67,4 +68,42 @@ class QaDocumentAccessScopeResolverTest {
         assertTrue(scope.ownerIds().isEmpty());
         verifyNoInteractions(classAssociationRepository);
     }
+
+    @Test
+    void studentScopeIsCachedUntilInvalidated() {
+        ReflectionTestUtils.setField(resolver, "cacheTtlSeconds", 300L);
+        ReflectionTestUtils.setField(resolver, "cacheMaxEntries", 100);
+        UUID studentId = UUID.randomUUID();
+        UUID teacherA = UUID.randomUUID();
+        UUID teacherB = UUID.randomUUID();
+        UserPrincipal principal = new UserPrincipal(studentId, "student", "pwd", UserRole.STUDENT);
+        Authentication auth = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+
+        when(classAssociationRepository.findTeacherIdsByStudentId(studentId))
+                .thenReturn(List.of(teacherA))
+                .thenReturn(List.of(teacherA, teacherB));
+
+        assertEquals(List.of(studentId, teacherA), resolver.resolve(auth).ownerIds());
+        assertEquals(List.of(studentId, teacherA), resolver.resolve(auth).ownerIds());
+        verify(classAssociationRepository, times(1)).findTeacherIdsByStudentId(studentId);
+
+        resolver.invalidateStudent(studentId);
+
+        assertEquals(List.of(studentId, teacherA, teacherB), resolver.resolve(auth).ownerIds());
+        verify(classAssociationRepository, times(2)).findTeacherIdsByStudentId(studentId);
+    }
+
+    @Test
+    void cacheDisabledWhenTtlIsZero() {
+        ReflectionTestUtils.setField(resolver, "cacheTtlSeconds", 0L);
+        UUID studentId = UUID.randomUUID();
+        UserPrincipal principal = new UserPrincipal(studentId, "student", "pwd", UserRole.STUDENT);
+        Authentication auth = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        when(classAssociationRepository.findTeacherIdsByStudentId(studentId)).thenReturn(List.of());
+
+        resolver.resolve(auth);
+        resolver.resolve(auth);
+
+        verify(classAssociationRepository, times(2)).findTeacherIdsByStudentId(studentId);
+    }
 }
@@ -0,0 +1,102 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.dto.response.CursorPage;
+import com.hiyuan.demo1.entity.QaHistory;
+import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.QaHistoryRepository;
+import com.hiyuan.demo1.util.KeysetCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QaHistoryQueryServiceTest {
+
+    @Mock
+    private QaHistoryRepository qaHistoryRepository;
+
+    @InjectMocks
+    private QaHistoryQueryService qaHistoryQueryService;
+
+    @Test
+    void pageFetchesOneExtraRowAndReturnsCursorOfLastRow() {
+        UUID userId = UUID.randomUUID();
+        QaHistory newest = history(LocalDateTime.of(2024, 5, 1, 10, 0));
+        QaHistory second = history(LocalDateTime.of(2024, 5, 1, 9, 0));
+        QaHistory extra = history(LocalDateTime.of(2024, 5, 1, 8, 0));
+        when(qaHistoryRepository.findPageByUserId(userId, null, null, null, null, 3))
+                .thenReturn(List.of(newest, second, extra));
+
+        CursorPage<QaHistory> page = qaHistoryQueryService.page(userId, "  ", null, null, null, 2);
+
+        assertEquals(List.of(newest, second), page.getContent());
+        assertTrue(page.isHasNext());
+        KeysetCursor cursor = KeysetCursor.decode(page.getNextCursor());
+        assertEquals(second.getAskedAt(), cursor.at());
+        assertEquals(second.getId(), cursor.id());
+        verify(qaHistoryRepository, never()).searchPageByKeyword(any(), any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void nextPageContinuesAfterCursorAndSearchesEscapedKeyword() {
+        UUID userId = UUID.randomUUID();
+        QaHistory last = history(LocalDateTime.of(2024, 5, 1, 8, 0));
+        String cursor = new KeysetCursor(LocalDateTime.of(2024, 5, 1, 9, 0, 0, 123_456_000), last.getId()).encode();
+        when(qaHistoryRepository.searchPageByKeyword(eq(userId), eq("%100\\%向量%"), isNull(), isNull(),
+                eq(LocalDateTime.of(2024, 5, 1, 9, 0, 0, 123_456_000)), eq(last.getId()), eq(21)))
+                .thenReturn(List.of(last));
+
+        CursorPage<QaHistory> page = qaHistoryQueryService.page(userId, " 100%向量 ", null, null, cursor, 20);
+
+        assertEquals(List.of(last), page.getContent());
+        assertFalse(page.isHasNext());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void malformedCursorIsRejectedAndSizeIsCapped() {
+        BusinessException invalid = assertThrows(BusinessException.class,
+                () -> qaHistoryQueryService.page(UUID.randomUUID(), null, null, null, "%%%", 20));
+        assertEquals(400, invalid.getCode());
+        verifyNoInteractions(qaHistoryRepository);
+
+        UUID userId = UUID.randomUUID();
+        when(qaHistoryRepository.findPageByUserId(userId, null, null, null, null,
+                QaHistoryQueryService.MAX_PAGE_SIZE + 1)).thenReturn(List.of());
+
+        CursorPage<QaHistory> page = qaHistoryQueryService.page(userId, null, null, null, null, 10_000);
+
+        assertEquals(QaHistoryQueryService.MAX_PAGE_SIZE, page.getSize());
+        assertTrue(page.getContent().isEmpty());
+    }
+
+    private static QaHistory history(LocalDateTime askedAt) {
+        QaHistory history = QaHistory.builder()
+                .question("问题")
+                .answer("答案")
+                .askedAt(askedAt)
+                .build();
+        history.setId(UUID.randomUUID());
+        return history;
+    }
+}
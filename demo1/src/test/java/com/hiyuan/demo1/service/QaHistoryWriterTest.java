@@ -0,0 +1,120 @@
+package com.hiyuan.demo1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class QaHistoryWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private QaHistoryWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new QaHistoryWriter(jdbcTemplate, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(writer, "queueCapacity", 100);
+        ReflectionTestUtils.setField(writer, "batchSize", 50);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 50L);
+    }
+
+    @Test
+    void flushWritesHistoriesAndCitationsInOneBatchEach() {
+        writer.flush(List.of(record(UUID.randomUUID(), 2), record(UUID.randomUUID(), 1)));
+
+        ArgumentCaptor<List<Object[]>> historyRows = rowsCaptor();
+        ArgumentCaptor<List<Object[]>> citationRows = rowsCaptor();
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO t_qa_history"), historyRows.capture());
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO t_citation"), citationRows.capture());
+        assertEquals(2, historyRows.getValue().size());
+        assertEquals(3, citationRows.getValue().size());
+    }
+
+    @Test
+    void flushKeepsHistoryWhenCitationInsertFails() {
+        // 只让引用 SQL 失败；问答记录的 batchUpdate 也走同一个桩，按 SQL 区分
+        doAnswer(invocation -> {
+            if (invocation.<String>getArgument(0).contains("INSERT INTO t_citation")) {
+                throw new RuntimeException("fk violation");
+            }
+            return new int[0];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+
+        writer.flush(List.of(record(UUID.randomUUID(), 1)));
+
+        verify(jdbcTemplate, times(2)).batchUpdate(contains("INSERT INTO t_qa_history"), anyList());
+        verify(jdbcTemplate, times(1)).batchUpdate(contains("INSERT INTO t_citation"), anyList());
+    }
+
+    @Test
+    void submitSkipsAnonymousRequests() {
+        writer.start();
+        try {
+            QaHistoryWriter.QaHistoryRecord anonymous = new QaHistoryWriter.QaHistoryRecord(
+                    UUID.randomUUID(), null, null, "问题", "答案", 10, "model", LocalDateTime.now(), false, List.of());
+
+            assertFalse(writer.submit(anonymous));
+        } finally {
+            writer.shutdown();
+        }
+        verify(jdbcTemplate, never()).batchUpdate(contains("INSERT INTO t_qa_history"), anyList());
+    }
+
+    @Test
+    void shutdownFlushesPendingRecords() {
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(writer.submit(record(UUID.randomUUID(), 0)));
+        }
+
+        writer.shutdown();
+
+        ArgumentCaptor<List<Object[]>> historyRows = rowsCaptor();
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(contains("INSERT INTO t_qa_history"), historyRows.capture());
+        assertEquals(5, historyRows.getAllValues().stream().mapToInt(List::size).sum());
+        assertEquals(5, writer.writtenCount());
+        assertEquals(0, writer.pendingCount());
+    }
+
+    private static QaHistoryWriter.QaHistoryRecord record(UUID userId, int citationCount) {
+        List<QaHistoryWriter.CitationRecord> citations = java.util.stream.IntStream.range(0, citationCount)
+                .mapToObj(i -> new QaHistoryWriter.CitationRecord(
+                        UUID.randomUUID(), UUID.randomUUID(), 1, i, 0.8f, "片段" + i))
+                .toList();
+        return new QaHistoryWriter.QaHistoryRecord(
+                UUID.randomUUID(), userId, null, "问题", "答案", 120, "model", LocalDateTime.now(), false, citations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Object[]>> rowsCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
@@ -4,24 +4,35 @@ import com.hiyuan.demo1.dto.QaResponse;
 import com.hiyuan.demo1.entity.Document;
 import com.hiyuan.demo1.entity.DocumentChunk;
 import com.hiyuan.demo1.entity.VectorRecord;
-import com.hiyuan.demo1.repository.QaHistoryRepository;
-import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.enums.VectorQuantization;
+import com.hiyuan.demo1.repository.DocumentRepository;
 import com.hiyuan.demo1.repository.VectorRecordRepository;
 import com.hiyuan.demo1.util.VectorUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class QaServiceCitationFallbackTest {
@@ -39,10 +50,10 @@ class QaServiceCitationFallbackTest {
     private VectorRecordRepository vectorRecordRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private DocumentRepository documentRepository;
 
     @Mock
-    private QaHistoryRepository qaHistoryRepository;
+    private QaHistoryWriter qaHistoryWriter;
 
     @Mock
     private StreamingChatService streamingChatService;
@@ -53,6 +64,16 @@ class QaServiceCitationFallbackTest {
     @Mock
     private QaDocumentAccessScopeResolver accessScopeResolver;
 
+    @Mock
+    private HybridSearchService hybridSearchService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private VectorSearchExecutor vectorSearchExecutor =
+            new VectorSearchExecutor(mock(JdbcTemplate.class), mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private QaService qaService;
 
@@ -104,13 +125,206 @@ class QaServiceCitationFallbackTest {
         assertEquals(3, citations.size());
     }
 
+    @Test
+    void buildCitationsKeepsExactTermLexicalMatchesBelowThreshold() {
+        ReflectionTestUtils.setField(qaService, "minCitations", 1);
+
+        VectorRecord high = createRecord("doc-x", "文档X", "内容X", new float[]{1f, 0f});
+        VectorRecord lexical = createRecord("doc-y", "文档Y", "CS101 内容", new float[]{0f, 1f});
+        lexical.setId(UUID.randomUUID());
+
+        @SuppressWarnings("unchecked")
+        List<QaResponse.CitationInfo> citations = (List<QaResponse.CitationInfo>) ReflectionTestUtils.invokeMethod(
+                qaService,
+                "buildCitations",
+                List.of(high, lexical),
+                new float[]{1f, 0f},
+                Set.of(lexical.getId()),
+                Pattern.compile("(?<![A-Za-z0-9_])(?:CS101)(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE)
+        );
+
+        assertEquals(2, citations.size());
+    }
+
+    @Test
+    void buildCitationsFiltersLexicalMatchesWithoutExactTermBelowThreshold() {
+        ReflectionTestUtils.setField(qaService, "minCitations", 1);
+
+        VectorRecord high = createRecord("doc-x", "文档X", "内容X", new float[]{1f, 0f});
+        // 只命中中文滑窗“牛顿定”，没有包含问题中的完整术语 CS101
+        VectorRecord lexical = createRecord("doc-y", "文档Y", "牛顿定理的推广 CS1010", new float[]{0f, 1f});
+        lexical.setId(UUID.randomUUID());
+
+        @SuppressWarnings("unchecked")
+        List<QaResponse.CitationInfo> citations = (List<QaResponse.CitationInfo>) ReflectionTestUtils.invokeMethod(
+                qaService,
+                "buildCitations",
+                List.of(high, lexical),
+                new float[]{1f, 0f},
+                Set.of(lexical.getId()),
+                Pattern.compile("(?<![A-Za-z0-9_])(?:CS101)(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE)
+        );
+
+        assertEquals(1, citations.size());
+        assertEquals("文档X", citations.get(0).getDocumentTitle());
+    }
+
+    @Test
+    void quantizedSearchRequestsRescoreCandidatesForScopedOwners() {
+        ReflectionTestUtils.setField(qaService, "quantization", VectorQuantization.BINARY);
+        ReflectionTestUtils.setField(qaService, "rescoreMultiplier", 4);
+        UUID owner = UUID.randomUUID();
+        UUID hit = UUID.randomUUID();
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(vectorRecordRepository.findNearestVectorIdsBinaryByOwnerIds("[1.0,0.0]", List.of(owner), 4, 1))
+                .thenReturn(List.of(hit));
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 1);
+
+        assertEquals(List.of(hit), ids);
+    }
+
+    @Test
+    void ownerScopedQuantizedSearchFallsBackToExactSearchWhenIndexScanComesUpShort() {
+        ReflectionTestUtils.setField(qaService, "quantization", VectorQuantization.HALFVEC);
+        ReflectionTestUtils.setField(qaService, "rescoreMultiplier", 4);
+        UUID owner = UUID.randomUUID();
+        List<UUID> exact = List.of(UUID.randomUUID(), UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(vectorRecordRepository.findNearestVectorIdsHalfvecByOwnerIds("[1.0,0.0]", List.of(owner), 8, 2))
+                .thenReturn(List.of());
+        when(vectorRecordRepository.findNearestVectorIdsByOwnerIdsExact("[1.0,0.0]", List.of(owner), 2))
+                .thenReturn(exact);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 2);
+
+        assertEquals(exact, ids);
+    }
+
+    @Test
+    void coarseToFineFallsBackToExactSearchWhenFilteredIndexScanComesUpShort() {
+        ReflectionTestUtils.setField(qaService, "coarseToFineEnabled", true);
+        ReflectionTestUtils.setField(qaService, "coarseDocumentTopM", 8);
+        ReflectionTestUtils.setField(qaService, "exactSearchMaxRows", 2000L);
+        UUID owner = UUID.randomUUID();
+        List<UUID> documentIds = List.of(UUID.randomUUID());
+        List<UUID> exact = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds("[1.0,0.0]", List.of(owner), 8))
+                .thenReturn(documentIds);
+        when(documentRepository.sumChunkCountByIds(documentIds)).thenReturn(5000L);
+        when(vectorRecordRepository.findNearestVectorIdsByDocumentIds("[1.0,0.0]", documentIds, 3))
+                .thenReturn(List.of(exact.get(0)));
+        when(vectorRecordRepository.findNearestVectorIdsByDocumentIdsExact("[1.0,0.0]", documentIds, 3))
+                .thenReturn(exact);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 3);
+
+        assertEquals(exact, ids);
+    }
+
+    @Test
+    void coarseToFineKeepsIndexResultsWhenEnoughRowsReturned() {
+        ReflectionTestUtils.setField(qaService, "coarseToFineEnabled", true);
+        ReflectionTestUtils.setField(qaService, "coarseDocumentTopM", 8);
+        ReflectionTestUtils.setField(qaService, "exactSearchMaxRows", 2000L);
+        UUID owner = UUID.randomUUID();
+        List<UUID> documentIds = List.of(UUID.randomUUID());
+        List<UUID> hits = List.of(UUID.randomUUID(), UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds("[1.0,0.0]", List.of(owner), 8))
+                .thenReturn(documentIds);
+        when(documentRepository.sumChunkCountByIds(documentIds)).thenReturn(5000L);
+        when(vectorRecordRepository.findNearestVectorIdsByDocumentIds("[1.0,0.0]", documentIds, 2))
+                .thenReturn(hits);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 2);
+
+        assertEquals(hits, ids);
+        verify(vectorRecordRepository, never()).findNearestVectorIdsByDocumentIdsExact("[1.0,0.0]", documentIds, 2);
+    }
+
+    @Test
+    void coarseToFineUsesQuantizedIndexInQuantizedMode() {
+        ReflectionTestUtils.setField(qaService, "coarseToFineEnabled", true);
+        ReflectionTestUtils.setField(qaService, "coarseDocumentTopM", 8);
+        ReflectionTestUtils.setField(qaService, "exactSearchMaxRows", 2000L);
+        ReflectionTestUtils.setField(qaService, "quantization", VectorQuantization.BINARY);
+        ReflectionTestUtils.setField(qaService, "rescoreMultiplier", 4);
+        UUID owner = UUID.randomUUID();
+        List<UUID> documentIds = List.of(UUID.randomUUID());
+        List<UUID> hits = List.of(UUID.randomUUID(), UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds("[1.0,0.0]", List.of(owner), 8))
+                .thenReturn(documentIds);
+        when(documentRepository.sumChunkCountByIds(documentIds)).thenReturn(5000L);
+        when(vectorRecordRepository.findNearestVectorIdsBinaryByDocumentIds("[1.0,0.0]", documentIds, 8, 2))
+                .thenReturn(hits);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 2);
+
+        assertEquals(hits, ids);
+        verify(vectorRecordRepository, never()).findNearestVectorIdsByDocumentIds("[1.0,0.0]", documentIds, 2);
+    }
+
+    @Test
+    void coarseToFineSearchesSmallCandidateSetsExactlyWithoutIndexScan() {
+        ReflectionTestUtils.setField(qaService, "coarseToFineEnabled", true);
+        ReflectionTestUtils.setField(qaService, "coarseDocumentTopM", 8);
+        ReflectionTestUtils.setField(qaService, "exactSearchMaxRows", 2000L);
+        UUID owner = UUID.randomUUID();
+        List<UUID> documentIds = List.of(UUID.randomUUID(), UUID.randomUUID());
+        List<UUID> exact = List.of(UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds("[1.0,0.0]", List.of(owner), 8))
+                .thenReturn(documentIds);
+        when(documentRepository.sumChunkCountByIds(documentIds)).thenReturn(120L);
+        when(vectorRecordRepository.findNearestVectorIdsByDocumentIdsExact("[1.0,0.0]", documentIds, 3))
+                .thenReturn(exact);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 3);
+
+        assertEquals(exact, ids);
+        verify(vectorRecordRepository, never()).findNearestVectorIdsByDocumentIds("[1.0,0.0]", documentIds, 3);
+    }
+
+    @Test
+    void coarseToFineDoesNotFallBackWhenIndexReturnsEveryAvailableRow() {
+        ReflectionTestUtils.setField(qaService, "coarseToFineEnabled", true);
+        ReflectionTestUtils.setField(qaService, "coarseDocumentTopM", 8);
+        ReflectionTestUtils.setField(qaService, "exactSearchMaxRows", 0L);
+        UUID owner = UUID.randomUUID();
+        List<UUID> documentIds = List.of(UUID.randomUUID());
+        List<UUID> hits = List.of(UUID.randomUUID(), UUID.randomUUID());
+        QaDocumentAccessScopeResolver.AccessScope scope =
+                new QaDocumentAccessScopeResolver.AccessScope(owner, false, List.of(owner), "学生");
+        when(documentRepository.findNearestDocumentIdsByCentroidAndOwnerIds("[1.0,0.0]", List.of(owner), 8))
+                .thenReturn(documentIds);
+        when(documentRepository.sumChunkCountByIds(documentIds)).thenReturn(2L);
+        when(vectorRecordRepository.findNearestVectorIdsByDocumentIds("[1.0,0.0]", documentIds, 5))
+                .thenReturn(hits);
+
+        Object ids = ReflectionTestUtils.invokeMethod(qaService, "findVectorCandidates", "[1.0,0.0]", scope, 5);
+
+        assertEquals(hits, ids);
+        verify(vectorRecordRepository, never()).findNearestVectorIdsByDocumentIdsExact("[1.0,0.0]", documentIds, 5);
+    }
+
     @SuppressWarnings("unchecked")
     private List<QaResponse.CitationInfo> invokeBuildCitations(List<VectorRecord> records, float[] queryVector) {
         return (List<QaResponse.CitationInfo>) ReflectionTestUtils.invokeMethod(
                 qaService,
                 "buildCitations",
                 records,
-                queryVector
+                queryVector,
+                Set.of(),
+                null
         );
     }
 
@@ -0,0 +1,340 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hiyuan.demo1.dto.QaRequest;
+import com.hiyuan.demo1.dto.QaResponse;
+import com.hiyuan.demo1.repository.DocumentRepository;
+import com.hiyuan.demo1.repository.VectorRecordRepository;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证同步问答在等待 LLM 期间不占用数据库连接
+ *
+ * 用带连接数上限的 DataSource 代替真实连接池，统计实际借出的连接：池中只有 5 个连接，
+ * 仓储查询按 Spring Data 自定义查询的行为模拟（有事务时复用事务连接，否则自动提交、用完即还），
+ * 向量近邻查询经 VectorSearchExecutor 的只读事务执行。
+ * 如果 ask 重新加上 @Transactional，连接会在整个 LLM 调用期间被占用，
+ * 200 个请求只能 5 个一批串行等待 LLM，无法在时限内完成。
+ */
+@SpringJUnitConfig(QaServiceConnectionUsageTest.Config.class)
+class QaServiceConnectionUsageTest {
+
+    private static final int CONCURRENT_ASKS = 200;
+    private static final long LLM_DELAY_MS = 200;
+    private static final int POOL_SIZE = 5;
+    private static final long MAX_TOTAL_MS = 4000;
+
+    @Autowired
+    private QaService qaService;
+
+    @Autowired
+    private CountingDataSource dataSource;
+
+    @Autowired
+    private SlowLlm slowLlm;
+
+    @Test
+    void concurrentAsksDoNotHoldConnectionsWhileWaitingForLlm() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_ASKS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<QaResponse>> futures = new ArrayList<>();
+        long startedAt;
+        long elapsed;
+        try {
+            for (int i = 0; i < CONCURRENT_ASKS; i++) {
+                QaRequest request = new QaRequest();
+                request.setQuestion("问题" + i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return qaService.ask(request);
+                }));
+            }
+            startedAt = System.currentTimeMillis();
+            start.countDown();
+            for (Future<QaResponse> future : futures) {
+                assertEquals("答案", future.get(30, TimeUnit.SECONDS).getAnswer());
+            }
+            elapsed = System.currentTimeMillis() - startedAt;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(CONCURRENT_ASKS, slowLlm.calls.get());
+        assertFalse(slowLlm.calledInsideTransaction.get(), "LLM 调用不应处于数据库事务中");
+        assertFalse(slowLlm.calledHoldingConnection.get(), "LLM 调用期间不应持有数据库连接");
+        // 持有连接时至少需要 200 / 5 * 200ms = 8s
+        assertTrue(elapsed < MAX_TOTAL_MS, "200 个并发问答耗时: " + elapsed + "ms");
+        // 每个问答至少借出一次连接（向量检索事务 + 加载记录）
+        assertTrue(dataSource.checkouts.get() >= 2L * CONCURRENT_ASKS, "借出连接次数: " + dataSource.checkouts.get());
+        assertTrue(dataSource.maxActive.get() <= POOL_SIZE);
+        assertEquals(0, dataSource.active.get());
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @Import(QaService.class)
+    static class Config {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        CountingDataSource dataSource() {
+            return new CountingDataSource(POOL_SIZE);
+        }
+
+        @Bean
+        DataSourceTransactionManager transactionManager(CountingDataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        SlowLlm slowLlm(CountingDataSource dataSource) {
+            return new SlowLlm(dataSource);
+        }
+
+        @Bean
+        LlmService llmService(SlowLlm slowLlm) {
+            LlmService llmService = mock(LlmService.class);
+            when(llmService.generate(any(ChatPrompt.class))).thenAnswer(invocation -> slowLlm.generate());
+            return llmService;
+        }
+
+        @Bean
+        EmbeddingModel embeddingModel() {
+            EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+            when(embeddingModel.embed(anyString()))
+                    .thenAnswer(invocation -> Response.from(new Embedding(new float[]{1f, 0f})));
+            return embeddingModel;
+        }
+
+        @Bean
+        MrlService mrlService() {
+            MrlService mrlService = mock(MrlService.class);
+            when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+            return mrlService;
+        }
+
+        /**
+         * 仓储查询按 Spring Data 自定义 @Query 方法的行为模拟：本身不开事务，
+         * 处于事务中时复用事务连接，否则借用一个连接执行完立即归还（自动提交）
+         */
+        @Bean
+        VectorRecordRepository vectorRecordRepository(CountingDataSource dataSource) {
+            VectorRecordRepository repository = mock(VectorRecordRepository.class);
+            when(repository.findNearestVectorIds(anyString(), any(), anyInt()))
+                    .thenAnswer(invocation -> query(dataSource, () -> List.of(UUID.randomUUID())));
+            when(repository.findByIdsWithRelations(any()))
+                    .thenAnswer(invocation -> query(dataSource, List::of));
+            return repository;
+        }
+
+        @Bean
+        VectorSearchExecutor vectorSearchExecutor(DataSourceTransactionManager transactionManager) {
+            return new VectorSearchExecutor(mock(JdbcTemplate.class), transactionManager);
+        }
+
+        @Bean
+        DocumentRepository documentRepository() {
+            return mock(DocumentRepository.class);
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        QaStreamReplayRegistry replayRegistry() {
+            return mock(QaStreamReplayRegistry.class);
+        }
+
+        @Bean
+        PromptContextPacker contextPacker() {
+            return new PromptContextPacker(List.of(), () -> "test-model");
+        }
+
+        @Bean
+        QaSessionService sessionService() {
+            return mock(QaSessionService.class);
+        }
+
+        @Bean
+        QaHistoryWriter qaHistoryWriter() {
+            return mock(QaHistoryWriter.class);
+        }
+
+        @Bean
+        StreamingChatService streamingChatService() {
+            return mock(StreamingChatService.class);
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        QaDocumentAccessScopeResolver accessScopeResolver() {
+            QaDocumentAccessScopeResolver resolver = mock(QaDocumentAccessScopeResolver.class);
+            when(resolver.resolve(any())).thenReturn(
+                    new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部"));
+            return resolver;
+        }
+
+        @Bean
+        HybridSearchService hybridSearchService() {
+            HybridSearchService hybridSearchService = mock(HybridSearchService.class);
+            when(hybridSearchService.searchLexicalAsync(anyString(), any(), anyInt()))
+                    .thenReturn(CompletableFuture.completedFuture(List.of()));
+            when(hybridSearchService.fuse(any(), any(), anyInt()))
+                    .thenAnswer(invocation -> invocation.getArgument(0));
+            return hybridSearchService;
+        }
+    }
+
+    static class SlowLlm {
+        private final CountingDataSource dataSource;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean calledInsideTransaction = new AtomicBoolean();
+        final AtomicBoolean calledHoldingConnection = new AtomicBoolean();
+
+        SlowLlm(CountingDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        String generate() {
+            calls.incrementAndGet();
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                calledInsideTransaction.set(true);
+            }
+            if (dataSource.heldByCurrentThread() > 0) {
+                calledHoldingConnection.set(true);
+            }
+            sleep(LLM_DELAY_MS);
+            return "答案";
+        }
+    }
+
+    /**
+     * 模拟连接池：借出连接时占用一个许可，连接关闭时归还，连接耗尽时阻塞等待；
+     * 记录借出次数、同时借出的最大数量和当前线程持有的连接数
+     */
+    static class CountingDataSource extends AbstractDataSource {
+        private final Semaphore connections;
+        private final ThreadLocal<Integer> held = ThreadLocal.withInitial(() -> 0);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicLong checkouts = new AtomicLong();
+
+        CountingDataSource(int poolSize) {
+            this.connections = new Semaphore(poolSize, true);
+        }
+
+        @Override
+        public Connection getConnection() {
+            connections.acquireUninterruptibly();
+            checkouts.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            held.set(held.get() + 1);
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "close" -> {
+                            if (closed.compareAndSet(false, true)) {
+                                held.set(held.get() - 1);
+                                active.decrementAndGet();
+                                connections.release();
+                            }
+                            yield null;
+                        }
+                        case "isClosed" -> closed.get();
+                        case "getAutoCommit" -> true;
+                        case "isReadOnly" -> false;
+                        case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                        case "unwrap" -> null;
+                        case "isWrapperFor" -> false;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "CountingConnection";
+                        default -> null;
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return getConnection();
+        }
+
+        int heldByCurrentThread() {
+            return held.get();
+        }
+    }
+
+    /**
+     * 执行一次仓储查询：事务中复用事务连接，否则借用连接执行后归还
+     */
+    private static <T> T query(DataSource dataSource, Supplier<T> result) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            sleep(5);
+            return result.get();
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
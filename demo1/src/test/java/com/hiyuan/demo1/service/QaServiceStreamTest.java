@@ -0,0 +1,380 @@
+package com.hiyuan.demo1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hiyuan.demo1.dto.QaRequest;
+import com.hiyuan.demo1.repository.DocumentRepository;
+import com.hiyuan.demo1.repository.VectorRecordRepository;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QaServiceStreamTest {
+
+    @Mock
+    private LlmService llmService;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private MrlService mrlService;
+
+    @Mock
+    private VectorRecordRepository vectorRecordRepository;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private QaHistoryWriter qaHistoryWriter;
+
+    @Mock
+    private StreamingChatService streamingChatService;
+
+    @Mock
+    private QaDocumentAccessScopeResolver accessScopeResolver;
+
+    @Mock
+    private HybridSearchService hybridSearchService;
+
+    @Mock
+    private QaSessionService sessionService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private QaService qaService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        QaStreamReplayRegistry replayRegistry = new QaStreamReplayRegistry();
+        ReflectionTestUtils.setField(replayRegistry, "maxEvents", 512);
+        ReflectionTestUtils.setField(replayRegistry, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(replayRegistry, "detachGraceSeconds", 0L);
+        ReflectionTestUtils.setField(replayRegistry, "maxSessions", 100);
+        PromptContextPacker contextPacker = new PromptContextPacker(List.of(), () -> "test-model");
+        ReflectionTestUtils.setField(contextPacker, "maxTokens", 3000);
+        ReflectionTestUtils.setField(contextPacker, "historyMaxTokens", 400);
+        ReflectionTestUtils.setField(contextPacker, "citationMaxTokens", 600);
+        ReflectionTestUtils.setField(contextPacker, "redundancyThreshold", 0.8);
+        qaService = new QaService(llmService, embeddingModel, mrlService, vectorRecordRepository,
+                documentRepository, qaHistoryWriter, streamingChatService, new ObjectMapper(),
+                accessScopeResolver, hybridSearchService, meterRegistry, replayRegistry,
+                contextPacker, sessionService,
+                new VectorSearchExecutor(mock(JdbcTemplate.class), mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    void streamSendsStatusBeforeRetrievalAndRecordsTimeToFirstToken() {
+        CountDownLatch statusSent = new CountDownLatch(1);
+        AtomicBoolean retrievalStartedAfterStatus = new AtomicBoolean();
+        AtomicReference<Thread> retrievalThread = new AtomicReference<>();
+
+        when(accessScopeResolver.resolve(any())).thenAnswer(invocation -> {
+            retrievalThread.set(Thread.currentThread());
+            return new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部");
+        });
+        when(hybridSearchService.searchLexicalAsync(anyString(), any(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> {
+            retrievalStartedAfterStatus.set(statusSent.await(2, TimeUnit.SECONDS));
+            return Response.from(new Embedding(new float[]{1f, 0f}));
+        });
+        when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(vectorRecordRepository.findNearestVectorIds(anyString(), isNull(), anyInt())).thenReturn(List.of());
+        when(hybridSearchService.fuse(any(), any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(Flux.just("你", "好"));
+        when(llmService.getModelInfo()).thenReturn("stub-model");
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+
+        List<ServerSentEvent<String>> events = qaService.streamAnswer(question("什么是TCP"))
+                .doOnNext(event -> {
+                    if ("status".equals(event.event())) {
+                        statusSent.countDown();
+                    }
+                })
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(events);
+        assertEquals(List.of("status", "meta", "delta", "delta", "done"),
+                events.stream().map(ServerSentEvent::event).toList());
+        assertTrue(retrievalStartedAfterStatus.get(), "status 事件应在检索开始前发出");
+        assertNotEquals(Thread.currentThread(), retrievalThread.get());
+
+        Timer ttft = meterRegistry.find("qa.stream.ttft").timer();
+        assertNotNull(ttft);
+        assertEquals(1, ttft.count());
+    }
+
+    @Test
+    void adjacentDeltasAreCoalescedAfterTheFirstToken() throws Exception {
+        ReflectionTestUtils.setField(qaService, "coalesceWindowMs", 1000L);
+        ReflectionTestUtils.setField(qaService, "coalesceMaxChunks", 4);
+        stubEmptyRetrieval();
+        List<String> tokens = List.of("一", "二", "三", "四", "五", "六", "七", "八", "九", "十");
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(Flux.fromIterable(tokens));
+
+        List<ServerSentEvent<String>> events = qaService.streamAnswer(question("数一数"))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(events);
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> deltas = new ArrayList<>();
+        for (ServerSentEvent<String> event : events) {
+            if ("delta".equals(event.event())) {
+                deltas.add(objectMapper.readTree(event.data()).path("content").asText());
+            }
+        }
+        // 首个 token 单独发送，其余 9 个按最多 4 个一帧合并
+        assertEquals(List.of("一", "二三四五", "六七八九", "十"), deltas);
+        assertEquals("done", events.get(events.size() - 1).event());
+    }
+
+    @Test
+    void clientDisconnectCancelsUpstreamAndSavesTruncatedAnswer() {
+        stubEmptyRetrieval();
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(
+                Flux.concat(Flux.just("部分", "答案"), Flux.<String>never())
+                        .doOnCancel(() -> upstreamCancelled.set(true)));
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+
+        // status, meta, delta, delta 之后客户端断开
+        List<ServerSentEvent<String>> events = qaService.streamAnswer(question("什么是TCP"))
+                .take(4)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(events);
+        assertTrue(upstreamCancelled.get());
+        ArgumentCaptor<QaHistoryWriter.QaHistoryRecord> record =
+                ArgumentCaptor.forClass(QaHistoryWriter.QaHistoryRecord.class);
+        verify(qaHistoryWriter).submit(record.capture());
+        assertEquals("部分答案", record.getValue().answer());
+        assertTrue(record.getValue().truncated());
+        assertEquals(1.0, meterRegistry.get("qa.stream.abandoned").counter().count());
+    }
+
+    @Test
+    void retrievalFailureIsReportedAfterStatusWithoutCallingLlm() {
+        when(accessScopeResolver.resolve(any())).thenThrow(new IllegalStateException("db down"));
+
+        List<ServerSentEvent<String>> events = qaService.streamAnswer(question("什么是TCP"))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(events);
+        assertEquals(List.of("status", "error"), events.stream().map(ServerSentEvent::event).toList());
+        assertTrue(events.get(1).data().contains("db down"));
+        verifyNoInteractions(streamingChatService);
+    }
+
+    @Test
+    void concurrentIdenticalQuestionsShareOneRetrievalAndGeneration() throws Exception {
+        ReflectionTestUtils.setField(qaService, "singleFlightEnabled", true);
+        stubEmptyRetrieval();
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(upstream.asFlux());
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+
+        CompletableFuture<List<ServerSentEvent<String>>> first =
+                qaService.streamAnswer(question("什么是TCP？")).collectList().toFuture();
+        CompletableFuture<List<ServerSentEvent<String>>> second =
+                qaService.streamAnswer(question("  什么是tcp? ")).collectList().toFuture();
+        awaitStreamJoined(1);
+        upstream.tryEmitNext("三次");
+        upstream.tryEmitNext("握手");
+        upstream.tryEmitComplete();
+
+        List<String> expected = List.of("status", "meta", "delta", "delta", "done");
+        assertEquals(expected, first.get(5, TimeUnit.SECONDS).stream().map(ServerSentEvent::event).toList());
+        assertEquals(expected, second.get(5, TimeUnit.SECONDS).stream().map(ServerSentEvent::event).toList());
+        verify(embeddingModel, times(1)).embed(anyString());
+        verify(streamingChatService, times(1)).streamChatCompletion(any(ChatPrompt.class));
+        // 每个订阅者各自记录历史
+        ArgumentCaptor<QaHistoryWriter.QaHistoryRecord> records =
+                ArgumentCaptor.forClass(QaHistoryWriter.QaHistoryRecord.class);
+        verify(qaHistoryWriter, times(2)).submit(records.capture());
+        assertTrue(records.getAllValues().stream().allMatch(record -> "三次握手".equals(record.answer())));
+    }
+
+    @Test
+    void sessionContextReplacesClientHistoryAndTurnIsRecorded() {
+        stubEmptyRetrieval();
+        UUID sessionId = UUID.randomUUID();
+        when(sessionService.loadContext(sessionId, null)).thenReturn(new QaSessionService.ConversationContext(
+                sessionId, "学生在学习传输层协议。", "什么是TCP？", "TCP是面向连接的协议。", 2));
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(Flux.just("三次握手"));
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+        QaRequest request = question("它怎么建立连接？");
+        request.setSessionId(sessionId.toString());
+        request.setPreviousAnswer("客户端回传的旧答案");
+
+        List<ServerSentEvent<String>> events = qaService.streamAnswer(request)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(events);
+        assertEquals("done", events.get(events.size() - 1).event());
+        ArgumentCaptor<ChatPrompt> prompt = ArgumentCaptor.forClass(ChatPrompt.class);
+        verify(streamingChatService).streamChatCompletion(prompt.capture());
+        assertTrue(prompt.getValue().user().contains("更早的对话摘要：学生在学习传输层协议。"));
+        assertTrue(prompt.getValue().user().contains("你的上一答：TCP是面向连接的协议。"));
+        assertFalse(prompt.getValue().user().contains("客户端回传的旧答案"));
+        verify(sessionService).recordTurn(sessionId, "它怎么建立连接？", "三次握手");
+        ArgumentCaptor<QaHistoryWriter.QaHistoryRecord> record =
+                ArgumentCaptor.forClass(QaHistoryWriter.QaHistoryRecord.class);
+        verify(qaHistoryWriter).submit(record.capture());
+        assertEquals(sessionId, record.getValue().sessionId());
+    }
+
+    @Test
+    void sharedGenerationRecordsSessionTurnOnceBeforeDone() throws Exception {
+        ReflectionTestUtils.setField(qaService, "singleFlightEnabled", true);
+        stubEmptyRetrieval();
+        UUID sessionId = UUID.randomUUID();
+        when(sessionService.loadContext(sessionId, null)).thenReturn(new QaSessionService.ConversationContext(
+                sessionId, null, "什么是TCP？", "TCP是面向连接的协议。", 1));
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(upstream.asFlux());
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+        AtomicBoolean turnRecordedBeforeDone = new AtomicBoolean(true);
+        AtomicBoolean turnRecorded = new AtomicBoolean();
+        doAnswer(invocation -> {
+            turnRecorded.set(true);
+            return null;
+        }).when(sessionService).recordTurn(any(), anyString(), anyString());
+
+        QaRequest request = question("它怎么建立连接？");
+        request.setSessionId(sessionId.toString());
+        CompletableFuture<List<ServerSentEvent<String>>> first = qaService.streamAnswer(request)
+                .doOnNext(event -> {
+                    if ("done".equals(event.event()) && !turnRecorded.get()) {
+                        turnRecordedBeforeDone.set(false);
+                    }
+                })
+                .collectList().toFuture();
+        CompletableFuture<List<ServerSentEvent<String>>> second =
+                qaService.streamAnswer(request).collectList().toFuture();
+        awaitStreamJoined(1);
+        upstream.tryEmitNext("三次握手");
+        upstream.tryEmitComplete();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        verify(sessionService, times(1)).recordTurn(sessionId, "它怎么建立连接？", "三次握手");
+        assertTrue(turnRecordedBeforeDone.get(), "done 事件发出前应已写入会话最后一轮");
+    }
+
+    @Test
+    void truncatedAnswerIsNotRecordedAsSessionTurn() {
+        stubEmptyRetrieval();
+        UUID sessionId = UUID.randomUUID();
+        when(sessionService.loadContext(sessionId, null)).thenReturn(new QaSessionService.ConversationContext(
+                sessionId, null, null, null, 0));
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(
+                Flux.concat(Flux.just("部分", "答案"), Flux.<String>never()));
+        when(qaHistoryWriter.submit(any())).thenReturn(true);
+        QaRequest request = question("什么是TCP");
+        request.setSessionId(sessionId.toString());
+
+        qaService.streamAnswer(request).take(4).collectList().block(Duration.ofSeconds(5));
+
+        // 截断的回答仍写入问答历史，但不作为会话上下文
+        verify(qaHistoryWriter).submit(any());
+        verify(sessionService, never()).recordTurn(any(), anyString(), anyString());
+    }
+
+    @Test
+    void systemMessageIsIdenticalAcrossQuestionsAndVariablePartsComeLast() {
+        stubEmptyRetrieval();
+        when(streamingChatService.streamChatCompletion(any(ChatPrompt.class))).thenReturn(Flux.just("答"));
+
+        qaService.streamAnswer(question("什么是TCP")).collectList().block(Duration.ofSeconds(5));
+        qaService.streamAnswer(question("什么是UDP")).collectList().block(Duration.ofSeconds(5));
+
+        ArgumentCaptor<ChatPrompt> prompts = ArgumentCaptor.forClass(ChatPrompt.class);
+        verify(streamingChatService, times(2)).streamChatCompletion(prompts.capture());
+        ChatPrompt first = prompts.getAllValues().get(0);
+        ChatPrompt second = prompts.getAllValues().get(1);
+        assertSame(first.system(), second.system());
+        assertFalse(first.system().contains("TCP"));
+        assertTrue(first.user().endsWith("【问题】什么是TCP\n\n请严格按照系统消息中的结构回答：\n"));
+    }
+
+    @Test
+    void normalizeQuestionIgnoresWidthCaseAndWhitespace() {
+        assertEquals(QaService.normalizeQuestion("什么是TCP？"), QaService.normalizeQuestion("  什么是tcp?\n"));
+        assertEquals("什么是 tcp?", QaService.normalizeQuestion("什么是   ＴＣＰ？"));
+    }
+
+    private void awaitStreamJoined(double expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("qa.singleflight.joined").tag("mode", "stream").functionCounter().count() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待流式请求合并超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private void stubEmptyRetrieval() {
+        when(accessScopeResolver.resolve(any()))
+                .thenReturn(new QaDocumentAccessScopeResolver.AccessScope(null, true, List.of(), "全部"));
+        when(hybridSearchService.searchLexicalAsync(anyString(), any(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+        when(embeddingModel.embed(anyString())).thenReturn(Response.from(new Embedding(new float[]{1f, 0f})));
+        when(mrlService.truncateVector(any(float[].class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(vectorRecordRepository.findNearestVectorIds(anyString(), isNull(), anyInt())).thenReturn(List.of());
+        when(hybridSearchService.fuse(any(), any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    private QaRequest question(String text) {
+        QaRequest request = new QaRequest();
+        request.setQuestion(text);
+        return request;
+    }
+}
@@ -0,0 +1,190 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.entity.QaSession;
+import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.QaSessionRepository;
+import com.hiyuan.demo1.repository.UserRepository;
+import com.hiyuan.demo1.util.CjkTokenEstimator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QaSessionServiceTest {
+
+    @Mock
+    private QaSessionRepository sessionRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private LlmService llmService;
+
+    private QaSessionService sessionService;
+
+    @BeforeEach
+    void setUp() {
+        sessionService = new QaSessionService(sessionRepository, userRepository, llmService,
+                new PromptContextPacker(List.of(), () -> "test-model"),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(sessionService, "summaryMaxTokens", 300);
+        ReflectionTestUtils.setField(sessionService, "llmSummaryEnabled", true);
+        ReflectionTestUtils.setField(sessionService, "summarizerThreads", 1);
+        ReflectionTestUtils.setField(sessionService, "queueCapacity", 10);
+    }
+
+    @Test
+    void lastTurnIsWrittenBeforeRecordTurnReturnsAndPreviousTurnIsFoldedAsync() {
+        UUID sessionId = UUID.randomUUID();
+        QaSession session = session(sessionId, "学生在学习传输层。", "什么是TCP？", "TCP是面向连接的协议。", 2);
+        // 写入最后一轮后，被替换下来的上一轮位于待并入列表中
+        QaSession afterUpdate = session(sessionId, "学生在学习传输层。", "它怎么建立连接？", "三次握手。", 3);
+        afterUpdate.setPendingTurns(List.of(Map.of("question", "什么是TCP？", "answer", "TCP是面向连接的协议。")));
+        when(sessionRepository.findByIdForUpdate(sessionId)).thenReturn(Optional.of(session));
+        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(afterUpdate));
+        when(llmService.generate(contains("学生：什么是TCP？"))).thenReturn("学生在学习传输层，已了解TCP面向连接。");
+        sessionService.start();
+        try {
+            sessionService.recordTurn(sessionId, "它怎么建立连接？", "三次握手。");
+
+            // 最后一轮同步写入，不依赖摘要线程
+            verify(sessionRepository).updateLastTurn(sessionId, "它怎么建立连接？", "三次握手。");
+            verify(sessionRepository, timeout(2000))
+                    .foldPendingTurns(sessionId, "学生在学习传输层，已了解TCP面向连接。", 1);
+        } finally {
+            sessionService.shutdown();
+        }
+    }
+
+    @Test
+    void firstTurnOnlyRecordsLastTurn() {
+        UUID sessionId = UUID.randomUUID();
+        when(sessionRepository.findByIdForUpdate(sessionId))
+                .thenReturn(Optional.of(session(sessionId, null, null, null, 0)));
+
+        QaSessionService.Turn previous = sessionService.replaceLastTurn(sessionId, "什么是TCP？", "TCP是面向连接的协议。");
+
+        assertNull(previous);
+        verify(sessionRepository).updateLastTurn(sessionId, "什么是TCP？", "TCP是面向连接的协议。");
+        verify(sessionRepository, never()).foldPendingTurns(eq(sessionId), anyString(), anyInt());
+        verify(llmService, never()).generate(anyString());
+    }
+
+    @Test
+    void pendingTurnsAreVisibleInContextBeforeFoldCommits() {
+        UUID sessionId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        QaSession session = session(sessionId, "学生在学习传输层。", "它怎么建立连接？", "三次握手。", 3);
+        session.setPendingTurns(List.of(Map.of("question", "什么是TCP？", "answer", "TCP是面向连接的协议。")));
+        when(sessionRepository.findByIdAndUserId(sessionId, userId)).thenReturn(Optional.of(session));
+
+        QaSessionService.ConversationContext context = sessionService.loadContext(sessionId, userId);
+
+        assertEquals("学生在学习传输层。\n学生问：什么是TCP？\n回答要点：TCP是面向连接的协议。", context.summary());
+        assertEquals("它怎么建立连接？", context.lastQuestion());
+        verifyNoInteractions(llmService);
+    }
+
+    @Test
+    void foldMergesAllPendingTurnsInOrderAndRemovesOnlyThose() {
+        UUID sessionId = UUID.randomUUID();
+        QaSession session = session(sessionId, null, "第三问", "第三答", 3);
+        session.setPendingTurns(List.of(
+                Map.of("question", "第一问", "answer", "第一答"),
+                Map.of("question", "第二问", "answer", "第二答")));
+        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+        when(llmService.generate(contains("学生：第一问"))).thenReturn("摘要一");
+        when(llmService.generate(contains("学生：第二问"))).thenReturn("摘要二");
+
+        sessionService.foldIntoSummary(sessionId);
+
+        verify(sessionRepository).foldPendingTurns(sessionId, "摘要二", 2);
+    }
+
+    @Test
+    void foldWithoutPendingTurnsDoesNothing() {
+        UUID sessionId = UUID.randomUUID();
+        when(sessionRepository.findById(sessionId))
+                .thenReturn(Optional.of(session(sessionId, "摘要", "问", "答", 2)));
+
+        sessionService.foldIntoSummary(sessionId);
+
+        verify(sessionRepository, never()).foldPendingTurns(eq(sessionId), anyString(), anyInt());
+        verifyNoInteractions(llmService);
+    }
+
+    @Test
+    void blankAnswerIsNotRecorded() {
+        sessionService.recordTurn(UUID.randomUUID(), "什么是TCP？", "  ");
+
+        verifyNoInteractions(sessionRepository);
+    }
+
+    @Test
+    void llmFailureFallsBackToExtractiveSummary() {
+        when(llmService.generate(anyString())).thenThrow(new RuntimeException("rate limit"));
+
+        String summary = sessionService.summarize("学生在学习传输层。", "什么是TCP？", "TCP是面向连接的协议。它提供可靠传输。");
+
+        assertEquals("学生在学习传输层。\n学生问：什么是TCP？\n回答要点：TCP是面向连接的协议。\n它提供可靠传输。", summary);
+    }
+
+    @Test
+    void extractiveSummaryDropsOldestSentencesFirst() {
+        String summary = QaSessionService.extractiveSummary("最早讨论了网络分层。随后讨论了IP地址。",
+                "什么是TCP？", "TCP是面向连接的协议。", CjkTokenEstimator.DEFAULT, 30);
+
+        assertFalse(summary.contains("网络分层"));
+        assertTrue(summary.endsWith("回答要点：TCP是面向连接的协议。"));
+    }
+
+    @Test
+    void sessionOfAnotherUserIsNotFound() {
+        UUID sessionId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        when(sessionRepository.findByIdAndUserId(sessionId, userId)).thenReturn(Optional.empty());
+
+        BusinessException error = assertThrows(BusinessException.class,
+                () -> sessionService.loadContext(sessionId, userId));
+
+        assertEquals(404, error.getCode());
+    }
+
+    private static QaSession session(UUID id, String summary, String lastQuestion, String lastAnswer, int turns) {
+        QaSession session = QaSession.builder()
+                .summary(summary)
+                .lastQuestion(lastQuestion)
+                .lastAnswer(lastAnswer)
+                .turnCount(turns)
+                .build();
+        session.setId(id);
+        return session;
+    }
+}
@@ -0,0 +1,158 @@
+package com.hiyuan.demo1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QaStreamReplayRegistryTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private QaStreamReplayRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new QaStreamReplayRegistry();
+        ReflectionTestUtils.setField(registry, "maxEvents", 512);
+        ReflectionTestUtils.setField(registry, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(registry, "detachGraceSeconds", 0L);
+        ReflectionTestUtils.setField(registry, "maxSessions", 100);
+        ReflectionTestUtils.setField(registry, "maxLifetimeSeconds", 600L);
+    }
+
+    @Test
+    void resumeReplaysEventsAfterLastEventId() {
+        UUID owner = UUID.randomUUID();
+        List<ServerSentEvent<String>> first = registry.start(owner, Flux.just(delta("a"), delta("b"), delta("c")))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertNotNull(first);
+        assertEquals(3, first.size());
+        assertTrue(first.stream().allMatch(event -> event.id() != null));
+
+        Flux<ServerSentEvent<String>> resumed = registry.resume(first.get(0).id(), owner);
+
+        assertNotNull(resumed);
+        assertEquals(List.of("b", "c"), resumed.map(ServerSentEvent::data).collectList().block(TIMEOUT));
+    }
+
+    @Test
+    void resumeAttachesToRunningGenerationWithinGracePeriod() {
+        ReflectionTestUtils.setField(registry, "detachGraceSeconds", 30L);
+        UUID owner = UUID.randomUUID();
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        Sinks.Many<ServerSentEvent<String>> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        upstream.tryEmitNext(delta("a"));
+
+        // 客户端收到第一个事件后断线
+        ServerSentEvent<String> received = registry.start(owner, upstream.asFlux()
+                        .doOnCancel(() -> upstreamCancelled.set(true)))
+                .blockFirst(TIMEOUT);
+        assertNotNull(received);
+        upstream.tryEmitNext(delta("b"));
+
+        Flux<ServerSentEvent<String>> resumed = registry.resume(received.id(), owner);
+        assertNotNull(resumed);
+        upstream.tryEmitNext(delta("c"));
+        upstream.tryEmitComplete();
+
+        assertEquals(List.of("b", "c"), resumed.map(ServerSentEvent::data).collectList().block(TIMEOUT));
+        assertFalse(upstreamCancelled.get());
+    }
+
+    @Test
+    void generationIsCancelledWhenNoClientReconnects() {
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        Flux<ServerSentEvent<String>> generation = Flux.concat(Flux.just(delta("a")), Flux.<ServerSentEvent<String>>never())
+                .doOnCancel(() -> upstreamCancelled.set(true));
+
+        registry.start(UUID.randomUUID(), generation).blockFirst(TIMEOUT);
+
+        assertTrue(upstreamCancelled.get());
+    }
+
+    @Test
+    void resumeIsRejectedForOtherUsersAndUnknownIds() {
+        UUID owner = UUID.randomUUID();
+        ServerSentEvent<String> last = registry.start(owner, Flux.just(delta("a"))).blockLast(TIMEOUT);
+        assertNotNull(last);
+
+        assertNull(registry.resume(last.id(), UUID.randomUUID()));
+        assertNull(registry.resume(UUID.randomUUID() + ":1", owner));
+        assertNull(registry.resume("not-an-event-id", owner));
+        assertNotNull(registry.resume(last.id(), owner));
+    }
+
+    @Test
+    void resumeFailsWhenRequiredEventsWereEvictedFromBuffer() {
+        ReflectionTestUtils.setField(registry, "maxEvents", 2);
+        UUID owner = UUID.randomUUID();
+        Sinks.Many<ServerSentEvent<String>> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        List<ServerSentEvent<String>> events = new CopyOnWriteArrayList<>();
+        registry.start(owner, upstream.asFlux()).subscribe(events::add);
+        for (String content : List.of("a", "b", "c", "d")) {
+            upstream.tryEmitNext(delta(content));
+        }
+        upstream.tryEmitComplete();
+        assertEquals(4, events.size());
+
+        assertNull(registry.resume(events.get(0).id(), owner));
+        Flux<ServerSentEvent<String>> resumed = registry.resume(events.get(1).id(), owner);
+        assertNotNull(resumed);
+        assertEquals(List.of("c", "d"), resumed.map(ServerSentEvent::data).collectList().block(TIMEOUT));
+    }
+
+    @Test
+    void anonymousStreamsAreNotResumable() {
+        List<ServerSentEvent<String>> events = registry.start(null, Flux.just(delta("a"), delta("b")))
+                .collectList()
+                .block(TIMEOUT);
+
+        assertNotNull(events);
+        assertNull(events.get(0).id());
+        assertNull(registry.resume(UUID.randomUUID() + ":1", null));
+    }
+
+    @Test
+    void sessionThatNeverTerminatesIsCancelledAfterMaxLifetime() {
+        ReflectionTestUtils.setField(registry, "detachGraceSeconds", 30L);
+        ReflectionTestUtils.setField(registry, "maxLifetimeSeconds", 0L);
+        UUID owner = UUID.randomUUID();
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        AtomicBoolean clientCompleted = new AtomicBoolean();
+        List<ServerSentEvent<String>> events = new CopyOnWriteArrayList<>();
+        registry.start(owner, Flux.concat(Flux.just(delta("a")), Flux.<ServerSentEvent<String>>never())
+                        .doOnCancel(() -> upstreamCancelled.set(true)))
+                .subscribe(events::add, error -> { }, () -> clientCompleted.set(true));
+        assertEquals(1, events.size());
+
+        // 下一次启动时清理到期会话
+        ((AtomicLong) ReflectionTestUtils.getField(registry, "lastSweepAt")).set(0);
+        registry.start(owner, Flux.empty());
+
+        assertTrue(upstreamCancelled.get());
+        assertTrue(clientCompleted.get());
+        assertNull(registry.resume(events.get(0).id(), owner));
+    }
+
+    private static ServerSentEvent<String> delta(String content) {
+        return ServerSentEvent.<String>builder().event("delta").data(content).build();
+    }
+}
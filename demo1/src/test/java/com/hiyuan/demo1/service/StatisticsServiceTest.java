@@ -0,0 +1,94 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatisticsServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private StatisticsService statisticsService;
+
+    @Test
+    void hourlySeriesIsReadFromRollupAndGapsAreFilled() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 5, 1, 8, 30);
+        LocalDateTime to = LocalDateTime.of(2024, 5, 1, 11, 0);
+        ResultSet row = mock(ResultSet.class);
+        when(row.getTimestamp("bucket_start")).thenReturn(Timestamp.valueOf(LocalDateTime.of(2024, 5, 1, 9, 0)));
+        when(row.getLong("event_count")).thenReturn(4L);
+        when(row.getLong("value_sum")).thenReturn(6000L);
+        doAnswer(invocation -> {
+            ((RowCallbackHandler) invocation.getArgument(1)).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(contains("FROM t_stats_rollup_hourly"), any(RowCallbackHandler.class),
+                eq(StatisticsService.QA_ASKED),
+                eq(Timestamp.valueOf(LocalDateTime.of(2024, 5, 1, 8, 0))),
+                eq(Timestamp.valueOf(to)));
+
+        List<StatisticsService.StatsPoint> points = statisticsService.timeSeries(
+                StatisticsService.QA_ASKED, StatisticsService.Granularity.HOUR, from, to);
+
+        assertEquals(3, points.size());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 8, 0), points.get(0).bucketStart());
+        assertEquals(0, points.get(0).count());
+        assertNull(points.get(0).avgValue());
+        assertEquals(4, points.get(1).count());
+        assertEquals(1500.0, points.get(1).avgValue());
+        assertEquals(0, points.get(2).count());
+    }
+
+    @Test
+    void overviewReadsCountersInsteadOfCountingTables() throws Exception {
+        ResultSet counter = mock(ResultSet.class);
+        when(counter.getString("name")).thenReturn(StatisticsService.QA_TOTAL);
+        when(counter.getLong("value")).thenReturn(12345L);
+        doAnswer(invocation -> {
+            ((RowCallbackHandler) invocation.getArgument(1)).processRow(counter);
+            return null;
+        }).when(jdbcTemplate).query(eq("SELECT name, value FROM t_stats_counter"), any(RowCallbackHandler.class));
+
+        var stats = statisticsService.overview();
+
+        assertEquals(12345L, stats.get("totalQuestions"));
+        assertEquals(0L, stats.get("totalDocuments"));
+        assertEquals(0L, stats.get("questionsToday"));
+    }
+
+    @Test
+    void unknownMetricAndOversizedRangeAreRejected() {
+        BusinessException unknown = assertThrows(BusinessException.class, () -> statisticsService.timeSeries(
+                "t_document", StatisticsService.Granularity.DAY, null, null));
+        BusinessException tooLarge = assertThrows(BusinessException.class, () -> statisticsService.timeSeries(
+                StatisticsService.QA_ASKED, StatisticsService.Granularity.HOUR,
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 3, 1, 0, 0)));
+
+        assertEquals(400, unknown.getCode());
+        assertEquals(400, tooLarge.getCode());
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
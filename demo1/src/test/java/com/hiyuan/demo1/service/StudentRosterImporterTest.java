@@ -0,0 +1,139 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.dto.teacher.BatchAddStudentResponse;
+import com.hiyuan.demo1.dto.teacher.BatchError;
+import com.hiyuan.demo1.entity.UserRole;
+import com.hiyuan.demo1.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StudentRosterImporterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private QaDocumentAccessScopeResolver accessScopeResolver;
+
+    @InjectMocks
+    private StudentRosterImporter importer;
+
+    @Test
+    void rosterIsResolvedAndInsertedAsSets() {
+        UUID teacherId = UUID.randomUUID();
+        UserRepository.UserIdentity newStudent = identity("zhangsan", "zhangsan@example.com", UserRole.STUDENT);
+        UserRepository.UserIdentity enrolled = identity("lisi", "lisi@example.com", UserRole.STUDENT);
+        UserRepository.UserIdentity teacher = identity("wang", "wang@example.com", UserRole.TEACHER);
+        when(userRepository.findIdentitiesByUsernameOrEmailIn(anyCollection()))
+                .thenReturn(List.of(newStudent, enrolled, teacher));
+        // lisi 已在班级中，ON CONFLICT 不返回
+        AtomicReference<String> sql = new AtomicReference<>();
+        AtomicReference<Object[]> args = new AtomicReference<>();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class))).thenAnswer(invocation -> {
+            sql.set(invocation.getArgument(0));
+            args.set(insertArgs(invocation));
+            return List.of(newStudent.getId());
+        });
+
+        BatchAddStudentResponse response = importer.importRoster(teacherId,
+                List.of("zhangsan", "lisi", "nobody", "wang", "zhangsan@example.com"));
+
+        assertEquals(5, response.getTotalProcessed());
+        assertEquals(List.of("zhangsan"), response.getSuccessList());
+        assertEquals(List.of("lisi", "zhangsan@example.com"), response.getSkippedList());
+        assertEquals(List.of("nobody", "wang"),
+                response.getFailedList().stream().map(BatchError::getIdentifier).toList());
+        assertEquals("目标用户不是学生角色", response.getFailedList().get(1).getReason());
+
+        assertTrue(sql.get().endsWith("ON CONFLICT (teacher_id, student_id) DO NOTHING RETURNING student_id"));
+        assertEquals(List.of(teacherId, newStudent.getId(), teacherId, enrolled.getId()), List.of(args.get()));
+        verify(accessScopeResolver).invalidateStudent(newStudent.getId());
+        verify(accessScopeResolver, never()).invalidateStudent(enrolled.getId());
+    }
+
+    @Test
+    void largeRosterUsesBoundedBatches() {
+        int size = StudentRosterImporter.LOOKUP_BATCH_SIZE * 2 + 500;
+        List<UserRepository.UserIdentity> students = IntStream.range(0, size)
+                .mapToObj(i -> identity("student" + i, null, UserRole.STUDENT))
+                .toList();
+        List<String> identifiers = students.stream().map(UserRepository.UserIdentity::getUsername).toList();
+        when(userRepository.findIdentitiesByUsernameOrEmailIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> batch = invocation.getArgument(0);
+            return students.stream().filter(s -> batch.contains(s.getUsername())).toList();
+        });
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = insertArgs(invocation);
+            List<UUID> inserted = new ArrayList<>();
+            for (int i = 1; i < args.length; i += 2) {
+                inserted.add((UUID) args[i]);
+            }
+            return inserted;
+        });
+
+        BatchAddStudentResponse response = importer.importRoster(UUID.randomUUID(), identifiers);
+
+        assertEquals(size, response.getSuccessCount());
+        verify(userRepository, times(3)).findIdentitiesByUsernameOrEmailIn(anyCollection());
+        verify(jdbcTemplate, times(3)).queryForList(anyString(), eq(UUID.class), any(Object[].class));
+    }
+
+    // Mockito 展开了可变参数，前两个是 SQL 和返回类型
+    private static Object[] insertArgs(InvocationOnMock invocation) {
+        Object[] arguments = invocation.getArguments();
+        return Arrays.copyOfRange(arguments, 2, arguments.length);
+    }
+
+    private static UserRepository.UserIdentity identity(String username, String email, UserRole role) {
+        UUID id = UUID.randomUUID();
+        return new UserRepository.UserIdentity() {
+            @Override
+            public UUID getId() {
+                return id;
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getEmail() {
+                return email;
+            }
+
+            @Override
+            public UserRole getRole() {
+                return role;
+            }
+        };
+    }
+}
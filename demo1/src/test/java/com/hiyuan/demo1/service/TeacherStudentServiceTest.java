@@ -0,0 +1,274 @@
+package com.hiyuan.demo1.service;
+
+import com.hiyuan.demo1.dto.teacher.StudentListResponse;
+import com.hiyuan.demo1.exception.BusinessException;
+import com.hiyuan.demo1.repository.ClassAssociationRepository;
+import com.hiyuan.demo1.repository.QaHistoryRepository;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TeacherStudentServiceTest {
+
+    @Mock
+    private ClassAssociationRepository classAssociationRepository;
+
+    @Mock
+    private QaHistoryRepository qaHistoryRepository;
+
+    @InjectMocks
+    private TeacherStudentService teacherStudentService;
+
+    @Test
+    void enrolledAtSortPagesRowsBeforeLoadingStats() {
+        UUID teacherId = UUID.randomUUID();
+        LocalDateTime enrolledAt = LocalDateTime.of(2024, 3, 1, 9, 0);
+        LocalDateTime lastActivity = LocalDateTime.of(2024, 3, 5, 20, 30);
+        ClassAssociationRepository.StudentListRow active = row("zhangsan", enrolledAt, 12L, lastActivity);
+        ClassAssociationRepository.StudentListRow idle = row("zhangwei", enrolledAt.minusDays(1), 0L, null);
+        when(classAssociationRepository.countStudentListRows(teacherId, "%zhang%")).thenReturn(5L);
+        when(classAssociationRepository.findStudentListPageRows(teacherId, "%zhang%", "enrolledAt", true, 2, 2L))
+                .thenReturn(List.of(active, idle));
+
+        Page<StudentListResponse> page = teacherStudentService.getStudentList(teacherId, " Zhang ", PageRequest.of(1, 2));
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(Sort.by(Sort.Order.desc("enrolledAt")), page.getPageable().getSort());
+        StudentListResponse first = page.getContent().get(0);
+        assertEquals(active.getStudentId(), first.getId());
+        assertEquals(12L, first.getTotalQuestions());
+        assertEquals(lastActivity, first.getLastActivity());
+        assertEquals(0L, page.getContent().get(1).getTotalQuestions());
+        assertNull(page.getContent().get(1).getLastActivity());
+        verify(classAssociationRepository, never())
+                .findStudentListRows(any(), any(), anyString(), anyBoolean(), any());
+        verifyNoInteractions(qaHistoryRepository);
+    }
+
+    @Test
+    void usernameSortSkipsPageQueryBeyondLastRow() {
+        UUID teacherId = UUID.randomUUID();
+        when(classAssociationRepository.countStudentListRows(teacherId, null)).thenReturn(3L);
+
+        Page<StudentListResponse> page = teacherStudentService.getStudentList(teacherId, null,
+                PageRequest.of(1, 20, Sort.by(Sort.Order.asc("username"))));
+
+        assertEquals(3, page.getTotalElements());
+        assertTrue(page.getContent().isEmpty());
+        assertEquals(Sort.by(Sort.Order.asc("username")), page.getPageable().getSort());
+        verify(classAssociationRepository, never())
+                .findStudentListPageRows(any(), any(), anyString(), anyBoolean(), anyInt(), anyLong());
+        verify(classAssociationRepository, never())
+                .findStudentListRows(any(), any(), anyString(), anyBoolean(), any());
+    }
+
+    @Test
+    void statSortUsesFullAggregateQuery() {
+        UUID teacherId = UUID.randomUUID();
+        when(classAssociationRepository.findStudentListRows(
+                eq(teacherId), isNull(), eq("totalQuestions"), eq(false), any(Pageable.class)))
+                .thenReturn(Page.empty());
+
+        teacherStudentService.getStudentList(teacherId, "  ",
+                PageRequest.of(0, 20, Sort.by(Sort.Order.asc("totalQuestions"))));
+
+        verify(classAssociationRepository).findStudentListRows(
+                eq(teacherId), isNull(), eq("totalQuestions"), eq(false), eq(PageRequest.of(0, 20)));
+        verify(classAssociationRepository, never()).countStudentListRows(any(), any());
+    }
+
+    @Test
+    void unsupportedSortFieldIsRejected() {
+        BusinessException error = assertThrows(BusinessException.class,
+                () -> teacherStudentService.getStudentList(UUID.randomUUID(), null,
+                        PageRequest.of(0, 20, Sort.by("password"))));
+
+        assertEquals(400, error.getCode());
+        verify(classAssociationRepository, never())
+                .findStudentListRows(any(), any(), anyString(), anyBoolean(), any());
+    }
+
+    @Test
+    void likeWildcardsInSearchAreEscaped() {
+        assertEquals("%50\\%\\_a\\\\b%", TeacherStudentService.toLikePattern("50%_A\\b"));
+        assertNull(TeacherStudentService.toLikePattern(null));
+    }
+
+    @Test
+    void csvReportIsWrittenFromKeysetBatches() throws Exception {
+        UUID teacherId = UUID.randomUUID();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(classAssociationRepository.findStudentReportBatch(
+                teacherId, start, null, null, null, TeacherStudentService.REPORT_BATCH_SIZE))
+                .thenReturn(List.of(
+                        reportRow("zhangsan", "a,b@example.com", 3L, LocalDateTime.of(2024, 3, 5, 20, 30)),
+                        reportRow("lisi", null, 0L, null)
+                ));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        teacherStudentService.writeStudentReport(teacherId, start, null, "csv", out);
+
+        assertEquals("\uFEFF用户名,邮箱,真实姓名,总提问数,总文档访问数,最后活动时间\n"
+                        + "zhangsan,\"a,b@example.com\",,3,0,2024-03-05 20:30:00\n"
+                        + "lisi,,,0,0,\n",
+                out.toString(StandardCharsets.UTF_8));
+        // 不足一批说明已读完，不再查询下一批
+        verify(classAssociationRepository).findStudentReportBatch(any(), any(), any(), any(), any(), anyInt());
+        verifyNoInteractions(qaHistoryRepository);
+    }
+
+    @Test
+    void reportContinuesFromLastRowOfFullBatch() throws Exception {
+        UUID teacherId = UUID.randomUUID();
+        int batchSize = TeacherStudentService.REPORT_BATCH_SIZE;
+        List<ClassAssociationRepository.StudentReportRow> firstBatch = IntStream.range(0, batchSize)
+                .mapToObj(i -> reportRow("student" + i, null, (long) i, null))
+                .toList();
+        ClassAssociationRepository.StudentReportRow last = firstBatch.get(batchSize - 1);
+        when(classAssociationRepository.findStudentReportBatch(teacherId, null, null, null, null, batchSize))
+                .thenReturn(firstBatch);
+        when(classAssociationRepository.findStudentReportBatch(
+                teacherId, null, null, last.getEnrolledAt(), last.getAssociationId(), batchSize))
+                .thenReturn(List.of(reportRow("straggler", null, 1L, null)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        teacherStudentService.writeStudentReport(teacherId, null, null, "csv", out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(batchSize + 2, lines.length);
+        assertTrue(lines[batchSize + 1].startsWith("straggler,"));
+    }
+
+    @Test
+    void excelReportIsWrittenWithStreamingWorkbook() throws Exception {
+        UUID teacherId = UUID.randomUUID();
+        List<ClassAssociationRepository.StudentReportRow> rows = IntStream.range(0, 250)
+                .mapToObj(i -> reportRow("student" + i, null, (long) i, null))
+                .toList();
+        when(classAssociationRepository.findStudentReportBatch(
+                teacherId, null, null, null, null, TeacherStudentService.REPORT_BATCH_SIZE))
+                .thenReturn(rows);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        teacherStudentService.writeStudentReport(teacherId, null, null, "EXCEL", out);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(250, sheet.getLastRowNum());
+            assertEquals("用户名", sheet.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("student249", sheet.getRow(250).getCell(0).getStringCellValue());
+            assertEquals(249, sheet.getRow(250).getCell(3).getNumericCellValue());
+        }
+    }
+
+    private static ClassAssociationRepository.StudentListRow row(String username,
+                                                                 LocalDateTime enrolledAt,
+                                                                 Long totalQuestions,
+                                                                 LocalDateTime lastActivity) {
+        UUID studentId = UUID.randomUUID();
+        return new ClassAssociationRepository.StudentListRow() {
+            @Override
+            public UUID getStudentId() {
+                return studentId;
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getEmail() {
+                return username + "@example.com";
+            }
+
+            @Override
+            public LocalDateTime getEnrolledAt() {
+                return enrolledAt;
+            }
+
+            @Override
+            public Long getTotalQuestions() {
+                return totalQuestions;
+            }
+
+            @Override
+            public LocalDateTime getLastActivity() {
+                return lastActivity;
+            }
+        };
+    }
+
+    private static ClassAssociationRepository.StudentReportRow reportRow(String username,
+                                                                         String email,
+                                                                         Long totalQuestions,
+                                                                         LocalDateTime lastActivity) {
+        UUID associationId = UUID.randomUUID();
+        LocalDateTime enrolledAt = LocalDateTime.of(2024, 1, 1, 0, 0);
+        return new ClassAssociationRepository.StudentReportRow() {
+            @Override
+            public UUID getAssociationId() {
+                return associationId;
+            }
+
+            @Override
+            public LocalDateTime getEnrolledAt() {
+                return enrolledAt;
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getEmail() {
+                return email;
+            }
+
+            @Override
+            public Long getTotalQuestions() {
+                return totalQuestions;
+            }
+
+            @Override
+            public LocalDateTime getLastActivity() {
+                return lastActivity;
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.hiyuan.demo1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class VectorSearchExecutorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private VectorSearchExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new VectorSearchExecutor(jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(executor, "baseEfSearch", 40);
+        ReflectionTestUtils.setField(executor, "iterativeScan", "off");
+    }
+
+    @Test
+    void efSearchIsRaisedToCandidateCountInsideReadOnlyTransaction() {
+        SimpleTransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+
+        List<String> result = executor.execute(160, () -> List.of("ok"));
+
+        assertEquals(List.of("ok"), result);
+        InOrder order = inOrder(transactionManager, jdbcTemplate);
+        order.verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        order.verify(jdbcTemplate).queryForObject(anyString(), eq(String.class), eq("160"));
+        order.verify(transactionManager).commit(status);
+        verify(jdbcTemplate, never()).queryForObject(contains("iterative_scan"), eq(String.class), anyString());
+    }
+
+    @Test
+    void iterativeScanIsSetInsideTheSameTransactionWhenEnabled() {
+        ReflectionTestUtils.setField(executor, "iterativeScan", "relaxed_order");
+        SimpleTransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+
+        executor.execute(10, () -> List.of("ok"));
+
+        InOrder order = inOrder(transactionManager, jdbcTemplate);
+        order.verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        order.verify(jdbcTemplate).queryForObject(contains("hnsw.ef_search"), eq(String.class), eq("40"));
+        order.verify(jdbcTemplate).queryForObject(contains("hnsw.iterative_scan"), eq(String.class), eq("relaxed_order"));
+        order.verify(transactionManager).commit(status);
+    }
+
+    @Test
+    void efSearchKeepsBaseForSmallCandidateCountsAndIsCappedAtPgvectorLimit() {
+        assertEquals(40, executor.efSearchFor(5));
+        assertEquals(200, executor.efSearchFor(200));
+        assertEquals(VectorSearchExecutor.MAX_EF_SEARCH, executor.efSearchFor(5000));
+    }
+}
@@ -0,0 +1,35 @@
+package com.hiyuan.demo1.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CjkTokenEstimatorTest {
+
+    private final CjkTokenEstimator estimator = CjkTokenEstimator.DEFAULT;
+
+    @Test
+    void cjkCharactersCountPerCharAndLatinRunsPerFourChars() {
+        assertEquals(6, estimator.estimate("什么是TCP协议"));
+        assertEquals(4, estimator.estimate("hello world"));
+        assertEquals(5, estimator.estimate("三次握手？"));
+    }
+
+    @Test
+    void whitespaceIsIgnoredAndPunctuationCountsAsOneToken() {
+        assertEquals(3, estimator.estimate("a, b"));
+        assertEquals(0, estimator.estimate(" \n\t"));
+        assertEquals(0, estimator.estimate(""));
+        assertEquals(0, estimator.estimate(null));
+    }
+
+    @Test
+    void ratiosAreConfigurable() {
+        CjkTokenEstimator estimator = new CjkTokenEstimator(0.5, 2.0);
+
+        assertEquals(1, estimator.estimate("中文"));
+        assertEquals(3, estimator.estimate("hello"));
+        assertThrows(IllegalArgumentException.class, () -> new CjkTokenEstimator(0, 4.0));
+    }
+}
@@ -0,0 +1,117 @@
+package com.hiyuan.demo1.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FluxSingleFlightTest {
+
+    private final FluxSingleFlight<String, String> flight = new FluxSingleFlight<>();
+
+    @Test
+    void subscribersShareOneUpstreamAndLateSubscriberReceivesReplay() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Supplier<Flux<String>> supplier = () -> upstream.asFlux().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        List<String> first = new CopyOnWriteArrayList<>();
+        flight.share("问题", supplier).subscribe(first::add);
+        upstream.tryEmitNext("三次");
+
+        List<String> second = new CopyOnWriteArrayList<>();
+        flight.share("问题", supplier).subscribe(second::add);
+        upstream.tryEmitNext("握手");
+        upstream.tryEmitComplete();
+
+        assertEquals(List.of("三次", "握手"), first);
+        assertEquals(List.of("三次", "握手"), second);
+        assertEquals(1, subscriptions.get());
+        assertEquals(1, flight.joinedCount());
+    }
+
+    @Test
+    void upstreamIsCancelledOnlyAfterAllSubscribersCancel() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> upstream = Flux.<String>never().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = flight.share("问题", () -> upstream).subscribe();
+        Disposable second = flight.share("问题", () -> upstream).subscribe();
+
+        first.dispose();
+        assertFalse(cancelled.get());
+        second.dispose();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void finishedFlightIsReleasedSoNextRequestStartsAgain() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Supplier<Flux<String>> supplier = () -> Flux.just("答案").doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        assertEquals(List.of("答案"), flight.share("问题", supplier).collectList().block());
+        assertEquals(List.of("答案"), flight.share("问题", supplier).collectList().block());
+
+        assertEquals(2, subscriptions.get());
+        assertEquals(0, flight.joinedCount());
+    }
+
+    @Test
+    void subscriberArrivingAsFlightCompletesStartsNewFlightInsteadOfJoiningFinishedOne() {
+        List<Sinks.Many<String>> upstreams = new CopyOnWriteArrayList<>();
+        Supplier<Flux<String>> supplier = () -> {
+            Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+            upstreams.add(upstream);
+            return upstream.asFlux();
+        };
+
+        List<String> late = new CopyOnWriteArrayList<>();
+        flight.share("问题", supplier)
+                .doOnComplete(() -> flight.share("问题", supplier).subscribe(late::add))
+                .subscribe();
+        upstreams.get(0).tryEmitNext("旧答案");
+        upstreams.get(0).tryEmitComplete();
+
+        assertEquals(2, upstreams.size());
+        assertEquals(0, flight.joinedCount());
+        upstreams.get(1).tryEmitNext("新答案");
+        assertEquals(List.of("新答案"), late);
+    }
+
+    @Test
+    void fluxObtainedBeforeCompletionDoesNotReconnectFinishedReplay() {
+        List<Sinks.Many<String>> upstreams = new CopyOnWriteArrayList<>();
+        Supplier<Flux<String>> supplier = () -> {
+            Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+            upstreams.add(upstream);
+            return upstream.asFlux();
+        };
+        Flux<String> obtainedEarly = flight.share("问题", supplier);
+
+        flight.share("问题", supplier).subscribe();
+        upstreams.get(0).tryEmitNext("旧答案");
+        upstreams.get(0).tryEmitComplete();
+
+        List<String> second = new CopyOnWriteArrayList<>();
+        List<String> third = new CopyOnWriteArrayList<>();
+        obtainedEarly.subscribe(second::add);
+        flight.share("问题", supplier).subscribe(third::add);
+        upstreams.get(1).tryEmitNext("新答案");
+        upstreams.get(1).tryEmitComplete();
+
+        assertEquals(2, upstreams.size());
+        assertEquals(1, flight.joinedCount());
+        assertEquals(List.of("新答案"), second);
+        assertEquals(List.of("新答案"), third);
+    }
+}
@@ -0,0 +1,45 @@
+package com.hiyuan.demo1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PromptTemplateTest {
+
+    @Test
+    void placeholdersAreReplacedInOrder() {
+        PromptTemplate template = PromptTemplate.compile("[参考{{index}}] {{ content }}\n");
+
+        assertEquals("[参考2] 三次握手\n", template.render(Map.of("index", 2, "content", "三次握手")));
+        assertNull(template.staticText());
+    }
+
+    @Test
+    void staticTemplateReturnsSameInstance() {
+        PromptTemplate template = PromptTemplate.compile("你是一位教育专家。\n");
+
+        assertSame(template.staticText(), template.render(Map.of()));
+        assertEquals("你是一位教育专家。\n", template.staticText());
+    }
+
+    @Test
+    void missingOrNullValuesRenderAsEmpty() {
+        PromptTemplate template = PromptTemplate.compile("{{a}}-{{b}}");
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", null);
+
+        assertEquals("-", template.render(values));
+    }
+
+    @Test
+    void malformedPlaceholdersAreRejectedAtCompileTime() {
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("【问题】{{question"));
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("{{问 题}}"));
+    }
+}
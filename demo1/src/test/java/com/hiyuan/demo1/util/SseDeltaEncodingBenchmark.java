@@ -0,0 +1,94 @@
+package com.hiyuan.demo1.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式问答 delta 事件编码基准：每个 token 一次 Map + ObjectMapper vs 预编码 + 合并
+ * <p>
+ * 运行：mvn -Pbenchmark -DskipTests -Djmh.args="SseDeltaEncodingBenchmark -prof gc" test-compile exec:exec
+ * <ul>
+ *   <li>单次操作 = 编码一整段回答（默认 600 个 token）</li>
+ *   <li>分配速率看 gc.alloc.rate.norm（每个回答分配的字节数）</li>
+ *   <li>每个回答的帧数 = 首帧 1 + ceil((tokens - 1) / coalesceChunks)，即返回值写入 Blackhole 的帧数</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseDeltaEncodingBenchmark {
+
+    @State(Scope.Thread)
+    public static class AnswerState {
+
+        @Param({"600"})
+        public int tokens;
+
+        @Param({"1", "8", "16"})
+        public int coalesceChunks;
+
+        ObjectMapper objectMapper;
+        List<String> chunks;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            objectMapper = new ObjectMapper();
+            Random random = new Random(42);
+            String[] vocabulary = {"牛顿", "第一", "定律", "，", "惯性", "**", "物体", "\n", "保持", "静止", "状态", "。", " the", " force"};
+            chunks = new ArrayList<>(tokens);
+            for (int i = 0; i < tokens; i++) {
+                chunks.add(vocabulary[random.nextInt(vocabulary.length)]);
+            }
+        }
+    }
+
+    /**
+     * 改造前：每个 token 创建 Map 并经 ObjectMapper 序列化，一个 token 一帧
+     */
+    @Benchmark
+    public int jacksonPerToken(AnswerState state, Blackhole blackhole) throws JsonProcessingException {
+        int frames = 0;
+        for (String chunk : state.chunks) {
+            blackhole.consume(state.objectMapper.writeValueAsString(Map.of("content", chunk)));
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * 改造后：预编码写入器 + 首帧之后按 coalesceChunks 合并
+     */
+    @Benchmark
+    public int encodedCoalesced(AnswerState state, Blackhole blackhole) {
+        List<String> chunks = state.chunks;
+        blackhole.consume(SseEventEncoder.delta(chunks.get(0)));
+        int frames = 1;
+        for (int from = 1; from < chunks.size(); from += state.coalesceChunks) {
+            int to = Math.min(chunks.size(), from + state.coalesceChunks);
+            blackhole.consume(SseEventEncoder.delta(chunks.subList(from, to)));
+            frames++;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hiyuan.demo1.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SseEventEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void deltaMatchesJacksonSerialization() throws Exception {
+        String chunk = "他说\"你好\"\n\t反斜杠\\ 控制符\u0001 😀 </script>";
+
+        assertEquals(objectMapper.writeValueAsString(Map.of("content", chunk)), SseEventEncoder.delta(chunk));
+    }
+
+    @Test
+    void coalescedDeltaEqualsDeltaOfConcatenatedChunks() throws Exception {
+        List<String> chunks = List.of("第一段\"", "\n第二段", "\\", "😀");
+
+        assertEquals(objectMapper.writeValueAsString(Map.of("content", String.join("", chunks))),
+                SseEventEncoder.delta(chunks));
+    }
+
+    @Test
+    void statusEventIsValidJson() throws Exception {
+        assertEquals(Map.of("stage", "retrieving"),
+                objectMapper.readValue(SseEventEncoder.STATUS_RETRIEVING, Map.class));
+    }
+}
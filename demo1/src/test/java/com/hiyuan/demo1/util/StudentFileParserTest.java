@@ -1,6 +1,9 @@
 package com.hiyuan.demo1.util;
 
 import com.hiyuan.demo1.exception.BusinessException;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -8,6 +11,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.mock.web.MockMultipartFile;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -240,6 +244,36 @@ class StudentFileParserTest {
         }
     }
 
+    @Nested
+    @DisplayName("Excel 文件解析测试")
+    class ExcelParsingTests {
+
+        @Test
+        @DisplayName("流式解析 Excel 文件 - 只取第一列并跳过标题和空单元格")
+        void parseExcelFile_firstColumn_returnsIdentifiers() throws IOException {
+            // Given
+            byte[] content;
+            try (XSSFWorkbook workbook = new XSSFWorkbook();
+                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                Sheet sheet = workbook.createSheet("名单");
+                sheet.createRow(0).createCell(0).setCellValue("用户名");
+                Row first = sheet.createRow(1);
+                first.createCell(0).setCellValue(" student1@example.com ");
+                first.createCell(1).setCellValue("张三");
+                sheet.createRow(2).createCell(1).setCellValue("只有第二列");
+                sheet.createRow(4).createCell(0).setCellValue(20240001);
+                workbook.write(outputStream);
+                content = outputStream.toByteArray();
+            }
+
+            // When
+            List<String> identifiers = parser.parseExcelFile(new ByteArrayInputStream(content));
+
+            // Then
+            assertEquals(List.of("student1@example.com", "20240001"), identifiers);
+        }
+    }
+
     @Nested
     @DisplayName("边界情况测试")
     class EdgeCaseTests {
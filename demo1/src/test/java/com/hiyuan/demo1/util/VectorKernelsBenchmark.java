@@ -0,0 +1,120 @@
+package com.hiyuan.demo1.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量计算内核基准：标量实现 vs Vector API 实现
+ * <p>
+ * 运行：mvn -Pbenchmark -DskipTests test-compile exec:exec
+ * <ul>
+ *   <li>单向量：dot / cosine / l2Norm，维度 256 / 512 / 1024</li>
+ *   <li>批量：连续矩阵上的 top-k 打分，批量 1 ~ 10000 行</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorKernelsBenchmark {
+
+    private static final int TOP_K = 8;
+
+    @State(Scope.Thread)
+    public static class SingleState {
+
+        @Param({"scalar", "simd"})
+        public String impl;
+
+        @Param({"256", "512", "1024"})
+        public int dimension;
+
+        VectorKernels kernels;
+        float[] a;
+        float[] b;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            kernels = kernels(impl);
+            Random random = new Random(42);
+            a = randomVector(random, dimension);
+            b = randomVector(random, dimension);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        @Param({"scalar", "simd"})
+        public String impl;
+
+        @Param({"256", "512", "1024"})
+        public int dimension;
+
+        @Param({"1", "10", "100", "1000", "10000"})
+        public int rows;
+
+        VectorKernels kernels;
+        float[] query;
+        float[] matrix;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            kernels = kernels(impl);
+            Random random = new Random(42);
+            query = VectorUtils.normalize(randomVector(random, dimension));
+            matrix = new float[rows * dimension];
+            for (int row = 0; row < rows; row++) {
+                float[] vector = VectorUtils.normalize(randomVector(random, dimension));
+                System.arraycopy(vector, 0, matrix, row * dimension, dimension);
+            }
+        }
+    }
+
+    @Benchmark
+    public float dot(SingleState state) {
+        return state.kernels.dot(state.a, state.b, state.dimension);
+    }
+
+    @Benchmark
+    public float cosine(SingleState state) {
+        return state.kernels.cosine(state.a, state.b, state.dimension);
+    }
+
+    @Benchmark
+    public float l2Norm(SingleState state) {
+        return state.kernels.l2Norm(state.a, state.dimension);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public VectorKernels.TopK topK(BatchState state) {
+        return state.kernels.topK(state.query, state.matrix, state.dimension, state.rows, TOP_K);
+    }
+
+    private static VectorKernels kernels(String impl) {
+        return "simd".equals(impl) ? new SimdVectorKernels() : ScalarVectorKernels.INSTANCE;
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,118 @@
+package com.hiyuan.demo1.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VectorKernelsTest {
+
+    private final VectorKernels selected = VectorKernels.get();
+    private final VectorKernels scalar = ScalarVectorKernels.INSTANCE;
+
+    @Test
+    void selectedKernelsMatchScalarIncludingTail() {
+        Random random = new Random(42);
+        // 1027 不是任何 SIMD 宽度的整数倍，覆盖尾部标量补齐
+        float[] a = randomVector(random, 1027);
+        float[] b = randomVector(random, 1027);
+
+        // SIMD 实现块内用 float 累加，误差上限为 BLOCK_STEPS × 2^-24 × Σ|aᵢbᵢ|
+        float dot = scalar.dot(a, b, a.length);
+        assertEquals(dot, selected.dot(a, b, a.length), blockTolerance(a, b));
+        float norm = scalar.l2Norm(a, a.length);
+        assertEquals(norm, selected.l2Norm(a, a.length), blockTolerance(a, a) / norm);
+        float cosine = scalar.cosine(a, b, a.length);
+        assertEquals(cosine, selected.cosine(a, b, a.length), 1e-5f);
+    }
+
+    @Test
+    void dotOnLongVectorsStaysCloseToDoubleAccumulation() {
+        // 只用 float 累加时每个通道要连加上万项，相对误差会到 1e-4 量级；分块并入 double 后保持在 1e-6 量级
+        int length = 1 << 18;
+        float[] a = new float[length];
+        float[] b = new float[length];
+        Arrays.fill(a, 0.1f);
+        Arrays.fill(b, 0.3f);
+
+        double expected = scalar.dot(a, b, length);
+        assertEquals(expected, selected.dot(a, b, length), expected * 1e-5);
+    }
+
+    @Test
+    void scalarDotAccumulatesInDoubleSoLargeTermsDoNotSwallowSmallOnes() {
+        // float 累加时 1e8 会吞掉其后的 1，double 累加能保留
+        int length = 1024;
+        float[] a = new float[length];
+        float[] b = new float[length];
+        a[0] = 1e8f;
+        b[0] = 1f;
+        for (int i = 1; i < length - 1; i++) {
+            a[i] = 1f;
+            b[i] = 1f;
+        }
+        a[length - 1] = -1e8f;
+        b[length - 1] = 1f;
+
+        assertEquals(length - 2, scalar.dot(a, b, length));
+    }
+
+    @Test
+    void cosineOfZeroVectorIsZero() {
+        assertEquals(0f, selected.cosine(new float[]{0f, 0f, 0f}, new float[]{1f, 2f, 3f}, 3));
+    }
+
+    @Test
+    void topKReturnsRowsOrderedByDotProduct() {
+        float[] matrix = {
+                1f, 0f,
+                0.6f, 0.8f,
+                0f, 1f,
+                -1f, 0f
+        };
+
+        VectorKernels.TopK topK = selected.topK(new float[]{1f, 0f}, matrix, 2, 4, 2);
+
+        assertArrayEquals(new int[]{0, 1}, topK.indices());
+        assertArrayEquals(new float[]{1f, 0.6f}, topK.scores(), 1e-6f);
+    }
+
+    @Test
+    void topKMatchesScalarOnLargeBatch() {
+        Random random = new Random(7);
+        int dimension = 256;
+        int rows = 2_000;
+        float[] query = randomVector(random, dimension);
+        float[] matrix = randomVector(random, dimension * rows);
+
+        assertArrayEquals(
+                scalar.topK(query, matrix, dimension, rows, 10).indices(),
+                selected.topK(query, matrix, dimension, rows, 10).indices());
+    }
+
+    @Test
+    void topKHandlesFewerRowsThanK() {
+        VectorKernels.TopK topK = selected.topK(new float[]{1f}, new float[]{0.5f, 2f}, 1, 2, 5);
+
+        assertArrayEquals(new int[]{1, 0}, topK.indices());
+    }
+
+    private static float blockTolerance(float[] a, float[] b) {
+        double sumAbs = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sumAbs += Math.abs((double) a[i] * b[i]);
+        }
+        return (float) (2 * SimdVectorKernels.BLOCK_STEPS * Math.ulp(1f) * sumAbs);
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
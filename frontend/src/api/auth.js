@@ -110,6 +110,14 @@ export const qaApi = {
   askQuestion: (data) => {
     return api.post('/qa/ask', data)
   },
+
+  /**
+   * 创建问答会话，多轮上下文由服务端维护
+   * @returns {Promise} 包含 sessionId 的响应
+   */
+  createSession: () => {
+    return api.post('/qa/sessions')
+  },
   
   /**
    * 流式问答
@@ -128,11 +136,15 @@ export const qaApi = {
  */
 export const historyApi = {
   /**
-   * 获取问答历史
-   * @returns {Promise} 历史记录列表
+   * 获取问答历史（游标分页，最新的在前）
+   * @param {Object} params 查询参数
+   * @param {string} params.cursor 上一页返回的 nextCursor，不传时返回第一页
+   * @param {number} params.size 每页大小
+   * @param {string} params.keyword 关键词（匹配问题或答案）
+   * @returns {Promise} 历史记录分页 { content, size, nextCursor, hasNext }
    */
-  getHistory: () => {
-    return api.get('/history')
+  getHistory: (params = {}) => {
+    return api.get('/history', { params })
   }
 }
 
@@ -146,6 +158,15 @@ export const statisticsApi = {
    */
   getStatistics: () => {
     return api.get('/statistics')
+  },
+
+  /**
+   * 获取统计时间序列
+   * @param {Object} params - { metric, granularity: 'hour' | 'day', from, to }
+   * @returns {Promise} 按时间桶排列的 { bucketStart, count, avgValue } 列表
+   */
+  getTimeSeries: (params) => {
+    return api.get('/statistics/timeseries', { params })
   }
 }
 
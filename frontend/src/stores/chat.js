@@ -17,6 +17,7 @@ export const useChatStore = defineStore('chat', () => {
   const MAX_CONVERSATIONS = 20
   const TOKEN_REFRESH_BUFFER_MS = 60 * 1000
   const MAX_SSE_RETRY = 1
+  const MAX_SSE_RESUME = 3
   const FALLBACK_STREAM_CHUNK_SIZE = 24
   const FALLBACK_STREAM_DELAY_MS = 16
   const FALLBACK_STORAGE_UPDATE_INTERVAL = 4
@@ -199,8 +200,40 @@ export const useChatStore = defineStore('chat', () => {
     return reactiveMessage
   }
 
-  function buildQaPayload(question, previousUserMessage, previousAssistantMessage) {
+  // 当前对话对应的服务端会话；旧对话首次提问时创建，失败时退回由客户端携带上一轮问答
+  async function ensureQaSession() {
+    const conversation = conversations.value.find(c => c.id === currentChatId.value)
+    if (!conversation) {
+      return { sessionId: null, isNew: false }
+    }
+    if (conversation.sessionId) {
+      return { sessionId: conversation.sessionId, isNew: false }
+    }
+    try {
+      const response = await qaApi.createSession()
+      const result = response?.data || {}
+      const sessionId = (result.data || result).sessionId
+      if (!sessionId) {
+        return { sessionId: null, isNew: false }
+      }
+      conversation.sessionId = sessionId
+      saveToStorage()
+      return { sessionId, isNew: true }
+    } catch (err) {
+      console.warn('创建问答会话失败，改为携带上一轮问答', err)
+      return { sessionId: null, isNew: false }
+    }
+  }
+
+  function buildQaPayload(question, previousUserMessage, previousAssistantMessage, session) {
     const payload = { question }
+    if (session.sessionId) {
+      payload.sessionId = session.sessionId
+      if (!session.isNew) {
+        // 上下文已在服务端，不再回传上一轮回答
+        return payload
+      }
+    }
     if (previousUserMessage) {
       payload.previousQuestion = previousUserMessage.content
     }
@@ -222,6 +255,9 @@ export const useChatStore = defineStore('chat', () => {
     return new Promise((resolve, reject) => {
       const params = new URLSearchParams()
       params.append('question', payload.question)
+      if (payload.sessionId) {
+        params.append('sessionId', payload.sessionId)
+      }
       if (payload.previousQuestion) {
         params.append('previousQuestion', payload.previousQuestion)
       }
@@ -236,6 +272,7 @@ export const useChatStore = defineStore('chat', () => {
       const streamUrl = `${baseURL}/qa/stream?${params.toString()}`
       const eventSource = new EventSource(streamUrl)
       let settled = false
+      let resumeAttempts = 0
 
       const finish = (handler, value) => {
         if (settled) return
@@ -284,6 +321,12 @@ export const useChatStore = defineStore('chat', () => {
       })
 
       eventSource.addEventListener('error', (event) => {
+        // 服务端推送的 error 事件带 data；连接中断时浏览器会携带 Last-Event-ID 自动重连，服务端从断点续传
+        if (!event.data && eventSource.readyState === EventSource.CONNECTING && resumeAttempts < MAX_SSE_RESUME) {
+          resumeAttempts += 1
+          console.warn(`SSE 连接中断，正在续传（第 ${resumeAttempts} 次）`)
+          return
+        }
         console.error('SSE 发生错误', event)
         finish(reject, new Error('SSE_STREAM_ERROR'))
       })
@@ -358,7 +401,8 @@ export const useChatStore = defineStore('chat', () => {
 
     try {
       const userStore = useUserStore()
-      const payload = buildQaPayload(trimmedQuestion, previousUserMessage, previousAssistantMessage)
+      const session = await ensureQaSession()
+      const payload = buildQaPayload(trimmedQuestion, previousUserMessage, previousAssistantMessage, session)
       let streamSuccess = false
       let lastError = null
 
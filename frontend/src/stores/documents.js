@@ -1,9 +1,15 @@
 import { defineStore } from 'pinia'
 import { ref } from 'vue'
 import api from '@/api/interceptor'
+import { useUserStore } from './user'
 
 export const useDocumentStore = defineStore('documents', () => {
+  const PAGE_SIZE = 100
   const documents = ref([])
+  // 下一页游标，为 null 时没有更多文档
+  const nextCursor = ref(null)
+  // 文档处理进度订阅（SSE）
+  let statusSource = null
 
   function normalizeFileName(name) {
     return (name || '').trim().toLowerCase()
@@ -25,19 +31,91 @@ export const useDocumentStore = defineStore('documents', () => {
 
   async function fetchDocuments() {
     try {
-      // 使用配置了JWT拦截器的 api 实例
-      const response = await api.get('/documents')
+      // 使用配置了JWT拦截器的 api 实例；列表为游标分页，先取第一页
+      const response = await api.get('/documents', { params: { size: PAGE_SIZE } })
       const result = response.data
       
       if (result.code === 200 && result.data) {
         // Transform backend documents to frontend format
-        documents.value = result.data.map(transformDocument)
+        documents.value = result.data.content.map(transformDocument)
+        nextCursor.value = result.data.nextCursor
       } else {
         documents.value = []
+        nextCursor.value = null
       }
     } catch (error) {
       console.error('加载文档失败:', error)
       documents.value = []
+      nextCursor.value = null
+    }
+  }
+
+  // 加载下一页并追加到列表
+  async function fetchMoreDocuments() {
+    if (!nextCursor.value) {
+      return
+    }
+    try {
+      const response = await api.get('/documents', {
+        params: { size: PAGE_SIZE, cursor: nextCursor.value }
+      })
+      const result = response.data
+      if (result.code === 200 && result.data) {
+        documents.value.push(...result.data.content.map(transformDocument))
+        nextCursor.value = result.data.nextCursor
+      }
+    } catch (error) {
+      console.error('加载更多文档失败:', error)
+    }
+  }
+
+  // 应用服务端推送的处理进度事件
+  function applyStatusEvent(event) {
+    const doc = documents.value.find(d => d.id === event.documentId)
+    if (!doc) {
+      return
+    }
+    doc.status = event.status
+    doc.progress = event.stage === 'EMBEDDING' || event.stage === 'PARSED'
+      ? { processed: event.processed, total: event.total }
+      : null
+  }
+
+  /**
+   * 订阅文档处理进度，替代轮询文档列表
+   * 断线自动重连后刷新一次列表，补上断开期间错过的状态变化
+   */
+  function subscribeStatus() {
+    if (statusSource) {
+      return
+    }
+    const userStore = useUserStore()
+    const params = new URLSearchParams()
+    if (userStore.accessToken) {
+      params.append('access_token', userStore.accessToken)
+    }
+    const baseURL = api.defaults.baseURL?.replace(/\/$/, '') || ''
+    statusSource = new EventSource(`${baseURL}/documents/events?${params.toString()}`)
+    let opened = false
+    statusSource.onopen = () => {
+      if (opened) {
+        fetchDocuments()
+      }
+      opened = true
+    }
+    statusSource.addEventListener('status', (event) => {
+      try {
+        applyStatusEvent(JSON.parse(event.data))
+      } catch (err) {
+        console.error('解析文档进度事件失败', err)
+      }
+    })
+  }
+
+  function unsubscribeStatus() {
+    if (statusSource) {
+      statusSource.close()
+      statusSource = null
     }
   }
 
@@ -195,7 +273,11 @@ export const useDocumentStore = defineStore('documents', () => {
 
   return {
     documents,
+    nextCursor,
     fetchDocuments,
+    fetchMoreDocuments,
+    subscribeStatus,
+    unsubscribeStatus,
     uploadDocument,
     deleteDocument,
     getFileIcon,
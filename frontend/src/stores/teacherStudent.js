@@ -34,11 +34,12 @@ export const useTeacherStudentStore = defineStore('teacherStudent', () => {
   
   // 问答历史
   const qaHistory = ref([])
+  // 游标分页：cursors[i] 为请求第 i 页使用的游标（第 0 页为 null）
   const qaHistoryPagination = ref({
     page: 0,
     size: 20,
-    totalElements: 0,
-    totalPages: 0
+    hasNext: false,
+    cursors: [null]
   })
   
   // 文档访问记录
@@ -248,37 +249,41 @@ export const useTeacherStudentStore = defineStore('teacherStudent', () => {
   }
   
   /**
-   * 获取学生问答历史
+   * 获取学生问答历史（游标分页）
    * @param {string} studentId 学生ID
    * @param {Object} options 查询选项
-   * @param {number} options.page 页码
+   * @param {number} options.page 页码（只能是已访问过的页或下一页，0 表示重新从第一页开始）
    * @param {string} options.startDate 开始日期
    * @param {string} options.endDate 结束日期
+   * @param {string} options.keyword 关键词
    */
   async function fetchStudentQaHistory(studentId, options = {}) {
     loading.value = true
     error.value = null
     
-    const { page = 0, startDate, endDate } = options
+    const { page = 0, startDate, endDate, keyword } = options
+    const cursors = page === 0 ? [null] : qaHistoryPagination.value.cursors
     
     try {
       const params = { 
-        page, 
         size: qaHistoryPagination.value.size 
       }
       
+      if (cursors[page]) params.cursor = cursors[page]
       if (startDate) params.startDate = startDate
       if (endDate) params.endDate = endDate
+      if (keyword) params.keyword = keyword
       
       const response = await api.get(`/teacher/students/${studentId}/qa-history`, { params })
       
       if (response.data.code === 200) {
-        qaHistory.value = response.data.data.content || []
+        const data = response.data.data
+        qaHistory.value = data.content || []
         qaHistoryPagination.value = {
-          page: response.data.data.number,
-          size: response.data.data.size,
-          totalElements: response.data.data.totalElements,
-          totalPages: response.data.data.totalPages
+          page,
+          size: data.size,
+          hasNext: data.hasNext,
+          cursors: [...cursors.slice(0, page + 1), data.nextCursor]
         }
         return { success: true, data: qaHistory.value }
       } else {
@@ -426,8 +431,8 @@ export const useTeacherStudentStore = defineStore('teacherStudent', () => {
     qaHistoryPagination.value = {
       page: 0,
       size: 20,
-      totalElements: 0,
-      totalPages: 0
+      hasNext: false,
+      cursors: [null]
     }
     documentAccess.value = []
     documentAccessPagination.value = {